@@ -43,9 +43,12 @@ import com.graphhopper.routing.util.parsers.OSMBikeNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMFootNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMMtbNetworkTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.routing.weighting.PrecomputedWeightStorage;
+import com.graphhopper.routing.weighting.PrecomputedWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.routing.weighting.custom.CustomWeightingClassStorage;
 import com.graphhopper.routing.weighting.custom.NameValidator;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
@@ -107,6 +110,8 @@ public class GraphHopper {
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
+    private boolean precompileCustomModels = false;
+    private boolean precomputeWeights = false;
     private boolean fullyLoaded = false;
     private final OSMReaderConfig osmReaderConfig = new OSMReaderConfig();
     // for routing
@@ -130,6 +135,11 @@ public class GraphHopper {
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    private Map<String, PrecomputedWeightStorage> precomputedWeights = Collections.emptyMap();
+    // the edge scores for algorithm=scenic_route, null if the encoded values are missing
+    private ScenicScore scenicScore;
+    // the number of custom model classes that were loaded from the graph folder instead of being compiled
+    private int loadedCustomModelClasses;
 
     // for data reader
     private String osmFile;
@@ -416,6 +426,33 @@ public class GraphHopper {
         return this;
     }
 
+    public boolean isPrecompileCustomModels() {
+        return precompileCustomModels;
+    }
+
+    /**
+     * Specifies if the custom models of the profiles should be compiled when the graph is loaded. The compiled
+     * classes are stored in the graph folder (if writes are allowed) and are loaded from there on the next start.
+     */
+    public GraphHopper setPrecompileCustomModels(boolean precompileCustomModels) {
+        this.precompileCustomModels = precompileCustomModels;
+        return this;
+    }
+
+    public boolean isPrecomputeWeights() {
+        return precomputeWeights;
+    }
+
+    /**
+     * Specifies if the edge weights and times of the profiles should be calculated once when the graph is loaded.
+     * Requests without a custom model then read them instead of evaluating the custom model of the profile for every
+     * edge. This needs 16 bytes per edge and profile.
+     */
+    public GraphHopper setPrecomputeWeights(boolean precomputeWeights) {
+        this.precomputeWeights = precomputeWeights;
+        return this;
+    }
+
     public TranslationMap getTranslationMap() {
         return trMap;
     }
@@ -594,6 +631,8 @@ public class GraphHopper {
         routerConfig.setActiveLandmarkCount(activeLandmarkCount);
 
         calcChecksums = ghConfig.getBool("graph.calc_checksums", false);
+        precompileCustomModels = ghConfig.getBool("graph.precompile_custom_models", precompileCustomModels);
+        precomputeWeights = ghConfig.getBool("graph.precompute_weights", precomputeWeights);
 
         return this;
     }
@@ -1183,6 +1222,12 @@ public class GraphHopper {
                 baseGraph.flushAndCloseGeometryAndNameStorage();
         }
 
+        if (precompileCustomModels)
+            precompileCustomModels();
+
+        if (precomputeWeights)
+            loadOrPrecomputeWeights();
+
         if (lmPreparationHandler.isEnabled())
             loadOrPrepareLM(closeEarly);
 
@@ -1192,11 +1237,66 @@ public class GraphHopper {
 
         if (chPreparationHandler.isEnabled())
             loadOrPrepareCH(closeEarly);
+
+        if (!closeEarly && ScenicScore.isAvailable(encodingManager))
+            scenicScore = new ScenicScore(baseGraph, encodingManager);
     }
 
     protected void importPublicTransit() {
     }
 
+    private void loadOrPrecomputeWeights() {
+        StopWatch sw = new StopWatch().start();
+        // the weightings must be created before the precomputed weights are available, see createWeightingFactory
+        WeightingFactory weightingFactory = createWeightingFactory();
+        Map<String, PrecomputedWeightStorage> storages = new LinkedHashMap<>();
+        int loaded = 0;
+        for (Profile profile : profilesByName.values()) {
+            if (!CustomWeighting.NAME.equals(profile.getWeighting()))
+                continue;
+            // recalculate the weights if the custom model, the encoded values or the version changed
+            long checksum = PrecomputedWeightStorage.createChecksum(CustomWeightingClassStorage.createKey(profile.getCustomModel(), encodingManager));
+            PrecomputedWeightStorage storage = new PrecomputedWeightStorage(baseGraph.getDirectory(), profile.getName(), baseGraph.getEdges(), checksum);
+            if (storage.loadExisting()) {
+                loaded++;
+            } else {
+                if (!isAllowWrites()) {
+                    logger.warn("Precomputed weights for profile " + profile.getName() + " are missing or outdated, but writes are not allowed");
+                    storage.close();
+                    continue;
+                }
+                // an outdated storage cannot be created again
+                baseGraph.getDirectory().remove("weights_" + profile.getName());
+                storage = new PrecomputedWeightStorage(baseGraph.getDirectory(), profile.getName(), baseGraph.getEdges(), checksum);
+                storage.calculate(baseGraph, weightingFactory.createWeighting(profile, new PMap(), false));
+                storage.flush();
+            }
+            storages.put(profile.getName(), storage);
+        }
+        precomputedWeights = storages;
+        logger.info("Precomputed weights for " + storages.size() + " profiles (loaded: " + loaded + "), took: " + sw.stop().getSeconds() + "s");
+    }
+
+    private void precompileCustomModels() {
+        StopWatch sw = new StopWatch().start();
+        CustomWeightingClassStorage storage = new CustomWeightingClassStorage(baseGraph.getDirectory(), isAllowWrites());
+        int loaded = 0, compiled = 0;
+        for (Profile profile : profilesByName.values()) {
+            if (!CustomWeighting.NAME.equals(profile.getWeighting()) || profile.getCustomModel() == null)
+                continue;
+            if (storage.loadOrCompile(profile.getName(), profile.getCustomModel(), encodingManager))
+                loaded++;
+            else
+                compiled++;
+        }
+        loadedCustomModelClasses = loaded;
+        logger.info("Precompiled custom models, loaded: " + loaded + ", compiled: " + compiled + ", took: " + sw.stop().getSeconds() + "s");
+    }
+
+    int getLoadedCustomModelClasses() {
+        return loadedCustomModelClasses;
+    }
+
     void interpolateBridgesTunnelsAndFerries() {
         if (encodingManager.hasEncodedValue(RoadEnvironment.KEY)) {
             EnumEncodedValue<RoadEnvironment> roadEnvEnc = encodingManager.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class);
@@ -1223,7 +1323,17 @@ public class GraphHopper {
     }
 
     protected WeightingFactory createWeightingFactory() {
-        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager());
+        WeightingFactory weightingFactory = new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager());
+        if (precomputedWeights.isEmpty())
+            return weightingFactory;
+        return (profile, hints, disableTurnCosts) -> {
+            Weighting weighting = weightingFactory.createWeighting(profile, hints, disableTurnCosts);
+            PrecomputedWeightStorage storage = precomputedWeights.get(profile.getName());
+            // a custom model in the request changes the edge weights and cm_version creates a different weighting
+            if (storage == null || hints.getObject(CustomModel.KEY, null) != null || hints.has("cm_version"))
+                return weighting;
+            return new PrecomputedWeighting(weighting, storage);
+        };
     }
 
     public GHResponse route(GHRequest request) {
@@ -1239,7 +1349,7 @@ public class GraphHopper {
             throw new IllegalStateException("Location index not initialized");
 
         return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks).setScenicScore(scenicScore);
     }
 
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
@@ -1438,6 +1548,7 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        precomputedWeights.values().forEach(PrecomputedWeightStorage::close);
 
         if (locationIndex != null)
             locationIndex.close();
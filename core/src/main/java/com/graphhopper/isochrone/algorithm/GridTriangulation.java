@@ -0,0 +1,243 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import org.locationtech.jts.triangulate.quadedge.Vertex;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A regular grid where every cell is split into two triangles along its south-west to north-east diagonal, so every
+ * vertex has six neighbours. The edges are created on demand from the vertex index and direction, only the z values
+ * of the vertices are stored. Vertices with an infinite z value were not reached.
+ */
+public class GridTriangulation implements ReadableTriangulation {
+
+    // counter-clockwise: east, north-east, north, west, south-west, south
+    private static final int[] DX = {1, 1, 0, -1, -1, 0};
+    private static final int[] DY = {0, 1, 1, 0, -1, -1};
+
+    private final int columns;
+    private final int rows;
+    private final double minLon;
+    private final double minLat;
+    private final double cellLon;
+    private final double cellLat;
+    private final float[] z;
+
+    GridTriangulation(int columns, int rows, double minLon, double minLat, double cellLon, double cellLat, float[] z) {
+        if (z.length != columns * rows)
+            throw new IllegalArgumentException("Expected " + columns * rows + " values but got " + z.length);
+        this.columns = columns;
+        this.rows = rows;
+        this.minLon = minLon;
+        this.minLat = minLat;
+        this.cellLon = cellLon;
+        this.cellLat = cellLat;
+        this.z = z;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public double getZ(int column, int row) {
+        return z[row * columns + column];
+    }
+
+    private int neighbour(int v, int dir) {
+        int x = v % columns + DX[dir];
+        int y = v / columns + DY[dir];
+        if (x < 0 || y < 0 || x >= columns || y >= rows)
+            return -1;
+        return y * columns + x;
+    }
+
+    private GridQuadEdge edge(int v, int dir) {
+        return neighbour(v, dir) < 0 ? null : new GridQuadEdge(v, dir);
+    }
+
+    /**
+     * @return all edges that have at least one reached vertex. This avoids looking at the large unreached parts of the
+     * grid when searching for the contour.
+     */
+    @Override
+    public Collection<ReadableQuadEdge> getEdges() {
+        return getEdges(3);
+    }
+
+    /**
+     * Every contour encloses at least one vertex and must therefore cross the horizontal line through it, i.e. the
+     * reached edges in east direction are sufficient as seed edges for the {@link ContourBuilder}.
+     */
+    public Collection<ReadableQuadEdge> getSeedEdges() {
+        return getEdges(1);
+    }
+
+    private Collection<ReadableQuadEdge> getEdges(int directions) {
+        return new AbstractCollection<ReadableQuadEdge>() {
+            @Override
+            public Iterator<ReadableQuadEdge> iterator() {
+                return new Iterator<ReadableQuadEdge>() {
+                    // the primary edges are the ones in the directions 0, 1 and 2
+                    int index = -1;
+                    GridQuadEdge next = findNext();
+
+                    private GridQuadEdge findNext() {
+                        while (++index < z.length * directions) {
+                            int v = index / directions, dir = index % directions;
+                            int adj = neighbour(v, dir);
+                            if (adj >= 0 && (Float.isFinite(z[v]) || Float.isFinite(z[adj])))
+                                return new GridQuadEdge(v, dir);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public ReadableQuadEdge next() {
+                        if (next == null)
+                            throw new NoSuchElementException();
+                        GridQuadEdge result = next;
+                        next = findNext();
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (ReadableQuadEdge ignored : this) {
+                    size++;
+                }
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public ReadableQuadEdge getEdge(int v1, int v2) {
+        for (int dir = 0; dir < DX.length; dir++) {
+            if (neighbour(v1, dir) == v2)
+                return new GridQuadEdge(v1, dir);
+        }
+        return null;
+    }
+
+    @Override
+    public ReadableQuadEdge getVertexQuadEdge(int v) {
+        for (int dir = 0; dir < DX.length; dir++) {
+            GridQuadEdge edge = edge(v, dir);
+            if (edge != null)
+                return edge;
+        }
+        return null;
+    }
+
+    private Vertex vertex(int v) {
+        int x = v % columns, y = v / columns;
+        return new Vertex(minLon + x * cellLon, minLat + y * cellLat, z[v]);
+    }
+
+    private class GridQuadEdge implements ReadableQuadEdge {
+        private final int orig;
+        private final int dir;
+
+        GridQuadEdge(int orig, int dir) {
+            this.orig = orig;
+            this.dir = dir;
+        }
+
+        @Override
+        public ReadableQuadEdge getPrimary() {
+            return dir < 3 ? this : sym();
+        }
+
+        @Override
+        public Vertex orig() {
+            return vertex(orig);
+        }
+
+        @Override
+        public Vertex dest() {
+            return vertex(neighbour(orig, dir));
+        }
+
+        @Override
+        public ReadableQuadEdge oNext() {
+            return edge(orig, (dir + 1) % 6);
+        }
+
+        @Override
+        public ReadableQuadEdge oPrev() {
+            return edge(orig, (dir + 5) % 6);
+        }
+
+        @Override
+        public ReadableQuadEdge dNext() {
+            ReadableQuadEdge e = sym().oNext();
+            return e == null ? null : e.sym();
+        }
+
+        @Override
+        public ReadableQuadEdge dPrev() {
+            ReadableQuadEdge e = sym().oPrev();
+            return e == null ? null : e.sym();
+        }
+
+        @Override
+        public ReadableQuadEdge lNext() {
+            return sym().oPrev();
+        }
+
+        @Override
+        public GridQuadEdge sym() {
+            return new GridQuadEdge(neighbour(orig, dir), (dir + 3) % 6);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            GridQuadEdge that = (GridQuadEdge) o;
+            return orig == that.orig && dir == that.dir;
+        }
+
+        @Override
+        public int hashCode() {
+            return orig * 6 + dir;
+        }
+
+        @Override
+        public String toString() {
+            return orig() + " -> " + dest();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An alternative to the {@link JTSTriangulator} that does not triangulate the nodes of the shortest path tree. Instead,
+ * the edges of the tree are rasterized into a regular grid: every vertex of the grid gets the smallest value of the
+ * edge points nearby. The grid has at most maxCells columns and rows, so time and memory stay bounded even for very
+ * large isochrones. The polygons are then built by the {@link ContourBuilder} from the {@link GridTriangulation}.
+ * <p>
+ * The polygons are a bit larger than the ones of the JTSTriangulator as every edge point also marks the vertices
+ * within bufferCells as reached, which closes the gaps between nearby roads.
+ */
+public class GridTriangulator implements Triangulator {
+
+    // roughly 11m
+    private static final double MIN_CELL_SIZE = 1e-4;
+    private final int maxCells;
+    private final int bufferCells;
+
+    public GridTriangulator() {
+        this(500, 2);
+    }
+
+    public GridTriangulator(int maxCells, int bufferCells) {
+        if (maxCells < 2)
+            throw new IllegalArgumentException("maxCells must be at least 2 but was " + maxCells);
+        if (bufferCells < 0)
+            throw new IllegalArgumentException("bufferCells must not be negative but was " + bufferCells);
+        this.maxCells = maxCells;
+        this.bufferCells = bufferCells;
+    }
+
+    /**
+     * @param tolerance the minimum cell size in degrees
+     */
+    @Override
+    public Result triangulate(int[] startNodes, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance) {
+        NodeAccess na = queryGraph.getNodeAccess();
+        // we cannot rasterize before we know the bounds, so we remember every label
+        IntArrayList edges = new IntArrayList();
+        IntArrayList nodes = new IntArrayList();
+        DoubleArrayList values = new DoubleArrayList();
+        double[] bounds = {Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE};
+        shortestPathTree.search(startNodes, label -> {
+            double lat = na.getLat(label.node), lon = na.getLon(label.node);
+            bounds[0] = Math.min(bounds[0], lon);
+            bounds[1] = Math.max(bounds[1], lon);
+            bounds[2] = Math.min(bounds[2], lat);
+            bounds[3] = Math.max(bounds[3], lat);
+            edges.add(label.parent == null ? -1 : label.edge);
+            nodes.add(label.node);
+            values.add(fz.applyAsDouble(label));
+            values.add(label.parent == null ? 0 : fz.applyAsDouble(label.parent));
+        });
+        if (nodes.isEmpty())
+            throw new IllegalArgumentException("Too few points found. Please try a different 'point' or a larger 'time_limit'.");
+
+        double centerLat = (bounds[2] + bounds[3]) / 2;
+        double lonFactor = Math.max(0.01, Math.cos(Math.toRadians(centerLat)));
+        double extent = Math.max(bounds[3] - bounds[2], (bounds[1] - bounds[0]) * lonFactor);
+        double cellLat = Math.max(Math.max(tolerance, MIN_CELL_SIZE), extent / maxCells);
+        // roughly square cells in meters
+        double cellLon = cellLat / lonFactor;
+        // the outermost vertices (and the ones next to them) must never be reached, so the contour never leaves the grid
+        int padding = bufferCells + 2;
+        double minLon = bounds[0] - padding * cellLon;
+        double minLat = bounds[2] - padding * cellLat;
+        int columns = (int) Math.ceil((bounds[1] - bounds[0]) / cellLon) + 2 * padding + 1;
+        int rows = (int) Math.ceil((bounds[3] - bounds[2]) / cellLat) + 2 * padding + 1;
+        float[] z = new float[columns * rows];
+        Arrays.fill(z, Float.POSITIVE_INFINITY);
+        Rasterizer rasterizer = new Rasterizer(z, columns, rows, minLon, minLat, cellLon, cellLat);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            int node = nodes.get(i);
+            double value = values.get(2 * i);
+            if (edges.get(i) < 0) {
+                rasterizer.addPoint(na.getLon(node), na.getLat(node), value);
+                continue;
+            }
+            // the geometry goes from the parent to the node, we interpolate the value along it
+            EdgeIteratorState edge = queryGraph.getEdgeIteratorState(edges.get(i), node);
+            PointList points = edge.fetchWayGeometry(FetchMode.ALL);
+            double parentValue = values.get(2 * i + 1);
+            double length = 0;
+            double[] lengths = new double[points.size()];
+            for (int p = 1; p < points.size(); p++) {
+                length += DistanceCalcEarth.DIST_EARTH.calcDist(points.getLat(p - 1), points.getLon(p - 1), points.getLat(p), points.getLon(p));
+                lengths[p] = length;
+            }
+            for (int p = 1; p < points.size(); p++) {
+                double v1 = length > 0 ? parentValue + (value - parentValue) * lengths[p - 1] / length : value;
+                double v2 = length > 0 ? parentValue + (value - parentValue) * lengths[p] / length : value;
+                rasterizer.addSegment(points.getLon(p - 1), points.getLat(p - 1), v1, points.getLon(p), points.getLat(p), v2);
+            }
+        }
+        GridTriangulation triangulation = new GridTriangulation(columns, rows, minLon, minLat, cellLon, cellLat, z);
+        return new Result(triangulation, triangulation.getSeedEdges());
+    }
+
+    private class Rasterizer {
+        private final float[] z;
+        private final int columns, rows;
+        private final double minLon, minLat, cellLon, cellLat;
+
+        Rasterizer(float[] z, int columns, int rows, double minLon, double minLat, double cellLon, double cellLat) {
+            this.z = z;
+            this.columns = columns;
+            this.rows = rows;
+            this.minLon = minLon;
+            this.minLat = minLat;
+            this.cellLon = cellLon;
+            this.cellLat = cellLat;
+        }
+
+        void addSegment(double lon1, double lat1, double v1, double lon2, double lat2, double v2) {
+            double x1 = (lon1 - minLon) / cellLon, y1 = (lat1 - minLat) / cellLat;
+            double x2 = (lon2 - minLon) / cellLon, y2 = (lat2 - minLat) / cellLat;
+            // sample at least every half cell
+            int steps = (int) Math.ceil(2 * Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1)));
+            for (int s = 0; s <= steps; s++) {
+                double t = steps == 0 ? 1 : (double) s / steps;
+                addGridPoint(x1 + t * (x2 - x1), y1 + t * (y2 - y1), v1 + t * (v2 - v1));
+            }
+        }
+
+        void addPoint(double lon, double lat, double value) {
+            addGridPoint((lon - minLon) / cellLon, (lat - minLat) / cellLat, value);
+        }
+
+        private void addGridPoint(double x, double y, double value) {
+            int cx = (int) Math.round(x), cy = (int) Math.round(y);
+            for (int dy = -bufferCells; dy <= bufferCells; dy++) {
+                int row = cy + dy;
+                if (row < 0 || row >= rows)
+                    continue;
+                for (int dx = -bufferCells; dx <= bufferCells; dx++) {
+                    int column = cx + dx;
+                    if (column < 0 || column >= columns || dx * dx + dy * dy > bufferCells * bufferCells)
+                        continue;
+                    int index = row * columns + column;
+                    if (value < z[index])
+                        z[index] = (float) value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.cursors.ObjectCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.coll.MinHeapWithUpdate;
+import com.graphhopper.routing.ch.ShortcutUnpacker;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * Computes the shortest path tree from (or to) one or more nodes to all nodes of the graph with the PHAST algorithm, see
+ * "PHAST: Hardware-Accelerated Shortest Path Trees" by Delling, Goldberg, Nowatzyk and Werneck. It uses the node-based
+ * CH preparation of a profile: first an upward search from the start nodes, then one sweep over all nodes in
+ * decreasing CH level that relaxes the downward edges. Both phases use primitive arrays only and the order of the
+ * sweep is calculated once per CH graph, see {@link NodeOrder}. Afterwards only the nodes within the limit (and the
+ * nodes right behind it) are unpacked and get an {@link IsoLabel}.
+ * <p>
+ * The time and distance of a node are calculated from the original edges of the edge/shortcut it was reached with.
+ * Unlike {@link ShortestPathTree} the whole graph is always explored, so this is faster for large limits only.
+ */
+public class PhastShortestPathTree extends ShortestPathTree {
+    private static final byte UNRESOLVED = 0, WITHIN = 1, BEYOND = 2;
+    private final RoutingCHGraph chGraph;
+    private final Weighting chWeighting;
+    private final boolean reverseFlow;
+    private final int baseNodes;
+    private final NodeOrder nodeOrder;
+    private final ShortcutUnpacker unpacker;
+    private IntObjectHashMap<IsoLabel> labels;
+    private int visitedNodes;
+    // the state of the current unpacking
+    private int unpackNode;
+    private long unpackMillis;
+    private double unpackDistance;
+    private int unpackLastEdge;
+
+    /**
+     * The CH levels of the nodes and the nodes sorted by decreasing level. This only depends on the CH preparation,
+     * so it can be shared by all searches.
+     */
+    public static final class NodeOrder {
+        private static final Map<RoutingCHGraph, NodeOrder> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+        private final int[] levels;
+        private final int[] order;
+
+        private NodeOrder(int[] levels) {
+            this.levels = levels;
+            this.order = sortByLevelDescending(levels);
+        }
+
+        /**
+         * @param chGraph the CH graph of a profile, i.e. without virtual nodes. The result is cached per CH graph.
+         */
+        public static NodeOrder of(RoutingCHGraph chGraph) {
+            return CACHE.computeIfAbsent(chGraph, g -> calc(g, g.getNodes()));
+        }
+
+        static NodeOrder calc(RoutingCHGraph chGraph, int nodes) {
+            int[] levels = new int[nodes];
+            for (int node = 0; node < nodes; node++) {
+                levels[node] = chGraph.getLevel(node);
+            }
+            return new NodeOrder(levels);
+        }
+
+        /**
+         * Sorts the nodes by their CH level via counting sort, nodes that were not contracted share the highest level
+         */
+        private static int[] sortByLevelDescending(int[] levels) {
+            int maxLevel = 0;
+            for (int level : levels) {
+                maxLevel = Math.max(maxLevel, level);
+            }
+            int[] counts = new int[maxLevel + 2];
+            for (int level : levels) {
+                counts[maxLevel - level + 1]++;
+            }
+            for (int i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            int[] order = new int[levels.length];
+            for (int node = 0; node < levels.length; node++) {
+                order[counts[maxLevel - levels[node]]++] = node;
+            }
+            return order;
+        }
+    }
+
+    /**
+     * @param graph   the graph the CH graph is based on, i.e. usually a QueryGraph
+     * @param chGraph a node-based CH graph, e.g. a QueryRoutingCHGraph
+     */
+    public PhastShortestPathTree(Graph graph, RoutingCHGraph chGraph, boolean reverseFlow) {
+        this(graph, chGraph, NodeOrder.calc(chGraph, graph.getBaseGraph().getNodes()), reverseFlow);
+    }
+
+    /**
+     * @param nodeOrder the order of the CH graph without virtual nodes, see {@link NodeOrder#of}
+     */
+    public PhastShortestPathTree(Graph graph, RoutingCHGraph chGraph, NodeOrder nodeOrder, boolean reverseFlow) {
+        super(graph, chGraph.getWeighting(), reverseFlow, TraversalMode.NODE_BASED);
+        if (chGraph.isEdgeBased())
+            throw new IllegalArgumentException("PHAST only works with node-based CH");
+        this.chGraph = chGraph;
+        this.chWeighting = chGraph.getWeighting();
+        this.reverseFlow = reverseFlow;
+        this.baseNodes = graph.getBaseGraph().getNodes();
+        if (nodeOrder.levels.length != baseNodes)
+            throw new IllegalArgumentException("The node order was calculated for " + nodeOrder.levels.length + " nodes, but the graph has " + baseNodes);
+        this.nodeOrder = nodeOrder;
+        this.unpacker = new ShortcutUnpacker(chGraph, this::visitOriginalEdge, false);
+    }
+
+    @Override
+    public void search(int[] from, Consumer<IsoLabel> consumer) {
+        checkAlreadyRun();
+        int nodes = chGraph.getNodes();
+        for (int node = baseNodes; node < nodes; node++) {
+            // the original edges next to a virtual node are not available at the real nodes anymore
+            if (!contains(from, node))
+                throw new IllegalArgumentException("PHAST only supports virtual start nodes, but found virtual node " + node);
+        }
+        double[] weights = new double[nodes];
+        Arrays.fill(weights, Double.POSITIVE_INFINITY);
+        // the CH edge and the node each node was reached from
+        int[] parentEdges = new int[nodes];
+        Arrays.fill(parentEdges, NO_EDGE);
+        int[] parentNodes = new int[nodes];
+
+        upwardSearch(from, weights, parentEdges, parentNodes, nodeOrder.levels);
+        downwardSweep(nodeOrder.order, weights, parentEdges, parentNodes, nodeOrder.levels);
+
+        long[] times = new long[nodes];
+        double[] distances = new double[nodes];
+        byte[] states = new byte[nodes];
+        IntArrayList stack = new IntArrayList();
+        labels = new GHIntObjectHashMap<>();
+        for (int node = 0; node < nodes; node++) {
+            if (Double.isInfinite(weights[node]) || states[node] != UNRESOLVED)
+                continue;
+            // time and distance of the parent are required first, but the settle order of the two phases does not
+            // guarantee this, so we walk up the tree until we hit a resolved node
+            stack.clear();
+            for (int n = node; states[n] == UNRESOLVED; n = parentNodes[n]) {
+                stack.add(n);
+                if (parentEdges[n] == NO_EDGE)
+                    break;
+            }
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                int n = stack.get(i);
+                // all values increase along the tree, so there is no need to unpack the nodes behind a node that is
+                // already beyond the limit
+                if (parentEdges[n] != NO_EDGE && states[parentNodes[n]] == BEYOND) {
+                    states[n] = BEYOND;
+                    continue;
+                }
+                int lastEdge = resolve(n, parentEdges[n], parentNodes[n], times, distances);
+                states[n] = getExploreValue(weights[n], times[n], distances[n]) <= limit ? WITHIN : BEYOND;
+                labels.put(n, new IsoLabel(n, lastEdge, weights[n], times[n], distances[n], null));
+            }
+        }
+
+        for (ObjectCursor<IsoLabel> cursor : labels.values()) {
+            IsoLabel label = cursor.value;
+            if (label.edge != NO_EDGE)
+                label.parent = labels.get(graph.getOtherNode(label.edge, label.node));
+        }
+        for (ObjectCursor<IsoLabel> cursor : labels.values()) {
+            if (states[cursor.value.node] == WITHIN)
+                consumer.accept(cursor.value);
+        }
+    }
+
+    private void upwardSearch(int[] from, double[] weights, int[] parentEdges, int[] parentNodes, int[] levels) {
+        RoutingCHEdgeExplorer explorer = reverseFlow ? chGraph.createInEdgeExplorer() : chGraph.createOutEdgeExplorer();
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(weights.length);
+        for (int node : from) {
+            if (heap.contains(node))
+                continue;
+            weights[node] = 0;
+            heap.push(node, 0);
+        }
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            visitedNodes++;
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                // we only go upwards, base edges are also stored at the higher node
+                if (node < baseNodes && adj < baseNodes && levels[adj] < levels[node])
+                    continue;
+                double weight = weights[node] + iter.getWeight(reverseFlow);
+                if (weight >= weights[adj])
+                    continue;
+                weights[adj] = weight;
+                parentEdges[adj] = iter.getEdge();
+                parentNodes[adj] = node;
+                if (heap.contains(adj))
+                    heap.update(adj, (float) weight);
+                else
+                    heap.push(adj, (float) weight);
+            }
+        }
+    }
+
+    private void downwardSweep(int[] order, double[] weights, int[] parentEdges, int[] parentNodes, int[] levels) {
+        // to go down from a higher node to node we look at the edges at node in the opposite direction
+        RoutingCHEdgeExplorer explorer = reverseFlow ? chGraph.createOutEdgeExplorer() : chGraph.createInEdgeExplorer();
+        for (int node : order) {
+            visitedNodes++;
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                // virtual nodes are not part of the sweep, their weight is already known from the upward search
+                if (adj < baseNodes && levels[adj] <= levels[node])
+                    continue;
+                double weight = weights[adj] + iter.getWeight(!reverseFlow);
+                if (weight < weights[node]) {
+                    weights[node] = weight;
+                    parentEdges[node] = iter.getEdge();
+                    parentNodes[node] = adj;
+                }
+            }
+        }
+    }
+
+    private int resolve(int node, int parentEdge, int parentNode, long[] times, double[] distances) {
+        if (parentEdge == NO_EDGE)
+            return NO_EDGE;
+        unpackNode = node;
+        unpackMillis = 0;
+        unpackDistance = 0;
+        unpackLastEdge = NO_EDGE;
+        // the original edges are always visited in the direction of travel
+        unpacker.visitOriginalEdgesFwd(parentEdge, reverseFlow ? parentNode : node, false, NO_EDGE);
+        times[node] = times[parentNode] + unpackMillis;
+        distances[node] = distances[parentNode] + unpackDistance;
+        return unpackLastEdge;
+    }
+
+    private void visitOriginalEdge(EdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId) {
+        unpackMillis += chWeighting.calcEdgeMillis(edge, reverse);
+        unpackDistance += edge.getDistance();
+        if ((reverseFlow ? edge.getBaseNode() : edge.getAdjNode()) == unpackNode)
+            unpackLastEdge = edge.getEdge();
+    }
+
+    private static boolean contains(int[] nodes, int node) {
+        for (int n : nodes) {
+            if (n == node)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public ArrayList<IsoLabel> getIsochroneEdges(double z) {
+        ArrayList<IsoLabel> result = new ArrayList<>();
+        for (ObjectCursor<IsoLabel> cursor : labels.values()) {
+            IsoLabel label = cursor.value;
+            if (label.parent != null && (getExploreValue(label) > z ^ getExploreValue(label.parent) > z))
+                result.add(label);
+        }
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "phast";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+}
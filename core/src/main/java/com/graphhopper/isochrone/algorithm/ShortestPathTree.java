@@ -90,7 +90,7 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
     private final PriorityQueue<IsoLabel> queueByWeighting; // a.k.a. the Dijkstra queue
     private PriorityQueue<IsoLabel> queueByZ; // so we know when we are finished
     private int visitedNodes;
-    private double limit = -1;
+    protected double limit = -1;
     private ExploreType exploreType = TIME;
     private final boolean reverseFlow;
 
@@ -132,14 +132,27 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
     }
 
     public void search(int from, final Consumer<IsoLabel> consumer) {
+        search(new int[]{from}, consumer);
+    }
+
+    /**
+     * Explores the graph starting from all the given nodes at once, i.e. every node is assigned to the nearest start
+     * node. Each start node is the root of its own tree.
+     */
+    public void search(int[] from, final Consumer<IsoLabel> consumer) {
         checkAlreadyRun();
-        IsoLabel currentLabel = new IsoLabel(from, -1, 0, 0, 0, null);
-        queueByWeighting.add(currentLabel);
-        queueByZ.add(currentLabel);
-        if (traversalMode == TraversalMode.NODE_BASED) {
-            fromMap.put(from, currentLabel);
+        for (int node : from) {
+            if (traversalMode == TraversalMode.NODE_BASED && fromMap.containsKey(node))
+                continue;
+            IsoLabel label = new IsoLabel(node, -1, 0, 0, 0, null);
+            queueByWeighting.add(label);
+            queueByZ.add(label);
+            if (traversalMode == TraversalMode.NODE_BASED) {
+                fromMap.put(node, label);
+            }
         }
-        while (!finished()) {
+        IsoLabel currentLabel;
+        while (!finished() && !isMaxVisitedNodesExceeded()) {
             currentLabel = queueByWeighting.poll();
             if (currentLabel.deleted)
                 continue;
@@ -195,12 +208,16 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
         return result;
     }
 
-    private double getExploreValue(IsoLabel label) {
+    double getExploreValue(IsoLabel label) {
+        return getExploreValue(label.weight, label.time, label.distance);
+    }
+
+    double getExploreValue(double weight, long time, double distance) {
         if (exploreType == TIME)
-            return label.time;
+            return time;
         if (exploreType == WEIGHT)
-            return label.weight;
-        return label.distance;
+            return weight;
+        return distance;
     }
 
     protected boolean finished() {
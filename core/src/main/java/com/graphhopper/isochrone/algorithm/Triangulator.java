@@ -38,6 +38,13 @@ public interface Triangulator {
 
     }
 
-    Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance);
+    default Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance) {
+        return triangulate(new int[]{snap.getClosestNode()}, queryGraph, shortestPathTree, fz, tolerance);
+    }
+
+    /**
+     * Triangulates the shortest path tree that is explored from all the given start nodes at once.
+     */
+    Result triangulate(int[] startNodes, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance);
 
 }
@@ -54,7 +54,9 @@ import static com.graphhopper.util.Parameters.Algorithms.AltRoute.*;
  * </li>
  * </ul>
  * <p>
- * Note: This algorithm can be slow for longer routes and alternatives are only really practical in combination with CH, see #2566
+ * Note: This algorithm can be slow for longer routes and alternatives are only really practical in combination with CH
+ * or LM, see #2566. Use alternative_route.time_budget_ms to limit the exploration for the alternatives: when it is
+ * exceeded the search stops as soon as the best path is found and only the alternatives explored so far are returned.
  *
  * @author Peter Karich
  */
@@ -85,6 +87,8 @@ public class AlternativeRoute extends AStarBidirection implements RoutingAlgorit
      * This is the reason we cannot require a too big plateau portion here as default.
      */
     private final double minPlateauFactor;
+    private final long timeBudgetMillis;
+    private long deadline = Long.MAX_VALUE;
 
     public AlternativeRoute(Graph graph, Weighting weighting, TraversalMode traversalMode, PMap hints) {
         super(graph, weighting, traversalMode);
@@ -99,6 +103,7 @@ public class AlternativeRoute extends AStarBidirection implements RoutingAlgorit
         this.maxWeightFactor = hints.getDouble(MAX_WEIGHT, 1.25);
         this.maxShareFactor = hints.getDouble(MAX_SHARE, 0.6);
         this.minPlateauFactor = hints.getDouble("alternative_route.min_plateau_factor", 0.1);
+        this.timeBudgetMillis = hints.getLong(TIME_BUDGET_MS, Long.MAX_VALUE);
     }
 
     static List<String> getAltNames(Graph graph, SPTEntry ee) {
@@ -204,6 +209,10 @@ public class AlternativeRoute extends AStarBidirection implements RoutingAlgorit
         if (finishedFrom || finishedTo)
             return true;
 
+        // the budget is exceeded, but we still need the best path
+        if (deadline < Long.MAX_VALUE && System.currentTimeMillis() >= deadline && super.finished())
+            return true;
+
         // increase overlap of both searches:
         return currFrom.weight + currTo.weight > explorationFactor * (bestWeight + stoppingCriterionOffset);
         // This is more precise but takes roughly 20% longer: return currFrom.weight > bestWeight && currTo.weight > bestWeight;
@@ -211,6 +220,7 @@ public class AlternativeRoute extends AStarBidirection implements RoutingAlgorit
     }
 
     public Path searchBest(int from, int to) {
+        deadline = AlternativeRouteCH.calcDeadline(timeBudgetMillis);
         init(from, 0, to, 0);
         // init collections and bestPath.getWeight properly
         runAlgo();
@@ -18,7 +18,7 @@
 
 package com.graphhopper.routing;
 
-import com.carrotsearch.hppc.IntIndexedContainer;
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.predicates.IntObjectPredicate;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.RoutingCHGraph;
@@ -30,11 +30,17 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import static com.graphhopper.util.Parameters.Algorithms.AltRoute.TIME_BUDGET_MS;
+
 /**
  * Minimum number-of-moving-parts implementation of alternative route search with
  * contraction hierarchies.
  * <p>
  * "Alternative Routes in Road Networks" (Abraham et al.)
+ * <p>
+ * Via nodes that are on the shortest path or on an alternative we already found are skipped, their via path is
+ * usually this path again. The evaluation of the via nodes stops after alternative_route.time_budget_ms and the
+ * alternatives found so far are returned.
  *
  * @author michaz
  */
@@ -43,6 +49,8 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
     private final double maxShareFactor;
     private final double localOptimalityFactor;
     private final int maxPaths;
+    private final long timeBudgetMillis;
+    private long deadline = Long.MAX_VALUE;
     private final List<AlternativeInfo> alternatives = new ArrayList<>();
     private int extraVisitedNodes = 0;
 
@@ -52,6 +60,7 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         maxShareFactor = hints.getDouble("alternative_route.max_share_factor", 0.8);
         localOptimalityFactor = hints.getDouble("alternative_route.local_optimality_factor", 0.25);
         maxPaths = hints.getInt("alternative_route.max_paths", 3);
+        timeBudgetMillis = hints.getLong(TIME_BUDGET_MS, Long.MAX_VALUE);
     }
 
     @Override
@@ -59,6 +68,10 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         if (finishedFrom && finishedTo)
             return true;
 
+        // the budget is exceeded, but we still need the best path
+        if (deadline < Long.MAX_VALUE && System.currentTimeMillis() >= deadline && currFrom.weight >= bestWeight && currTo.weight >= bestWeight)
+            return true;
+
         // Continue search longer than for point to point search -- not sure if makes a difference at all
         return currFrom.weight >= bestWeight * maxWeightFactor && currTo.weight >= bestWeight * maxWeightFactor;
     }
@@ -69,6 +82,7 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
     }
 
     List<AlternativeInfo> calcAlternatives(final int s, final int t) {
+        deadline = calcDeadline(timeBudgetMillis);
         // First, do a regular bidirectional route search
         checkAlreadyRun();
         init(s, 0, t, 0);
@@ -110,6 +124,10 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
 
         for (PotentialAlternativeInfo potentialAlternativeInfo : potentialAlternativeInfos) {
             int v = potentialAlternativeInfo.v;
+            if (nodesInCurrentAlternativeSetContains(v))
+                continue;
+            if (deadline < Long.MAX_VALUE && System.currentTimeMillis() >= deadline)
+                break;
 
             // Okay, now we want the s -> v -> t shortest via-path, so we route s -> v and v -> t
             // and glue them together.
@@ -124,14 +142,15 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
             Path path = concat(graph.getBaseGraph(), svPath, vtPath);
             extraVisitedNodes += vtRouter.getVisitedNodes();
 
-            double sharedDistanceWithShortest = sharedDistanceWithShortest(path);
+            final List<EdgeIteratorState> edges = path.calcEdges();
+            double sharedDistanceWithShortest = sharedDistanceWithShortest(edges);
             double detourLength = path.getDistance() - sharedDistanceWithShortest;
             double directLength = bestPath.getDistance() - sharedDistanceWithShortest;
             if (detourLength > directLength * maxWeightFactor) {
                 continue;
             }
 
-            double share = calculateShare(path);
+            double share = sharedDistance(edges) / path.getDistance();
             if (share > maxShareFactor) {
                 continue;
             }
@@ -139,9 +158,8 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
             // This is the final test we need: Discard paths that are not "locally shortest" around v.
             // So move a couple of nodes to the left and right from v on our path,
             // route, and check if v is on the shortest path.
-            final IntIndexedContainer svNodes = svPath.calcNodes();
-            int vIndex = svNodes.size() - 1;
-            if (!tTest(path, vIndex))
+            int vIndex = svPath.getEdgeCount();
+            if (!tTest(edges, vIndex, detourLength))
                 continue;
 
             alternatives.add(new AlternativeInfo(path, share));
@@ -151,14 +169,21 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         return alternatives;
     }
 
+    static long calcDeadline(long timeBudgetMillis) {
+        try {
+            return Math.addExact(System.currentTimeMillis(), timeBudgetMillis);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
     private double calculateShare(final Path path) {
-        double sharedDistance = sharedDistance(path);
+        double sharedDistance = sharedDistance(path.calcEdges());
         return sharedDistance / path.getDistance();
     }
 
-    private double sharedDistance(Path path) {
+    private double sharedDistance(List<EdgeIteratorState> edges) {
         double sharedDistance = 0.0;
-        List<EdgeIteratorState> edges = path.calcEdges();
         for (EdgeIteratorState edge : edges) {
             if (nodesInCurrentAlternativeSetContains(edge.getBaseNode()) && nodesInCurrentAlternativeSetContains(edge.getAdjNode())) {
                 sharedDistance += edge.getDistance();
@@ -167,9 +192,8 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         return sharedDistance;
     }
 
-    private double sharedDistanceWithShortest(Path path) {
+    private double sharedDistanceWithShortest(List<EdgeIteratorState> edges) {
         double sharedDistance = 0.0;
-        List<EdgeIteratorState> edges = path.calcEdges();
         for (EdgeIteratorState edge : edges) {
             if (alternatives.get(0).nodes.contains(edge.getBaseNode()) && alternatives.get(0).nodes.contains(edge.getAdjNode())) {
                 sharedDistance += edge.getDistance();
@@ -187,27 +211,20 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         return false;
     }
 
-    private boolean tTest(Path path, int vIndex) {
-        if (path.getEdgeCount() == 0) return true;
-        double detourDistance = detourDistance(path);
+    private boolean tTest(List<EdgeIteratorState> edges, int vIndex, double detourDistance) {
+        if (edges.isEmpty()) return true;
         double T = 0.5 * localOptimalityFactor * detourDistance;
-        int fromNode = getPreviousNodeTMetersAway(path, vIndex, T);
-        int toNode = getNextNodeTMetersAway(path, vIndex, T);
+        int fromNode = getPreviousNodeTMetersAway(edges, vIndex, T);
+        int toNode = getNextNodeTMetersAway(edges, vIndex, T);
         DijkstraBidirectionCH tRouter = new DijkstraBidirectionCH(graph);
         tRouter.setPathExtractorSupplier(this::createPathExtractor);
         Path tPath = tRouter.calcPath(fromNode, toNode);
         extraVisitedNodes += tRouter.getVisitedNodes();
-        IntIndexedContainer tNodes = tPath.calcNodes();
-        int v = path.calcNodes().get(vIndex);
-        return tNodes.contains(v);
-    }
-
-    private double detourDistance(Path path) {
-        return path.getDistance() - sharedDistanceWithShortest(path);
+        int v = vIndex == 0 ? edges.get(0).getBaseNode() : edges.get(vIndex - 1).getAdjNode();
+        return tPath.calcNodes().contains(v);
     }
 
-    private int getPreviousNodeTMetersAway(Path path, int vIndex, double T) {
-        List<EdgeIteratorState> edges = path.calcEdges();
+    private int getPreviousNodeTMetersAway(List<EdgeIteratorState> edges, int vIndex, double T) {
         double distance = 0.0;
         int i = vIndex;
         while (i > 0 && distance < T) {
@@ -217,8 +234,7 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         return edges.get(i).getBaseNode();
     }
 
-    private int getNextNodeTMetersAway(Path path, int vIndex, double T) {
-        List<EdgeIteratorState> edges = path.calcEdges();
+    private int getNextNodeTMetersAway(List<EdgeIteratorState> edges, int vIndex, double T) {
         double distance = 0.0;
         int i = vIndex;
         while (i < edges.size() - 1 && distance < T) {
@@ -262,12 +278,12 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
     public static class AlternativeInfo {
         final double shareWeight;
         final Path path;
-        final IntIndexedContainer nodes;
+        final IntHashSet nodes;
 
         AlternativeInfo(Path path, double shareWeight) {
             this.path = path;
             this.shareWeight = shareWeight;
-            this.nodes = path.calcNodes();
+            this.nodes = new IntHashSet(path.calcNodes());
         }
 
         @Override
@@ -18,7 +18,8 @@
 
 package com.graphhopper.routing;
 
-import com.carrotsearch.hppc.IntIndexedContainer;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectHashMap;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.predicates.IntObjectPredicate;
 import com.graphhopper.storage.Graph;
@@ -29,12 +30,17 @@ import com.graphhopper.util.PMap;
 import java.util.*;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.Parameters.Algorithms.AltRoute.TIME_BUDGET_MS;
 
 /**
  * Minimum number-of-moving-parts implementation of alternative route search with
  * contraction hierarchies.
  * <p>
  * "Alternative Routes in Road Networks" (Abraham et al.)
+ * <p>
+ * Like in {@link AlternativeRouteCH} the evaluation of the via nodes stops after alternative_route.time_budget_ms.
+ * Via nodes on a path we already found are not skipped here: with turn costs the same node can be the via node of
+ * a different path when it is entered with a different edge.
  *
  * @author michaz
  */
@@ -44,6 +50,8 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
     private final double maxShareFactor;
     private final double localOptimalityFactor;
     private final int maxPaths;
+    private final long timeBudgetMillis;
+    private long deadline = Long.MAX_VALUE;
     private final List<AlternativeInfo> alternatives = new ArrayList<>();
     private int extraVisitedNodes = 0;
 
@@ -53,6 +61,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         maxShareFactor = hints.getDouble("alternative_route.max_share_factor", 0.8);
         localOptimalityFactor = hints.getDouble("alternative_route.local_optimality_factor", 0.25);
         maxPaths = hints.getInt("alternative_route.max_paths", 3);
+        timeBudgetMillis = hints.getLong(TIME_BUDGET_MS, Long.MAX_VALUE);
     }
 
     @Override
@@ -60,6 +69,10 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         if (finishedFrom && finishedTo)
             return true;
 
+        // the budget is exceeded, but we still need the best path
+        if (deadline < Long.MAX_VALUE && System.currentTimeMillis() >= deadline && currFrom.weight >= bestWeight && currTo.weight >= bestWeight)
+            return true;
+
         // Continue search longer than for point to point search -- not sure if makes a difference at all
         return currFrom.weight >= bestWeight * maxWeightFactor && currTo.weight >= bestWeight * maxWeightFactor;
     }
@@ -70,6 +83,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
     }
 
     List<AlternativeInfo> calcAlternatives(final int s, final int t) {
+        deadline = AlternativeRouteCH.calcDeadline(timeBudgetMillis);
         // First, do a regular bidirectional route search
         checkAlreadyRun();
         init(s, 0, t, 0);
@@ -83,7 +97,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
 
         final ArrayList<PotentialAlternativeInfo> potentialAlternativeInfos = new ArrayList<>();
 
-        final Map<Integer, SPTEntry> bestWeightMapByNode = new HashMap<>();
+        final IntObjectHashMap<SPTEntry> bestWeightMapByNode = new IntObjectHashMap<>();
         bestWeightMapTo.forEach((IntObjectPredicate<SPTEntry>) (key, value) -> {
             bestWeightMapByNode.put(value.adjNode, value);
             return true;
@@ -120,6 +134,8 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         for (PotentialAlternativeInfo potentialAlternativeInfo : potentialAlternativeInfos) {
             int v = potentialAlternativeInfo.v;
             int tailSv = potentialAlternativeInfo.edgeIn;
+            if (deadline < Long.MAX_VALUE && System.currentTimeMillis() >= deadline)
+                break;
 
             // Okay, now we want the s -> v -> t shortest via-path, so we route s -> v and v -> t
             // and glue them together.
@@ -134,14 +150,15 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
             Path path = concat(graph.getBaseGraph(), suvPath, uvtPath);
             extraVisitedNodes += vtRouter.getVisitedNodes();
 
-            double sharedDistanceWithShortest = sharedDistanceWithShortest(path);
+            final List<EdgeIteratorState> edges = path.calcEdges();
+            double sharedDistanceWithShortest = sharedDistanceWithShortest(edges);
             double detourLength = path.getDistance() - sharedDistanceWithShortest;
             double directLength = bestPath.getDistance() - sharedDistanceWithShortest;
             if (detourLength > directLength * maxWeightFactor) {
                 continue;
             }
 
-            double share = calculateShare(path);
+            double share = sharedDistance(edges) / path.getDistance();
             if (share > maxShareFactor) {
                 continue;
             }
@@ -149,9 +166,8 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
             // This is the final test we need: Discard paths that are not "locally shortest" around v.
             // So move a couple of nodes to the left and right from v on our path,
             // route, and check if v is on the shortest path.
-            final IntIndexedContainer svNodes = suvPath.calcNodes();
-            int vIndex = svNodes.size() - 1;
-            if (!tTest(path, vIndex))
+            int vIndex = suvPath.getEdgeCount();
+            if (!tTest(edges, vIndex, detourLength))
                 continue;
 
             alternatives.add(new AlternativeInfo(path, share));
@@ -162,13 +178,12 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
     }
 
     private double calculateShare(final Path path) {
-        double sharedDistance = sharedDistance(path);
+        double sharedDistance = sharedDistance(path.calcEdges());
         return sharedDistance / path.getDistance();
     }
 
-    private double sharedDistance(Path path) {
+    private double sharedDistance(List<EdgeIteratorState> edges) {
         double sharedDistance = 0.0;
-        List<EdgeIteratorState> edges = path.calcEdges();
         for (EdgeIteratorState edge : edges) {
             if (nodesInCurrentAlternativeSetContains(edge.getBaseNode()) && nodesInCurrentAlternativeSetContains(edge.getAdjNode())) {
                 sharedDistance += edge.getDistance();
@@ -177,9 +192,8 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         return sharedDistance;
     }
 
-    private double sharedDistanceWithShortest(Path path) {
+    private double sharedDistanceWithShortest(List<EdgeIteratorState> edges) {
         double sharedDistance = 0.0;
-        List<EdgeIteratorState> edges = path.calcEdges();
         for (EdgeIteratorState edge : edges) {
             if (alternatives.get(0).nodes.contains(edge.getBaseNode()) && alternatives.get(0).nodes.contains(edge.getAdjNode())) {
                 sharedDistance += edge.getDistance();
@@ -197,26 +211,19 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         return false;
     }
 
-    private boolean tTest(Path path, int vIndex) {
-        if (path.getEdgeCount() == 0) return true;
-        double detourDistance = detourDistance(path);
+    private boolean tTest(List<EdgeIteratorState> edges, int vIndex, double detourDistance) {
+        if (edges.isEmpty()) return true;
         double T = 0.5 * localOptimalityFactor * detourDistance;
-        EdgeIteratorState fromNode = getPreviousNodeTMetersAway(path, vIndex, T);
-        EdgeIteratorState toNode = getNextNodeTMetersAway(path, vIndex, T);
+        EdgeIteratorState fromNode = getPreviousNodeTMetersAway(edges, vIndex, T);
+        EdgeIteratorState toNode = getNextNodeTMetersAway(edges, vIndex, T);
         DijkstraBidirectionEdgeCHNoSOD tRouter = new DijkstraBidirectionEdgeCHNoSOD(graph);
         Path tPath = tRouter.calcPath(fromNode.getBaseNode(), toNode.getAdjNode(), fromNode.getEdge(), toNode.getEdge());
         extraVisitedNodes += tRouter.getVisitedNodes();
-        IntIndexedContainer tNodes = tPath.calcNodes();
-        int v = path.calcNodes().get(vIndex);
-        return tNodes.contains(v);
-    }
-
-    private double detourDistance(Path path) {
-        return path.getDistance() - sharedDistanceWithShortest(path);
+        int v = vIndex == 0 ? edges.get(0).getBaseNode() : edges.get(vIndex - 1).getAdjNode();
+        return tPath.calcNodes().contains(v);
     }
 
-    private EdgeIteratorState getPreviousNodeTMetersAway(Path path, int vIndex, double T) {
-        List<EdgeIteratorState> edges = path.calcEdges();
+    private EdgeIteratorState getPreviousNodeTMetersAway(List<EdgeIteratorState> edges, int vIndex, double T) {
         double distance = 0.0;
         int i = vIndex;
         while (i > 0 && distance < T) {
@@ -226,8 +233,7 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
         return edges.get(i);
     }
 
-    private EdgeIteratorState getNextNodeTMetersAway(Path path, int vIndex, double T) {
-        List<EdgeIteratorState> edges = path.calcEdges();
+    private EdgeIteratorState getNextNodeTMetersAway(List<EdgeIteratorState> edges, int vIndex, double T) {
         double distance = 0.0;
         int i = vIndex;
         while (i < edges.size() - 1 && distance < T) {
@@ -279,12 +285,12 @@ public class AlternativeRouteEdgeCH extends DijkstraBidirectionEdgeCHNoSOD {
     public static class AlternativeInfo {
         final double shareWeight;
         final Path path;
-        final IntIndexedContainer nodes;
+        final IntHashSet nodes;
 
         AlternativeInfo(Path path, double shareWeight) {
             this.path = path;
             this.shareWeight = shareWeight;
-            this.nodes = path.calcNodes();
+            this.nodes = new IntHashSet(path.calcNodes());
         }
 
         @Override
@@ -79,6 +79,8 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
     private String prevDestinationAndRef;
     private String prevName;
     private String prevInstructionName;
+    // the geometry of the current edge, reused for every edge to avoid the allocation of a new PointList
+    private final PointList wayGeo;
 
     private static final int MAX_U_TURN_DISTANCE = 35;
 
@@ -91,6 +93,7 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
         this.maxSpeedEnc = evLookup.getDecimalEncodedValue(MaxSpeed.KEY);
         this.lanesEnc = evLookup.hasEncodedValue(Lanes.KEY) ? evLookup.getIntEncodedValue(Lanes.KEY) : null;
         this.nodeAccess = graph.getNodeAccess();
+        this.wayGeo = new PointList(10, nodeAccess.is3D());
         this.ways = ways;
         prevNode = -1;
         prevInRoundabout = false;
@@ -131,7 +134,8 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
         double adjLon = nodeAccess.getLon(adjNode);
         double latitude, longitude;
 
-        PointList wayGeo = edge.fetchWayGeometry(FetchMode.ALL);
+        wayGeo.clear();
+        edge.appendWayGeometry(FetchMode.ALL, wayGeo);
         boolean isRoundabout = edge.get(roundaboutEnc);
 
         if (wayGeo.size() <= 2) {
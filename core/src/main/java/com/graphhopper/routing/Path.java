@@ -275,11 +275,20 @@ public class Path {
      */
     public PointList calcPoints() {
         final PointList points = new PointList(edgeIds.size() + 1, nodeAccess.is3D());
+        appendPoints(points);
+        return points;
+    }
+
+    /**
+     * Appends the geometry of this path to the specified list. The pillar nodes of every edge are copied directly
+     * into the given list, i.e. no intermediate PointList is created per edge.
+     */
+    public void appendPoints(final PointList points) {
         if (edgeIds.isEmpty()) {
             if (isFound()) {
                 points.add(nodeAccess, endNode);
             }
-            return points;
+            return;
         }
 
         int tmpNode = getFromNode();
@@ -287,10 +296,7 @@ public class Path {
         forEveryEdge(new EdgeVisitor() {
             @Override
             public void next(EdgeIteratorState eb, int index, int prevEdgeId) {
-                PointList pl = eb.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
-                for (int j = 0; j < pl.size(); j++) {
-                    points.add(pl, j);
-                }
+                eb.appendWayGeometry(FetchMode.PILLAR_AND_ADJ, points);
             }
 
             @Override
@@ -298,7 +304,6 @@ public class Path {
 
             }
         });
-        return points;
     }
 
     @Override
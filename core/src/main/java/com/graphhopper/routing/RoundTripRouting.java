@@ -20,20 +20,27 @@ package com.graphhopper.routing;
 import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntSet;
 import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.util.tour.MultiPointTour;
 import com.graphhopper.routing.util.tour.TourStrategy;
 import com.graphhopper.routing.weighting.AvoidEdgesWeighting;
+import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.ArrayUtil;
 import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.Parameters.Algorithms.RoundTrip;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -67,18 +74,11 @@ public class RoundTripRouting {
     }
 
     public static List<Snap> lookup(List<GHPoint> points, EdgeFilter edgeFilter, LocationIndex locationIndex, Params params) {
-        // todo: no snap preventions for round trip so far
-        if (points.size() != 1)
-            throw new IllegalArgumentException("For round trip calculation exactly one point is required");
-
+        Snap startSnap = lookupStart(points, edgeFilter, locationIndex);
         final GHPoint start = points.get(0);
 
         TourStrategy strategy = new MultiPointTour(new Random(params.seed), params.distanceInMeter, params.roundTripPointCount, params.initialHeading);
         List<Snap> snaps = new ArrayList<>(2 + strategy.getNumberOfGeneratedPoints());
-        Snap startSnap = locationIndex.findClosest(start.lat, start.lon, edgeFilter);
-        if (!startSnap.isValid())
-            throw new PointNotFoundException("Cannot find point 0: " + start, 0);
-
         snaps.add(startSnap);
 
         GHPoint last = start;
@@ -93,6 +93,18 @@ public class RoundTripRouting {
         return snaps;
     }
 
+    public static Snap lookupStart(List<GHPoint> points, EdgeFilter edgeFilter, LocationIndex locationIndex) {
+        // todo: no snap preventions for round trip so far
+        if (points.size() != 1)
+            throw new IllegalArgumentException("For round trip calculation exactly one point is required");
+
+        final GHPoint start = points.get(0);
+        Snap startSnap = locationIndex.findClosest(start.lat, start.lon, edgeFilter);
+        if (!startSnap.isValid())
+            throw new PointNotFoundException("Cannot find point 0: " + start, 0);
+        return startSnap;
+    }
+
     private static Snap generateValidPoint(GHPoint lastPoint, double distanceInMeters, double heading, EdgeFilter edgeFilter, LocationIndex locationIndex, int maxRetries) {
         int tryCount = 0;
         while (true) {
@@ -136,6 +148,122 @@ public class RoundTripRouting {
         return result;
     }
 
+    /**
+     * Calculates a round trip without snapping generated points: a single search from the start explores the graph up
+     * to half of the round trip distance, and for every point of the tour (see {@link MultiPointTour}) the explored
+     * node closest to it is used as turnaround point. So unlike {@link #lookup} no retries are necessary and the
+     * turnaround points are always reachable. The path to the first turnaround point is taken from the search, the
+     * other legs are calculated like in {@link #calcPaths}, i.e. they avoid the edges of the previous legs.
+     *
+     * @throws MaximumNodesExceededException if the search visits more than maxVisitedNodes nodes
+     */
+    public static Result calcPathsWithSearch(QueryGraph queryGraph, Snap startSnap, FlexiblePathCalculator pathCalculator,
+                                             TraversalMode traversalMode, int maxVisitedNodes, Params params) {
+        int startNode = startSnap.getClosestNode();
+        NodeAccess nodeAccess = queryGraph.getNodeAccess();
+        TourStrategy strategy = new MultiPointTour(new Random(params.seed), params.distanceInMeter, params.roundTripPointCount, params.initialHeading);
+        int pointCount = strategy.getNumberOfGeneratedPoints();
+        double[] lats = new double[pointCount];
+        double[] lons = new double[pointCount];
+        GHPoint last = startSnap.getSnappedPoint();
+        for (int i = 0; i < pointCount; i++) {
+            last = DistanceCalcEarth.DIST_EARTH.projectCoordinate(last.getLat(), last.getLon(),
+                    strategy.getDistanceForIteration(i), strategy.getHeadingForIteration(i));
+            lats[i] = last.getLat();
+            lons[i] = last.getLon();
+        }
+
+        Turnarounds turnarounds = findTurnarounds(queryGraph, startNode, pathCalculator, traversalMode, maxVisitedNodes, params, lats, lons);
+        RoundTripCalculator roundTripCalculator = new RoundTripCalculator(pathCalculator);
+        Result result = new Result(pointCount + 1);
+        result.wayPoints = new PointList(pointCount + 2, nodeAccess.is3D());
+        result.wayPoints.add(nodeAccess, startNode);
+        result.visitedNodes += turnarounds.visitedNodes;
+        int prevNode = startNode;
+        for (int i = 0; i <= pointCount; i++) {
+            int node = i < pointCount ? turnarounds.nodes[i] : startNode;
+            Path path;
+            if (i == 0) {
+                path = turnarounds.firstPath;
+                roundTripCalculator.avoidEdges(path);
+            } else {
+                path = roundTripCalculator.calcPath(prevNode, node);
+                result.visitedNodes += pathCalculator.getVisitedNodes();
+            }
+            result.wayPoints.add(nodeAccess, node);
+            result.paths.add(path);
+            prevNode = node;
+        }
+        return result;
+    }
+
+    /**
+     * Runs the search for the turnaround points. Only the closest node per tour point and the path to the first one are
+     * kept, the shortest path tree itself is not needed afterwards.
+     */
+    private static Turnarounds findTurnarounds(QueryGraph queryGraph, int startNode, FlexiblePathCalculator pathCalculator,
+                                               TraversalMode traversalMode, int maxVisitedNodes, Params params, double[] lats, double[] lons) {
+        NodeAccess nodeAccess = queryGraph.getNodeAccess();
+        int pointCount = lats.length;
+        // no turnaround point of a round trip can be further away from the start than half of its distance
+        ShortestPathTree spt = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(pathCalculator.getWeighting()), false, traversalMode);
+        spt.setDistanceLimit(params.distanceInMeter / 2);
+        spt.setMaxVisitedNodes(maxVisitedNodes);
+        Turnarounds turnarounds = new Turnarounds(pointCount);
+        ShortestPathTree.IsoLabel[] firstLabel = new ShortestPathTree.IsoLabel[1];
+        double[] closestDistances = new double[pointCount];
+        Arrays.fill(closestDistances, Double.MAX_VALUE);
+        spt.search(startNode, label -> {
+            if (queryGraph.isVirtualNode(label.node))
+                return;
+            double lat = nodeAccess.getLat(label.node), lon = nodeAccess.getLon(label.node);
+            for (int i = 0; i < pointCount; i++) {
+                double dist = DistanceCalcEarth.DIST_EARTH.calcNormalizedDist(lat, lon, lats[i], lons[i]);
+                if (dist < closestDistances[i]) {
+                    closestDistances[i] = dist;
+                    turnarounds.nodes[i] = label.node;
+                    if (i == 0)
+                        firstLabel[0] = label;
+                }
+            }
+        });
+        if (spt.getVisitedNodes() > maxVisitedNodes)
+            throw new MaximumNodesExceededException("No round trip found due to maximum nodes exceeded " + maxVisitedNodes, maxVisitedNodes);
+        if (pointCount > 0 && firstLabel[0] == null)
+            throw new IllegalArgumentException("Could not find a turnaround point for the round trip, the start point is not connected to other roads");
+        turnarounds.visitedNodes = spt.getVisitedNodes();
+        if (pointCount > 0)
+            turnarounds.firstPath = extractPath(queryGraph, firstLabel[0]);
+        return turnarounds;
+    }
+
+    private static class Turnarounds {
+        final int[] nodes;
+        Path firstPath;
+        int visitedNodes;
+
+        Turnarounds(int pointCount) {
+            nodes = new int[pointCount];
+        }
+    }
+
+    private static Path extractPath(QueryGraph queryGraph, ShortestPathTree.IsoLabel label) {
+        Path path = new Path(queryGraph);
+        ShortestPathTree.IsoLabel currLabel = label;
+        while (currLabel.parent != null) {
+            path.addEdge(currLabel.edge);
+            currLabel = currLabel.parent;
+        }
+        ArrayUtil.reverse(path.getEdges());
+        path.setFromNode(currLabel.node);
+        path.setEndNode(label.node);
+        path.setDistance(label.distance);
+        path.setTime(label.time);
+        path.setWeight(label.weight);
+        path.setFound(true);
+        return path;
+    }
+
     public static class Result {
         public List<Path> paths;
         public PointList wayPoints;
@@ -164,12 +292,16 @@ public class RoundTripRouting {
 
         Path calcPath(int from, int to) {
             Path path = pathCalculator.calcPaths(from, to, new EdgeRestrictions()).get(0);
+            avoidEdges(path);
+            return path;
+        }
+
+        void avoidEdges(Path path) {
             // add the edges of this path to the set of previous edges so they will be avoided from now, otherwise
             // we do not get a nice 'round trip'. note that for this reason we cannot use CH for round-trips currently
             for (IntCursor c : path.getEdges()) {
                 previousEdges.add(c.value);
             }
-            return path;
         }
 
     }
@@ -26,6 +26,7 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.routing.ev.RSRoadCurvature;
 import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
@@ -52,6 +53,7 @@ import java.util.*;
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
 import static com.graphhopper.util.Parameters.Algorithms.ALT_ROUTE;
 import static com.graphhopper.util.Parameters.Algorithms.ROUND_TRIP;
+import static com.graphhopper.util.Parameters.Algorithms.SCENIC_ROUTE;
 import static com.graphhopper.util.Parameters.Routing.*;
 import static com.graphhopper.util.TurnCostsConfig.INFINITE_U_TURN_COSTS;
 
@@ -68,6 +70,7 @@ public class Router {
     protected final Map<String, LandmarkStorage> landmarks;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
+    private ScenicScore scenicScore;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
@@ -115,6 +118,10 @@ public class Router {
                 return routeRoundTrip(request, (FlexSolver) solver);
             } else if (ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm())) {
                 return routeAlt(request, solver);
+            } else if (SCENIC_ROUTE.equalsIgnoreCase(request.getAlgorithm())) {
+                if (!(solver instanceof FlexSolver))
+                    throw new IllegalArgumentException("algorithm=scenic_route only works with a flexible algorithm");
+                return routeScenic(request, (FlexSolver) solver);
             } else {
                 return routeVia(request, solver);
             }
@@ -220,6 +227,8 @@ public class Router {
         StopWatch sw = new StopWatch().start();
         double startHeading = request.getHeadings().isEmpty() ? Double.NaN : request.getHeadings().get(0);
         RoundTripRouting.Params params = new RoundTripRouting.Params(request.getHints(), startHeading, routerConfig.getMaxRoundTripRetries());
+        if (request.getHints().getBool(Parameters.Algorithms.RoundTrip.SEARCH, false))
+            return routeRoundTripWithSearch(request, solver, params, ghRsp, sw);
         List<Snap> snaps = RoundTripRouting.lookup(request.getPoints(), solver.createSnapFilter(), locationIndex, params);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
 
@@ -237,6 +246,22 @@ public class Router {
         return ghRsp;
     }
 
+    private GHResponse routeRoundTripWithSearch(GHRequest request, FlexSolver solver, RoundTripRouting.Params params,
+                                                GHResponse ghRsp, StopWatch sw) {
+        Snap startSnap = RoundTripRouting.lookupStart(request.getPoints(), solver.createSnapFilter(), locationIndex);
+        ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+
+        QueryGraph queryGraph = QueryGraph.create(graph, startSnap);
+        FlexiblePathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        RoundTripRouting.Result result = RoundTripRouting.calcPathsWithSearch(queryGraph, startSnap, pathCalculator,
+                solver.getAlgoOpts().getTraversalMode(), solver.getMaxVisitedNodes(request.getHints()), params);
+        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, result.wayPoints);
+        ghRsp.add(responsePath);
+        ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
+        ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / result.paths.size());
+        return ghRsp;
+    }
+
     protected GHResponse routeAlt(GHRequest request, Solver solver) {
         if (request.getPoints().size() > 2)
             throw new IllegalArgumentException("Currently alternative routes work only with start and end point. You tried to use: " + request.getPoints().size() + " points");
@@ -272,6 +297,43 @@ public class Router {
         return ghRsp;
     }
 
+    protected GHResponse routeScenic(GHRequest request, FlexSolver solver) {
+        if (request.getPoints().size() != 2)
+            throw new IllegalArgumentException("Currently scenic routes work only with start and end point. You tried to use: " + request.getPoints().size() + " points");
+        if (scenicScore == null)
+            throw new IllegalArgumentException("algorithm=scenic_route requires at least one road_scenery_* or " + RSRoadCurvature.KEY + " encoded value");
+        GHResponse ghRsp = new GHResponse();
+        StopWatch sw = new StopWatch().start();
+        List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
+                request.getSnapPreventions(), request.getPointHints(), solver.createDirectedEdgeFilter(), request.getHeadings());
+        ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        PMap hints = request.getHints();
+        ScenicRouteSearch search = new ScenicRouteSearch(queryGraph, queryGraph.wrapWeighting(solver.weighting), scenicScore).
+                setMaxDetourFactor(hints.getDouble(Parameters.Algorithms.ScenicRoute.MAX_DETOUR_FACTOR, 1.5)).
+                setMaxLabelsPerNode(hints.getInt(Parameters.Algorithms.ScenicRoute.MAX_LABELS_PER_NODE, 5)).
+                setMaxVisitedNodes(solver.getMaxVisitedNodes(hints)).
+                setTimeoutMillis(solver.getTimeoutMillis(hints));
+        sw = new StopWatch().start();
+        Path path = search.calcPath(snaps.get(0).getClosestNode(), snaps.get(1).getClosestNode());
+        ghRsp.addDebugInfo("scenic_route:" + sw.stop().getSeconds() + "s");
+        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, Collections.singletonList(path), getWaypoints(snaps));
+        ghRsp.add(responsePath);
+        ghRsp.getHints().putObject("visited_nodes.sum", search.getVisitedNodes());
+        ghRsp.getHints().putObject("visited_nodes.average", (float) search.getVisitedNodes());
+        ghRsp.getHints().putObject("scenic_score", search.getScore());
+        return ghRsp;
+    }
+
+    /**
+     * The scores for algorithm=scenic_route, they are calculated once for all requests, see {@link ScenicScore}
+     */
+    public Router setScenicScore(ScenicScore scenicScore) {
+        this.scenicScore = scenicScore;
+        return this;
+    }
+
+
     protected GHResponse routeVia(GHRequest request, Solver solver) {
         GHResponse ghRsp = new GHResponse();
         StopWatch sw = new StopWatch().start();
@@ -0,0 +1,357 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the route with the highest {@link ScenicScore} between two nodes whose weight is at most
+ * {@link #setMaxDetourFactor max_detour_factor} times the weight of the best route. This is a resource constrained
+ * label-setting search:
+ * <ol>
+ * <li>A backward Dijkstra from the target calculates the remaining weight to the target for all nodes that can be part
+ * of such a route (the corridor) and the highest score per weight of all edges in this corridor.</li>
+ * <li>A forward search keeps a set of labels per node (per incoming edge if the weighting has turn costs), where a
+ * label is dropped if another label there has a smaller weight and a higher score, if it leaves the corridor or if
+ * even the best scored edges of the corridor cannot make it better than the best route to the target found so
+ * far.</li>
+ * </ol>
+ * Labels never visit a node twice, so the result does not contain loops. The number of labels per node is limited, so
+ * the result is not necessarily the optimum but a good route that is calculated in one query instead of repeated
+ * routing requests with different custom models.
+ */
+public class ScenicRouteSearch {
+    private final Graph graph;
+    private final Weighting weighting;
+    private final ScenicScore scenicScore;
+    private double maxDetourFactor = 1.5;
+    private int maxLabelsPerNode = 5;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private long finishTimeMillis = Long.MAX_VALUE;
+    private int visitedNodes;
+    private double bestScore;
+
+    public ScenicRouteSearch(Graph graph, Weighting weighting, ScenicScore scenicScore) {
+        this.graph = graph;
+        this.weighting = weighting;
+        this.scenicScore = scenicScore;
+    }
+
+    /**
+     * Routes can be up to this factor longer (in terms of the weight) than the best route. Default is 1.5
+     */
+    public ScenicRouteSearch setMaxDetourFactor(double maxDetourFactor) {
+        if (maxDetourFactor < 1)
+            throw new IllegalArgumentException("max_detour_factor must be at least 1 but was " + maxDetourFactor);
+        this.maxDetourFactor = maxDetourFactor;
+        return this;
+    }
+
+    /**
+     * The maximum number of non-dominated labels that are kept per node. Larger values find better routes, but the
+     * search gets slower. Default is 5
+     */
+    public ScenicRouteSearch setMaxLabelsPerNode(int maxLabelsPerNode) {
+        if (maxLabelsPerNode < 1)
+            throw new IllegalArgumentException("max_labels_per_node must be at least 1 but was " + maxLabelsPerNode);
+        this.maxLabelsPerNode = maxLabelsPerNode;
+        return this;
+    }
+
+    public ScenicRouteSearch setMaxVisitedNodes(int maxVisitedNodes) {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    public ScenicRouteSearch setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    /**
+     * @return the scenic score of the route found by the last call of {@link #calcPath}
+     */
+    public double getScore() {
+        return bestScore;
+    }
+
+    public Path calcPath(int from, int to) {
+        finishTimeMillis = timeoutMillis < Long.MAX_VALUE ? Math.addExact(System.currentTimeMillis(), timeoutMillis) : Long.MAX_VALUE;
+        visitedNodes = 0;
+        bestScore = 0;
+        Corridor corridor = calcCorridor(from, to);
+        if (corridor == null)
+            return createNotFoundPath(from, to);
+
+        Label best = null;
+        // with turn costs the weight of a label depends on its incoming edge, so only labels with the same incoming edge
+        // can dominate each other. the start label is not needed here, because labels never come back to it
+        boolean edgeBased = weighting.hasTurnCosts();
+        IntObjectHashMap<List<Label>> labelsByKey = new IntObjectHashMap<>();
+        // the ancestors of a label were all expanded, so these are the only labels we need for the loop check
+        IntObjectHashMap<List<Label>> expandedByNode = new IntObjectHashMap<>();
+        PriorityQueue<Label> queue = new PriorityQueue<>();
+        queue.add(new Label(from, EdgeIterator.NO_EDGE, 0, 0, 0, 0, null));
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        while (!queue.isEmpty()) {
+            Label label = queue.poll();
+            if (label.deleted)
+                continue;
+            if (label.node == to) {
+                if (best == null || label.score > best.score)
+                    best = label;
+                continue;
+            }
+            // the best route found so far might have become better since this label was created
+            if (best != null && label.score + corridor.maxAdditionalScore(label.weight) <= best.score)
+                continue;
+            visitedNodes++;
+            if (visitedNodes > maxVisitedNodes || isTimeoutExceeded())
+                break;
+            List<Label> expanded = expandedByNode.get(label.node);
+            if (expanded == null) {
+                expanded = new ArrayList<>(2);
+                expandedByNode.put(label.node, expanded);
+            }
+            expanded.add(label);
+
+            EdgeIterator iter = explorer.setBaseNode(label.node);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                double remainingWeight = corridor.remainingWeights.getOrDefault(adjNode, Double.POSITIVE_INFINITY);
+                if (Double.isInfinite(remainingWeight) || visits(label, expandedByNode.get(adjNode)))
+                    continue;
+                double weight = label.weight + GHUtility.calcWeightWithTurnWeight(weighting, iter, false, label.edge);
+                if (weight + remainingWeight > corridor.budget)
+                    continue;
+                double score = label.score + scenicScore.calcEdgeScore(iter);
+                if (best != null && score + corridor.maxAdditionalScore(weight) <= best.score)
+                    continue;
+                Label newLabel = new Label(adjNode, iter.getEdge(), weight, label.distance + iter.getDistance(),
+                        label.time + GHUtility.calcMillisWithTurnMillis(weighting, iter, false, label.edge), score, label);
+                int key = edgeBased ? iter.getEdgeKey() : adjNode;
+                List<Label> labels = labelsByKey.get(key);
+                if (labels == null) {
+                    labels = new ArrayList<>(maxLabelsPerNode);
+                    labelsByKey.put(key, labels);
+                }
+                if (addIfNotDominated(labels, newLabel))
+                    queue.add(newLabel);
+            }
+        }
+
+        if (best == null)
+            return createNotFoundPath(from, to);
+        bestScore = best.score;
+        return extractPath(best);
+    }
+
+    /**
+     * @return true if one of the expanded labels of a node is an ancestor of the given label, i.e. the route of the
+     * label already visits this node. As dominated labels are dropped there are only a few expanded labels per node
+     * and every ancestor check takes O(log(depth)) steps.
+     */
+    private static boolean visits(Label label, List<Label> expandedAtNode) {
+        if (expandedAtNode == null)
+            return false;
+        for (Label expanded : expandedAtNode)
+            if (label.hasAncestor(expanded))
+                return true;
+        return false;
+    }
+
+    private boolean addIfNotDominated(List<Label> labels, Label newLabel) {
+        for (Label label : labels) {
+            if (label.weight <= newLabel.weight && label.score >= newLabel.score)
+                return false;
+        }
+        for (int i = labels.size() - 1; i >= 0; i--) {
+            Label label = labels.get(i);
+            if (newLabel.weight <= label.weight && newLabel.score >= label.score) {
+                label.deleted = true;
+                labels.remove(i);
+            }
+        }
+        if (labels.size() >= maxLabelsPerNode)
+            return false;
+        labels.add(newLabel);
+        return true;
+    }
+
+    /**
+     * Runs a backward Dijkstra from the target until all nodes that can be part of a route within the detour limit
+     * are settled.
+     *
+     * @return null if the target cannot be reached from the start
+     */
+    private Corridor calcCorridor(int from, int to) {
+        Corridor corridor = new Corridor();
+        IntObjectHashMap<SPTEntry> entries = new IntObjectHashMap<>();
+        PriorityQueue<SPTEntry> queue = new PriorityQueue<>();
+        SPTEntry start = new SPTEntry(to, 0);
+        entries.put(to, start);
+        queue.add(start);
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        while (!queue.isEmpty()) {
+            SPTEntry entry = queue.poll();
+            if (entry.isDeleted())
+                continue;
+            if (entry.weight > corridor.budget)
+                break;
+            corridor.remainingWeights.put(entry.adjNode, entry.weight);
+            if (entry.adjNode == from)
+                corridor.budget = entry.weight * maxDetourFactor;
+            visitedNodes++;
+            if (visitedNodes > maxVisitedNodes || isTimeoutExceeded())
+                break;
+
+            EdgeIterator iter = explorer.setBaseNode(entry.adjNode);
+            while (iter.next()) {
+                // the forward search traverses this edge from the adjacent node towards the current node
+                double edgeWeight = weighting.calcEdgeWeight(iter, true);
+                if (Double.isInfinite(edgeWeight))
+                    continue;
+                double score = scenicScore.calcEdgeScore(iter);
+                if (score > 0 && edgeWeight > 0)
+                    corridor.maxScorePerWeight = Math.max(corridor.maxScorePerWeight, score / edgeWeight);
+                else if (score > 0)
+                    // the score of an edge without weight cannot be bounded by the remaining weight, but a route uses
+                    // every edge at most once
+                    corridor.zeroWeightScore += score;
+                double weight = entry.weight + edgeWeight;
+                SPTEntry adjEntry = entries.get(iter.getAdjNode());
+                if (adjEntry == null || adjEntry.weight > weight) {
+                    if (adjEntry != null)
+                        adjEntry.setDeleted();
+                    adjEntry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight, entry);
+                    entries.put(iter.getAdjNode(), adjEntry);
+                    queue.add(adjEntry);
+                }
+            }
+        }
+        return Double.isInfinite(corridor.budget) ? null : corridor;
+    }
+
+    private boolean isTimeoutExceeded() {
+        return finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis;
+    }
+
+    private Path createNotFoundPath(int from, int to) {
+        Path path = new Path(graph);
+        path.setFromNode(from);
+        path.setEndNode(to);
+        return path;
+    }
+
+    private Path extractPath(Label label) {
+        Path path = new Path(graph);
+        Label currLabel = label;
+        while (currLabel.parent != null) {
+            path.addEdge(currLabel.edge);
+            currLabel = currLabel.parent;
+        }
+        ArrayUtil.reverse(path.getEdges());
+        path.setFromNode(currLabel.node);
+        path.setEndNode(label.node);
+        path.setDistance(label.distance);
+        path.setTime(label.time);
+        path.setWeight(label.weight);
+        path.setFound(true);
+        return path;
+    }
+
+    private static class Corridor {
+        final IntDoubleHashMap remainingWeights = new IntDoubleHashMap();
+        double budget = Double.POSITIVE_INFINITY;
+        double maxScorePerWeight;
+        double zeroWeightScore;
+
+        /**
+         * @return an upper bound for the score that a route with the given weight can still collect until the target
+         */
+        double maxAdditionalScore(double weight) {
+            return (budget - weight) * maxScorePerWeight + zeroWeightScore;
+        }
+    }
+
+    private static class Label implements Comparable<Label> {
+        final int node;
+        final int edge;
+        final double weight;
+        final double distance;
+        final long time;
+        final double score;
+        final Label parent;
+        // the number of edges from the start and a jump pointer to an ancestor, which allows to find the ancestor of a
+        // given depth in O(log(depth)) steps (Myers, "An applicative random-access stack", 1983)
+        final int depth;
+        final Label jump;
+        boolean deleted;
+
+        Label(int node, int edge, double weight, double distance, long time, double score, Label parent) {
+            this.node = node;
+            this.edge = edge;
+            this.weight = weight;
+            this.distance = distance;
+            this.time = time;
+            this.score = score;
+            this.parent = parent;
+            if (parent == null) {
+                depth = 0;
+                jump = this;
+            } else {
+                depth = parent.depth + 1;
+                Label parentJump = parent.jump;
+                jump = parent.depth - parentJump.depth == parentJump.depth - parentJump.jump.depth ? parentJump.jump : parent;
+            }
+        }
+
+        /**
+         * @return true if the given label is this label or one of its parents
+         */
+        boolean hasAncestor(Label ancestor) {
+            Label label = this;
+            while (label.depth > ancestor.depth)
+                label = label.jump.depth >= ancestor.depth ? label.jump : label.parent;
+            return label == ancestor;
+        }
+
+        @Override
+        public int compareTo(Label o) {
+            return Double.compare(weight, o.weight);
+        }
+
+        @Override
+        public String toString() {
+            return node + " (" + edge + ") weight: " + weight + ", score: " + score;
+        }
+    }
+}
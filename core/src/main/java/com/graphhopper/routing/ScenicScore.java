@@ -0,0 +1,102 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates the scenic score of an edge from the road scenery and road curvature encoded values. The level of an
+ * edge is the sum of all scenery levels plus a bonus for curvy roads and the score of an edge is its level times its
+ * length in km. The levels of all edges of the base graph are calculated once on the first call of
+ * {@link #calcEdgeScore}, so the {@link ScenicRouteSearch} does not need to read all encoded values for every relaxed
+ * edge and servers that never get a scenic_route request do not need the memory. GraphHopper creates it once after
+ * the graph was imported or loaded.
+ */
+public class ScenicScore {
+    // urban and semi-urban sceneries are not considered scenic
+    private static final String[] SCENERY_KEYS = {RSSceneryBackwater.KEY, RSSceneryBeach.KEY, RSSceneryDesert.KEY,
+            RSSceneryField.KEY, RSSceneryForest.KEY, RSSceneryHill.KEY, RSSceneryLake.KEY, RSSceneryMountainPass.KEY,
+            RSSceneryPlantation.KEY, RSSceneryRiver.KEY, RSScenerySaltFlat.KEY, RSScenerySnowCappedMountain.KEY};
+
+    private final IntEncodedValue[] sceneryEncs;
+    private final EnumEncodedValue<RSRoadCurvature> curvatureEnc;
+    private final BaseGraph graph;
+    private volatile byte[] levels;
+
+    public ScenicScore(BaseGraph graph, EncodedValueLookup lookup) {
+        List<IntEncodedValue> encs = new ArrayList<>();
+        for (String key : SCENERY_KEYS)
+            if (lookup.hasEncodedValue(key))
+                encs.add(lookup.getIntEncodedValue(key));
+        sceneryEncs = encs.toArray(new IntEncodedValue[0]);
+        curvatureEnc = lookup.hasEncodedValue(RSRoadCurvature.KEY) ? lookup.getEnumEncodedValue(RSRoadCurvature.KEY, RSRoadCurvature.class) : null;
+        this.graph = graph;
+    }
+
+    /**
+     * @return true if the encoding manager contains at least one of the encoded values used for the score
+     */
+    public static boolean isAvailable(EncodedValueLookup lookup) {
+        for (String key : SCENERY_KEYS)
+            if (lookup.hasEncodedValue(key))
+                return true;
+        return lookup.hasEncodedValue(RSRoadCurvature.KEY);
+    }
+
+    public double calcEdgeScore(EdgeIteratorState edge) {
+        byte[] levels = getLevels();
+        int edgeId = edge.getEdge();
+        // virtual edges share the encoded values of their original edge, but they are not part of the cache
+        int level = edgeId < levels.length ? levels[edgeId] : calcLevel(edge);
+        return level * edge.getDistance() / 1000;
+    }
+
+    private byte[] getLevels() {
+        byte[] result = levels;
+        if (result != null)
+            return result;
+        synchronized (this) {
+            if (levels == null) {
+                result = new byte[graph.getEdges()];
+                for (int edge = 0; edge < result.length; edge++)
+                    result[edge] = (byte) calcLevel(graph.getEdgeIteratorState(edge, Integer.MIN_VALUE));
+                levels = result;
+            }
+            return levels;
+        }
+    }
+
+    private int calcLevel(EdgeIteratorState edge) {
+        int level = 0;
+        for (IntEncodedValue enc : sceneryEncs)
+            level += edge.get(enc);
+        if (curvatureEnc != null) {
+            RSRoadCurvature curvature = edge.get(curvatureEnc);
+            if (curvature == RSRoadCurvature.HIGH)
+                level += 2;
+            else if (curvature == RSRoadCurvature.MEDIUM)
+                level += 1;
+        }
+        return Math.min(level, Byte.MAX_VALUE);
+    }
+}
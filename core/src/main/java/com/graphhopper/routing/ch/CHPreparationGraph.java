@@ -92,10 +92,10 @@ public class CHPreparationGraph {
             throw new IllegalArgumentException("Cannot initialize from given graph. The number of edges does not match: " +
                     graph.getEdges() + " vs. " + prepareGraph.getOriginalEdges());
         AllEdgesIterator iter = graph.getAllEdges();
+        double[] weights = new double[2];
         while (iter.next()) {
-            double weightFwd = weighting.calcEdgeWeight(iter, false);
-            double weightBwd = weighting.calcEdgeWeight(iter, true);
-            prepareGraph.addEdge(iter.getBaseNode(), iter.getAdjNode(), iter.getEdge(), weightFwd, weightBwd);
+            weighting.calcEdgeWeights(iter, weights);
+            prepareGraph.addEdge(iter.getBaseNode(), iter.getAdjNode(), iter.getEdge(), weights[0], weights[1]);
         }
         prepareGraph.prepareForContraction();
     }
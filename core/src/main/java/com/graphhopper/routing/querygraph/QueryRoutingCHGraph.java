@@ -46,6 +46,8 @@ public class QueryRoutingCHGraph implements RoutingCHGraph {
     private final QueryGraph queryGraph;
     private final Weighting queryGraphWeighting;
     private final int nodes;
+    // like the QueryGraph this graph is only used by a single request at a time, so the weights can be reused
+    private final double[] weightsBuffer = new double[2];
 
     private final IntObjectMap<List<RoutingCHEdgeIteratorState>> virtualOutEdgesAtRealNodes;
     private final IntObjectMap<List<RoutingCHEdgeIteratorState>> virtualInEdgesAtRealNodes;
@@ -230,10 +232,9 @@ public class QueryRoutingCHGraph implements RoutingCHGraph {
     }
 
     private VirtualCHEdgeIteratorState buildVirtualCHEdgeState(EdgeIteratorState edgeState, int edgeID) {
-        double fwdWeight = weighting.calcEdgeWeight(edgeState, false);
-        double bwdWeight = weighting.calcEdgeWeight(edgeState, true);
+        weighting.calcEdgeWeights(edgeState, weightsBuffer);
         return new VirtualCHEdgeIteratorState(edgeID, edgeState.getEdge(), edgeState.getBaseNode(), edgeState.getAdjNode(),
-                edgeState.getEdgeKey(), edgeState.getEdgeKey(), NO_EDGE, NO_EDGE, fwdWeight, bwdWeight);
+                edgeState.getEdgeKey(), edgeState.getEdgeKey(), NO_EDGE, NO_EDGE, weightsBuffer[0], weightsBuffer[1]);
     }
 
     private int shiftVirtualEdgeIDForCH(int edge) {
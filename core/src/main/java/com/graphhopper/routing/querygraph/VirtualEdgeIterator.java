@@ -95,6 +95,11 @@ class VirtualEdgeIterator implements EdgeIterator {
         return getCurrentEdge().fetchWayGeometry(mode);
     }
 
+    @Override
+    public void appendWayGeometry(FetchMode mode, PointList target) {
+        getCurrentEdge().appendWayGeometry(mode, target);
+    }
+
     @Override
     public EdgeIteratorState setWayGeometry(PointList list) {
         return getCurrentEdge().setWayGeometry(list);
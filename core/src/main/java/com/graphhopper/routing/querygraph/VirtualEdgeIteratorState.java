@@ -125,6 +125,38 @@ public class VirtualEdgeIteratorState implements EdgeIteratorState {
         throw new UnsupportedOperationException("Illegal mode:" + mode);
     }
 
+    @Override
+    public void appendWayGeometry(FetchMode mode, PointList target) {
+        if (pointList.isEmpty())
+            return;
+        int size = pointList.size();
+        if (mode == FetchMode.TOWER_ONLY) {
+            target.add(pointList, 0);
+            if (size > 1)
+                target.add(pointList, size - 1);
+            return;
+        }
+        int from, end;
+        if (mode == FetchMode.ALL) {
+            from = 0;
+            end = size;
+        } else if (mode == FetchMode.BASE_AND_PILLAR) {
+            from = 0;
+            end = size - 1;
+        } else if (mode == FetchMode.PILLAR_AND_ADJ) {
+            from = 1;
+            end = size;
+        } else if (mode == FetchMode.PILLAR_ONLY) {
+            from = 1;
+            end = size - 1;
+        } else {
+            throw new UnsupportedOperationException("Illegal mode:" + mode);
+        }
+        for (int i = from; i < end; i++) {
+            target.add(pointList, i);
+        }
+    }
+
     @Override
     public EdgeIteratorState setWayGeometry(PointList list) {
         throw new UnsupportedOperationException("Not supported for virtual edge. Set when creating it.");
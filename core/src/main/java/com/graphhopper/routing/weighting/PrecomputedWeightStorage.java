@@ -0,0 +1,142 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stores the weight and the time of every edge in both directions for one Weighting. It is filled once for the
+ * weighting of a profile and then allows {@link PrecomputedWeighting} to replace the evaluation of the weighting
+ * with a single lookup.
+ * <p>
+ * The entries are indexed by the edge key, i.e. the forward direction of an edge is at 2*edge and the backward
+ * direction at 2*edge+1. The weight is stored as float, which is also the precision the CH preparation uses.
+ */
+public class PrecomputedWeightStorage {
+    private static final int VERSION = 2;
+    private static final int BYTES_PER_KEY = 8;
+    // for edges that take longer or are not accessible we fall back to the weighting
+    static final int NO_MILLIS = -1;
+    private final DataAccess da;
+    private final int edges;
+    private final long checksum;
+
+    /**
+     * @param checksum identifies the weighting the storage was filled for, see {@link #createChecksum}. The
+     *                 existing data is only loaded if it was created with the same checksum.
+     */
+    public PrecomputedWeightStorage(Directory dir, String name, int edges, long checksum) {
+        this.da = dir.create("weights_" + name);
+        this.edges = edges;
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return true if the storage exists and was created for the same number of edges and the same checksum
+     */
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        return da.getHeader(0) == VERSION && da.getHeader(4) == edges
+                && da.getHeader(8) == (int) (checksum >>> 32) && da.getHeader(12) == (int) checksum;
+    }
+
+    /**
+     * @return the first 64 bits of the SHA-256 hash of the given key, e.g. the version, the custom model and the
+     * encoded values the weighting depends on
+     */
+    public static long createChecksum(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public PrecomputedWeightStorage calculate(Graph graph, Weighting weighting) {
+        if (graph.getEdges() != edges)
+            throw new IllegalArgumentException("Number of edges does not match: " + graph.getEdges() + " vs. " + edges);
+        da.create((long) edges * 2 * BYTES_PER_KEY);
+        double[] weights = new double[2];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            long pointer = (long) iter.getEdge() * 2 * BYTES_PER_KEY;
+            weighting.calcEdgeWeights(iter, weights);
+            da.setInt(pointer, Float.floatToRawIntBits((float) weights[0]));
+            da.setInt(pointer + 4, toIntMillis(weighting.calcEdgeMillis(iter, false)));
+            da.setInt(pointer + BYTES_PER_KEY, Float.floatToRawIntBits((float) weights[1]));
+            da.setInt(pointer + BYTES_PER_KEY + 4, toIntMillis(weighting.calcEdgeMillis(iter, true)));
+        }
+        da.setHeader(0, VERSION);
+        da.setHeader(4, edges);
+        da.setHeader(8, (int) (checksum >>> 32));
+        da.setHeader(12, (int) checksum);
+        return this;
+    }
+
+    private static int toIntMillis(long millis) {
+        return millis < 0 || millis >= Integer.MAX_VALUE ? NO_MILLIS : (int) millis;
+    }
+
+    /**
+     * @return the number of (original) edges, edges with a larger ID (i.e. virtual edges) are not stored
+     */
+    public int getEdges() {
+        return edges;
+    }
+
+    /**
+     * @param edgeKey the key of the edge in the direction of travel, see {@link EdgeIteratorState#getEdgeKey}
+     */
+    public double getWeight(int edgeKey) {
+        return Float.intBitsToFloat(da.getInt((long) edgeKey * BYTES_PER_KEY));
+    }
+
+    /**
+     * @return the travel time in milliseconds or {@link #NO_MILLIS} if it was not stored
+     */
+    public int getMillis(int edgeKey) {
+        return da.getInt((long) edgeKey * BYTES_PER_KEY + 4);
+    }
+
+    public void flush() {
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Reads the edge weights and times from a {@link PrecomputedWeightStorage} that was filled with the wrapped
+ * weighting. Virtual edges are not stored and are evaluated by the wrapped weighting, which also means that the
+ * heading penalty, which only applies to virtual edges, still works. Turn costs are always calculated by the wrapped
+ * weighting.
+ */
+public class PrecomputedWeighting extends AbstractAdjustedWeighting {
+    private final PrecomputedWeightStorage storage;
+    private final int edges;
+
+    public PrecomputedWeighting(Weighting superWeighting, PrecomputedWeightStorage storage) {
+        super(superWeighting);
+        this.storage = storage;
+        this.edges = storage.getEdges();
+    }
+
+    @Override
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+        if (edgeState.getEdge() >= edges)
+            return superWeighting.calcEdgeWeight(edgeState, reverse);
+        return storage.getWeight(getEdgeKey(edgeState, reverse));
+    }
+
+    @Override
+    public void calcEdgeWeights(EdgeIteratorState edgeState, double[] weights) {
+        if (edgeState.getEdge() >= edges) {
+            superWeighting.calcEdgeWeights(edgeState, weights);
+        } else {
+            int edgeKey = edgeState.getEdgeKey();
+            weights[0] = storage.getWeight(edgeKey);
+            weights[1] = storage.getWeight(edgeKey ^ 1);
+        }
+    }
+
+    @Override
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+        if (edgeState.getEdge() >= edges)
+            return superWeighting.calcEdgeMillis(edgeState, reverse);
+        int millis = storage.getMillis(getEdgeKey(edgeState, reverse));
+        return millis == PrecomputedWeightStorage.NO_MILLIS ? superWeighting.calcEdgeMillis(edgeState, reverse) : millis;
+    }
+
+    private static int getEdgeKey(EdgeIteratorState edgeState, boolean reverse) {
+        // the edge key already contains the direction of the state, reverse flips it
+        return reverse ? edgeState.getEdgeKey() ^ 1 : edgeState.getEdgeKey();
+    }
+
+    @Override
+    public String getName() {
+        return superWeighting.getName();
+    }
+}
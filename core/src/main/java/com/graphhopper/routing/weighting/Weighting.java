@@ -47,6 +47,17 @@ public interface Weighting {
      */
     double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse);
 
+    /**
+     * Calculates the weights of the specified edge for both directions in one call and stores them in weights[0]
+     * (forward, i.e. reverse=false) and weights[1] (backward). This is useful where both weights are needed anyway,
+     * e.g. for the CH preparation, and implementations can override it to share the work for both directions.
+     * The result must be identical to two calls of {@link #calcEdgeWeight}.
+     */
+    default void calcEdgeWeights(EdgeIteratorState edgeState, double[] weights) {
+        weights[0] = calcEdgeWeight(edgeState, false);
+        weights[1] = calcEdgeWeight(edgeState, true);
+    }
+
     /**
      * This method calculates the time taken (in milliseconds) to travel along the specified edgeState.
      * It is typically used for post-processing and on only a few thousand edges.
@@ -26,6 +26,7 @@ import com.graphhopper.util.shapes.Polygon;
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.Location;
 import org.codehaus.commons.compiler.io.Readers;
+import org.codehaus.commons.compiler.util.reflect.ByteArrayClassLoader;
 import org.codehaus.janino.Scanner;
 import org.codehaus.janino.*;
 import org.codehaus.janino.util.DeepCopier;
@@ -35,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.graphhopper.json.Statement.Keyword.IF;
@@ -46,22 +48,21 @@ public class CustomModelParser {
     private static final boolean JANINO_DEBUG = Boolean.getBoolean(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_ENABLE);
     private static final String SCRIPT_FILE_DIR = System.getProperty(Scanner.SYSTEM_PROPERTY_SOURCE_DEBUGGING_DIR, "./src/main/java/com/graphhopper/routing/weighting/custom");
 
+    private static final String CLASS_NAME_PREFIX = "com.graphhopper.routing.weighting.custom.JaninoCustomWeightingHelperSubclass";
+
     // Without a cache the class creation takes 10-40ms which makes routingLM8 requests 20% slower on average.
     // CH requests and preparation is unaffected as cached weighting from preparation is used.
-    // Use accessOrder==true to remove oldest accessed entry, not oldest inserted.
+    // The cache is split into separately locked segments so that compiling different custom models concurrently does
+    // not serialize the requests.
     private static final int CACHE_SIZE = Integer.getInteger("graphhopper.custom_weighting.cache_size", 1000);
-    private static final Map<String, Class<?>> CACHE = Collections.synchronizedMap(
-            new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    return size() > CACHE_SIZE;
-                }
-            });
+    private static final int CACHE_STRIPES = Integer.getInteger("graphhopper.custom_weighting.cache_stripes", 16);
+    private static final CustomWeightingClassCache CACHE = new CustomWeightingClassCache(CACHE_SIZE, CACHE_STRIPES);
 
     // This internal cache ensures that the "internal" Weighting classes specified in the profiles, are never removed regardless
-    // of how frequent other Weightings are created and accessed. We only need to synchronize the get and put methods alone.
-    // E.g. we do not care for the race condition where two identical classes are requested and one of them is overwritten.
-    // TODO perf compare with ConcurrentHashMap, but I guess, if there is a difference at all, it is not big for small maps
-    private static final Map<String, Class<?>> INTERNAL_CACHE = Collections.synchronizedMap(new HashMap<>());
+    // of how frequent other Weightings are created and accessed. It also contains the precompiled classes of the
+    // profiles, see CustomWeightingClassStorage. We do not care for the race condition where two identical classes
+    // are requested and one of them is overwritten.
+    private static final Map<String, Class<?>> INTERNAL_CACHE = new ConcurrentHashMap<>();
 
     private CustomModelParser() {
         // utility class
@@ -92,21 +93,14 @@ public class CustomModelParser {
      */
     public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
         String key = customModel.toString();
-        Class<?> clazz = customModel.isInternal() ? INTERNAL_CACHE.get(key) : null;
-        if (CACHE_SIZE > 0 && clazz == null)
-            clazz = CACHE.get(key);
+        // a request without a custom model uses a copy of the profile's custom model, so we always look here first
+        Class<?> clazz = INTERNAL_CACHE.get(key);
         if (clazz == null) {
-            clazz = createClazz(customModel, lookup);
             if (customModel.isInternal()) {
-                INTERNAL_CACHE.put(key, clazz);
-                if (INTERNAL_CACHE.size() > 100) {
-                    CACHE.putAll(INTERNAL_CACHE);
-                    INTERNAL_CACHE.clear();
-                    LoggerFactory.getLogger(CustomModelParser.class).warn("Internal cache must stay small but was "
-                            + INTERNAL_CACHE.size() + ". Cleared it. Misuse of CustomModel::internal?");
-                }
-            } else if (CACHE_SIZE > 0) {
-                CACHE.put(key, clazz);
+                clazz = createClazz(customModel, lookup);
+                putInternal(key, clazz);
+            } else {
+                clazz = CACHE.computeIfAbsent(key, k -> createClazz(customModel, lookup));
             }
         }
 
@@ -124,6 +118,43 @@ public class CustomModelParser {
         }
     }
 
+    private static void putInternal(String key, Class<?> clazz) {
+        INTERNAL_CACHE.put(key, clazz);
+        if (INTERNAL_CACHE.size() > 100) {
+            int size = INTERNAL_CACHE.size();
+            INTERNAL_CACHE.forEach(CACHE::put);
+            INTERNAL_CACHE.clear();
+            LoggerFactory.getLogger(CustomModelParser.class).warn("Internal cache must stay small but was "
+                    + size + ". Cleared it. Misuse of CustomModel::internal?");
+        }
+    }
+
+    /**
+     * Compiles the specified CustomModel and returns the bytecode of the created CustomWeightingHelper subclass. The
+     * result can be stored and later loaded via {@link #loadPrecompiled} without the need to compile it again.
+     */
+    static Map<String, byte[]> createBytecode(CustomModel customModel, EncodedValueLookup lookup) {
+        try {
+            return compile(longVal.incrementAndGet(), customModel, lookup).getBytecodes();
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Cannot compile expression: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Defines the CustomWeightingHelper subclass from the specified bytecode (see {@link #createBytecode}) and puts
+     * it into the internal cache for the specified CustomModel, i.e. it won't be compiled again for this model.
+     */
+    static void loadPrecompiled(CustomModel customModel, Map<String, byte[]> bytecodes) throws ClassNotFoundException {
+        String className = bytecodes.keySet().stream().filter(name -> name.startsWith(CLASS_NAME_PREFIX)).findFirst().
+                orElseThrow(() -> new ClassNotFoundException("No CustomWeightingHelper subclass found in " + bytecodes.keySet()));
+        ClassLoader classLoader = new ByteArrayClassLoader(bytecodes, CustomModelParser.class.getClassLoader());
+        Class<?> clazz = classLoader.loadClass(className);
+        if (!CustomWeightingHelper.class.isAssignableFrom(clazz))
+            throw new ClassNotFoundException(className + " is not a subclass of " + CustomWeightingHelper.class.getName());
+        putInternal(customModel.toString(), clazz);
+    }
+
     /**
      * This method does the following:
      * <ul>
@@ -139,42 +170,46 @@ public class CustomModelParser {
      */
     private static Class<?> createClazz(CustomModel customModel, EncodedValueLookup lookup) {
         try {
-            Set<String> priorityVariables = ValueExpressionVisitor.findVariables(customModel.getPriority(), lookup);
-            List<Java.BlockStatement> priorityStatements = createGetPriorityStatements(priorityVariables, customModel, lookup);
-
-            if (customModel.getSpeed().isEmpty())
-                throw new IllegalArgumentException("At least one initial statement under 'speed' is required.");
-
-            List<Statement> firstGroup = splitIntoGroup(customModel.getSpeed()).get(0);
-            if (firstGroup.size() > 1) {
-                Statement lastSt = firstGroup.get(firstGroup.size() - 1);
-                if (lastSt.operation() != Statement.Op.LIMIT || lastSt.keyword() != Statement.Keyword.ELSE)
-                    throw new IllegalArgumentException("The first group needs to end with an 'else' (or contain a single unconditional 'if' statement).");
-            } else {
-                Statement firstSt = firstGroup.get(0);
-                if (!"true".equals(firstSt.condition()) || firstSt.operation() != Statement.Op.LIMIT || firstSt.keyword() != Statement.Keyword.IF)
-                    throw new IllegalArgumentException("The first group needs to contain a single unconditional 'if' statement (or end with an 'else').");
-            }
-
-            Set<String> speedVariables = ValueExpressionVisitor.findVariables(customModel.getSpeed(), lookup);
-            List<Java.BlockStatement> speedStatements = createGetSpeedStatements(speedVariables, customModel, lookup);
-
-            // Create different class name, which is required only for debugging.
-            // TODO does it improve performance too? I.e. it could be that the JIT is confused if different classes
-            //  have the same name and it mixes performance stats. See https://github.com/janino-compiler/janino/issues/137
             long counter = longVal.incrementAndGet();
-            String classTemplate = createClassTemplate(counter, priorityVariables, speedVariables, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
-            Java.CompilationUnit cu = (Java.CompilationUnit) new Parser(new Scanner("source", new StringReader(classTemplate))).
-                    parseAbstractCompilationUnit();
-            cu = injectStatements(priorityStatements, speedStatements, cu);
-            SimpleCompiler sc = createCompiler(counter, cu);
-            return sc.getClassLoader().loadClass("com.graphhopper.routing.weighting.custom.JaninoCustomWeightingHelperSubclass" + counter);
+            SimpleCompiler sc = compile(counter, customModel, lookup);
+            return sc.getClassLoader().loadClass(CLASS_NAME_PREFIX + counter);
         } catch (Exception ex) {
             String errString = "Cannot compile expression";
             throw new IllegalArgumentException(errString + ": " + ex.getMessage(), ex);
         }
     }
 
+    private static SimpleCompiler compile(long counter, CustomModel customModel, EncodedValueLookup lookup) throws Exception {
+        Set<String> priorityVariables = ValueExpressionVisitor.findVariables(customModel.getPriority(), lookup);
+        List<Java.BlockStatement> priorityStatements = createGetPriorityStatements(priorityVariables, customModel, lookup);
+
+        if (customModel.getSpeed().isEmpty())
+            throw new IllegalArgumentException("At least one initial statement under 'speed' is required.");
+
+        List<Statement> firstGroup = splitIntoGroup(customModel.getSpeed()).get(0);
+        if (firstGroup.size() > 1) {
+            Statement lastSt = firstGroup.get(firstGroup.size() - 1);
+            if (lastSt.operation() != Statement.Op.LIMIT || lastSt.keyword() != Statement.Keyword.ELSE)
+                throw new IllegalArgumentException("The first group needs to end with an 'else' (or contain a single unconditional 'if' statement).");
+        } else {
+            Statement firstSt = firstGroup.get(0);
+            if (!"true".equals(firstSt.condition()) || firstSt.operation() != Statement.Op.LIMIT || firstSt.keyword() != Statement.Keyword.IF)
+                throw new IllegalArgumentException("The first group needs to contain a single unconditional 'if' statement (or end with an 'else').");
+        }
+
+        Set<String> speedVariables = ValueExpressionVisitor.findVariables(customModel.getSpeed(), lookup);
+        List<Java.BlockStatement> speedStatements = createGetSpeedStatements(speedVariables, customModel, lookup);
+
+        // Create different class name, which is required only for debugging.
+        // TODO does it improve performance too? I.e. it could be that the JIT is confused if different classes
+        //  have the same name and it mixes performance stats. See https://github.com/janino-compiler/janino/issues/137
+        String classTemplate = createClassTemplate(counter, priorityVariables, speedVariables, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
+        Java.CompilationUnit cu = (Java.CompilationUnit) new Parser(new Scanner("source", new StringReader(classTemplate))).
+                parseAbstractCompilationUnit();
+        cu = injectStatements(priorityStatements, speedStatements, cu);
+        return createCompiler(counter, cu);
+    }
+
     public static List<String> findVariablesForEncodedValuesString(CustomModel model, NameValidator nameValidator, ClassHelper classHelper) {
         Set<String> variables = new LinkedHashSet<>();
         // avoid parsing exception for backward_xy or in_xy ...
@@ -124,6 +124,24 @@ public final class CustomWeighting implements Weighting {
         return seconds / priority + distanceCosts;
     }
 
+    @Override
+    public void calcEdgeWeights(EdgeIteratorState edgeState, double[] weights) {
+        // the distance, the distance costs and the heading penalty do not depend on the direction
+        final double distance = edgeState.getDistance();
+        final double distanceCosts = distance * distanceInfluence;
+        final double penalty = edgeState.get(EdgeIteratorState.UNFAVORED_EDGE) ? headingPenaltySeconds : 0;
+        weights[0] = calcEdgeWeight(distance, distanceCosts, penalty, edgeState, false);
+        weights[1] = calcEdgeWeight(distance, distanceCosts, penalty, edgeState, true);
+    }
+
+    private double calcEdgeWeight(double distance, double distanceCosts, double penalty, EdgeIteratorState edgeState, boolean reverse) {
+        double priority = edgeToPriorityMapping.get(edgeState, reverse);
+        if (priority == 0) return Double.POSITIVE_INFINITY;
+        double seconds = calcSeconds(distance, edgeState, reverse);
+        if (Double.isInfinite(seconds) || Double.isInfinite(distanceCosts)) return Double.POSITIVE_INFINITY;
+        return (seconds + penalty) / priority + distanceCosts;
+    }
+
     double calcSeconds(double distance, EdgeIteratorState edgeState, boolean reverse) {
         double speed = edgeToSpeedMapping.get(edgeState, reverse);
         if (speed == 0)
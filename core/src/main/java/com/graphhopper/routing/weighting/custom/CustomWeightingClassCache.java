@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * An LRU cache for the compiled CustomWeightingHelper classes. The entries are distributed over several segments
+ * where each segment is locked separately. This way concurrent requests with different custom models do not block
+ * each other. And if several threads request the same (not yet compiled) custom model at the same time only one of
+ * them compiles the class and the others wait for the result.
+ */
+final class CustomWeightingClassCache {
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final Map<String, CompletableFuture<Class<?>>> inProgress = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize the maximum number of classes, use 0 to disable caching
+     * @param stripes the number of separately locked segments, will be rounded up to the next power of two
+     */
+    CustomWeightingClassCache(int maxSize, int stripes) {
+        if (stripes < 1)
+            throw new IllegalArgumentException("stripes must be positive but was " + stripes);
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(stripes, maxSize)) * 2 - 1);
+        int segmentSize = maxSize <= 0 ? 0 : (maxSize + segmentCount - 1) / segmentCount;
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        segmentMask = segmentCount - 1;
+    }
+
+    Class<?> get(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    void put(String key, Class<?> clazz) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, clazz);
+        }
+    }
+
+    /**
+     * Returns the class for the specified key or creates it via the specified function. The function is called
+     * outside of any lock and at most once at a time for the same key.
+     */
+    Class<?> computeIfAbsent(String key, Function<String, Class<?>> createClass) {
+        Class<?> clazz = get(key);
+        if (clazz != null)
+            return clazz;
+
+        CompletableFuture<Class<?>> future = new CompletableFuture<>();
+        CompletableFuture<Class<?>> existing = inProgress.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) ex.getCause();
+                throw ex;
+            }
+        }
+
+        try {
+            // another thread might have finished the compilation after our first lookup
+            clazz = get(key);
+            if (clazz == null) {
+                clazz = createClass.apply(key);
+                put(key, clazz);
+            }
+            future.complete(clazz);
+            return clazz;
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inProgress.remove(key, future);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    private static class Segment extends LinkedHashMap<String, Class<?>> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            // use accessOrder==true to remove oldest accessed entry, not oldest inserted
+            super(Math.max(16, maxSize), 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.routing.ev.EncodedValueSerializer;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.CustomModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.graphhopper.util.Helper.UTF_CS;
+import static com.graphhopper.util.Helper.toLowerCase;
+
+/**
+ * Stores the bytecode of the CustomWeightingHelper subclasses created for the custom models of the profiles in the
+ * graph directory. On the next start the classes are loaded from there, which avoids compiling all custom models
+ * again after every restart.
+ * <p>
+ * The stored class is only used if the custom model, the encoded values and the GraphHopper version did not change,
+ * otherwise the custom model is compiled again and the storage is overwritten (if writes are allowed).
+ */
+public class CustomWeightingClassStorage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomWeightingClassStorage.class);
+    private static final int VERSION = 1;
+    private static final int SEGMENT_SIZE = 1 << 15;
+    private final Directory dir;
+    private final boolean allowWrites;
+
+    public CustomWeightingClassStorage(Directory dir, boolean allowWrites) {
+        this.dir = dir;
+        this.allowWrites = allowWrites;
+    }
+
+    /**
+     * Makes the compiled class for the specified custom model available via the internal cache of the
+     * CustomModelParser. The class is loaded from the graph directory if possible, otherwise the custom model is
+     * compiled and the bytecode is stored for the next start.
+     *
+     * @return true if the class could be loaded from the graph directory
+     */
+    public boolean loadOrCompile(String profileName, CustomModel customModel, EncodedValueLookup lookup) {
+        String key = createKey(customModel, lookup);
+        String daName = "custom_weighting_" + toLowerCase(profileName);
+        DataAccess da = dir.create(daName, SEGMENT_SIZE);
+        try {
+            boolean exists = da.loadExisting();
+            if (exists) {
+                Map<String, byte[]> bytecodes = read(da, key);
+                if (bytecodes != null) {
+                    try {
+                        CustomModelParser.loadPrecompiled(customModel, bytecodes);
+                        return true;
+                    } catch (ClassNotFoundException | LinkageError ex) {
+                        LOGGER.warn("Cannot load precompiled custom model of profile " + profileName + ", compile it again", ex);
+                    }
+                }
+            }
+
+            Map<String, byte[]> bytecodes = CustomModelParser.createBytecode(customModel, lookup);
+            try {
+                CustomModelParser.loadPrecompiled(customModel, bytecodes);
+            } catch (ClassNotFoundException ex) {
+                throw new IllegalStateException("Cannot load compiled custom model of profile " + profileName, ex);
+            }
+            if (allowWrites) {
+                if (exists) {
+                    // the stored class is outdated and an existing DataAccess cannot be created again
+                    dir.remove(daName);
+                    da = dir.create(daName, SEGMENT_SIZE);
+                }
+                write(da, key, bytecodes);
+            }
+            return false;
+        } finally {
+            // the bytecode is only needed once, so we do not keep it in memory
+            da.close();
+        }
+    }
+
+    /**
+     * @return a string that changes whenever the class generated for the custom model would change
+     */
+    public static String createKey(CustomModel customModel, EncodedValueLookup lookup) {
+        // the generated code depends on the CustomWeightingHelper, i.e. on the version, and on the encoded values, e.g.
+        // an encoded value that was a decimal could now be an enum or have a different number of bits
+        StringBuilder key = new StringBuilder(Constants.VERSION).append('|').append(customModel);
+        for (EncodedValue encodedValue : lookup.getEncodedValues())
+            key.append('|').append(EncodedValueSerializer.serializeEncodedValue(encodedValue));
+        return key.toString();
+    }
+
+    private static Map<String, byte[]> read(DataAccess da, String expectedKey) {
+        if (da.getHeader(0) != VERSION)
+            return null;
+        int length = da.getHeader(4);
+        byte[] bytes = new byte[length];
+        byte[] chunk = new byte[SEGMENT_SIZE];
+        for (int offset = 0; offset < length; offset += SEGMENT_SIZE) {
+            int chunkLength = Math.min(SEGMENT_SIZE, length - offset);
+            da.getBytes(offset, chunk, chunkLength);
+            System.arraycopy(chunk, 0, bytes, offset, chunkLength);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (!expectedKey.equals(readString(in)))
+                return null;
+            int count = in.readInt();
+            Map<String, byte[]> bytecodes = new LinkedHashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                String className = readString(in);
+                byte[] bytecode = new byte[in.readInt()];
+                in.readFully(bytecode);
+                bytecodes.put(className, bytecode);
+            }
+            return bytecodes;
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot read precompiled custom model " + da.getName(), ex);
+            return null;
+        }
+    }
+
+    private static void write(DataAccess da, String key, Map<String, byte[]> bytecodes) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            writeString(out, key);
+            out.writeInt(bytecodes.size());
+            for (Map.Entry<String, byte[]> entry : bytecodes.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        byte[] bytes = bos.toByteArray();
+        da.create(bytes.length);
+        for (int offset = 0; offset < bytes.length; offset += SEGMENT_SIZE) {
+            byte[] chunk = Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + SEGMENT_SIZE));
+            da.setBytes(offset, chunk, chunk.length);
+        }
+        da.setHeader(0, VERSION);
+        da.setHeader(4, bytes.length);
+        da.flush();
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_CS);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        // the key contains the full custom model which can be longer than what DataOutputStream.writeUTF supports
+        byte[] bytes = str.getBytes(UTF_CS);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
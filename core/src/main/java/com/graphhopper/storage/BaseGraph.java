@@ -508,54 +508,49 @@ public class BaseGraph implements Graph, Closeable {
     }
 
     private PointList fetchWayGeometry_(long edgePointer, boolean reverse, FetchMode mode, int baseNode, int adjNode) {
-        if (mode == FetchMode.TOWER_ONLY) {
-            // no reverse handling required as adjNode and baseNode is already properly switched
-            PointList pillarNodes = new PointList(2, nodeAccess.is3D());
-            pillarNodes.add(nodeAccess, baseNode);
-            pillarNodes.add(nodeAccess, adjNode);
-            return pillarNodes;
-        }
         long geoRef = store.getGeoRef(edgePointer);
-        int count = 0;
-        byte[] bytes = null;
-        if (geoRef > 0) {
-            count = getPillarCount(geoRef);
-            geoRef += 3L;
-            bytes = new byte[count * (8 + eleBytesPerCoord)];
-            wayGeometry.getBytes(geoRef, bytes, bytes.length);
-        } else if (mode == FetchMode.PILLAR_ONLY)
+        int count = geoRef > 0 ? getPillarCount(geoRef) : 0;
+        if (count == 0 && mode == FetchMode.PILLAR_ONLY)
             return PointList.EMPTY;
 
         PointList pillarNodes = new PointList(getPointListLength(count, mode), nodeAccess.is3D());
-        if (reverse) {
-            if (mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
-                pillarNodes.add(nodeAccess, adjNode);
-        } else if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
-            pillarNodes.add(nodeAccess, baseNode);
+        appendWayGeometry_(edgePointer, reverse, mode, baseNode, adjNode, pillarNodes);
+        return pillarNodes;
+    }
 
-        int index = 0;
+    private void appendWayGeometry_(long edgePointer, boolean reverse, FetchMode mode, int baseNode, int adjNode, PointList target) {
+        // no reverse handling required for the tower nodes as adjNode and baseNode is already properly switched
+        if (mode == FetchMode.TOWER_ONLY) {
+            target.add(nodeAccess, baseNode);
+            target.add(nodeAccess, adjNode);
+            return;
+        }
+        long geoRef = store.getGeoRef(edgePointer);
+        int count = geoRef > 0 ? getPillarCount(geoRef) : 0;
+        target.ensureNode(target.size() + getPointListLength(count, mode) - 1);
+        if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
+            target.add(nodeAccess, baseNode);
+
+        // read the pillar nodes directly from the storage instead of copying them into a temporary byte array
+        final boolean is3D = nodeAccess.is3D();
+        final int bytesPerPoint = 8 + eleBytesPerCoord;
+        final long firstPointer = geoRef + 3L;
         for (int i = 0; i < count; i++) {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D()) {
-                pillarNodes.add(lat, lon, Helper.uIntToEle(bitUtil.toUInt3(bytes, index)));
-                index += 3;
+            long pointer = firstPointer + (long) (reverse ? count - 1 - i : i) * bytesPerPoint;
+            double lat = Helper.intToDegree(wayGeometry.getInt(pointer));
+            double lon = Helper.intToDegree(wayGeometry.getInt(pointer + 4));
+            if (target.is3D()) {
+                double ele = Double.NaN;
+                if (is3D)
+                    ele = Helper.uIntToEle((wayGeometry.getShort(pointer + 8) & 0xFFFF) | (wayGeometry.getByte(pointer + 10) & 0xFF) << 16);
+                target.add(lat, lon, ele);
             } else {
-                pillarNodes.add(lat, lon);
+                target.add(lat, lon);
             }
         }
 
-        if (reverse) {
-            if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
-                pillarNodes.add(nodeAccess, baseNode);
-
-            pillarNodes.reverse();
-        } else if (mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
-            pillarNodes.add(nodeAccess, adjNode);
-
-        return pillarNodes;
+        if (mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
+            target.add(nodeAccess, adjNode);
     }
 
     static int getPointListLength(int pillarNodes, FetchMode mode) {
@@ -1011,6 +1006,11 @@ public class BaseGraph implements Graph, Closeable {
             return baseGraph.fetchWayGeometry_(edgePointer, reverse, mode, getBaseNode(), getAdjNode());
         }
 
+        @Override
+        public void appendWayGeometry(FetchMode mode, PointList target) {
+            baseGraph.appendWayGeometry_(edgePointer, reverse, mode, getBaseNode(), getAdjNode(), target);
+        }
+
         @Override
         public int getEdge() {
             return edgeId;
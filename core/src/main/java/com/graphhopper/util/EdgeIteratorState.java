@@ -144,6 +144,16 @@ public interface EdgeIteratorState {
      */
     PointList fetchWayGeometry(FetchMode mode);
 
+    /**
+     * Appends the pillar and/or tower nodes of this edge to the specified list, i.e. the result is the same as for
+     * {@link #fetchWayGeometry(FetchMode)} but no temporary PointList is created per edge. Use this when the
+     * geometries of many edges are collected, like for the points of a path.
+     *
+     * @param mode   {@link FetchMode}
+     * @param target the list the pillar and/or tower nodes are added to
+     */
+    void appendWayGeometry(FetchMode mode, PointList target);
+
     /**
      * @param list is a sorted collection of coordinates between the base node and the current adjacent node. Specify
      *             the list without the adjacent and base node. This method can be called multiple times, unless the
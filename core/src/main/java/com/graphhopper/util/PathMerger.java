@@ -39,6 +39,9 @@ import java.util.List;
  * <p>
  * The instructions are generated per Path object and are merged into one continuous InstructionList.
  * The PointList per Path object are merged and optionally simplified.
+ * <p>
+ * Only the distance, time, weight and description are calculated immediately. The points, instructions and
+ * path details are created on first access of the {@link ResponsePath}, see {@link ResponsePath#setDeferredBuilder}.
  *
  * @author Peter Karich
  * @author ratrun
@@ -90,18 +93,13 @@ public class PathMerger {
 
     public ResponsePath doWork(PointList waypoints, List<Path> paths, EncodedValueLookup evLookup, Translation tr) {
         ResponsePath responsePath = new ResponsePath();
-        int origPoints = 0;
         long fullTimeInMillis = 0;
         double fullWeight = 0;
         double fullDistance = 0;
         boolean allFound = true;
 
-        InstructionList fullInstructions = new InstructionList(tr);
-        PointList fullPoints = PointList.EMPTY;
         List<String> description = new ArrayList<>();
-        List<Integer> wayPointIndices = new ArrayList<>();
-        for (int pathIndex = 0; pathIndex < paths.size(); pathIndex++) {
-            Path path = paths.get(pathIndex);
+        for (Path path : paths) {
             if (!path.isFound()) {
                 allFound = false;
                 continue;
@@ -110,6 +108,35 @@ public class PathMerger {
             fullTimeInMillis += path.getTime();
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
+        }
+
+        if (!allFound) {
+            responsePath.addError(new ConnectionNotFoundException("Connection between locations not found", Collections.emptyMap()));
+        }
+
+        responsePath.setDescription(description).
+                setRouteWeight(fullWeight).
+                setDistance(fullDistance).
+                setTime(fullTimeInMillis).
+                setWaypoints(waypoints);
+
+        // The points, instructions and path details are only created when they are actually accessed, e.g. when
+        // the response is serialized. The paths keep their edge list, which is all we need to create them later.
+        final boolean found = allFound;
+        responsePath.setDeferredBuilder(() -> buildDetails(responsePath, waypoints, paths, found, evLookup, tr));
+        return responsePath;
+    }
+
+    private void buildDetails(ResponsePath responsePath, PointList waypoints, List<Path> paths, boolean allFound,
+                              EncodedValueLookup evLookup, Translation tr) {
+        int origPoints = 0;
+        InstructionList fullInstructions = new InstructionList(tr);
+        PointList fullPoints = PointList.EMPTY;
+        List<Integer> wayPointIndices = new ArrayList<>();
+        for (int pathIndex = 0; pathIndex < paths.size(); pathIndex++) {
+            Path path = paths.get(pathIndex);
+            if (!path.isFound())
+                continue;
             if (enableInstructions) {
                 InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
 
@@ -126,24 +153,22 @@ public class PathMerger {
 
             }
             if (calcPoints || enableInstructions) {
-                PointList tmpPoints = path.calcPoints();
                 if (fullPoints.isEmpty())
-                    fullPoints = new PointList(tmpPoints.size(), tmpPoints.is3D());
+                    fullPoints = new PointList(estimatePointCount(paths, pathIndex), graph.getNodeAccess().is3D());
 
+                // the points are appended directly to the full list without creating a temporary list per path
+                path.appendPoints(fullPoints);
                 // Remove duplicated points, see #1138
                 if (pathIndex + 1 < paths.size()) {
-                    tmpPoints.removeLastPoint();
+                    fullPoints.removeLastPoint();
                 }
 
-                fullPoints.add(tmpPoints);
                 responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
                 wayPointIndices.add(origPoints);
                 if (pathIndex == paths.size() - 1)
                     wayPointIndices.add(fullPoints.size() - 1);
                 origPoints = fullPoints.size();
             }
-
-            allFound = allFound && path.isFound();
         }
 
         if (!fullPoints.isEmpty() && fullPoints.is3D)
@@ -154,10 +179,6 @@ public class PathMerger {
             responsePath.setInstructions(fullInstructions);
         }
 
-        if (!allFound) {
-            responsePath.addError(new ConnectionNotFoundException("Connection between locations not found", Collections.emptyMap()));
-        }
-
         // make sure the way point indices actually point to the points in waypoints...
         if (allFound && !waypoints.isEmpty()) { // we use empty waypoints for map-matching...
             for (int i = 0; i < wayPointIndices.size(); i++) {
@@ -167,18 +188,21 @@ public class PathMerger {
             }
         }
 
-        responsePath.setDescription(description).
-                setPoints(fullPoints).
-                setRouteWeight(fullWeight).
-                setDistance(fullDistance).
-                setTime(fullTimeInMillis).
-                setWaypoints(waypoints).
+        responsePath.setPoints(fullPoints).
                 setWaypointIndices(wayPointIndices);
 
         if (allFound && simplifyResponse && (calcPoints || enableInstructions)) {
             PathSimplification.simplify(responsePath, ramerDouglasPeucker, enableInstructions);
         }
-        return responsePath;
+    }
+
+    private static int estimatePointCount(List<Path> paths, int fromIndex) {
+        // most edges have at least one pillar node, so this avoids most of the array copying while the list grows
+        int count = 1;
+        for (int i = fromIndex; i < paths.size(); i++) {
+            count += 2 * paths.get(i).getEdgeCount();
+        }
+        return count;
     }
 
     /**
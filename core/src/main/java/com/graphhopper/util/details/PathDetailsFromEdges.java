@@ -23,6 +23,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -41,6 +42,8 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
 
     private final List<PathDetailsBuilder> calculators;
     private int lastIndex = 0;
+    // reused for every edge to avoid the allocation of a new PointList
+    private final PointList tmpPoints = new PointList();
 
     public PathDetailsFromEdges(List<PathDetailsBuilder> calculators, int previousIndex) {
         this.calculators = calculators;
@@ -88,7 +91,9 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
                 calc.startInterval(lastIndex);
             }
         }
-        lastIndex += edge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ).size();
+        tmpPoints.clear();
+        edge.appendWayGeometry(FetchMode.PILLAR_AND_ADJ, tmpPoints);
+        lastIndex += tmpPoints.size();
     }
 
     @Override
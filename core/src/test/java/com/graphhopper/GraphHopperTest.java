@@ -411,6 +411,77 @@ public class GraphHopperTest {
         testImportCloseAndLoad(false, false);
     }
 
+    @Test
+    public void testPrecompileCustomModels() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setPrecompileCustomModels(true).
+                setStoreOnFlush(true).
+                importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        assertTrue(new File(GH_LOCATION, "custom_weighting_profile").exists());
+        assertEquals(0, hopper.getLoadedCustomModelClasses());
+        hopper.close();
+
+        // load the compiled custom model from the graph folder
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setPrecompileCustomModels(true).
+                setStoreOnFlush(true).
+                importOrLoad();
+        // the class was not compiled again
+        assertEquals(1, hopper.getLoadedCustomModelClasses());
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        hopper.close();
+    }
+
+    @Test
+    public void testPrecomputeWeights() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setPrecomputeWeights(true).
+                setStoreOnFlush(true).
+                importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        assertEquals(274255, rsp.getBest().getTime(), 10);
+
+        // a custom model in the request falls back to the evaluation of the merged custom model
+        req.setCustomModel(new CustomModel().addToPriority(If("true", MULTIPLY, "0.9")));
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        hopper.close();
+
+        // load the precomputed weights from the graph folder
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setPrecomputeWeights(true).
+                setStoreOnFlush(true).
+                importOrLoad();
+        rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        hopper.close();
+    }
+
     @Test
     public void testAlternativeRoutes() {
         final String profile = "profile";
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.json.Statement;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.SimpleBooleanEncodedValue;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.TurnCostProvider;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiPolygon;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.graphhopper.json.Statement.If;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GridTriangulatorTest {
+    private final BooleanEncodedValue accessEnc = new SimpleBooleanEncodedValue("access", true);
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, false);
+    private final EncodingManager encodingManager = EncodingManager.start().add(accessEnc).add(speedEnc).build();
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void gridTopology() {
+        float[] z = new float[16];
+        Arrays.fill(z, 1);
+        GridTriangulation grid = new GridTriangulation(4, 4, 0, 0, 1, 1, z);
+        for (ReadableQuadEdge e : grid.getEdges()) {
+            assertEquals(e, e.sym().sym());
+            if (e.oNext() != null)
+                assertEquals(e, e.oNext().oPrev());
+            if (e.dNext() != null)
+                assertEquals(e.dest().getCoordinate(), e.dNext().dest().getCoordinate(), e.toString());
+            if (e.dPrev() != null)
+                assertEquals(e.dest().getCoordinate(), e.dPrev().dest().getCoordinate(), e.toString());
+            ReadableQuadEdge lNext = e.lNext();
+            if (lNext != null && lNext.lNext() != null)
+                // the left face is a triangle
+                assertEquals(e, lNext.lNext().lNext(), e.toString());
+        }
+        // 3 * 3 cells with 5 edges each, minus the ones counted twice
+        assertEquals(3 * 4 + 3 * 4 + 3 * 3, grid.getEdges().size());
+        assertNull(grid.getEdge(0, 5 + 5));
+        // vertex 5 is in the second column and row
+        assertEquals(new Coordinate(1, 1), grid.getVertexQuadEdge(5).orig().getCoordinate());
+    }
+
+    @Test
+    public void contour() {
+        // a lattice of 5x5 nodes, 0.001 degrees (~111m) apart, every edge takes 20s
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 5; x++) {
+                graph.getNodeAccess().setNode(y * 5 + x, 0.001 * y, 0.001 * x);
+                if (x > 0)
+                    GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge(y * 5 + x - 1, y * 5 + x).setDistance(111.2));
+                if (y > 0)
+                    GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge((y - 1) * 5 + x, y * 5 + x).setDistance(111.2));
+            }
+        }
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("!" + accessEnc.getName(), Statement.Op.MULTIPLY, "0"));
+        customModel.addToSpeed(If("true", Statement.Op.LIMIT, speedEnc.getName()));
+        Weighting weighting = CustomModelParser.createWeighting(encodingManager, TurnCostProvider.NO_TURN_COST_PROVIDER, customModel);
+        QueryGraph queryGraph = QueryGraph.create(graph, Collections.emptyList());
+        ShortestPathTree tree = new ShortestPathTree(queryGraph, weighting, false, TraversalMode.NODE_BASED);
+        tree.setTimeLimit(60_000);
+
+        Triangulator.Result result = new GridTriangulator().triangulate(new int[]{12}, queryGraph, tree, l -> l.time, 0);
+        MultiPolygon isochrone = new ContourBuilder(result.triangulation).computeIsoline(30_000, result.seedEdges);
+        assertEquals(1, isochrone.getNumGeometries());
+        // the start node and its neighbours are reachable within 20s, the nodes next to them only within 40s
+        assertTrue(isochrone.contains(geometryFactory.createPoint(new Coordinate(0.002, 0.002))));
+        assertTrue(isochrone.contains(geometryFactory.createPoint(new Coordinate(0.003, 0.002))));
+        assertTrue(isochrone.contains(geometryFactory.createPoint(new Coordinate(0.002, 0.001))));
+        assertFalse(isochrone.contains(geometryFactory.createPoint(new Coordinate(0.004, 0.002))));
+        assertFalse(isochrone.contains(geometryFactory.createPoint(new Coordinate(0.003, 0.003))));
+
+        tree = new ShortestPathTree(queryGraph, weighting, false, TraversalMode.NODE_BASED);
+        tree.setTimeLimit(60_000);
+        result = new GridTriangulator(10, 1).triangulate(new int[]{12}, queryGraph, tree, l -> l.time, 0);
+        // at most 10 cells plus the padding
+        assertTrue(((GridTriangulation) result.triangulation).getColumns() <= 10 + 1 + 2 * 3);
+        isochrone = new ContourBuilder(result.triangulation).computeIsoline(30_000, result.seedEdges);
+        assertTrue(isochrone.contains(geometryFactory.createPoint(new Coordinate(0.002, 0.002))));
+        assertFalse(isochrone.contains(geometryFactory.createPoint(new Coordinate(0.004, 0.002))));
+    }
+}
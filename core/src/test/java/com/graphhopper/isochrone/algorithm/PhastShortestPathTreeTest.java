@@ -0,0 +1,146 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.json.Statement;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.SimpleBooleanEncodedValue;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.TurnCostProvider;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.graphhopper.json.Statement.If;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PhastShortestPathTreeTest {
+    private final BooleanEncodedValue accessEnc = new SimpleBooleanEncodedValue("access", true);
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(accessEnc).add(speedEnc).build();
+    private BaseGraph graph;
+    private Weighting weighting;
+
+    @BeforeEach
+    public void setUp() {
+        graph = new BaseGraph.Builder(encodingManager).create();
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("!" + accessEnc.getName(), Statement.Op.MULTIPLY, "0"));
+        customModel.addToSpeed(If("true", Statement.Op.LIMIT, speedEnc.getName()));
+        weighting = CustomModelParser.createWeighting(encodingManager, TurnCostProvider.NO_TURN_COST_PROVIDER, customModel);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        graph.close();
+    }
+
+    private RoutingCHGraph prepareCH() {
+        CHConfig chConfig = CHConfig.nodeBased("p", weighting);
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+
+    @Test
+    public void sameTreeAsDijkstra() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        // no offset, otherwise traveling via a virtual edge is not the same as taking the original edge
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH();
+        LocationIndexTree index = new LocationIndexTree(graph, graph.getDirectory());
+        index.prepareIndex();
+        PhastShortestPathTree.NodeOrder nodeOrder = PhastShortestPathTree.NodeOrder.of(chGraph);
+        assertSame(nodeOrder, PhastShortestPathTree.NodeOrder.of(chGraph));
+        for (int i = 0; i < 20; i++) {
+            // every fourth search has several start nodes
+            List<Snap> snaps = GHUtility.createRandomSnaps(graph.getBounds(), index, rnd, i % 4 == 3 ? 3 : 1, true, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            boolean reverseFlow = i % 2 == 1;
+            int[] from = snaps.stream().mapToInt(Snap::getClosestNode).toArray();
+
+            Map<Integer, ShortestPathTree.IsoLabel> expected = new HashMap<>();
+            ShortestPathTree spt = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, TraversalMode.NODE_BASED);
+            spt.setTimeLimit(Double.MAX_VALUE);
+            spt.search(from, l -> expected.put(l.node, l));
+
+            Map<Integer, ShortestPathTree.IsoLabel> result = new HashMap<>();
+            PhastShortestPathTree phast = new PhastShortestPathTree(queryGraph, new QueryRoutingCHGraph(chGraph, queryGraph), nodeOrder, reverseFlow);
+            phast.setTimeLimit(Double.MAX_VALUE);
+            phast.search(from, l -> result.put(l.node, l));
+
+            String msg = "seed: " + seed + ", from: " + Arrays.toString(from) + ", reverse: " + reverseFlow;
+            assertEquals(expected.keySet(), result.keySet(), msg);
+            for (ShortestPathTree.IsoLabel e : expected.values()) {
+                ShortestPathTree.IsoLabel r = result.get(e.node);
+                assertEquals(e.weight, r.weight, 1.e-2, msg);
+                assertEquals(e.time, r.time, 10, msg);
+                assertEquals(e.distance, r.distance, 1.e-2, msg);
+                if (e.parent == null) {
+                    assertNull(r.parent, msg);
+                } else {
+                    assertEquals(e.node, queryGraph.getOtherNode(r.edge, r.parent.node), msg);
+                    assertTrue(queryGraph.isAdjacentToNode(r.edge, r.node), msg);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void timeLimit() {
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge(0, 1).setDistance(100));
+        GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge(1, 2).setDistance(100));
+        GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge(2, 3).setDistance(100));
+        GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge(1, 4).setDistance(100));
+        GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge(4, 5).setDistance(100));
+        GHUtility.setSpeed(20, true, true, accessEnc, speedEnc, graph.edge(3, 5).setDistance(300));
+        graph.freeze();
+        PhastShortestPathTree phast = new PhastShortestPathTree(graph, prepareCH(), false);
+        phast.setTimeLimit(40_000);
+        List<ShortestPathTree.IsoLabel> result = new ArrayList<>();
+        phast.search(0, result::add);
+        result.sort(Comparator.comparingInt(l -> l.node));
+        assertArrayEquals(new int[]{0, 1, 2, 4}, result.stream().mapToInt(l -> l.node).toArray());
+        assertArrayEquals(new long[]{0, 18_000, 36_000, 36_000}, result.stream().mapToLong(l -> l.time).toArray());
+        assertArrayEquals(new int[]{3, 5}, phast.getIsochroneEdges().stream().mapToInt(l -> l.node).sorted().toArray());
+    }
+
+}
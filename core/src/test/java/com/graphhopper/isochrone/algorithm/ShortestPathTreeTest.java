@@ -373,6 +373,22 @@ public class ShortestPathTreeTest {
         );
     }
 
+    @Test
+    public void testMultipleStartNodes() {
+        List<ShortestPathTree.IsoLabel> result = new ArrayList<>();
+        ShortestPathTree instance = new ShortestPathTree(graph, createWeighting(), false, TraversalMode.NODE_BASED);
+        instance.setTimeLimit(Double.MAX_VALUE);
+        instance.search(new int[]{0, 3}, result::add);
+        assertEquals(9, result.size());
+        long[] times = new long[9];
+        for (ShortestPathTree.IsoLabel label : result) {
+            times[label.node] = label.time;
+            assertEquals(label.node == 0 || label.node == 3, label.parent == null);
+        }
+        // 5 and 2 are reached faster from 3 via 7 than from 0
+        assertArrayEquals(new long[]{0, 25200, 52200, 0, 9000, 34200, 18000, 25200, 4500}, times);
+    }
+
     EdgeIteratorState findEdge(int a, int b) {
         EdgeIterator edgeIterator = graph.createEdgeExplorer().setBaseNode(a);
         while (edgeIterator.next()) {
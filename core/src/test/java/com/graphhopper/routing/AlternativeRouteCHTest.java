@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.routing.ch.NodeOrderingProvider;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
@@ -116,4 +117,20 @@ public class AlternativeRouteCHTest {
         // 4 -> 11 -> 12 -> 10 is not too long compared to 4 -> 10
     }
 
+    @Test
+    public void testTimeBudget() {
+        BaseGraph g = createTestGraph(em);
+        PMap hints = new PMap();
+        hints.putObject("alternative_route.max_weight_factor", 4);
+        hints.putObject("alternative_route.local_optimality_factor", 0.5);
+        hints.putObject("alternative_route.max_paths", 4);
+        hints.putObject("alternative_route.time_budget_ms", 0);
+        RoutingCHGraph routingCHGraph = prepareCH(g);
+        AlternativeRouteCH altDijkstra = new AlternativeRouteCH(routingCHGraph, hints);
+        List<AlternativeRouteCH.AlternativeInfo> pathInfos = altDijkstra.calcAlternatives(5, 10);
+        // the budget is exceeded before the first via node is evaluated, but we still get the best path
+        assertEquals(1, pathInfos.size());
+        assertEquals(IntArrayList.from(5, 6, 3, 4, 10), pathInfos.get(0).getPath().calcNodes());
+    }
+
 }
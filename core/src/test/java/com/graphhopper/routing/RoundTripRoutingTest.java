@@ -34,6 +34,7 @@ import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.Parameters;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
 import com.graphhopper.util.shapes.GHPoint;
 import org.junit.jupiter.api.Test;
 
@@ -94,6 +95,32 @@ public class RoundTripRoutingTest {
         assertEquals(IntArrayList.from(5, 4, 3, 2, 1, 0), paths.get(1).calcNodes());
     }
 
+    @Test
+    public void testCalcPathsWithSearch_simpleSquareGraph() {
+        BaseGraph g = createSquareGraph();
+        GHPoint start = new GHPoint(1, -1);
+        PMap hints = new PMap();
+        hints.putObject(Parameters.Algorithms.RoundTrip.POINTS, 2);
+        hints.putObject(Parameters.Algorithms.RoundTrip.DISTANCE, 670000);
+        LocationIndex locationIndex = new LocationIndexTree(g, new RAMDirectory()).prepareIndex();
+        Snap startSnap = RoundTripRouting.lookupStart(Collections.singletonList(start), new FiniteWeightFilter(weighting), locationIndex);
+        assertEquals(0, startSnap.getClosestNode());
+
+        QueryGraph queryGraph = QueryGraph.create(g, startSnap);
+        RoundTripRouting.Result result = RoundTripRouting.calcPathsWithSearch(queryGraph, startSnap, new FlexiblePathCalculator(queryGraph,
+                        new RoutingAlgorithmFactorySimple(), weighting, new AlgorithmOptions().setAlgorithm(DIJKSTRA_BI).setTraversalMode(tMode)),
+                tMode, Integer.MAX_VALUE, new RoundTripRouting.Params(hints, 180.0, 3));
+        // the turnaround point 6 is found by the search, the way back avoids the edges of the way there
+        assertEquals(2, result.paths.size());
+        assertEquals(IntArrayList.from(0, 7, 6), result.paths.get(0).calcNodes());
+        assertEquals(IntArrayList.from(6, 5, 4, 3, 2, 1, 0), result.paths.get(1).calcNodes());
+        assertEquals(3, result.wayPoints.size());
+
+        assertThrows(MaximumNodesExceededException.class, () -> RoundTripRouting.calcPathsWithSearch(queryGraph, startSnap,
+                new FlexiblePathCalculator(queryGraph, new RoutingAlgorithmFactorySimple(), weighting, new AlgorithmOptions().setAlgorithm(DIJKSTRA_BI).setTraversalMode(tMode)),
+                tMode, 3, new RoundTripRouting.Params(hints, 180.0, 3)));
+    }
+
     @Test
     public void testCalcRoundTrip() {
         BaseGraph g = createTestGraph();
@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.ev.RSSceneryForest;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScenicRouteSearchTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final IntEncodedValue forestEnc = RSSceneryForest.create();
+    private final EncodingManager em = EncodingManager.start().add(speedEnc).add(forestEnc).build();
+    private final Weighting weighting = new SpeedWeighting(speedEnc);
+
+    @Test
+    public void testDetourLimit() {
+        // 0 - 1 - 2 is the fastest route, 0 - 3 - 2 is 20% and 0 - 4 - 2 is 100% longer but both go through a forest
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(1000).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(1000).set(speedEnc, 10, 10);
+        graph.edge(0, 3).setDistance(1200).set(speedEnc, 10, 10).set(forestEnc, 3);
+        graph.edge(3, 2).setDistance(1200).set(speedEnc, 10, 10).set(forestEnc, 3);
+        graph.edge(0, 4).setDistance(2000).set(speedEnc, 10, 10).set(forestEnc, 3);
+        graph.edge(4, 2).setDistance(2000).set(speedEnc, 10, 10).set(forestEnc, 3);
+        assertTrue(ScenicScore.isAvailable(em));
+        ScenicScore scenicScore = new ScenicScore(graph, em);
+
+        ScenicRouteSearch search = new ScenicRouteSearch(graph, weighting, scenicScore).setMaxDetourFactor(1);
+        Path path = search.calcPath(0, 2);
+        assertTrue(path.isFound());
+        assertEquals(IntArrayList.from(0, 1, 2), path.calcNodes());
+        assertEquals(0, search.getScore(), 1.e-6);
+
+        search.setMaxDetourFactor(1.5);
+        path = search.calcPath(0, 2);
+        assertEquals(IntArrayList.from(0, 3, 2), path.calcNodes());
+        assertEquals(2400, path.getDistance(), 1.e-6);
+        assertEquals(3 * 2.4, search.getScore(), 1.e-6);
+
+        search.setMaxDetourFactor(2.5);
+        path = search.calcPath(0, 2);
+        assertEquals(IntArrayList.from(0, 4, 2), path.calcNodes());
+        assertEquals(3 * 4, search.getScore(), 1.e-6);
+    }
+
+    @Test
+    public void testNoLoops() {
+        // the forest loop 1 - 3 - 4 - 1 must not be used even though the detour limit would allow it
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(1000).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(1000).set(speedEnc, 10, 10);
+        graph.edge(1, 3).setDistance(300).set(speedEnc, 10, 10).set(forestEnc, 3);
+        graph.edge(3, 4).setDistance(300).set(speedEnc, 10, 10).set(forestEnc, 3);
+        graph.edge(4, 1).setDistance(300).set(speedEnc, 10, 10).set(forestEnc, 3);
+        ScenicRouteSearch search = new ScenicRouteSearch(graph, weighting, new ScenicScore(graph, em)).setMaxDetourFactor(2);
+        Path path = search.calcPath(0, 2);
+        assertEquals(IntArrayList.from(0, 1, 2), path.calcNodes());
+    }
+
+    @Test
+    public void testNoLoopsOnLongRoutes() {
+        // the one-way forest edge 150 -> 10 closes a loop far back on the route, which would collect score on the way
+        // back to 150
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        for (int node = 0; node < 200; node++)
+            graph.edge(node, node + 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(150, 10).setDistance(100).set(speedEnc, 10, 0).set(forestEnc, 3);
+        // a real detour through the forest that does not visit a node twice
+        graph.edge(160, 201).setDistance(600).set(speedEnc, 10, 10).set(forestEnc, 3);
+        graph.edge(201, 170).setDistance(600).set(speedEnc, 10, 10).set(forestEnc, 3);
+        ScenicRouteSearch search = new ScenicRouteSearch(graph, weighting, new ScenicScore(graph, em)).setMaxDetourFactor(2);
+        Path path = search.calcPath(0, 200);
+        assertTrue(path.isFound());
+        IntIndexedContainer nodes = path.calcNodes();
+        assertEquals(nodes.size(), new IntHashSet(nodes).size(), "route must not contain loops: " + nodes);
+        assertTrue(nodes.contains(201));
+        assertEquals(3 * 1.2, search.getScore(), 1.e-6);
+    }
+
+    @Test
+    public void testTurnCosts() {
+        // 0 - 1 dominates 0 - 2 - 1 at node 1, but the turn 0 - 1 - 3 is forbidden
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        IntEncodedValue forestEnc = RSSceneryForest.create();
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 1);
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(forestEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        EdgeIteratorState edge01 = graph.edge(0, 1).setDistance(1000).set(speedEnc, 10, 10).set(forestEnc, 3);
+        graph.edge(0, 2).setDistance(500).set(speedEnc, 10, 10);
+        graph.edge(2, 1).setDistance(600).set(speedEnc, 10, 10);
+        EdgeIteratorState edge13 = graph.edge(1, 3).setDistance(1000).set(speedEnc, 10, 10);
+        graph.getTurnCostStorage().set(turnCostEnc, edge01.getEdge(), 1, edge13.getEdge(), Double.POSITIVE_INFINITY);
+        Weighting weighting = new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), Double.POSITIVE_INFINITY);
+        ScenicRouteSearch search = new ScenicRouteSearch(graph, weighting, new ScenicScore(graph, em)).setMaxDetourFactor(1.5);
+        Path path = search.calcPath(0, 3);
+        assertTrue(path.isFound());
+        assertEquals(IntArrayList.from(0, 2, 1, 3), path.calcNodes());
+    }
+
+    @Test
+    public void testNotFound() {
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(1000).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(1000).set(speedEnc, 10, 10);
+        ScenicRouteSearch search = new ScenicRouteSearch(graph, weighting, new ScenicScore(graph, em));
+        assertFalse(search.calcPath(0, 3).isFound());
+    }
+}
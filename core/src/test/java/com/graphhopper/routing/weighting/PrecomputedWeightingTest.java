@@ -0,0 +1,105 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.EnumEncodedValue;
+import com.graphhopper.routing.ev.RoadClass;
+import com.graphhopper.routing.ev.VehicleAccess;
+import com.graphhopper.routing.ev.VehicleSpeed;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.routing.weighting.custom.CustomWeightingClassStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrecomputedWeightingTest {
+
+    @Test
+    void sameWeightsAsWrappedWeighting() {
+        DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        EncodingManager em = new EncodingManager.Builder().add(VehicleAccess.create("car")).add(speedEnc).add(RoadClass.create()).build();
+        EnumEncodedValue<RoadClass> roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        EdgeIteratorState edge0 = graph.edge(0, 1).setDistance(1000).set(speedEnc, 50, 100).set(roadClassEnc, RoadClass.PRIMARY);
+        EdgeIteratorState edge1 = graph.edge(1, 2).setDistance(500).set(speedEnc, 60, 0).set(roadClassEnc, RoadClass.SECONDARY);
+        EdgeIteratorState edge2 = graph.edge(3, 2).setDistance(250).set(speedEnc, 20, 20).set(roadClassEnc, RoadClass.SECONDARY);
+
+        CustomModel customModel = new CustomModel().setDistanceInfluence(70d);
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        customModel.addToPriority(If("road_class == SECONDARY", MULTIPLY, "0.5"));
+        Weighting weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel);
+        PrecomputedWeightStorage storage = new PrecomputedWeightStorage(new RAMDirectory(), "car", graph.getEdges(), 1).
+                calculate(graph, weighting);
+        Weighting precomputed = new PrecomputedWeighting(weighting, storage);
+
+        // an edge that was added later, e.g. a virtual edge, is evaluated by the wrapped weighting
+        EdgeIteratorState edge3 = graph.edge(3, 4).setDistance(100).set(speedEnc, 30, 30).set(roadClassEnc, RoadClass.PRIMARY);
+        double[] weights = new double[2];
+        for (EdgeIteratorState edge : Arrays.asList(edge0, edge1, edge2, edge3, edge0.detach(true), edge1.detach(true), edge3.detach(true))) {
+            for (boolean reverse : new boolean[]{false, true}) {
+                assertEquals(weighting.calcEdgeWeight(edge, reverse), precomputed.calcEdgeWeight(edge, reverse), 1.e-4);
+                assertEquals(weighting.calcEdgeMillis(edge, reverse), precomputed.calcEdgeMillis(edge, reverse));
+            }
+            precomputed.calcEdgeWeights(edge, weights);
+            assertEquals(weighting.calcEdgeWeight(edge, false), weights[0], 1.e-4);
+            assertEquals(weighting.calcEdgeWeight(edge, true), weights[1], 1.e-4);
+        }
+        assertEquals(Double.POSITIVE_INFINITY, precomputed.calcEdgeWeight(edge1, true));
+        assertEquals(Double.POSITIVE_INFINITY, precomputed.calcEdgeWeight(edge1.detach(true), false));
+    }
+
+    @Test
+    void loadOnlyWithSameChecksum(@TempDir Path location) {
+        DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        EncodingManager em = new EncodingManager.Builder().add(VehicleAccess.create("car")).add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(1000).set(speedEnc, 50, 100);
+        CustomModel customModel = new CustomModel().setDistanceInfluence(70d);
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        long checksum = PrecomputedWeightStorage.createChecksum(CustomWeightingClassStorage.createKey(customModel, em));
+
+        // the same custom model with a different speed encoded value must not load the stored weights
+        EncodingManager otherEm = new EncodingManager.Builder().add(VehicleAccess.create("car")).add(VehicleSpeed.create("car", 7, 2, true)).build();
+        long otherChecksum = PrecomputedWeightStorage.createChecksum(CustomWeightingClassStorage.createKey(customModel, otherEm));
+        assertNotEquals(checksum, otherChecksum);
+
+        PrecomputedWeightStorage storage = new PrecomputedWeightStorage(new RAMDirectory(location.toString(), true), "car", graph.getEdges(), checksum).
+                calculate(graph, CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel));
+        storage.flush();
+        storage.close();
+        assertTrue(new PrecomputedWeightStorage(new RAMDirectory(location.toString(), true), "car", graph.getEdges(), checksum).loadExisting());
+        assertFalse(new PrecomputedWeightStorage(new RAMDirectory(location.toString(), true), "car", graph.getEdges(), otherChecksum).loadExisting());
+        // both halves of the checksum are compared
+        assertFalse(new PrecomputedWeightStorage(new RAMDirectory(location.toString(), true), "car", graph.getEdges(), checksum ^ 1).loadExisting());
+        assertFalse(new PrecomputedWeightStorage(new RAMDirectory(location.toString(), true), "car", graph.getEdges(), checksum ^ (1L << 40)).loadExisting());
+    }
+}
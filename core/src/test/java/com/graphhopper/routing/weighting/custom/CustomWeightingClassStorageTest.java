@@ -0,0 +1,130 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomWeightingClassStorageTest {
+    EncodingManager encodingManager;
+    DecimalEncodedValue avgSpeedEnc;
+
+    @BeforeEach
+    void setup() {
+        avgSpeedEnc = VehicleSpeed.create("car", 5, 5, false);
+        encodingManager = new EncodingManager.Builder().add(VehicleAccess.create("car")).add(avgSpeedEnc).add(RoadClass.create()).build();
+    }
+
+    @Test
+    void storeAndLoad(@TempDir Path path) {
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.5"));
+        customModel.addToSpeed(If("true", LIMIT, avgSpeedEnc.getName()));
+
+        GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        assertFalse(new CustomWeightingClassStorage(dir, true).loadOrCompile("car", customModel, encodingManager));
+        // the second time the class is loaded from disk
+        dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        assertTrue(new CustomWeightingClassStorage(dir, true).loadOrCompile("car", customModel, encodingManager));
+
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(10).set(avgSpeedEnc, 60);
+        edge.set(encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class), RoadClass.PRIMARY);
+        CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(customModel, encodingManager);
+        assertEquals(0.5, parameters.getEdgeToPriorityMapping().get(edge, false), 1.e-6);
+        assertEquals(60, parameters.getEdgeToSpeedMapping().get(edge, false), 1.e-6);
+
+        // the same custom model must be compiled again if the encoded values changed
+        DecimalEncodedValue otherSpeedEnc = VehicleSpeed.create("car", 7, 2, false);
+        EncodingManager otherEncodingManager = new EncodingManager.Builder().add(VehicleAccess.create("car")).add(otherSpeedEnc).add(RoadClass.create()).build();
+        dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        assertFalse(new CustomWeightingClassStorage(dir, true).loadOrCompile("car", customModel, otherEncodingManager));
+        dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        assertTrue(new CustomWeightingClassStorage(dir, true).loadOrCompile("car", customModel, otherEncodingManager));
+
+        // a changed custom model must be compiled again
+        customModel.addToPriority(If("road_class == SECONDARY", MULTIPLY, "0.7"));
+        dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        assertFalse(new CustomWeightingClassStorage(dir, true).loadOrCompile("car", customModel, otherEncodingManager));
+    }
+
+    @Test
+    void noWrites(@TempDir Path path) {
+        CustomModel customModel = new CustomModel().setDistanceInfluence(70d);
+        customModel.addToSpeed(If("true", LIMIT, "50"));
+        GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        assertFalse(new CustomWeightingClassStorage(dir, false).loadOrCompile("car", customModel, encodingManager));
+        // nothing was stored
+        dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        assertFalse(new CustomWeightingClassStorage(dir, false).loadOrCompile("car", customModel, encodingManager));
+    }
+
+    @Test
+    void cacheEvictsLeastRecentlyUsed() {
+        CustomWeightingClassCache cache = new CustomWeightingClassCache(2, 1);
+        cache.put("a", String.class);
+        cache.put("b", Integer.class);
+        assertEquals(String.class, cache.get("a"));
+        cache.put("c", Long.class);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(String.class, cache.get("a"));
+        assertEquals(Long.class, cache.get("c"));
+    }
+
+    @Test
+    void cacheCreatesClassOnlyOnce() throws InterruptedException {
+        CustomWeightingClassCache cache = new CustomWeightingClassCache(10, 4);
+        AtomicInteger counter = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> cache.computeIfAbsent("key", k -> {
+                counter.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return String.class;
+            }));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, counter.get());
+        assertEquals(String.class, cache.get("key"));
+    }
+}
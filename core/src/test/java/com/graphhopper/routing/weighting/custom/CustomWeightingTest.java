@@ -15,6 +15,8 @@ import com.graphhopper.util.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+
 import static com.graphhopper.json.Statement.*;
 import static com.graphhopper.json.Statement.Op.LIMIT;
 import static com.graphhopper.json.Statement.Op.MULTIPLY;
@@ -76,6 +78,23 @@ class CustomWeightingTest {
         assertEquals(36, weighting.calcEdgeWeight(edge, true), 1.e-6);
     }
 
+    @Test
+    public void calcEdgeWeightsForBothDirections() {
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(1000).set(avSpeedEnc, 50, 100).set(roadClassEnc, SECONDARY);
+        EdgeIteratorState blocked = graph.edge(1, 2).setDistance(1000).set(avSpeedEnc, 50, 0).set(roadClassEnc, PRIMARY);
+        Weighting weighting = createWeighting(createSpeedCustomModel(avSpeedEnc).setDistanceInfluence(70d)
+                .addToPriority(If("road_class == SECONDARY", MULTIPLY, "0.5")));
+        double[] weights = new double[2];
+        weighting.calcEdgeWeights(edge, weights);
+        assertEquals(2 * 72 + 70, weights[0], 1.e-6);
+        assertEquals(2 * 36 + 70, weights[1], 1.e-6);
+        for (EdgeIteratorState e : Arrays.asList(edge, blocked, edge.detach(true), blocked.detach(true))) {
+            weighting.calcEdgeWeights(e, weights);
+            assertEquals(weighting.calcEdgeWeight(e, false), weights[0], 1.e-6);
+            assertEquals(weighting.calcEdgeWeight(e, true), weights[1], 1.e-6);
+        }
+    }
+
     @Test
     public void withPriority() {
         // 25km/h -> 144s per km, 50km/h -> 72s per km, 100km/h -> 36s per km
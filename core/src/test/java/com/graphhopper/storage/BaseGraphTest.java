@@ -27,6 +27,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -407,4 +408,98 @@ public class BaseGraphTest extends AbstractGraphStorageTester {
         assertThrows(IllegalArgumentException.class, () -> ne.setGeoRef(0, 1L << 39));
         graph.close();
     }
+
+    @Test
+    public void testAppendWayGeometry() {
+        BaseGraph graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 20, 1);
+        EdgeIteratorState edge = graph.edge(0, 1).setWayGeometry(Helper.createPointList3D(1.5, 1, 0, 2, 3, 0));
+        assertAppendedGeometry(edge, TOWER_ONLY, 10, 10, 0, 11, 20, 1);
+        assertAppendedGeometry(edge, PILLAR_ONLY, 1.5, 1, 0, 2, 3, 0);
+        assertAppendedGeometry(edge, BASE_AND_PILLAR, 10, 10, 0, 1.5, 1, 0, 2, 3, 0);
+        assertAppendedGeometry(edge, PILLAR_AND_ADJ, 1.5, 1, 0, 2, 3, 0, 11, 20, 1);
+        assertAppendedGeometry(edge, ALL, 10, 10, 0, 1.5, 1, 0, 2, 3, 0, 11, 20, 1);
+
+        EdgeIteratorState reverse = edge.detach(true);
+        assertAppendedGeometry(reverse, TOWER_ONLY, 11, 20, 1, 10, 10, 0);
+        assertAppendedGeometry(reverse, PILLAR_ONLY, 2, 3, 0, 1.5, 1, 0);
+        assertAppendedGeometry(reverse, BASE_AND_PILLAR, 11, 20, 1, 2, 3, 0, 1.5, 1, 0);
+        assertAppendedGeometry(reverse, PILLAR_AND_ADJ, 2, 3, 0, 1.5, 1, 0, 10, 10, 0);
+        assertAppendedGeometry(reverse, ALL, 11, 20, 1, 2, 3, 0, 1.5, 1, 0, 10, 10, 0);
+
+        // an edge without pillar nodes
+        EdgeIteratorState straight = graph.edge(1, 0);
+        assertAppendedGeometry(straight, PILLAR_ONLY);
+        assertAppendedGeometry(straight, BASE_AND_PILLAR, 11, 20, 1);
+        assertAppendedGeometry(straight, PILLAR_AND_ADJ, 10, 10, 0);
+        assertAppendedGeometry(straight, ALL, 11, 20, 1, 10, 10, 0);
+
+        // a 2D list can be used to collect the geometry of a 3D graph
+        PointList points2D = new PointList();
+        edge.appendWayGeometry(ALL, points2D);
+        assertEquals(Helper.createPointList(10, 10, 1.5, 1, 2, 3, 11, 20), points2D);
+        graph.close();
+    }
+
+    @Test
+    public void testAppendWayGeometryAcrossSegments() {
+        BaseGraph graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 20, 1);
+        double[] base = {10, 10, 0}, adj = {11, 20, 1};
+        // createGHStorage uses the smallest segment size of 128 bytes and the geometry of every edge needs 3 + 8 * 11
+        // bytes. So the geometries of these edges cross the segment boundaries of the geometry DataAccess at different
+        // positions, and some coordinates are split between two segments.
+        int pillars = 8;
+        for (int e = 0; e < 8; e++) {
+            double[] pillarCoords = new double[3 * pillars];
+            double[] reverseCoords = new double[3 * pillars];
+            for (int i = 0; i < pillars; i++) {
+                pillarCoords[3 * i] = reverseCoords[3 * (pillars - 1 - i)] = 10 + e * 0.1 + i * 0.01;
+                pillarCoords[3 * i + 1] = reverseCoords[3 * (pillars - 1 - i) + 1] = 10 + i * 0.3;
+                pillarCoords[3 * i + 2] = reverseCoords[3 * (pillars - 1 - i) + 2] = e + i;
+            }
+            EdgeIteratorState edge = graph.edge(0, 1).setWayGeometry(Helper.createPointList3D(pillarCoords));
+            assertAppendedGeometry(edge, TOWER_ONLY, concat(base, adj));
+            assertAppendedGeometry(edge, PILLAR_ONLY, pillarCoords);
+            assertAppendedGeometry(edge, BASE_AND_PILLAR, concat(base, pillarCoords));
+            assertAppendedGeometry(edge, PILLAR_AND_ADJ, concat(pillarCoords, adj));
+            assertAppendedGeometry(edge, ALL, concat(base, pillarCoords, adj));
+
+            EdgeIteratorState reverse = edge.detach(true);
+            assertAppendedGeometry(reverse, TOWER_ONLY, concat(adj, base));
+            assertAppendedGeometry(reverse, PILLAR_ONLY, reverseCoords);
+            assertAppendedGeometry(reverse, BASE_AND_PILLAR, concat(adj, reverseCoords));
+            assertAppendedGeometry(reverse, PILLAR_AND_ADJ, concat(reverseCoords, base));
+            assertAppendedGeometry(reverse, ALL, concat(adj, reverseCoords, base));
+        }
+        graph.close();
+    }
+
+    private static double[] concat(double[]... arrays) {
+        double[] result = new double[Arrays.stream(arrays).mapToInt(a -> a.length).sum()];
+        int offset = 0;
+        for (double[] array : arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+        return result;
+    }
+
+    /**
+     * @param expected the lat, lon and ele of the expected points
+     */
+    private static void assertAppendedGeometry(EdgeIteratorState edge, FetchMode mode, double... expected) {
+        // append to a non-empty list to make sure the existing points are kept
+        PointList points = Helper.createPointList3D(5, 5, 5);
+        edge.appendWayGeometry(mode, points);
+        double[] withExisting = new double[expected.length + 3];
+        withExisting[0] = withExisting[1] = withExisting[2] = 5;
+        System.arraycopy(expected, 0, withExisting, 3, expected.length);
+        assertEquals(Helper.createPointList3D(withExisting), points, mode.toString());
+        assertEquals(Helper.createPointList3D(expected), edge.fetchWayGeometry(mode), mode.toString());
+    }
 }
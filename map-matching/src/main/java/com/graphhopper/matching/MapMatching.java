@@ -21,7 +21,6 @@ import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.AStarBidirection;
-import com.graphhopper.routing.DijkstraBidirectionRef;
 import com.graphhopper.routing.Path;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
@@ -42,6 +41,10 @@ import com.graphhopper.util.shapes.BBox;
 import org.locationtech.jts.geom.Envelope;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -66,6 +69,11 @@ import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
  * @author kodonnell
  */
 public class MapMatching {
+    // shorter tracks are matched in the calling thread, for them the executor would not pay off
+    static final int PARALLEL_MIN_TIME_STEPS = 50;
+    // the transitions are calculated for this many time steps at once, which limits the tasks a single track puts into
+    // the executor and the transitions that are calculated before the Viterbi algorithm needs them
+    static final int PARALLEL_BATCH_TIME_STEPS = 16;
     private final BaseGraph graph;
     private final Router router;
     private final LocationIndexTree locationIndex;
@@ -73,6 +81,7 @@ public class MapMatching {
     private double transitionProbabilityBeta = 2.0;
     private final DistanceCalc distanceCalc = new DistancePlaneProjection();
     private QueryGraph queryGraph;
+    private ExecutorService executor;
 
     private Map<String, Object> statistics = new HashMap<>();
 
@@ -132,6 +141,13 @@ public class MapMatching {
             @Override
             public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
                 assert (toNodes.length == toInEdges.length);
+                if (landmarks == null) {
+                    // without landmarks a single search to all candidates of the next time step is faster than one
+                    // bidirectional search per candidate
+                    OneToManyDijkstra dijkstra = new OneToManyDijkstra(queryGraph, queryGraph.wrapWeighting(weighting));
+                    dijkstra.setMaxVisitedNodes(maxVisitedNodes);
+                    return dijkstra.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+                }
                 List<Path> result = new ArrayList<>();
                 for (int i = 0; i < toNodes.length; i++) {
                     result.add(calcOnePath(queryGraph, fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
@@ -141,28 +157,17 @@ public class MapMatching {
 
             private Path calcOnePath(QueryGraph queryGraph, int fromNode, int toNode, int fromOutEdge, int toInEdge) {
                 Weighting queryGraphWeighting = queryGraph.wrapWeighting(weighting);
-                if (landmarks != null) {
-                    AStarBidirection aStarBidirection = new AStarBidirection(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
-                        @Override
-                        protected void initCollections(int size) {
-                            super.initCollections(50);
-                        }
-                    };
-                    int activeLM = Math.min(8, landmarks.getLandmarkCount());
-                    LMApproximator lmApproximator = LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarks, activeLM);
-                    aStarBidirection.setApproximation(lmApproximator);
-                    aStarBidirection.setMaxVisitedNodes(maxVisitedNodes);
-                    return aStarBidirection.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
-                } else {
-                    DijkstraBidirectionRef dijkstraBidirectionRef = new DijkstraBidirectionRef(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
-                        @Override
-                        protected void initCollections(int size) {
-                            super.initCollections(50);
-                        }
-                    };
-                    dijkstraBidirectionRef.setMaxVisitedNodes(maxVisitedNodes);
-                    return dijkstraBidirectionRef.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
-                }
+                AStarBidirection aStarBidirection = new AStarBidirection(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
+                    @Override
+                    protected void initCollections(int size) {
+                        super.initCollections(50);
+                    }
+                };
+                int activeLM = Math.min(8, landmarks.getLandmarkCount());
+                LMApproximator lmApproximator = LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarks, activeLM);
+                aStarBidirection.setApproximation(lmApproximator);
+                aStarBidirection.setMaxVisitedNodes(maxVisitedNodes);
+                return aStarBidirection.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
             }
 
             @Override
@@ -195,6 +200,18 @@ public class MapMatching {
         this.measurementErrorSigma = measurementErrorSigma;
     }
 
+    /**
+     * If an executor is set the transitions between the candidates of consecutive observations of long tracks are
+     * calculated in parallel. They are calculated in batches of a few time steps when the Viterbi algorithm reaches
+     * them, so a single track does not occupy the executor with all of its transitions at once. This reduces the
+     * latency for long tracks, but it can calculate transitions that the Viterbi algorithm would skip. The Router must
+     * be thread-safe, which is the case for the Router of {@link #routerFromGraphHopper}. The tasks of the executor
+     * must not wait for this map matching.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     public MatchResult match(List<Observation> observations) {
         List<Observation> filteredObservations = filterObservations(observations);
         statistics.put("filteredObservations", filteredObservations.size());
@@ -335,40 +352,46 @@ public class MapMatching {
         final List<ObservationWithCandidateStates> timeSteps = new ArrayList<>();
         for (int i = 0; i < filteredObservations.size(); i++) {
             Observation observation = filteredObservations.get(i);
-            Collection<Snap> splits = splitsPerObservation.get(i);
-            List<State> candidates = new ArrayList<>();
-            for (Snap split : splits) {
-                if (queryGraph.isVirtualNode(split.getClosestNode())) {
-                    List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
-                    EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
-                    while (iter.next()) {
-                        if (!queryGraph.isVirtualEdge(iter.getEdge())) {
-                            throw new RuntimeException("Virtual nodes must only have virtual edges "
-                                    + "to adjacent nodes.");
-                        }
-                        virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
-                    }
-                    if (virtualEdges.size() != 2) {
-                        throw new RuntimeException("Each virtual node must have exactly 2 "
-                                + "virtual edges (reverse virtual edges are not returned by the "
-                                + "EdgeIterator");
-                    }
+            timeSteps.add(new ObservationWithCandidateStates(observation, createCandidates(queryGraph, observation, splitsPerObservation.get(i))));
+        }
+        return timeSteps;
+    }
 
-                    // Create a directed candidate for each of the two possible directions through
-                    // the virtual node. We need to add candidates for both directions because
-                    // we don't know yet which is the correct one. This will be figured
-                    // out by the Viterbi algorithm.
-                    candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
-                    candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
-                } else {
-                    // Create an undirected candidate for the real node.
-                    candidates.add(new State(observation, split));
+    /**
+     * Creates two directed candidates for every Snap on a virtual node and one undirected candidate for every Snap on
+     * a real node. The candidates are always created in the same order for the same Snaps.
+     */
+    static List<State> createCandidates(QueryGraph queryGraph, Observation observation, Collection<Snap> splits) {
+        List<State> candidates = new ArrayList<>();
+        for (Snap split : splits) {
+            if (queryGraph.isVirtualNode(split.getClosestNode())) {
+                List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
+                EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
+                while (iter.next()) {
+                    if (!queryGraph.isVirtualEdge(iter.getEdge())) {
+                        throw new RuntimeException("Virtual nodes must only have virtual edges "
+                                + "to adjacent nodes.");
+                    }
+                    virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
+                }
+                if (virtualEdges.size() != 2) {
+                    throw new RuntimeException("Each virtual node must have exactly 2 "
+                            + "virtual edges (reverse virtual edges are not returned by the "
+                            + "EdgeIterator");
                 }
-            }
 
-            timeSteps.add(new ObservationWithCandidateStates(observation, candidates));
+                // Create a directed candidate for each of the two possible directions through
+                // the virtual node. We need to add candidates for both directions because
+                // we don't know yet which is the correct one. This will be figured
+                // out by the Viterbi algorithm.
+                candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
+                candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
+            } else {
+                // Create an undirected candidate for the real node.
+                candidates.add(new State(observation, split));
+            }
         }
-        return timeSteps;
+        return candidates;
     }
 
     static class Label {
@@ -388,6 +411,7 @@ public class MapMatching {
         final Map<State, Label> labels = new HashMap<>();
         Map<Transition<State>, Path> roadPaths = new HashMap<>();
 
+        ParallelTransitions parallelTransitions = executor == null || timeSteps.size() < PARALLEL_MIN_TIME_STEPS ? null : new ParallelTransitions(timeSteps);
         PriorityQueue<Label> q = new PriorityQueue<>(Comparator.comparing(qe -> qe.minusLogProbability));
         for (State candidate : timeSteps.get(0).candidates) {
             // distance from observation to road in meters
@@ -411,11 +435,7 @@ public class MapMatching {
             final double linearDistance = distanceCalc.calcDist(timeStep.observation.getPoint().lat, timeStep.observation.getPoint().lon,
                     nextTimeStep.observation.getPoint().lat, nextTimeStep.observation.getPoint().lon)
                     + nextTimeStep.observation.getAccumulatedLinearDistanceToPrevious();
-            int fromNode = from.getSnap().getClosestNode();
-            int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
-            int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
-            int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
-            List<Path> paths = router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+            List<Path> paths = parallelTransitions == null ? calcTransitionPaths(from, nextTimeStep) : parallelTransitions.get(from, qe.timeStep);
             for (int i = 0; i < nextTimeStep.candidates.size(); i++) {
                 State to = nextTimeStep.candidates.get(i);
                 Path path = paths.get(i);
@@ -455,6 +475,65 @@ public class MapMatching {
         return result;
     }
 
+    private List<Path> calcTransitionPaths(State from, ObservationWithCandidateStates nextTimeStep) {
+        int fromNode = from.getSnap().getClosestNode();
+        int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+        int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
+        int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+        return router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+    }
+
+    /**
+     * The transitions of a candidate only depend on the candidates of the next time step, so they can be calculated
+     * independently. The Viterbi algorithm reaches the time steps roughly in order, so the transitions are calculated
+     * for the next {@link #PARALLEL_BATCH_TIME_STEPS} time steps whenever it reaches a time step that was not
+     * calculated yet.
+     */
+    private class ParallelTransitions {
+        private final List<ObservationWithCandidateStates> timeSteps;
+        private final Map<State, List<Path>> paths = new HashMap<>();
+        // the transitions from the candidates of all time steps before this one were calculated
+        private int calculatedUntil;
+
+        ParallelTransitions(List<ObservationWithCandidateStates> timeSteps) {
+            this.timeSteps = timeSteps;
+        }
+
+        List<Path> get(State from, int timeStep) {
+            while (timeStep >= calculatedUntil)
+                calcBatch();
+            // the stored paths are only needed once, the found paths are kept by the Viterbi algorithm
+            List<Path> result = paths.remove(from);
+            return result == null ? calcTransitionPaths(from, timeSteps.get(timeStep + 1)) : result;
+        }
+
+        private void calcBatch() {
+            int end = Math.min(calculatedUntil + PARALLEL_BATCH_TIME_STEPS, timeSteps.size() - 1);
+            List<State> froms = new ArrayList<>();
+            List<Callable<List<Path>>> tasks = new ArrayList<>();
+            for (int i = calculatedUntil; i < end; i++) {
+                ObservationWithCandidateStates nextTimeStep = timeSteps.get(i + 1);
+                for (State from : timeSteps.get(i).candidates) {
+                    froms.add(from);
+                    tasks.add(() -> calcTransitionPaths(from, nextTimeStep));
+                }
+            }
+            calculatedUntil = end;
+            try {
+                List<Future<List<Path>>> futures = executor.invokeAll(tasks);
+                for (int i = 0; i < froms.size(); i++)
+                    paths.put(froms.get(i), futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
     private List<EdgeMatch> prepareEdgeMatches(List<SequenceState<State, Observation, Path>> seq) {
         // This creates a list of directed edges (EdgeIteratorState instances turned the right way),
         // each associated with 0 or more of the observations.
@@ -527,13 +606,17 @@ public class MapMatching {
         }
     }
 
-    private boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
+    static boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
         return edge1.getEdge() == edge2.getEdge()
                 && edge1.getBaseNode() == edge2.getBaseNode()
                 && edge1.getAdjNode() == edge2.getAdjNode();
     }
 
     private EdgeIteratorState resolveToRealEdge(EdgeIteratorState edgeIteratorState) {
+        return resolveToRealEdge(graph, queryGraph, edgeIteratorState);
+    }
+
+    static EdgeIteratorState resolveToRealEdge(BaseGraph graph, QueryGraph queryGraph, EdgeIteratorState edgeIteratorState) {
         if (queryGraph.isVirtualNode(edgeIteratorState.getBaseNode()) || queryGraph.isVirtualNode(edgeIteratorState.getAdjNode())) {
             return graph.getEdgeIteratorStateForKey(((VirtualEdgeIteratorState) edgeIteratorState).getOriginalEdgeKey());
         } else {
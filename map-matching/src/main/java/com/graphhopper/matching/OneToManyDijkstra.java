@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathExtractor;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * An edge-based Dijkstra that calculates the paths from one candidate to all candidates of the next time step in a
+ * single search, instead of one bidirectional search per pair of candidates. The search stops as soon as all targets
+ * are settled. Like for the bidirectional algorithms the start and target edges can be restricted, which map matching
+ * uses to prevent u-turns at the candidates.
+ */
+class OneToManyDijkstra extends Dijkstra {
+    private int fromOutEdge = ANY_EDGE;
+    private int[] toNodes;
+    private int[] toInEdges;
+    private SPTEntry[] targetEntries;
+    private int remainingTargets;
+
+    OneToManyDijkstra(Graph graph, Weighting weighting) {
+        super(graph, weighting, TraversalMode.EDGE_BASED);
+    }
+
+    @Override
+    protected void initCollections(int size) {
+        // the targets are usually close to the start
+        super.initCollections(50);
+    }
+
+    /**
+     * @return one path per target, it is not found if the target could not be reached
+     */
+    List<Path> calcPaths(int from, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+        if (toNodes.length != toInEdges.length)
+            throw new IllegalArgumentException("toNodes and toInEdges must have the same length");
+        checkAlreadyRun();
+        setupFinishTime();
+        this.fromOutEdge = fromOutEdge;
+        this.toNodes = toNodes;
+        this.toInEdges = toInEdges;
+        targetEntries = new SPTEntry[toNodes.length];
+        remainingTargets = toNodes.length;
+        for (int i = 0; i < toNodes.length; i++) {
+            // A candidate on the wrong side of a one-way road can never be reached. The bidirectional search notices
+            // this immediately, but we would have to explore the entire graph to find out.
+            if (toInEdges[i] != ANY_EDGE && Double.isInfinite(weighting.calcEdgeWeight(graph.getEdgeIteratorState(toInEdges[i], toNodes[i]), false)))
+                remainingTargets--;
+        }
+        if (remainingTargets > 0) {
+            fromHeap.add(new SPTEntry(from, 0));
+            runAlgo();
+        }
+        List<Path> paths = new ArrayList<>(toNodes.length);
+        for (SPTEntry entry : targetEntries)
+            paths.add(entry == null ? createEmptyPath() : PathExtractor.extractPath(graph, weighting, entry));
+        return paths;
+    }
+
+    @Override
+    protected boolean accept(EdgeIteratorState iter, int prevOrNextEdgeId) {
+        if (prevOrNextEdgeId == NO_EDGE && fromOutEdge != ANY_EDGE && iter.getEdge() != fromOutEdge)
+            return false;
+        return super.accept(iter, prevOrNextEdgeId);
+    }
+
+    @Override
+    protected boolean finished() {
+        boolean isStart = currEdge.edge == NO_EDGE;
+        for (int i = 0; i < toNodes.length; i++) {
+            if (targetEntries[i] != null || toNodes[i] != currEdge.adjNode)
+                continue;
+            // the start entry only reaches the target if no edge is restricted, otherwise the path must contain at
+            // least one edge, which is what the bidirectional algorithms do
+            if (isStart ? fromOutEdge == ANY_EDGE && toInEdges[i] == ANY_EDGE : toInEdges[i] == ANY_EDGE || toInEdges[i] == currEdge.edge) {
+                targetEntries[i] = currEdge;
+                remainingTargets--;
+            }
+        }
+        return remainingTargets == 0;
+    }
+
+    @Override
+    public String getName() {
+        return "dijkstra_one_to_many_edge";
+    }
+}
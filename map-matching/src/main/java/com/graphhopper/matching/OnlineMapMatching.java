@@ -0,0 +1,387 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.*;
+
+import java.util.*;
+
+/**
+ * Matches an open-ended stream of observations, e.g. a live GPS feed, to the road network. In contrast to
+ * {@link MapMatching#match} the observations are added one by one and the Viterbi algorithm only keeps the labels of
+ * the candidates of the last few observations.
+ * <p>
+ * An EdgeMatch is returned as soon as it cannot change anymore. This is the case when all candidates of the latest
+ * observation go back to the same candidate of an earlier observation. If the candidates of the observation that was
+ * added maxLag observations ago are still undecided, the one the most likely candidate goes back to is chosen and all
+ * candidates that do not go back to it are dropped. So the EdgeMatches are returned with a lag of at most maxLag
+ * observations and the memory needed does not grow with the length of the feed.
+ * <p>
+ * The transitions are calculated on a QueryGraph that only contains the candidates of the previous and the new
+ * observation. This class is not thread-safe, use one instance per GPS feed.
+ */
+public class OnlineMapMatching {
+    private final BaseGraph graph;
+    private final MapMatching.Router router;
+    private final MapMatching mapMatching;
+    private final DistanceCalc distanceCalc = new DistancePlaneProjection();
+    private double measurementErrorSigma = 10.0;
+    private double transitionProbabilityBeta = 2.0;
+    private int maxLag = 10;
+
+    // the last observation that was used for matching, its snaps and the labels of its candidates. The snaps are
+    // never put into a QueryGraph because this would change them, only copies are.
+    private Observation prevObservation;
+    private List<Snap> prevSnaps;
+    private Label[] prevLabels;
+    private int timeStep = -1;
+    // the last observation that was added, it is skipped if it is too close to prevObservation
+    private Observation lastObservation;
+    private double accumulatedLinearDistance;
+    // the last label whose sequence was returned
+    private Label committed;
+    // the edge and the states of the EdgeMatch that is not complete yet
+    private EdgeIteratorState currentEdge;
+    private List<State> currentStates = new ArrayList<>();
+
+    public static OnlineMapMatching fromGraphHopper(GraphHopper graphHopper, PMap hints) {
+        MapMatching.Router router = MapMatching.routerFromGraphHopper(graphHopper, hints);
+        return new OnlineMapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), router);
+    }
+
+    public OnlineMapMatching(BaseGraph graph, LocationIndexTree locationIndex, MapMatching.Router router) {
+        this.graph = graph;
+        this.router = router;
+        this.mapMatching = new MapMatching(graph, locationIndex, router);
+    }
+
+    /**
+     * Beta parameter of the exponential distribution for modeling transition
+     * probabilities.
+     */
+    public void setTransitionProbabilityBeta(double transitionProbabilityBeta) {
+        this.transitionProbabilityBeta = transitionProbabilityBeta;
+    }
+
+    /**
+     * Standard deviation of the normal distribution [m] used for modeling the
+     * GPS error.
+     */
+    public void setMeasurementErrorSigma(double measurementErrorSigma) {
+        this.measurementErrorSigma = measurementErrorSigma;
+        mapMatching.setMeasurementErrorSigma(measurementErrorSigma);
+    }
+
+    /**
+     * The maximum number of matched observations after which the candidate of an observation is decided. A smaller
+     * value returns the EdgeMatches earlier, but the chosen candidates are more likely to be wrong.
+     */
+    public void setMaxLag(int maxLag) {
+        if (maxLag < 0)
+            throw new IllegalArgumentException("maxLag must not be negative but was " + maxLag);
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * Adds the next observation of the feed. Like {@link MapMatching#filterObservations} observations that are not
+     * further than 2 * measurementErrorSigma away from the previous observation are skipped, and so are observations
+     * without a road nearby. If the new observation cannot be reached from any candidate of the previous observation
+     * the current sequence is finished and a new one is started.
+     *
+     * @return the EdgeMatches that became final with this observation, in travel order
+     */
+    public List<EdgeMatch> add(Observation observation) {
+        List<EdgeMatch> result = new ArrayList<>();
+        if (prevObservation == null || calcDist(prevObservation, observation) > 2 * measurementErrorSigma) {
+            List<Snap> snaps = mapMatching.findCandidateSnaps(observation.getPoint().lat, observation.getPoint().lon);
+            if (!snaps.isEmpty()) {
+                if (prevObservation != null)
+                    accumulatedLinearDistance += calcDist(lastObservation, observation) - calcDist(prevObservation, observation);
+                addTimeStep(observation, snaps, result);
+                return result;
+            }
+        }
+        if (lastObservation != null)
+            accumulatedLinearDistance += calcDist(lastObservation, observation);
+        lastObservation = observation;
+        return result;
+    }
+
+    /**
+     * Finishes the feed: the last observation is matched even if it was skipped because it was too close to the
+     * previous one, and the most likely sequence is returned completely. Afterwards this instance can be used for a
+     * new feed.
+     *
+     * @return the remaining EdgeMatches, in travel order
+     */
+    public List<EdgeMatch> finish() {
+        List<EdgeMatch> result = new ArrayList<>();
+        if (prevObservation != null && lastObservation != prevObservation) {
+            List<Snap> snaps = mapMatching.findCandidateSnaps(lastObservation.getPoint().lat, lastObservation.getPoint().lon);
+            if (!snaps.isEmpty()) {
+                accumulatedLinearDistance -= calcDist(prevObservation, lastObservation);
+                addTimeStep(lastObservation, snaps, result);
+            }
+        }
+        finishSequence(result);
+        lastObservation = null;
+        accumulatedLinearDistance = 0;
+        return result;
+    }
+
+    /**
+     * @return the most likely candidate of the latest matched observation or null if there is none. This candidate
+     * can still change with the next observations.
+     */
+    public State getCurrentState() {
+        Label best = findBestLabel();
+        return best == null ? null : best.state;
+    }
+
+    /**
+     * @return the real edge, in travel direction, of the most likely candidate of the latest matched observation. If
+     * this candidate is on a node the last edge of the sequence leading to it is returned, and null if there is none.
+     */
+    public EdgeIteratorState getCurrentEdge() {
+        for (Label label = findBestLabel(); label != null; label = label.back) {
+            if (label.stateEdge != null)
+                return label.stateEdge;
+            if (!label.transitionEdges.isEmpty())
+                return label.transitionEdges.get(label.transitionEdges.size() - 1);
+        }
+        return currentEdge;
+    }
+
+    private void addTimeStep(Observation observation, List<Snap> snaps, List<EdgeMatch> result) {
+        observation.setAccumulatedLinearDistanceToPrevious(prevLabels == null ? 0 : accumulatedLinearDistance);
+        accumulatedLinearDistance = 0;
+        lastObservation = observation;
+
+        List<Snap> prevSnapCopies = new ArrayList<>();
+        if (prevSnaps != null)
+            for (Snap snap : prevSnaps)
+                prevSnapCopies.add(copySnap(snap));
+        List<Snap> snapCopies = new ArrayList<>();
+        for (Snap snap : snaps)
+            snapCopies.add(copySnap(snap));
+        List<Snap> allSnapCopies = new ArrayList<>(prevSnapCopies);
+        allSnapCopies.addAll(snapCopies);
+        QueryGraph queryGraph = QueryGraph.create(graph, allSnapCopies);
+        List<State> candidates = MapMatching.createCandidates(queryGraph, observation, snapCopies);
+
+        HmmProbabilities probabilities = new HmmProbabilities(measurementErrorSigma, transitionProbabilityBeta);
+        Label[] labels = prevLabels == null ? null : calcLabels(queryGraph, probabilities, prevSnapCopies, observation, candidates);
+        if (labels == null) {
+            // the sequence is broken, e.g. because of a gap in the feed, so we start a new one
+            finishSequence(result);
+            labels = new Label[candidates.size()];
+            for (int i = 0; i < candidates.size(); i++) {
+                State candidate = candidates.get(i);
+                double minusLogProbability = -probabilities.emissionLogProbability(candidate.getSnap().getQueryDistance());
+                labels[i] = new Label(0, candidate, null, minusLogProbability, Collections.emptyList(), calcStateEdge(queryGraph, candidate));
+            }
+            timeStep = 0;
+        } else {
+            timeStep++;
+        }
+        prevObservation = observation;
+        prevSnaps = snaps;
+        prevLabels = labels;
+        commitFinalLabels(result);
+    }
+
+    /**
+     * Calculates the labels for the candidates of the new observation from the labels of the previous observation.
+     *
+     * @return null if no candidate can be reached
+     */
+    private Label[] calcLabels(QueryGraph queryGraph, HmmProbabilities probabilities, List<Snap> prevSnapCopies, Observation observation, List<State> candidates) {
+        // the candidates are created in the same order for the same snaps, so they are in the same order as prevLabels
+        List<State> prevCandidates = MapMatching.createCandidates(queryGraph, prevObservation, prevSnapCopies);
+        final double linearDistance = calcDist(prevObservation, observation) + observation.getAccumulatedLinearDistanceToPrevious();
+        int[] toNodes = candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
+        int[] toInEdges = candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+        Label[] backs = new Label[candidates.size()];
+        Path[] paths = new Path[candidates.size()];
+        double[] minusLogProbabilities = new double[candidates.size()];
+        for (int i = 0; i < prevCandidates.size(); i++) {
+            if (prevLabels[i] == null)
+                continue;
+            State from = prevCandidates.get(i);
+            int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+            List<Path> fromPaths = router.calcPaths(queryGraph, from.getSnap().getClosestNode(), fromOutEdge, toNodes, toInEdges);
+            for (int j = 0; j < candidates.size(); j++) {
+                Path path = fromPaths.get(j);
+                if (!path.isFound())
+                    continue;
+                double minusLogProbability = prevLabels[i].minusLogProbability
+                        - probabilities.emissionLogProbability(candidates.get(j).getSnap().getQueryDistance())
+                        - probabilities.transitionLogProbability(path.getDistance(), linearDistance);
+                if (backs[j] == null || minusLogProbability < minusLogProbabilities[j]) {
+                    backs[j] = prevLabels[i];
+                    paths[j] = path;
+                    minusLogProbabilities[j] = minusLogProbability;
+                }
+            }
+        }
+        Label[] labels = new Label[candidates.size()];
+        boolean found = false;
+        for (int j = 0; j < candidates.size(); j++) {
+            if (backs[j] == null)
+                continue;
+            // the edges are resolved right away because the QueryGraph is only valid for this time step
+            List<EdgeIteratorState> transitionEdges = new ArrayList<>();
+            for (EdgeIteratorState edge : paths[j].calcEdges())
+                transitionEdges.add(MapMatching.resolveToRealEdge(graph, queryGraph, edge));
+            labels[j] = new Label(timeStep + 1, candidates.get(j), backs[j], minusLogProbabilities[j], transitionEdges, calcStateEdge(queryGraph, candidates.get(j)));
+            found = true;
+        }
+        return found ? labels : null;
+    }
+
+    private EdgeIteratorState calcStateEdge(QueryGraph queryGraph, State state) {
+        return state.isOnDirectedEdge() ? MapMatching.resolveToRealEdge(graph, queryGraph, state.getOutgoingVirtualEdge()) : null;
+    }
+
+    /**
+     * Returns the EdgeMatches up to the candidate that all candidates of the latest observation go back to or, if the
+     * candidates of the observation maxLag observations ago are undecided, up to the one the most likely candidate
+     * goes back to.
+     */
+    private void commitFinalLabels(List<EdgeMatch> result) {
+        Set<Label> ancestors = new HashSet<>();
+        for (Label label : prevLabels)
+            if (label != null)
+                ancestors.add(label);
+        while (ancestors.size() > 1 && ancestors.iterator().next().back != null) {
+            Set<Label> backs = new HashSet<>();
+            for (Label label : ancestors)
+                backs.add(label.back);
+            ancestors = backs;
+        }
+        if (ancestors.size() == 1 && ancestors.iterator().next() != committed)
+            commit(ancestors.iterator().next(), result);
+
+        int committedTimeStep = committed == null ? -1 : committed.timeStep;
+        if (timeStep - committedTimeStep > maxLag) {
+            Label decided = findAncestor(findBestLabel(), timeStep - maxLag);
+            commit(decided, result);
+            for (int i = 0; i < prevLabels.length; i++)
+                if (prevLabels[i] != null && findAncestor(prevLabels[i], decided.timeStep) != decided)
+                    prevLabels[i] = null;
+        }
+    }
+
+    private Label findAncestor(Label label, int timeStep) {
+        while (label.timeStep > timeStep)
+            label = label.back;
+        return label;
+    }
+
+    private Label findBestLabel() {
+        Label best = null;
+        if (prevLabels != null)
+            for (Label label : prevLabels)
+                if (label != null && (best == null || label.minusLogProbability < best.minusLogProbability))
+                    best = label;
+        return best;
+    }
+
+    private void commit(Label label, List<EdgeMatch> result) {
+        List<Label> sequence = new ArrayList<>();
+        for (Label l = label; l != null && l != committed; l = l.back)
+            sequence.add(l);
+        Collections.reverse(sequence);
+        // see MapMatching.prepareEdgeMatches
+        for (Label l : sequence) {
+            for (EdgeIteratorState edge : l.transitionEdges)
+                appendEdge(edge, result);
+            if (l.stateEdge != null)
+                appendEdge(l.stateEdge, result);
+            currentStates.add(l.state);
+        }
+        // the labels before this one are not needed anymore
+        label.back = null;
+        committed = label;
+    }
+
+    private void appendEdge(EdgeIteratorState edge, List<EdgeMatch> result) {
+        if (currentEdge != null && !MapMatching.equalEdges(currentEdge, edge)) {
+            result.add(new EdgeMatch(currentEdge, currentStates));
+            currentStates = new ArrayList<>();
+        }
+        currentEdge = edge;
+    }
+
+    private void finishSequence(List<EdgeMatch> result) {
+        Label best = findBestLabel();
+        if (best != null && best != committed)
+            commit(best, result);
+        if (currentEdge != null)
+            result.add(new EdgeMatch(currentEdge, currentStates));
+        currentEdge = null;
+        currentStates = new ArrayList<>();
+        committed = null;
+        prevObservation = null;
+        prevSnaps = null;
+        prevLabels = null;
+        timeStep = -1;
+    }
+
+    private double calcDist(Observation o1, Observation o2) {
+        return distanceCalc.calcDist(o1.getPoint().lat, o1.getPoint().lon, o2.getPoint().lat, o2.getPoint().lon);
+    }
+
+    private static Snap copySnap(Snap snap) {
+        Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+        copy.setClosestNode(snap.getClosestNode());
+        copy.setClosestEdge(snap.getClosestEdge());
+        copy.setQueryDistance(snap.getQueryDistance());
+        copy.setWayIndex(snap.getWayIndex());
+        copy.setSnappedPosition(snap.getSnappedPosition());
+        copy.setSnappedPoint(snap.getSnappedPoint());
+        return copy;
+    }
+
+    private static class Label {
+        final int timeStep;
+        final State state;
+        Label back;
+        final double minusLogProbability;
+        // the real edges of the transition from back to this label, in travel direction
+        final List<EdgeIteratorState> transitionEdges;
+        // the real edge of the state in travel direction or null if the state is on a node
+        final EdgeIteratorState stateEdge;
+
+        Label(int timeStep, State state, Label back, double minusLogProbability,
+              List<EdgeIteratorState> transitionEdges, EdgeIteratorState stateEdge) {
+            this.timeStep = timeStep;
+            this.state = state;
+            this.back = back;
+            this.minusLogProbability = minusLogProbability;
+            this.transitionEdges = transitionEdges;
+            this.stateEdge = stateEdge;
+        }
+    }
+}
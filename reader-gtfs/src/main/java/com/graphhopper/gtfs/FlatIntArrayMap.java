@@ -0,0 +1,104 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+/**
+ * A map from non-negative int keys to int arrays. The arrays are stored one after the other in a {@link DataAccess},
+ * each prefixed with its length, and a {@link FlatIntIntMap} points from the key to the start of its array.
+ */
+public class FlatIntArrayMap {
+    private static final int VERSION = 1;
+
+    private final FlatIntIntMap offsets;
+    private final DataAccess arrays;
+    private IntObjectHashMap<int[]> entries;
+
+    public FlatIntArrayMap(Directory dir, String name) {
+        offsets = new FlatIntIntMap(dir, name + "_index");
+        arrays = dir.create(name, dir.getDefaultType(name, true), -1);
+    }
+
+    public void create() {
+        entries = new IntObjectHashMap<>();
+        offsets.create();
+    }
+
+    public boolean loadExisting() {
+        if (!arrays.loadExisting() || !offsets.loadExisting())
+            return false;
+        if (arrays.getHeader(0) != VERSION)
+            throw new IllegalStateException("Unexpected version of " + arrays.getName() + ": " + arrays.getHeader(0) + ", expected " + VERSION + ". Please reimport the GTFS data.");
+        return true;
+    }
+
+    public void put(int key, int[] values) {
+        if (entries == null)
+            throw new IllegalStateException(arrays.getName() + " is read-only after flush or loadExisting");
+        entries.put(key, values);
+    }
+
+    /**
+     * @return the array stored for the key or null if there is none
+     */
+    public int[] get(int key) {
+        if (entries != null)
+            return entries.get(key);
+        int offset = offsets.getOrDefault(key, -1);
+        if (offset < 0)
+            return null;
+        long pointer = (long) offset * 4;
+        int[] result = new int[arrays.getInt(pointer)];
+        for (int i = 0; i < result.length; i++)
+            result[i] = arrays.getInt(pointer + 4L * (i + 1));
+        return result;
+    }
+
+    public void flush() {
+        if (entries != null) {
+            long ints = 0;
+            for (IntObjectCursor<int[]> e : entries)
+                ints += e.value.length + 1;
+            if (ints > Integer.MAX_VALUE)
+                throw new IllegalStateException("Too many entries for " + arrays.getName() + ": " + ints);
+            arrays.create(Math.max(4, ints * 4));
+            int offset = 0;
+            for (IntObjectCursor<int[]> e : entries) {
+                offsets.put(e.key, offset);
+                arrays.setInt((long) offset * 4, e.value.length);
+                for (int i = 0; i < e.value.length; i++)
+                    arrays.setInt((long) (offset + i + 1) * 4, e.value[i]);
+                offset += e.value.length + 1;
+            }
+            arrays.setHeader(0, VERSION);
+            entries = null;
+        }
+        offsets.flush();
+        arrays.flush();
+    }
+
+    public void close() {
+        offsets.close();
+        arrays.close();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.BitMixer;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+/**
+ * A map from non-negative int keys to int values which is stored as an open addressing hash table in a
+ * {@link DataAccess}. While the graph is built the entries are collected in memory, {@link #flush()} writes the table
+ * and afterwards lookups go to the DataAccess directly. So loading an existing graph does not need to deserialize
+ * anything, and with MMAP the pages are shared between processes.
+ */
+public class FlatIntIntMap {
+    private static final int VERSION = 1;
+    private static final int EMPTY_KEY = -1;
+    private static final int ENTRY_BYTES = 8;
+
+    private final DataAccess da;
+    private IntIntHashMap entries;
+    private int size;
+    private int mask;
+
+    public FlatIntIntMap(Directory dir, String name) {
+        da = dir.create(name, dir.getDefaultType(name, true), -1);
+    }
+
+    public void create() {
+        entries = new IntIntHashMap();
+    }
+
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        if (da.getHeader(0) != VERSION)
+            throw new IllegalStateException("Unexpected version of " + da.getName() + ": " + da.getHeader(0) + ", expected " + VERSION + ". Please reimport the GTFS data.");
+        size = da.getHeader(4);
+        mask = da.getHeader(2 * 4) - 1;
+        return true;
+    }
+
+    public void put(int key, int value) {
+        if (entries == null)
+            throw new IllegalStateException(da.getName() + " is read-only after flush or loadExisting");
+        if (key < 0)
+            throw new IllegalArgumentException("Keys must not be negative: " + key);
+        entries.put(key, value);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        if (entries != null)
+            return entries.getOrDefault(key, defaultValue);
+        if (size == 0 || key < 0)
+            return defaultValue;
+        int slot = BitMixer.mix32(key) & mask;
+        while (true) {
+            long pointer = (long) slot * ENTRY_BYTES;
+            int k = da.getInt(pointer);
+            if (k == key)
+                return da.getInt(pointer + 4);
+            if (k == EMPTY_KEY)
+                return defaultValue;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return entries != null ? entries.size() : size;
+    }
+
+    public void flush() {
+        if (entries != null) {
+            size = entries.size();
+            // keep the load factor at 0.5 or below, so misses end after a few probes
+            int capacity = Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1;
+            mask = capacity - 1;
+            da.create((long) capacity * ENTRY_BYTES);
+            for (int slot = 0; slot < capacity; slot++)
+                da.setInt((long) slot * ENTRY_BYTES, EMPTY_KEY);
+            for (IntIntCursor e : entries) {
+                int slot = BitMixer.mix32(e.key) & mask;
+                while (da.getInt((long) slot * ENTRY_BYTES) != EMPTY_KEY)
+                    slot = (slot + 1) & mask;
+                da.setInt((long) slot * ENTRY_BYTES, e.key);
+                da.setInt((long) slot * ENTRY_BYTES + 4, e.value);
+            }
+            da.setHeader(0, VERSION);
+            da.setHeader(4, size);
+            da.setHeader(2 * 4, capacity);
+            entries = null;
+        }
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+}
@@ -24,12 +24,18 @@ import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.index.InMemConstructionIndex;
 import com.graphhopper.storage.index.IndexStructureInfo;
 import com.graphhopper.storage.index.LineIntIndex;
+import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.BBox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,18 +44,24 @@ import java.io.File;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class GraphHopperGtfs extends GraphHopper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GraphHopperGtfs.class);
 
     private final GraphHopperConfig ghConfig;
-    private GtfsStorage gtfsStorage;
-    private PtGraph ptGraph;
+    private final int importThreads;
+    private final boolean raptor;
+    private volatile GtfsStorage gtfsStorage;
+    private int reloads;
 
     public GraphHopperGtfs(GraphHopperConfig ghConfig) {
         this.ghConfig = ghConfig;
+        this.importThreads = ghConfig.getInt("gtfs.import_threads", 1);
+        this.raptor = ghConfig.getBool("gtfs.raptor", false);
     }
 
     @Override
@@ -63,112 +75,188 @@ public class GraphHopperGtfs extends GraphHopper {
 
     @Override
     protected void importPublicTransit() {
-        ptGraph = new PtGraph(getBaseGraph().getDirectory(), 100);
-        gtfsStorage = new GtfsStorage(getBaseGraph().getDirectory());
+        PtGraph ptGraph = new PtGraph(getBaseGraph().getDirectory(), 100);
+        GtfsStorage gtfsStorage = new GtfsStorage(getBaseGraph().getDirectory());
         LineIntIndex stopIndex = new LineIntIndex(new BBox(-180.0, 180.0, -90.0, 90.0), getBaseGraph().getDirectory(), "stop_index");
-        if (getGtfsStorage().loadExisting()) {
+        if (gtfsStorage.loadExisting()) {
             ptGraph.loadExisting();
             stopIndex.loadExisting();
         } else {
             ensureWriteAccess();
-            getGtfsStorage().create();
-            ptGraph.create(100);
-            InMemConstructionIndex indexBuilder = new InMemConstructionIndex(IndexStructureInfo.create(
-                    new BBox(-180.0, 180.0, -90.0, 90.0), 300));
-            try {
-                int idx = 0;
-                List<String> gtfsFiles = ghConfig.has("gtfs.file") ? Arrays.asList(ghConfig.getString("gtfs.file", "").split(",")) : Collections.emptyList();
-                for (String gtfsFile : gtfsFiles) {
-                    getGtfsStorage().loadGtfsFromZipFileOrDirectory("gtfs_" + idx++, new File(gtfsFile));
-                }
-                getGtfsStorage().postInit();
-                Map<String, Transfers> allTransfers = new HashMap<>();
-                HashMap<String, GtfsReader> allReaders = new HashMap<>();
-                getGtfsStorage().getGtfsFeeds().forEach((id, gtfsFeed) -> {
-                    Transfers transfers = new Transfers(gtfsFeed);
-                    allTransfers.put(id, transfers);
-                    GtfsReader gtfsReader = new GtfsReader(id, ptGraph, ptGraph, getGtfsStorage(), getLocationIndex(), transfers, indexBuilder);
-                    // Stops must be connected to the networks of all the modes
-                    List<DefaultSnapFilter> snapFilters = getProfiles().stream().map(p ->
-                            new DefaultSnapFilter(createWeighting(p, new PMap()), getEncodingManager().getBooleanEncodedValue(Subnetwork.key(p.getName())))).collect(Collectors.toList());
-                    gtfsReader.connectStopsToStreetNetwork(e -> {
-                        for (DefaultSnapFilter snapFilter : snapFilters) {
-                            if (!snapFilter.accept(e))
-                                return false;
-                        }
-                        return true;
-                    });
-                    LOGGER.info("Building transit graph for feed {}", gtfsFeed.feedId);
-                    gtfsReader.buildPtNetwork();
-                    allReaders.put(id, gtfsReader);
-                });
-                interpolateTransfers(allReaders, allTransfers);
-            } catch (Exception e) {
-                throw new RuntimeException("Error while constructing transit network. Is your GTFS file valid? Please check log for possible causes.", e);
-            }
-            ptGraph.flush();
-            getGtfsStorage().flush();
-            stopIndex.store(indexBuilder);
-            stopIndex.flush();
+            List<String> gtfsFiles = ghConfig.has("gtfs.file") ? Arrays.asList(ghConfig.getString("gtfs.file", "").split(",")) : Collections.emptyList();
+            buildPublicTransit(gtfsStorage, ptGraph, stopIndex, gtfsFiles);
         }
         gtfsStorage.setStopIndex(stopIndex);
         gtfsStorage.setPtGraph(ptGraph);
+        if (raptor)
+            gtfsStorage.setRaptorTimetable(RaptorTimetable.build(gtfsStorage));
+        this.gtfsStorage = gtfsStorage;
+    }
+
+    /**
+     * Imports the given GTFS files against the existing street graph and replaces the current transit data with them.
+     * Queries keep being answered from the current data while the import runs. Afterwards, new queries use the new
+     * data, and the old data is closed when the last query which still uses it has finished, see
+     * {@link GtfsStorage#retain()}.
+     * <p>
+     * The new data is stored in a subdirectory of the graph folder which is removed when it is closed, so after a
+     * restart the transit data of the graph folder is loaded again.
+     */
+    public synchronized void reloadPublicTransit(List<String> gtfsFiles) {
+        String location = getGraphHopperLocation() + "/gtfs_reload_" + ++reloads;
+        Helper.removeDir(new File(location));
+        // the GTFS feeds are always stored in files, even if the graph is kept in memory
+        new File(location).mkdirs();
+        GHDirectory dir = new GHDirectory(location, getBaseGraph().getDirectory().getDefaultType());
+        PtGraph ptGraph = new PtGraph(dir, 100);
+        GtfsStorage gtfsStorage = new GtfsStorage(dir);
+        gtfsStorage.setRemoveDirectoryOnClose(true);
+        LineIntIndex stopIndex = new LineIntIndex(new BBox(-180.0, 180.0, -90.0, 90.0), dir, "stop_index");
+        // set them upfront, so they are closed together with the storage if the import fails
+        gtfsStorage.setStopIndex(stopIndex);
+        gtfsStorage.setPtGraph(ptGraph);
+        StopWatch sw = new StopWatch().start();
+        try {
+            buildPublicTransit(gtfsStorage, ptGraph, stopIndex, gtfsFiles);
+            // the timetable is published together with the storage, so no request has to wait for it
+            if (raptor)
+                gtfsStorage.setRaptorTimetable(RaptorTimetable.build(gtfsStorage));
+        } catch (RuntimeException e) {
+            gtfsStorage.close();
+            throw e;
+        }
+        GtfsStorage previous = this.gtfsStorage;
+        this.gtfsStorage = gtfsStorage;
+        LOGGER.info("Reloaded GTFS files {} in {}s", gtfsFiles, sw.stop().getSeconds());
+        previous.release();
+    }
+
+    private void buildPublicTransit(GtfsStorage gtfsStorage, PtGraph ptGraph, LineIntIndex stopIndex, List<String> gtfsFiles) {
+        gtfsStorage.create();
+        ptGraph.create(100);
+        InMemConstructionIndex indexBuilder = new InMemConstructionIndex(IndexStructureInfo.create(
+                new BBox(-180.0, 180.0, -90.0, 90.0), 300));
+        try {
+            int idx = 0;
+            Map<String, File> gtfsFilesById = new LinkedHashMap<>();
+            for (String gtfsFile : gtfsFiles) {
+                gtfsFilesById.put("gtfs_" + idx++, new File(gtfsFile));
+            }
+            gtfsStorage.loadGtfsFromZipFilesOrDirectories(gtfsFilesById, importThreads);
+            gtfsStorage.postInit();
+            // everything that only reads the feeds runs on the worker threads. The pt nodes and edges are then
+            // created on this thread, in the same order as for a single thread, so their ids do not depend on it.
+            List<String> feedIds = new ArrayList<>(gtfsStorage.getGtfsFeeds().keySet());
+            Map<String, Transfers> allTransfers = new ConcurrentHashMap<>();
+            GHUtility.runConcurrently(feedIds.stream().<Runnable>map(id ->
+                    () -> allTransfers.put(id, new Transfers(gtfsStorage.getGtfsFeeds().get(id)))), importThreads);
+            HashMap<String, GtfsReader> allReaders = new HashMap<>();
+            // Stops must be connected to the networks of all the modes
+            List<DefaultSnapFilter> snapFilters = getProfiles().stream().map(p ->
+                    new DefaultSnapFilter(createWeighting(p, new PMap()), getEncodingManager().getBooleanEncodedValue(Subnetwork.key(p.getName())))).collect(Collectors.toList());
+            EdgeFilter snapFilter = e -> {
+                for (DefaultSnapFilter f : snapFilters) {
+                    if (!f.accept(e))
+                        return false;
+                }
+                return true;
+            };
+            Map<String, Map<String, Snap>> allSnaps = new ConcurrentHashMap<>();
+            List<Runnable> readTasks = new ArrayList<>();
+            for (String id : feedIds) {
+                GtfsReader gtfsReader = new GtfsReader(id, ptGraph, ptGraph, gtfsStorage, getLocationIndex(), allTransfers.get(id), indexBuilder);
+                allReaders.put(id, gtfsReader);
+                readTasks.add(() -> allSnaps.put(id, gtfsReader.snapStops(snapFilter)));
+                gtfsReader.prepareTrips().forEach(readTasks::add);
+            }
+            LOGGER.info("Reading trips and snapping stops of {} feeds with {} threads", feedIds.size(), importThreads);
+            GHUtility.runConcurrently(readTasks.stream(), importThreads);
+            for (String id : feedIds) {
+                GtfsReader gtfsReader = allReaders.get(id);
+                gtfsReader.connectStopsToStreetNetwork(allSnaps.get(id));
+                LOGGER.info("Building transit graph for feed {}", gtfsStorage.getGtfsFeeds().get(id).feedId);
+                gtfsReader.buildPtNetwork();
+            }
+            interpolateTransfers(gtfsStorage, ptGraph, allReaders, allTransfers);
+        } catch (Exception e) {
+            throw new RuntimeException("Error while constructing transit network. Is your GTFS file valid? Please check log for possible causes.", e);
+        }
+        ptGraph.flush();
+        gtfsStorage.flush();
+        stopIndex.store(indexBuilder);
+        stopIndex.flush();
     }
 
-    private void interpolateTransfers(HashMap<String, GtfsReader> readers, Map<String, Transfers> allTransfers) {
+    private void interpolateTransfers(GtfsStorage gtfsStorage, PtGraph ptGraph, HashMap<String, GtfsReader> readers, Map<String, Transfers> allTransfers) {
         LOGGER.info("Looking for transfers");
         final int maxTransferWalkTimeSeconds = ghConfig.getInt("gtfs.max_transfer_interpolation_walk_time_seconds", 120);
         QueryGraph queryGraph = QueryGraph.create(getBaseGraph(), Collections.emptyList());
         Weighting transferWeighting = createWeighting(getProfile("foot"), new PMap());
-        final GraphExplorer graphExplorer = new GraphExplorer(queryGraph, ptGraph, transferWeighting, getGtfsStorage(), RealtimeFeed.empty(), true, true, false, 5.0, false, 0);
-        getGtfsStorage().getStationNodes().values().stream().distinct().map(n -> new Label.NodeId(gtfsStorage.getPtToStreet().getOrDefault(n, -1), n)).forEach(stationNode -> {
+        List<Label.NodeId> stationNodes = gtfsStorage.getStationNodes().values().stream().distinct().map(n -> new Label.NodeId(gtfsStorage.getPtToStreet().getOrDefault(n, -1), n)).collect(Collectors.toList());
+        // The walks to all the stations are searched concurrently, one bounded search per station. They only use
+        // street edges, so they do not depend on the transfer edges, which are inserted afterwards in the order of the
+        // stations.
+        List<List<StationWalks.Walk>> walksToStations = new ArrayList<>(Collections.nCopies(stationNodes.size(), null));
+        GHUtility.runConcurrently(IntStream.range(0, stationNodes.size()).<Runnable>mapToObj(i -> () -> {
+            // the edge explorer of a GraphExplorer must not be shared between threads
+            GraphExplorer graphExplorer = new GraphExplorer(queryGraph, ptGraph, transferWeighting, gtfsStorage, RealtimeFeed.empty(), true, true, false, 5.0, false, 0);
             MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, true, false, false, 0, new ArrayList<>());
             router.setLimitStreetTime(Duration.ofSeconds(maxTransferWalkTimeSeconds).toMillis());
-            for (Label label : router.calcLabels(stationNode, Instant.ofEpochMilli(0))) {
-                if (label.parent != null) {
-                    if (label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
-                        GtfsStorage.PlatformDescriptor fromPlatformDescriptor = label.edge.getPlatformDescriptor();
-                        Transfers transfers = allTransfers.get(fromPlatformDescriptor.feed_id);
-                        for (PtGraph.PtEdge ptEdge : ptGraph.edgesAround(stationNode.ptNode)) {
-                            if (ptEdge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
-                                GtfsStorage.PlatformDescriptor toPlatformDescriptor = ptEdge.getAttrs().platformDescriptor;
-                                LOGGER.debug(fromPlatformDescriptor + " -> " + toPlatformDescriptor);
-                                if (!toPlatformDescriptor.feed_id.equals(fromPlatformDescriptor.feed_id)) {
-                                    LOGGER.debug(" Different feed. Inserting transfer with " + (int) (label.streetTime / 1000L) + " s.");
-                                    insertInterpolatedTransfer(label, toPlatformDescriptor, readers);
-                                } else {
-                                    List<Transfer> transfersToStop = transfers.getTransfersToStop(toPlatformDescriptor.stop_id, routeIdOrNull(toPlatformDescriptor));
-                                    if (transfersToStop.stream().noneMatch(t -> t.from_stop_id.equals(fromPlatformDescriptor.stop_id))) {
-                                        LOGGER.debug("  Inserting transfer with " + (int) (label.streetTime / 1000L) + " s.");
-                                        insertInterpolatedTransfer(label, toPlatformDescriptor, readers);
-                                    }
-                                }
+            List<StationWalks.Walk> walks = new ArrayList<>();
+            for (Label label : router.calcLabels(stationNodes.get(i), Instant.ofEpochMilli(0))) {
+                if (label.parent != null && label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
+                    int[] edgeKeys = Label.getTransitions(label.parent, true).stream().filter(t -> t.edge != null).mapToInt(t -> {
+                        Label.NodeId adjNode = t.label.node;
+                        EdgeIteratorState edgeIteratorState = getBaseGraph().getEdgeIteratorState(t.edge.getId(), adjNode.streetNode);
+                        return edgeIteratorState.getEdgeKey();
+                    }).toArray();
+                    walks.add(new StationWalks.Walk(label.edge.getId(), (int) (label.streetTime / 1000L), edgeKeys));
+                }
+            }
+            walksToStations.set(i, walks);
+        }), importThreads);
+        for (int i = 0; i < stationNodes.size(); i++) {
+            Label.NodeId stationNode = stationNodes.get(i);
+            List<StationWalks.Walk> walks = walksToStations.get(i);
+            gtfsStorage.getStationWalks().put(stationNode.ptNode, walks);
+            for (StationWalks.Walk walk : walks) {
+                PtGraph.PtEdge exitEdge = ptGraph.edge(walk.exitEdge);
+                GtfsStorage.PlatformDescriptor fromPlatformDescriptor = exitEdge.getAttrs().platformDescriptor;
+                Transfers transfers = allTransfers.get(fromPlatformDescriptor.feed_id);
+                for (PtGraph.PtEdge ptEdge : ptGraph.edgesAround(stationNode.ptNode)) {
+                    if (ptEdge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
+                        GtfsStorage.PlatformDescriptor toPlatformDescriptor = ptEdge.getAttrs().platformDescriptor;
+                        LOGGER.debug(fromPlatformDescriptor + " -> " + toPlatformDescriptor);
+                        if (!toPlatformDescriptor.feed_id.equals(fromPlatformDescriptor.feed_id)) {
+                            LOGGER.debug(" Different feed. Inserting transfer with " + walk.seconds + " s.");
+                            insertInterpolatedTransfer(gtfsStorage, exitEdge.getBaseNode(), walk, toPlatformDescriptor, readers);
+                        } else {
+                            List<Transfer> transfersToStop = transfers.getTransfersToStop(toPlatformDescriptor.stop_id, routeIdOrNull(toPlatformDescriptor));
+                            if (transfersToStop.stream().noneMatch(t -> t.from_stop_id.equals(fromPlatformDescriptor.stop_id))) {
+                                LOGGER.debug("  Inserting transfer with " + walk.seconds + " s.");
+                                insertInterpolatedTransfer(gtfsStorage, exitEdge.getBaseNode(), walk, toPlatformDescriptor, readers);
                             }
                         }
                     }
                 }
             }
-        });
+            walksToStations.set(i, null);
+        }
     }
 
-    private void insertInterpolatedTransfer(Label label, GtfsStorage.PlatformDescriptor toPlatformDescriptor, HashMap<String, GtfsReader> readers) {
+    private void insertInterpolatedTransfer(GtfsStorage gtfsStorage, int arrivalPlatformNode, StationWalks.Walk walk, GtfsStorage.PlatformDescriptor toPlatformDescriptor, HashMap<String, GtfsReader> readers) {
         GtfsReader toFeedReader = readers.get(toPlatformDescriptor.feed_id);
-        List<Integer> transferEdgeIds = toFeedReader.insertTransferEdges(label.node.ptNode, (int) (label.streetTime / 1000L), toPlatformDescriptor);
-        List<Label.Transition> transitions = Label.getTransitions(label.parent, true);
-        int[] skippedEdgesForTransfer = transitions.stream().filter(t -> t.edge != null).mapToInt(t -> {
-            Label.NodeId adjNode = t.label.node;
-            EdgeIteratorState edgeIteratorState = getBaseGraph().getEdgeIteratorState(t.edge.getId(), adjNode.streetNode);
-            return edgeIteratorState.getEdgeKey();
-        }).toArray();
+        List<Integer> transferEdgeIds = toFeedReader.insertTransferEdges(arrivalPlatformNode, walk.seconds, toPlatformDescriptor);
+        int[] skippedEdgesForTransfer = walk.edgeKeys;
         if (skippedEdgesForTransfer.length > 0) { // TODO: Elsewhere, we distinguish empty path ("at" a node) from no path
-            assert isValidPath(skippedEdgesForTransfer);
+            assert isValidPath(gtfsStorage, skippedEdgesForTransfer);
             for (Integer transferEdgeId : transferEdgeIds) {
                 gtfsStorage.getSkippedEdgesForTransfer().put(transferEdgeId, skippedEdgesForTransfer);
             }
         }
     }
 
-    private boolean isValidPath(int[] edgeKeys) {
+    private boolean isValidPath(GtfsStorage gtfsStorage, int[] edgeKeys) {
         List<EdgeIteratorState> edges = Arrays.stream(edgeKeys).mapToObj(i -> getBaseGraph().getEdgeIteratorStateForKey(i)).collect(Collectors.toList());
         for (int i = 1; i < edges.size(); i++) {
             if (edges.get(i).getBaseNode() != edges.get(i - 1).getAdjNode())
@@ -198,6 +286,6 @@ public class GraphHopperGtfs extends GraphHopper {
     }
 
     public PtGraph getPtGraph() {
-        return ptGraph;
+        return gtfsStorage.getPtGraph();
     }
 }
@@ -34,6 +34,8 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static com.conveyal.gtfs.model.Entity.Writer.convertToGtfsTime;
 import static java.time.temporal.ChronoUnit.DAYS;
@@ -79,6 +81,7 @@ class GtfsReader {
     private GTFSFeed feed;
     private final Map<String, Map<GtfsStorage.PlatformDescriptor, NavigableMap<Integer, Integer>>> departureTimelinesByStop = new HashMap<>();
     private final Map<String, Map<GtfsStorage.PlatformDescriptor, NavigableMap<Integer, Integer>>> arrivalTimelinesByStop = new HashMap<>();
+    private List<List<TripWithStopTimes>> blocks;
 
     GtfsReader(String id, PtGraph ptGraph, PtGraphOut out, GtfsStorage gtfsStorage, LocationIndex streetNetworkIndex, Transfers transfers, InMemConstructionIndex indexBuilder) {
         this.id = id;
@@ -94,9 +97,30 @@ class GtfsReader {
     }
 
     void connectStopsToStreetNetwork(EdgeFilter filter) {
+        connectStopsToStreetNetwork(snapStops(filter));
+    }
+
+    /**
+     * Snaps the stops of this feed to the street network. This only reads from the feed and the location index, so it
+     * can run concurrently for several feeds.
+     */
+    Map<String, Snap> snapStops(EdgeFilter filter) {
+        Map<String, Snap> snaps = new HashMap<>();
+        for (Stop stop : feed.stops.values()) {
+            if (stop.location_type == 0) { // Only stops. Not interested in parent stations for now.
+                snaps.put(stop.stop_id, streetNetworkIndex.findClosest(stop.stop_lat, stop.stop_lon, filter));
+            }
+        }
+        return snaps;
+    }
+
+    /**
+     * Creates the station nodes for the snapped stops, in the order of the stops in the feed.
+     */
+    void connectStopsToStreetNetwork(Map<String, Snap> snaps) {
         for (Stop stop : feed.stops.values()) {
             if (stop.location_type == 0) { // Only stops. Not interested in parent stations for now.
-                Snap locationSnap = streetNetworkIndex.findClosest(stop.stop_lat, stop.stop_lon, filter);
+                Snap locationSnap = snaps.get(stop.stop_id);
                 int stopNode;
                 if (locationSnap.isValid()) {
                     stopNode = gtfsStorage.getStreetToPt().getOrDefault(locationSnap.getClosestNode(), -1);
@@ -116,12 +140,19 @@ class GtfsReader {
     }
 
     void buildPtNetwork() {
+        if (blocks == null)
+            prepareTrips().forEach(Runnable::run);
         createTrips();
         wireUpStops();
         insertGtfsTransfers();
     }
 
-    private void createTrips() {
+    /**
+     * Returns one task per block of trips, which reads the trips with their stop times and service days from the feed.
+     * The tasks only read, so they can run concurrently, also with the tasks of other feeds. The edges are created
+     * afterwards by {@link #buildPtNetwork()}, in the same order as if the trips had been read sequentially.
+     */
+    Stream<Runnable> prepareTrips() {
         HashMultimap<String, Trip> blockTrips = HashMultimap.create();
         for (Trip trip : feed.trips.values()) {
             if (trip.block_id != null) {
@@ -130,8 +161,11 @@ class GtfsReader {
                 blockTrips.put("non-block-trip" + trip.trip_id, trip);
             }
         }
-        blockTrips.asMap().values().forEach(unsortedTrips -> {
-            List<TripWithStopTimes> trips = unsortedTrips.stream()
+        List<Collection<Trip>> unsortedBlocks = new ArrayList<>(blockTrips.asMap().values());
+        // every task sets its own element, the list itself is not modified
+        blocks = new ArrayList<>(Collections.nCopies(unsortedBlocks.size(), null));
+        return IntStream.range(0, unsortedBlocks.size()).<Runnable>mapToObj(i -> () -> {
+            List<TripWithStopTimes> trips = unsortedBlocks.get(i).stream()
                     .map(trip -> {
                         Service service = feed.services.get(trip.service_id);
                         BitSet validOnDay = new BitSet((int) DAYS.between(startDate, endDate));
@@ -146,6 +180,12 @@ class GtfsReader {
                     })
                     .sorted(Comparator.comparingInt(trip -> trip.stopTimes.iterator().next().departure_time))
                     .collect(Collectors.toList());
+            blocks.set(i, trips);
+        });
+    }
+
+    private void createTrips() {
+        for (List<TripWithStopTimes> trips : blocks) {
             if (trips.stream().map(trip -> feed.getFrequencies(trip.trip.trip_id)).distinct().count() != 1) {
                 throw new RuntimeException("Found a block with frequency-based trips. Not supported.");
             }
@@ -160,7 +200,8 @@ class GtfsReader {
                     }
                 }
             }
-        });
+        }
+        blocks = null;
     }
 
     private void wireUpStops() {
@@ -18,31 +18,30 @@
 
 package com.graphhopper.gtfs;
 
-import com.carrotsearch.hppc.IntIntHashMap;
-import com.carrotsearch.hppc.IntObjectHashMap;
-import com.carrotsearch.hppc.cursors.IntIntCursor;
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.conveyal.gtfs.GTFSFeed;
 import com.conveyal.gtfs.model.Fare;
+import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.index.LineIntIndex;
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GtfsStorage {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(GtfsStorage.class);
 	private LineIntIndex stopIndex;
 	private PtGraph ptGraph;
+	private RaptorTimetable raptorTimetable;
 
 	public void setStopIndex(LineIntIndex stopIndex) {
 		this.stopIndex = stopIndex;
@@ -60,10 +59,25 @@ public class GtfsStorage {
         this.ptGraph = ptGraph;
     }
 
-	public IntObjectHashMap<int[]> getSkippedEdgesForTransfer() {
+    /**
+     * @return the timetable for {@link PtRouterRaptorImpl}, or null if gtfs.raptor is not enabled
+     */
+    public RaptorTimetable getRaptorTimetable() {
+        return raptorTimetable;
+    }
+
+    public void setRaptorTimetable(RaptorTimetable raptorTimetable) {
+        this.raptorTimetable = raptorTimetable;
+    }
+
+	public FlatIntArrayMap getSkippedEdgesForTransfer() {
 		return skippedEdgesForTransfer;
 	}
 
+	public StationWalks getStationWalks() {
+		return stationWalks;
+	}
+
 	public static class Validity implements Serializable {
 		final BitSet validity;
 		final ZoneId zoneId;
@@ -143,39 +157,48 @@ public class GtfsStorage {
 		}
 	}
 
+	private static final int STATIONS_VERSION = 1;
+
 	private boolean isClosed = false;
+	// the owner holds the first reference, every running query holds one more
+	private final AtomicInteger references = new AtomicInteger(1);
+	private boolean removeDirectoryOnClose = false;
 	private Directory dir;
 	private Set<String> gtfsFeedIds;
 	private Map<String, GTFSFeed> gtfsFeeds = new HashMap<>();
 	private Map<String, Map<String, Fare>> faresByFeed;
 	private Map<FeedIdWithStopId, Integer> stationNodes;
-	private IntObjectHashMap<int[]> skippedEdgesForTransfer;
+	private final DataAccess stations;
+	private final FlatIntArrayMap skippedEdgesForTransfer;
+	private final StationWalks stationWalks;
 
-	private IntIntHashMap ptToStreet;
-	private IntIntHashMap streetToPt;
+	private final FlatIntIntMap ptToStreet;
+	private final FlatIntIntMap streetToPt;
 
 	public enum EdgeType {
 		HIGHWAY, ENTER_TIME_EXPANDED_NETWORK, LEAVE_TIME_EXPANDED_NETWORK, ENTER_PT, EXIT_PT, HOP, DWELL, BOARD, ALIGHT, OVERNIGHT, TRANSFER, WAIT, WAIT_ARRIVAL
     }
 
-	private DB data;
-
 	GtfsStorage(Directory dir) {
 		this.dir = dir;
+		// the station nodes are read into a hash map on startup, the other lookups are used from the DataAccess directly
+		this.stations = dir.create("pt_stations", dir.getDefaultType("pt_stations", false), -1);
+		this.ptToStreet = new FlatIntIntMap(dir, "pt_to_street_map");
+		this.streetToPt = new FlatIntIntMap(dir, "street_to_pt_map");
+		this.skippedEdgesForTransfer = new FlatIntArrayMap(dir, "pt_skipped_edges_for_transfer");
+		this.stationWalks = new StationWalks(dir);
 	}
 
 	boolean loadExisting() {
-		File file = new File(dir.getLocation() + "/transit_schedule");
-		if (!file.exists()) {
+		if (!stations.loadExisting()) {
 			return false;
 		}
-		this.data = DBMaker.newFileDB(file).transactionDisable().mmapFileEnable().readOnly().make();
-		init();
+		readStations();
 		for (String gtfsFeedId : this.gtfsFeedIds) {
 			File dbFile = new File(dir.getLocation() + "/" + gtfsFeedId);
 
 			if (!dbFile.exists()) {
-				throw new RuntimeException(String.format("The mapping of the gtfsFeeds in the transit_schedule DB does not reflect the files in %s. "
+				throw new RuntimeException(String.format("The gtfsFeeds stored in pt_stations do not reflect the files in %s. "
 								+ "dbFile %s is missing.",
 						dir.getLocation(), dbFile.getName()));
 			}
@@ -183,73 +206,111 @@ public class GtfsStorage {
 			GTFSFeed feed = new GTFSFeed(dbFile);
 			this.gtfsFeeds.put(gtfsFeedId, feed);
 		}
-		ptToStreet = deserialize("pt_to_street");
-		streetToPt = deserialize("street_to_pt");
-		skippedEdgesForTransfer = deserializeIntoIntObjectHashMap("skipped_edges_for_transfer");
+		if (!ptToStreet.loadExisting() || !streetToPt.loadExisting() || !skippedEdgesForTransfer.loadExisting() || !stationWalks.loadExisting())
+			throw new IllegalStateException("pt_stations exists in " + dir.getLocation() + " but the other transit lookups are missing. Please reimport the GTFS data.");
 		postInit();
 		return true;
 	}
 
-
-	private IntIntHashMap deserialize(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			IntIntHashMap result = new IntIntHashMap();
-			for (int i = 0; i < size; i++) {
-				result.put(ois.readInt(), ois.readInt());
+	private void readStations() {
+		if (stations.getHeader(0) != STATIONS_VERSION)
+			throw new IllegalStateException("Unexpected version of pt_stations: " + stations.getHeader(0) + ", expected " + STATIONS_VERSION + ". Please reimport the GTFS data.");
+		byte[] bytes = new byte[stations.getHeader(4)];
+		byte[] chunk = new byte[stations.getSegmentSize()];
+		for (int offset = 0; offset < bytes.length; offset += chunk.length) {
+			int length = Math.min(chunk.length, bytes.length - offset);
+			stations.getBytes(offset, chunk, length);
+			System.arraycopy(chunk, 0, bytes, offset, length);
+		}
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			List<String> feedIds = new ArrayList<>();
+			int feedCount = in.readInt();
+			for (int i = 0; i < feedCount; i++) {
+				feedIds.add(in.readUTF());
+			}
+			this.gtfsFeedIds = new LinkedHashSet<>(feedIds);
+			int stationCount = in.readInt();
+			this.stationNodes = new HashMap<>(stationCount * 2);
+			for (int i = 0; i < stationCount; i++) {
+				String feedId = feedIds.get(in.readInt());
+				String stopId = in.readUTF();
+				stationNodes.put(new FeedIdWithStopId(feedId, stopId), in.readInt());
 			}
-			return result;
 		} catch (IOException e) {
-			throw new RuntimeException(e);
+			throw new UncheckedIOException(e);
 		}
 	}
 
-	private IntObjectHashMap<int[]> deserializeIntoIntObjectHashMap(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			IntObjectHashMap<int[]> result = new IntObjectHashMap<>();
-			for (int i = 0; i < size; i++) {
-				result.put(ois.readInt(), ((int[]) ois.readObject()));
+	private void writeStations() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			List<String> feedIds = new ArrayList<>(gtfsFeedIds);
+			out.writeInt(feedIds.size());
+			for (String feedId : feedIds) {
+				out.writeUTF(feedId);
 			}
-			return result;
-		} catch (IOException | ClassNotFoundException e) {
-			throw new RuntimeException(e);
+			out.writeInt(stationNodes.size());
+			for (Map.Entry<FeedIdWithStopId, Integer> e : stationNodes.entrySet()) {
+				out.writeInt(feedIds.indexOf(e.getKey().feedId));
+				out.writeUTF(e.getKey().stopId);
+				out.writeInt(e.getValue());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
+		byte[] array = bytes.toByteArray();
+		stations.create(Math.max(1, array.length));
+		// DataAccess only copies up to one segment at a time
+		byte[] chunk = new byte[stations.getSegmentSize()];
+		for (int offset = 0; offset < array.length; offset += chunk.length) {
+			int length = Math.min(chunk.length, array.length - offset);
+			System.arraycopy(array, offset, chunk, 0, length);
+			stations.setBytes(offset, chunk, length);
+		}
+		stations.setHeader(0, STATIONS_VERSION);
+		stations.setHeader(4, array.length);
+		stations.flush();
 	}
 
 	void create() {
 		this.dir.create();
-		final File file = new File(dir.getLocation() + "/transit_schedule");
-		try {
-			Files.deleteIfExists(file.toPath());
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-		this.data = DBMaker.newFileDB(file).transactionDisable().mmapFileEnable().asyncWriteEnable().make();
-		init();
+		this.gtfsFeedIds = new LinkedHashSet<>();
+		this.stationNodes = new HashMap<>();
+		this.ptToStreet.create();
+		this.streetToPt.create();
+		this.skippedEdgesForTransfer.create();
+		this.stationWalks.create();
 	}
 
-    private void init() {
-		this.gtfsFeedIds = data.getHashSet("gtfsFeeds");
-		this.stationNodes = data.getHashMap("stationNodes");
-		this.ptToStreet = new IntIntHashMap();
-		this.streetToPt = new IntIntHashMap();
-		this.skippedEdgesForTransfer = new IntObjectHashMap<>();
+	void loadGtfsFromZipFileOrDirectory(String id, File zipFileOrDirectory) {
+		this.gtfsFeeds.put(id, loadFeed(id, zipFileOrDirectory));
+		this.gtfsFeedIds.add(id);
 	}
 
-	void loadGtfsFromZipFileOrDirectory(String id, File zipFileOrDirectory) {
+	/**
+	 * Loads several feeds, each into its own file, using the given number of threads. The feeds are registered in the
+	 * order of the map, independent of the order in which they finish loading.
+	 */
+	void loadGtfsFromZipFilesOrDirectories(Map<String, File> zipFilesOrDirectories, int threads) {
+		Map<String, GTFSFeed> feeds = new ConcurrentHashMap<>();
+		GHUtility.runConcurrently(zipFilesOrDirectories.entrySet().stream()
+				.<Runnable>map(e -> () -> feeds.put(e.getKey(), loadFeed(e.getKey(), e.getValue()))), threads);
+		for (String id : zipFilesOrDirectories.keySet()) {
+			this.gtfsFeeds.put(id, feeds.get(id));
+			this.gtfsFeedIds.add(id);
+		}
+	}
+
+	private GTFSFeed loadFeed(String id, File zipFileOrDirectory) {
 		File dbFile = new File(dir.getLocation() + "/" + id);
 		try {
 			Files.deleteIfExists(dbFile.toPath());
 			GTFSFeed feed = new GTFSFeed(dbFile);
 			feed.loadFromFileAndLogErrors(zipFileOrDirectory);
-			this.gtfsFeeds.put(id, feed);
+			return feed;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
-		this.gtfsFeedIds.add(id);
 	}
 
 	// TODO: Refactor initialization
@@ -261,13 +322,54 @@ public class GtfsStorage {
 		this.gtfsFeeds.forEach((feed_id, feed) -> faresByFeed.put(feed_id, feed.fares));
 	}
 
-	public void close() {
+	/**
+	 * Keeps this storage open while a query uses it. When the schedule is reloaded, the owner gives up its reference
+	 * with {@link #release()} and the storage is closed as soon as the last running query has released it, too.
+	 *
+	 * @return false if the storage is already closed, then the query has to use the current one
+	 */
+	public boolean retain() {
+		int n;
+		do {
+			n = references.get();
+			if (n == 0)
+				return false;
+		} while (!references.compareAndSet(n, n + 1));
+		return true;
+	}
+
+	public void release() {
+		if (references.decrementAndGet() == 0)
+			close();
+	}
+
+	/**
+	 * The directory of a reloaded schedule only contains the transit data, it is deleted when the storage is closed.
+	 */
+	void setRemoveDirectoryOnClose(boolean removeDirectoryOnClose) {
+		this.removeDirectoryOnClose = removeDirectoryOnClose;
+	}
+
+	public synchronized void close() {
+		references.set(0);
 		if (!isClosed) {
 			isClosed = true;
-			data.close();
+			stations.close();
+			ptToStreet.close();
+			streetToPt.close();
+			skippedEdgesForTransfer.close();
+			stationWalks.close();
+			if (ptGraph != null)
+				ptGraph.close();
+			if (stopIndex != null)
+				stopIndex.close();
 			for (GTFSFeed feed : gtfsFeeds.values()) {
 				feed.close();
 			}
+			if (removeDirectoryOnClose) {
+				dir.clear();
+				Helper.removeDir(new File(dir.getLocation()));
+			}
 		}
 	}
 
@@ -275,11 +377,11 @@ public class GtfsStorage {
 		return faresByFeed;
 	}
 
-	public IntIntHashMap getPtToStreet() {
+	public FlatIntIntMap getPtToStreet() {
 		return ptToStreet;
 	}
 
-	public IntIntHashMap getStreetToPt() {
+	public FlatIntIntMap getStreetToPt() {
 		return streetToPt;
 	}
 
@@ -292,33 +394,11 @@ public class GtfsStorage {
 	}
 
 	public void flush() {
-		serialize("pt_to_street", ptToStreet);
-		serialize("street_to_pt", streetToPt);
-		serialize("skipped_edges_for_transfer", skippedEdgesForTransfer);
-	}
-
-	private void serialize(String filename, IntObjectHashMap<int[]> data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (IntObjectCursor<int[]> e : data) {
-				oos.writeInt(e.key);
-				oos.writeObject(e.value);
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	private void serialize(String filename, IntIntHashMap data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (IntIntCursor e : data) {
-				oos.writeInt(e.key);
-				oos.writeInt(e.value);
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		writeStations();
+		ptToStreet.flush();
+		streetToPt.flush();
+		skippedEdgesForTransfer.flush();
+		stationWalks.flush();
 	}
 
 	public abstract static class PlatformDescriptor implements Serializable {
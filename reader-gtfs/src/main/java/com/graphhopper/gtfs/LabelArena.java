@@ -0,0 +1,205 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * The labels of a {@link MultiCriteriaLabelSetting} search in struct-of-arrays form. A label is an index into the
+ * columns, its parent is the index of the parent label. The labels at a node form a linked list (the bag of the node),
+ * and the priority queue is a binary heap of label indices.
+ * <p>
+ * Only labels that are settled get a {@link Label} object, so labels that are dominated before they are settled do
+ * not create garbage. There is one arena per thread, which is reset when a new search starts on this thread, so only
+ * one search per thread can be in progress: a search must be consumed (or abandoned) before the next one is started on
+ * the same thread, continuing it afterwards throws an {@link IllegalStateException}. An arena that grows beyond
+ * {@link #MAX_RETAINED_CAPACITY} labels is given up by the thread, so its memory is released with the search.
+ */
+final class LabelArena {
+
+    static final long NO_DEPARTURE = Long.MIN_VALUE;
+    static final int NO_LABEL = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    // don't keep the memory of a large search alive for the lifetime of the thread, this is about 1.5MB
+    static final int MAX_RETAINED_CAPACITY = 1 << 14;
+    private static final ThreadLocal<LabelArena> ARENAS = ThreadLocal.withInitial(LabelArena::new);
+
+    int size;
+    long[] currentTime;
+    long[] departureTime;
+    long[] streetTime;
+    long[] extraWeight;
+    long[] residualDelay;
+    long[] weight;
+    int[] nTransfers;
+    int[] streetNode;
+    int[] ptNode;
+    int[] parent;
+    int[] nextInBag;
+    boolean[] impossible;
+    boolean[] deleted;
+    GraphExplorer.MultiModalEdge[] edge;
+    Label[] settled;
+
+    final LongIntHashMap bags = new LongIntHashMap();
+    int[] heap;
+    int heapSize;
+
+    private Object owner;
+
+    private LabelArena() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Resets the arena of the current thread and hands it to the given search. A search that was started before on
+     * this thread must not be continued afterwards.
+     */
+    static LabelArena acquire(Object owner) {
+        LabelArena arena = ARENAS.get();
+        arena.reset();
+        arena.owner = owner;
+        return arena;
+    }
+
+    boolean isOwnedBy(Object owner) {
+        return this.owner == owner;
+    }
+
+    private void allocate(int capacity) {
+        currentTime = new long[capacity];
+        departureTime = new long[capacity];
+        streetTime = new long[capacity];
+        extraWeight = new long[capacity];
+        residualDelay = new long[capacity];
+        weight = new long[capacity];
+        nTransfers = new int[capacity];
+        streetNode = new int[capacity];
+        ptNode = new int[capacity];
+        parent = new int[capacity];
+        nextInBag = new int[capacity];
+        impossible = new boolean[capacity];
+        deleted = new boolean[capacity];
+        edge = new GraphExplorer.MultiModalEdge[capacity];
+        settled = new Label[capacity];
+        heap = new int[capacity];
+    }
+
+    private void reset() {
+        Arrays.fill(edge, 0, size, null);
+        Arrays.fill(settled, 0, size, null);
+        size = 0;
+        heapSize = 0;
+        bags.clear();
+        owner = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= currentTime.length)
+            return;
+        int newCapacity = Math.max(capacity, currentTime.length + (currentTime.length >> 1));
+        if (newCapacity > MAX_RETAINED_CAPACITY && ARENAS.get() == this)
+            // the next search on this thread gets a new arena, this one is garbage collected when this search is done
+            ARENAS.remove();
+        currentTime = Arrays.copyOf(currentTime, newCapacity);
+        departureTime = Arrays.copyOf(departureTime, newCapacity);
+        streetTime = Arrays.copyOf(streetTime, newCapacity);
+        extraWeight = Arrays.copyOf(extraWeight, newCapacity);
+        residualDelay = Arrays.copyOf(residualDelay, newCapacity);
+        weight = Arrays.copyOf(weight, newCapacity);
+        nTransfers = Arrays.copyOf(nTransfers, newCapacity);
+        streetNode = Arrays.copyOf(streetNode, newCapacity);
+        ptNode = Arrays.copyOf(ptNode, newCapacity);
+        parent = Arrays.copyOf(parent, newCapacity);
+        nextInBag = Arrays.copyOf(nextInBag, newCapacity);
+        impossible = Arrays.copyOf(impossible, newCapacity);
+        deleted = Arrays.copyOf(deleted, newCapacity);
+        edge = Arrays.copyOf(edge, newCapacity);
+        settled = Arrays.copyOf(settled, newCapacity);
+        heap = Arrays.copyOf(heap, newCapacity);
+    }
+
+    /**
+     * Appends a label that is not yet part of a bag or the heap. It can be removed again with {@link #removeLast} as
+     * long as no other label was added.
+     */
+    int add(long currentTime, GraphExplorer.MultiModalEdge edge, int streetNode, int ptNode, int nTransfers, long departureTime,
+            long streetTime, long extraWeight, long residualDelay, boolean impossible, int parent) {
+        ensureCapacity(size + 1);
+        int label = size++;
+        this.currentTime[label] = currentTime;
+        this.edge[label] = edge;
+        this.streetNode[label] = streetNode;
+        this.ptNode[label] = ptNode;
+        this.nTransfers[label] = nTransfers;
+        this.departureTime[label] = departureTime;
+        this.streetTime[label] = streetTime;
+        this.extraWeight[label] = extraWeight;
+        this.residualDelay[label] = residualDelay;
+        this.impossible[label] = impossible;
+        this.deleted[label] = false;
+        this.parent[label] = parent;
+        this.nextInBag[label] = NO_LABEL;
+        this.settled[label] = null;
+        return label;
+    }
+
+    void removeLast() {
+        size--;
+        edge[size] = null;
+    }
+
+    static long nodeKey(int streetNode, int ptNode) {
+        return ((long) streetNode << 32) | (ptNode & 0xFFFFFFFFL);
+    }
+
+    int firstInBag(long nodeKey) {
+        return bags.getOrDefault(nodeKey, NO_LABEL);
+    }
+
+    void setFirstInBag(long nodeKey, int label) {
+        if (label == NO_LABEL)
+            bags.remove(nodeKey);
+        else
+            bags.put(nodeKey, label);
+    }
+
+    void markDeleted(int label) {
+        deleted[label] = true;
+        if (settled[label] != null)
+            settled[label].deleted = true;
+    }
+
+    /**
+     * Creates the {@link Label} object of a label that was polled from the heap. Labels are settled in the order of
+     * the heap, so the parent of a label is always settled before the label itself.
+     */
+    Label settle(int label) {
+        Label result = settled[label];
+        if (result == null) {
+            int p = parent[label];
+            result = new Label(currentTime[label], edge[label], new Label.NodeId(streetNode[label], ptNode[label]), nTransfers[label],
+                    departureTime[label] == NO_DEPARTURE ? null : departureTime[label], streetTime[label], extraWeight[label],
+                    residualDelay[label], impossible[label], p == NO_LABEL ? null : settled[p]);
+            settled[label] = result;
+        }
+        return result;
+    }
+}
@@ -34,11 +34,8 @@ import java.util.function.Predicate;
  */
 public class MultiCriteriaLabelSetting {
 
-    private final Comparator<Label> queueComparator;
     private final List<Label> targetLabels;
     private long startTime;
-    private final Map<Label.NodeId, List<Label>> fromMap;
-    private final PriorityQueue<Label> fromHeap;
     private final long maxProfileDuration;
     private final boolean reverse;
     private final boolean mindTransfers;
@@ -57,12 +54,13 @@ public class MultiCriteriaLabelSetting {
         this.profileQuery = profileQuery;
         this.maxProfileDuration = maxProfileDuration;
         this.targetLabels = solutions;
-
-        queueComparator = new LabelComparator();
-        fromHeap = new PriorityQueue<>(queueComparator);
-        fromMap = new HashMap<>();
     }
 
+    /**
+     * The labels are kept in the {@link LabelArena} of the calling thread, so the returned labels must be consumed
+     * before another search is started on the same thread. Continuing the iteration after that throws an
+     * {@link IllegalStateException}.
+     */
     public Iterable<Label> calcLabels(Label.NodeId from, Instant startTime) {
         this.startTime = startTime.toEpochMilli();
         return () -> Spliterators.iterator(new MultiCriteriaLabelSettingSpliterator(from));
@@ -82,23 +80,28 @@ public class MultiCriteriaLabelSetting {
 
     private class MultiCriteriaLabelSettingSpliterator extends Spliterators.AbstractSpliterator<Label> {
 
+        private final LabelArena arena;
+
         MultiCriteriaLabelSettingSpliterator(Label.NodeId from) {
             super(0, 0);
-            Label label = new Label(startTime, null, from, 0, null, 0, 0L, 0, false, null);
-            ArrayList<Label> labels = new ArrayList<>(1);
-            labels.add(label);
-            fromMap.put(from, labels);
-            fromHeap.add(label);
+            arena = LabelArena.acquire(this);
+            int label = arena.add(startTime, null, from.streetNode, from.ptNode, 0, LabelArena.NO_DEPARTURE, 0L, 0, 0, false, LabelArena.NO_LABEL);
+            arena.weight[label] = weight(arena, label);
+            arena.setFirstInBag(LabelArena.nodeKey(from.streetNode, from.ptNode), label);
+            push(label);
         }
 
         @Override
         public boolean tryAdvance(Consumer<? super Label> action) {
-            while (!fromHeap.isEmpty() && fromHeap.peek().deleted)
-                fromHeap.poll();
-            if (fromHeap.isEmpty()) {
+            if (!arena.isOwnedBy(this))
+                throw new IllegalStateException("Another search was started on this thread, this one cannot be continued");
+            while (arena.heapSize > 0 && arena.deleted[arena.heap[0]])
+                poll();
+            if (arena.heapSize == 0) {
                 return false;
             } else {
-                Label label = fromHeap.poll();
+                int labelIndex = poll();
+                Label label = arena.settle(labelIndex);
                 action.accept(label);
                 for (GraphExplorer.MultiModalEdge edge : explorer.exploreEdgesAround(label)) {
                     long nextTime;
@@ -109,7 +112,7 @@ public class MultiCriteriaLabelSetting {
                     }
                     int nTransfers = label.nTransfers + edge.getTransfers();
                     long extraWeight = label.extraWeight;
-                    Long firstPtDepartureTime = label.departureTime;
+                    long firstPtDepartureTime = label.departureTime != null ? label.departureTime : LabelArena.NO_DEPARTURE;
                     GtfsStorage.EdgeType edgeType = edge.getType();
                     if (!reverse && (edgeType == GtfsStorage.EdgeType.ENTER_PT) || reverse && (edgeType == GtfsStorage.EdgeType.EXIT_PT)) {
                         extraWeight += transferPenaltiesByRouteType.applyAsLong(edge.getRouteType());
@@ -160,41 +163,119 @@ public class MultiCriteriaLabelSetting {
                             residualDelay = 0;
                         }
                     }
+                    Label.NodeId adjNode = edge.getAdjNode();
                     if (!reverse && edgeType == GtfsStorage.EdgeType.LEAVE_TIME_EXPANDED_NETWORK && residualDelay > 0) {
-                        Label newImpossibleLabelForDelayedTrip = new Label(nextTime, edge, edge.getAdjNode(), nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, true, label);
-                        insertIfNotDominated(newImpossibleLabelForDelayedTrip);
+                        insertIfNotDominated(arena.add(nextTime, edge, adjNode.streetNode, adjNode.ptNode, nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, true, labelIndex));
                         nextTime += residualDelay;
                         residualDelay = 0;
-                        Label newLabel = new Label(nextTime, edge, edge.getAdjNode(), nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, impossible, label);
-                        insertIfNotDominated(newLabel);
+                        insertIfNotDominated(arena.add(nextTime, edge, adjNode.streetNode, adjNode.ptNode, nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, impossible, labelIndex));
                     } else {
-                        Label newLabel = new Label(nextTime, edge, edge.getAdjNode(), nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, impossible, label);
-                        insertIfNotDominated(newLabel);
+                        insertIfNotDominated(arena.add(nextTime, edge, adjNode.streetNode, adjNode.ptNode, nTransfers, firstPtDepartureTime, walkTime, extraWeight, residualDelay, impossible, labelIndex));
                     }
                 }
                 return true;
             }
         }
-    }
 
+        /**
+         * Keeps the label that was just added to the arena if it is not dominated by a solution or by a label at the
+         * same node, and removes the labels at the node that it dominates. Otherwise, the label is removed from the
+         * arena again.
+         */
+        private void insertIfNotDominated(int me) {
+            arena.weight[me] = weight(arena, me);
+            boolean filterByDeparture = profileQuery && arena.departureTime[me] != LabelArena.NO_DEPARTURE;
+            for (Label they : targetLabels) {
+                if ((!filterByDeparture || departureFilter(arena.departureTime[me], MultiCriteriaLabelSetting.departureTime(they))) && dominates(they, me)) {
+                    arena.removeLast();
+                    return;
+                }
+            }
+            long nodeKey = LabelArena.nodeKey(arena.streetNode[me], arena.ptNode[me]);
+            int first = arena.firstInBag(nodeKey);
+            for (int they = first; they != LabelArena.NO_LABEL; they = arena.nextInBag[they]) {
+                if ((!filterByDeparture || departureFilter(arena.departureTime[me], arena.departureTime[they])) && dominates(they, me)) {
+                    arena.removeLast();
+                    return;
+                }
+            }
+            int previous = LabelArena.NO_LABEL;
+            for (int they = first; they != LabelArena.NO_LABEL; they = arena.nextInBag[they]) {
+                if ((!filterByDeparture || departureFilter(arena.departureTime[me], arena.departureTime[they])) && dominates(me, they)) {
+                    arena.markDeleted(they);
+                    if (previous == LabelArena.NO_LABEL)
+                        first = arena.nextInBag[they];
+                    else
+                        arena.nextInBag[previous] = arena.nextInBag[they];
+                } else {
+                    previous = they;
+                }
+            }
+            arena.nextInBag[me] = first;
+            arena.setFirstInBag(nodeKey, me);
+            push(me);
+        }
+
+        private boolean dominates(int me, int they) {
+            return MultiCriteriaLabelSetting.this.dominates(arena.weight[me], arena.nTransfers[me], arena.streetTime[me], arena.departureTime[me], arena.impossible[me],
+                    arena.weight[they], arena.nTransfers[they], arena.streetTime[they], arena.departureTime[they], arena.impossible[they]);
+        }
+
+        private boolean dominates(Label me, int they) {
+            return MultiCriteriaLabelSetting.this.dominates(weight(me), me.nTransfers, me.streetTime, MultiCriteriaLabelSetting.departureTime(me), me.impossible,
+                    arena.weight[they], arena.nTransfers[they], arena.streetTime[they], arena.departureTime[they], arena.impossible[they]);
+        }
+
+        private int compare(int a, int b) {
+            return MultiCriteriaLabelSetting.this.compare(arena.weight[a], arena.nTransfers[a], arena.streetTime[a], arena.departureTime[a], arena.impossible[a],
+                    arena.weight[b], arena.nTransfers[b], arena.streetTime[b], arena.departureTime[b], arena.impossible[b]);
+        }
 
-    void insertIfNotDominated(Label me) {
-        Predicate<Label> filter;
-        if (profileQuery && me.departureTime != null) {
-            filter = (targetLabel) -> (!reverse ? prc(me, targetLabel) : rprc(me, targetLabel));
-        } else {
-            filter = label -> true;
+        private void push(int label) {
+            int[] heap = arena.heap;
+            int i = arena.heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (compare(label, heap[parent]) >= 0)
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = label;
         }
-        if (isNotDominatedByAnyOf(me, targetLabels, filter)) {
-            List<Label> sptEntries = fromMap.computeIfAbsent(me.node, k -> new ArrayList<>(1));
-            if (isNotDominatedByAnyOf(me, sptEntries, filter)) {
-                removeDominated(me, sptEntries, filter);
-                sptEntries.add(me);
-                fromHeap.add(me);
+
+        private int poll() {
+            int[] heap = arena.heap;
+            int result = heap[0];
+            int last = heap[--arena.heapSize];
+            int size = arena.heapSize;
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0)
+                    child++;
+                if (compare(last, heap[child]) <= 0)
+                    break;
+                heap[i] = heap[child];
+                i = child;
             }
+            if (size > 0)
+                heap[i] = last;
+            return result;
         }
     }
 
+    private boolean departureFilter(long myDepartureTime, long theirDepartureTime) {
+        if (theirDepartureTime == LabelArena.NO_DEPARTURE)
+            return false;
+        if (!reverse)
+            return theirDepartureTime >= myDepartureTime || theirDepartureTime >= startTime + maxProfileDuration;
+        else
+            return theirDepartureTime <= myDepartureTime || theirDepartureTime <= startTime - maxProfileDuration;
+    }
+
     boolean rprc(Label me, Label they) {
         return they.departureTime != null && (they.departureTime <= me.departureTime || they.departureTime <= startTime - maxProfileDuration);
     }
@@ -223,26 +304,40 @@ public class MultiCriteriaLabelSetting {
     }
 
     private boolean dominates(Label me, Label they) {
-        if (weight(me) > weight(they))
+        return dominates(weight(me), me.nTransfers, me.streetTime, departureTime(me), me.impossible,
+                weight(they), they.nTransfers, they.streetTime, departureTime(they), they.impossible);
+    }
+
+    private boolean dominates(long myWeight, int myTransfers, long myStreetTime, long myDepartureTime, boolean meImpossible,
+                              long theirWeight, int theirTransfers, long theirStreetTime, long theirDepartureTime, boolean theyImpossible) {
+        if (myWeight > theirWeight)
             return false;
 
-        if (mindTransfers && me.nTransfers > they.nTransfers)
+        if (mindTransfers && myTransfers > theirTransfers)
             return false;
-        if (me.impossible && !they.impossible)
+        if (meImpossible && !theyImpossible)
             return false;
 
-        if (weight(me) < weight(they))
+        if (myWeight < theirWeight)
             return true;
-        if (mindTransfers && me.nTransfers < they.nTransfers)
+        if (mindTransfers && myTransfers < theirTransfers)
             return true;
 
-        return queueComparator.compare(me, they) <= 0;
+        return compare(myWeight, myTransfers, myStreetTime, myDepartureTime, meImpossible, theirWeight, theirTransfers, theirStreetTime, theirDepartureTime, theyImpossible) <= 0;
+    }
+
+    private static long departureTime(Label label) {
+        return label.departureTime != null ? label.departureTime : LabelArena.NO_DEPARTURE;
     }
 
     long weight(Label label) {
         return timeSinceStartTime(label) + (long) (label.nTransfers * betaTransfers) + (long) (label.streetTime * (betaStreetTime - 1.0)) + label.extraWeight;
     }
 
+    private long weight(LabelArena arena, int label) {
+        return (reverse ? -1 : 1) * (arena.currentTime[label] - startTime) + (long) (arena.nTransfers[label] * betaTransfers) + (long) (arena.streetTime[label] * (betaStreetTime - 1.0)) + arena.extraWeight[label];
+    }
+
     long timeSinceStartTime(Label label) {
         return (reverse ? -1 : 1) * (label.currentTime - startTime);
     }
@@ -259,27 +354,23 @@ public class MultiCriteriaLabelSetting {
         this.limitStreetTime = limitStreetTime;
     }
 
-    private class LabelComparator implements Comparator<Label> {
+    private int compare(long weight1, int transfers1, long streetTime1, long departureTime1, boolean impossible1,
+                        long weight2, int transfers2, long streetTime2, long departureTime2, boolean impossible2) {
+        int c = Long.compare(weight1, weight2);
+        if (c != 0)
+            return c;
+        c = Integer.compare(transfers1, transfers2);
+        if (c != 0)
+            return c;
 
-        @Override
-        public int compare(Label o1, Label o2) {
-            int c = Long.compare(weight(o1), weight(o2));
-            if (c != 0)
-                return c;
-            c = Integer.compare(o1.nTransfers, o2.nTransfers);
-            if (c != 0)
-                return c;
-
-            c = Long.compare(o1.streetTime, o2.streetTime);
-            if (c != 0)
-                return c;
-
-            c = Long.compare(o1.departureTime != null ? reverse ? o1.departureTime : -o1.departureTime : 0, o2.departureTime != null ? reverse ? o2.departureTime : -o2.departureTime : 0);
-            if (c != 0)
-                return c;
-
-            c = Integer.compare(o1.impossible ? 1 : 0, o2.impossible ? 1 : 0);
+        c = Long.compare(streetTime1, streetTime2);
+        if (c != 0)
             return c;
-        }
+
+        c = Long.compare(departureTime1 != LabelArena.NO_DEPARTURE ? reverse ? departureTime1 : -departureTime1 : 0, departureTime2 != LabelArena.NO_DEPARTURE ? reverse ? departureTime2 : -departureTime2 : 0);
+        if (c != 0)
+            return c;
+
+        return Integer.compare(impossible1 ? 1 : 0, impossible2 ? 1 : 0);
     }
 }
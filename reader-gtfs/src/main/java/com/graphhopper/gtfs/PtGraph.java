@@ -18,19 +18,33 @@
 
 package com.graphhopper.gtfs;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.google.transit.realtime.GtfsRealtime;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.EdgeIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
 import java.util.function.Consumer;
 
+import static com.graphhopper.gtfs.GtfsStorage.EdgeType.ALIGHT;
 import static com.graphhopper.gtfs.GtfsStorage.EdgeType.BOARD;
 
+/**
+ * The time-expanded graph of the public transit network. Each edge points to a record of its attributes. The records
+ * only depend on the type of the edge, its duration and a few ids, so most of them repeat: the trips of a pattern
+ * usually have the same hop and dwell times, and the waiting times between departures repeat with the headway. All
+ * records except the board and alight records, which contain their trip, are stored only once and shared by all the
+ * edges that have them.
+ */
 public class PtGraph implements GtfsReader.PtGraphOut {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PtGraph.class);
+    private static final int VERSION = 2;
+
     // nodes
     private final DataAccess nodes;
     private final int nodeEntryBytes;
@@ -60,8 +74,9 @@ public class PtGraph implements GtfsReader.PtGraphOut {
         E_NODEB = 4;
         E_LINKA = 8;
         E_LINKB = 12;
+        // the attribute records are aligned to 4 bytes, so the pointer is stored divided by 4
         E_ATTRS = 16;
-        edgeEntryBytes = E_ATTRS + 8;
+        edgeEntryBytes = E_ATTRS + 4;
     }
 
     public void create(long initSize) {
@@ -73,6 +88,9 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     public boolean loadExisting() {
         if (!nodes.loadExisting() || !edges.loadExisting() || !attrs.loadExisting())
             return false;
+        if (edges.getHeader(0) != VERSION)
+            throw new IllegalStateException("Unexpected version of pt_edges: " + edges.getHeader(0) + ", expected " + VERSION + ". Please reimport the GTFS data.");
+        sharedRecords = null;
 
         nodeCount = nodes.getHeader(2 * 4);
         edgeCount = edges.getHeader(2 * 4);
@@ -85,6 +103,11 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     }
 
     public void flush() {
+        if (sharedRecords != null) {
+            LOGGER.info("Stored {} pt edges with {} attribute records in {} bytes", edgeCount, records, currentPointer);
+            sharedRecords = null;
+        }
+        edges.setHeader(0, VERSION);
         nodes.setHeader(2 * 4, nodeCount);
         edges.setHeader(2 * 4, edgeCount);
 
@@ -101,7 +124,7 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     public void close() {
         edges.close();
         nodes.close();
-        attrs.flush();
+        attrs.close();
     }
 
     public int getNodeCount() {
@@ -175,26 +198,13 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     }
 
     private void setAttrPointer(long edgePointer, long attrPointer) {
-        edges.setInt(edgePointer + E_ATTRS, getIntLow(attrPointer));
-        edges.setInt(edgePointer + E_ATTRS + 4, getIntHigh(attrPointer));
+        if (attrPointer >>> 2 > 0xFFFFFFFFL)
+            throw new IllegalStateException("Maximum size of pt_edge_attrs exceeded: " + attrPointer);
+        edges.setInt(edgePointer + E_ATTRS, (int) (attrPointer >>> 2));
     }
 
     private long getAttrPointer(long edgePointer) {
-        return combineIntsToLong(
-                edges.getInt(edgePointer + E_ATTRS),
-                edges.getInt(edgePointer + E_ATTRS + 4));
-    }
-
-    final int getIntLow(long longValue) {
-        return (int) (longValue & 0xFFFFFFFFL);
-    }
-
-    final int getIntHigh(long longValue) {
-        return (int) (longValue >> 32);
-    }
-
-    final long combineIntsToLong(int intLow, int intHigh) {
-        return ((long) intHigh << 32) | (intLow & 0xFFFFFFFFL);
+        return (edges.getInt(edgePointer + E_ATTRS) & 0xFFFFFFFFL) << 2;
     }
 
 
@@ -246,6 +256,10 @@ public class PtGraph implements GtfsReader.PtGraphOut {
 
     long currentPointer = 0;
 
+    // the pointers of the records which can be shared, only needed while the graph is built
+    private Map<IntArrayList, Long> sharedRecords = new HashMap<>();
+    private int records = 0;
+
     Map<GtfsStorage.Validity, Integer> validities = new HashMap<>();
     List<GtfsStorage.Validity> validityList = new ArrayList<>();
 
@@ -278,62 +292,28 @@ public class PtGraph implements GtfsReader.PtGraphOut {
 
     @Override
     public int createEdge(int src, int dest, PtEdgeAttributes attrs) {
-        this.attrs.ensureCapacity(currentPointer + 10000);
-
-        int edge = addEdge(src, dest, currentPointer);
-        this.attrs.setInt(currentPointer, attrs.type.ordinal());
-        currentPointer += 4;
-        this.attrs.setInt(currentPointer, attrs.time);
-        currentPointer += 4;
-
+        IntArrayList record = new IntArrayList(6);
+        record.add(attrs.type.ordinal(), attrs.time);
         switch (attrs.type) {
             case ENTER_PT:
-                this.attrs.setInt(currentPointer, attrs.route_type);
-                currentPointer += 4;
-
-                this.attrs.setInt(currentPointer, sharePlatformDescriptor(attrs.platformDescriptor));
-                currentPointer += 4;
-
+                record.add(attrs.route_type, sharePlatformDescriptor(attrs.platformDescriptor));
                 break;
             case EXIT_PT:
-                this.attrs.setInt(currentPointer, sharePlatformDescriptor(attrs.platformDescriptor));
-                currentPointer += 4;
-
+                record.add(sharePlatformDescriptor(attrs.platformDescriptor));
                 break;
             case ENTER_TIME_EXPANDED_NETWORK:
-                this.attrs.setInt(currentPointer, shareFeedIdWithTimezone(attrs.feedIdWithTimezone));
-                currentPointer += 4;
-
+                record.add(shareFeedIdWithTimezone(attrs.feedIdWithTimezone));
                 break;
             case LEAVE_TIME_EXPANDED_NETWORK:
-                this.attrs.setInt(currentPointer, shareFeedIdWithTimezone(attrs.feedIdWithTimezone));
-                currentPointer += 4;
-
+                record.add(shareFeedIdWithTimezone(attrs.feedIdWithTimezone));
                 break;
             case BOARD:
-                this.attrs.setInt(currentPointer, attrs.stop_sequence);
-                currentPointer += 4;
-
-                this.attrs.setInt(currentPointer, shareTripDescriptor(attrs.tripDescriptor));
-                currentPointer += 4;
-
-                this.attrs.setInt(currentPointer, shareValidity(attrs.validity));
-                currentPointer += 4;
-
-                this.attrs.setInt(currentPointer, attrs.transfers);
-                currentPointer += 4;
-
+                record.add(attrs.stop_sequence, shareTripDescriptor(attrs.tripDescriptor));
+                record.add(shareValidity(attrs.validity), attrs.transfers);
                 break;
             case ALIGHT:
-                this.attrs.setInt(currentPointer, attrs.stop_sequence);
-                currentPointer += 4;
-
-                this.attrs.setInt(currentPointer, shareTripDescriptor(attrs.tripDescriptor));
-                currentPointer += 4;
-
-                this.attrs.setInt(currentPointer, shareValidity(attrs.validity));
-                currentPointer += 4;
-
+                record.add(attrs.stop_sequence, shareTripDescriptor(attrs.tripDescriptor));
+                record.add(shareValidity(attrs.validity));
                 break;
             case WAIT:
                 break;
@@ -342,24 +322,30 @@ public class PtGraph implements GtfsReader.PtGraphOut {
             case OVERNIGHT:
                 break;
             case HOP:
-                this.attrs.setInt(currentPointer, attrs.stop_sequence);
-                currentPointer += 4;
-
+                record.add(attrs.stop_sequence);
                 break;
             case DWELL:
                 break;
             case TRANSFER:
-                this.attrs.setInt(currentPointer, attrs.route_type);
-                currentPointer += 4;
-
-                this.attrs.setInt(currentPointer, sharePlatformDescriptor(attrs.platformDescriptor));
-                currentPointer += 4;
-
+                record.add(attrs.route_type, sharePlatformDescriptor(attrs.platformDescriptor));
                 break;
             default:
                 throw new RuntimeException();
         }
-        return edge;
+        boolean shareable = sharedRecords != null && attrs.type != BOARD && attrs.type != ALIGHT;
+        Long attrPointer = shareable ? sharedRecords.get(record) : null;
+        if (attrPointer == null) {
+            attrPointer = currentPointer;
+            this.attrs.ensureCapacity(currentPointer + 4L * record.size());
+            for (int i = 0; i < record.size(); i++) {
+                this.attrs.setInt(currentPointer, record.get(i));
+                currentPointer += 4;
+            }
+            records++;
+            if (shareable)
+                sharedRecords.put(record, attrPointer);
+        }
+        return addEdge(src, dest, attrPointer);
     }
 
     private int shareValidity(GtfsStorage.Validity validity) {
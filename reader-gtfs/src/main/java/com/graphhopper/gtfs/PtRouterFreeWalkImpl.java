@@ -70,14 +70,20 @@ public final class PtRouterFreeWalkImpl implements PtRouter {
         this.encodingManager = encodingManager;
         this.locationIndex = locationIndex;
         this.gtfsStorage = gtfsStorage;
-        this.realtimeFeed = realtimeFeed;
+        this.realtimeFeed = realtimeFeed.forStaticGtfs(gtfsStorage);
         this.pathDetailsBuilderFactory = pathDetailsBuilderFactory;
         this.ptGraph = gtfsStorage.getPtGraph();
     }
 
     @Override
     public GHResponse route(Request request) {
-        return new RequestHandler(request).route();
+        if (!gtfsStorage.retain())
+            throw new IllegalStateException("The GTFS data has been replaced while the request was waiting. Please try again.");
+        try {
+            return new RequestHandler(request).route();
+        } finally {
+            gtfsStorage.release();
+        }
     }
 
     public static class Factory {
@@ -70,13 +70,19 @@ public final class PtRouterImpl implements PtRouter {
         this.locationIndex = locationIndex;
         this.gtfsStorage = gtfsStorage;
         this.ptGraph = gtfsStorage.getPtGraph();
-        this.realtimeFeed = realtimeFeed;
+        this.realtimeFeed = realtimeFeed.forStaticGtfs(gtfsStorage);
         this.pathDetailsBuilderFactory = pathDetailsBuilderFactory;
     }
 
     @Override
     public GHResponse route(Request request) {
-        return new RequestHandler(request).route();
+        if (!gtfsStorage.retain())
+            throw new IllegalStateException("The GTFS data has been replaced while the request was waiting. Please try again.");
+        try {
+            return new RequestHandler(request).route();
+        } finally {
+            gtfsStorage.release();
+        }
     }
 
     public static class Factory {
@@ -104,7 +110,11 @@ public final class PtRouterImpl implements PtRouter {
         public PtRouter createWith(GtfsRealtime.FeedMessage realtimeFeed) {
             Map<String, GtfsRealtime.FeedMessage> realtimeFeeds = new HashMap<>();
             realtimeFeeds.put("gtfs_0", realtimeFeed);
-            return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, realtimeFeeds), new PathDetailsBuilderFactory());
+            return createWith(RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, realtimeFeeds));
+        }
+
+        public PtRouter createWith(RealtimeFeed realtimeFeed) {
+            return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, realtimeFeed, new PathDetailsBuilderFactory());
         }
 
         public PtRouter createWithoutRealtimeFeed() {
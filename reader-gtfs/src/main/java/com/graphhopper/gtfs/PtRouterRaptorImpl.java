@@ -0,0 +1,379 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Stop;
+import com.google.transit.realtime.GtfsRealtime;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.Trip;
+import com.graphhopper.config.Profile;
+import com.graphhopper.routing.DefaultWeightingFactory;
+import com.graphhopper.routing.WeightingFactory;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import javax.inject.Inject;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A {@link PtRouter} that uses {@link Raptor} for the transit part of the journey. Access and egress are searched
+ * on the street network like in {@link PtRouterImpl}, the stops they reach are the sources and targets of the
+ * RAPTOR search. Arrive-by queries are answered by {@link PtRouterImpl}.
+ */
+public final class PtRouterRaptorImpl implements PtRouter {
+
+    private final GraphHopperConfig config;
+    private final TranslationMap translationMap;
+    private final BaseGraph baseGraph;
+    private final EncodingManager encodingManager;
+    private final LocationIndex locationIndex;
+    private final GtfsStorage gtfsStorage;
+    private final PtGraph ptGraph;
+    private final RealtimeFeed realtimeFeed;
+    private final PathDetailsBuilderFactory pathDetailsBuilderFactory;
+    private final WeightingFactory weightingFactory;
+    private final RaptorTimetable timetable;
+    private final PtRouter arriveByRouter;
+    private RaptorTimetable.RealtimeOverlay realtimeOverlay;
+
+    @Inject
+    public PtRouterRaptorImpl(GraphHopperConfig config, TranslationMap translationMap, BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, GtfsStorage gtfsStorage, RealtimeFeed realtimeFeed, PathDetailsBuilderFactory pathDetailsBuilderFactory) {
+        this.config = config;
+        this.weightingFactory = new DefaultWeightingFactory(baseGraph, encodingManager);
+        this.translationMap = translationMap;
+        this.baseGraph = baseGraph;
+        this.encodingManager = encodingManager;
+        this.locationIndex = locationIndex;
+        this.gtfsStorage = gtfsStorage;
+        this.ptGraph = gtfsStorage.getPtGraph();
+        this.realtimeFeed = realtimeFeed.forStaticGtfs(gtfsStorage);
+        this.pathDetailsBuilderFactory = pathDetailsBuilderFactory;
+        this.timetable = gtfsStorage.getRaptorTimetable();
+        if (timetable == null)
+            throw new IllegalStateException("The RAPTOR timetable has not been built, set gtfs.raptor: true");
+        this.arriveByRouter = new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, this.realtimeFeed, pathDetailsBuilderFactory);
+    }
+
+    @Override
+    public GHResponse route(Request request) {
+        if (request.isArriveBy())
+            return arriveByRouter.route(request);
+        if (!gtfsStorage.retain())
+            throw new IllegalStateException("The GTFS data has been replaced while the request was waiting. Please try again.");
+        try {
+            return new RequestHandler(request).route();
+        } finally {
+            gtfsStorage.release();
+        }
+    }
+
+    private RaptorTimetable.RealtimeOverlay getRealtimeOverlay() {
+        if (realtimeOverlay == null)
+            realtimeOverlay = realtimeFeed.feedMessages.isEmpty() ? RaptorTimetable.RealtimeOverlay.empty() : timetable.createRealtimeOverlay(realtimeFeed);
+        return realtimeOverlay;
+    }
+
+    public static class Factory {
+        private final GraphHopperConfig config;
+        private final TranslationMap translationMap;
+        private final BaseGraph baseGraph;
+        private final EncodingManager encodingManager;
+        private final LocationIndex locationIndex;
+        private final GtfsStorage gtfsStorage;
+        private final Map<String, Transfers> transfers;
+
+        public Factory(GraphHopperConfig config, TranslationMap translationMap, BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, GtfsStorage gtfsStorage) {
+            this.config = config;
+            this.translationMap = translationMap;
+            this.baseGraph = baseGraph;
+            this.encodingManager = encodingManager;
+            this.locationIndex = locationIndex;
+            this.gtfsStorage = gtfsStorage;
+            this.transfers = new HashMap<>();
+            for (Map.Entry<String, GTFSFeed> entry : this.gtfsStorage.getGtfsFeeds().entrySet()) {
+                this.transfers.put(entry.getKey(), new Transfers(entry.getValue()));
+            }
+            if (gtfsStorage.getRaptorTimetable() == null)
+                gtfsStorage.setRaptorTimetable(RaptorTimetable.build(gtfsStorage));
+        }
+
+        public PtRouter createWith(GtfsRealtime.FeedMessage realtimeFeed) {
+            Map<String, GtfsRealtime.FeedMessage> realtimeFeeds = new HashMap<>();
+            realtimeFeeds.put("gtfs_0", realtimeFeed);
+            return new PtRouterRaptorImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, realtimeFeeds), new PathDetailsBuilderFactory());
+        }
+
+        public PtRouter createWithoutRealtimeFeed() {
+            return new PtRouterRaptorImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, RealtimeFeed.empty(), new PathDetailsBuilderFactory());
+        }
+    }
+
+    private class RequestHandler {
+        private final int maxVisitedNodesForRequest;
+        private final int limitSolutions;
+        private final long maxProfileDuration;
+        private final Instant initialTime;
+        private final boolean profileQuery;
+        private final boolean ignoreTransfers;
+        private final double betaTransfers;
+        private final double betaAccessTime;
+        private final double betaEgressTime;
+        private final double walkSpeedKmH;
+        private final int blockedRouteTypes;
+        private final GHLocation enter;
+        private final GHLocation exit;
+        private final Translation translation;
+        private final List<String> requestedPathDetails;
+
+        private final GHResponse response = new GHResponse();
+        private final long limitTripTime;
+        private final long limitStreetTime;
+        private final GeometryFactory geometryFactory = new GeometryFactory();
+        private QueryGraph queryGraph;
+        private int visitedNodes;
+
+        private final Profile accessProfile;
+        private final EdgeFilter accessSnapFilter;
+        private final Weighting accessWeighting;
+        private final Profile transferProfile;
+        private final Weighting transferWeighting;
+        private final Profile egressProfile;
+        private final EdgeFilter egressSnapFilter;
+        private final Weighting egressWeighting;
+
+        // the labels of the access and egress searches at the stops, and of the walk from the origin to the destination
+        private final Map<Integer, Label> accessLabels = new HashMap<>();
+        private final Map<Integer, Label> egressLabels = new HashMap<>();
+        private Label walkLabel;
+
+        RequestHandler(Request request) {
+            maxVisitedNodesForRequest = request.getMaxVisitedNodes();
+            profileQuery = request.isProfileQuery();
+            ignoreTransfers = Optional.ofNullable(request.getIgnoreTransfers()).orElse(request.isProfileQuery());
+            betaTransfers = request.getBetaTransfers();
+            betaAccessTime = request.getBetaAccessTime();
+            betaEgressTime = request.getBetaEgressTime();
+            limitSolutions = Optional.ofNullable(request.getLimitSolutions()).orElse(profileQuery ? 50 : ignoreTransfers ? 1 : Integer.MAX_VALUE);
+            initialTime = request.getEarliestDepartureTime();
+            maxProfileDuration = request.getMaxProfileDuration().toMillis();
+            walkSpeedKmH = request.getWalkSpeedKmH();
+            blockedRouteTypes = request.getBlockedRouteTypes();
+            translation = translationMap.getWithFallBack(request.getLocale());
+            enter = request.getPoints().get(0);
+            exit = request.getPoints().get(1);
+            limitTripTime = request.getLimitTripTime() != null ? request.getLimitTripTime().toMillis() : Long.MAX_VALUE;
+            limitStreetTime = request.getLimitStreetTime() != null ? request.getLimitStreetTime().toMillis() : Long.MAX_VALUE;
+            requestedPathDetails = request.getPathDetails();
+            accessProfile = config.getProfiles().stream().filter(p -> p.getName().equals(request.getAccessProfile())).findFirst().get();
+            accessWeighting = weightingFactory.createWeighting(accessProfile, new PMap(), false);
+            accessSnapFilter = new DefaultSnapFilter(accessWeighting, encodingManager.getBooleanEncodedValue(Subnetwork.key(accessProfile.getName())));
+            transferProfile = config.getProfiles().stream().filter(p -> p.getName().equals("foot")).findFirst().get();
+            transferWeighting = weightingFactory.createWeighting(transferProfile, new PMap(), false);
+            egressProfile = config.getProfiles().stream().filter(p -> p.getName().equals(request.getEgressProfile())).findFirst().get();
+            egressWeighting = weightingFactory.createWeighting(egressProfile, new PMap(), false);
+            egressSnapFilter = new DefaultSnapFilter(egressWeighting, encodingManager.getBooleanEncodedValue(Subnetwork.key(egressProfile.getName())));
+        }
+
+        GHResponse route() {
+            StopWatch stopWatch = new StopWatch().start();
+            PtLocationSnapper.Result result = new PtLocationSnapper(baseGraph, locationIndex, gtfsStorage).snapAll(Arrays.asList(enter, exit), Arrays.asList(accessSnapFilter, egressSnapFilter));
+            queryGraph = result.queryGraph;
+            response.addDebugInfo("idLookup:" + stopWatch.stop().getSeconds() + "s");
+
+            List<Raptor.Journey> journeys = findJourneys(result.nodes.get(0), result.nodes.get(1));
+            parseJourneysAndAddToResponse(journeys, result.points);
+            return response;
+        }
+
+        private List<Raptor.Journey> findJourneys(Label.NodeId startNode, Label.NodeId destNode) {
+            StopWatch stopWatch = new StopWatch().start();
+            Raptor raptor = new Raptor(timetable, getRealtimeOverlay(), initialTime, profileQuery ? maxProfileDuration / 1000 : 0)
+                    .setBlockedRouteTypes(blockedRouteTypes);
+            findAccessStops(startNode, destNode, raptor);
+            findEgressStops(destNode, raptor);
+            List<Raptor.Journey> journeys = raptor.calcJourneys();
+            journeys.removeIf(j -> (j.arrival - j.departure) * 1000 > limitTripTime);
+            if (walkLabel != null) {
+                // a journey without vehicles, which can start at any time
+                Raptor.Journey walk = new Raptor.Journey();
+                walk.departure = initialTime.getEpochSecond();
+                walk.arrival = walk.departure + (walkLabel.currentTime - initialTime.toEpochMilli()) / 1000;
+                journeys.add(walk);
+            }
+            List<Raptor.Journey> solutions = new ArrayList<>();
+            for (Raptor.Journey journey : journeys) {
+                if (solutions.stream().noneMatch(s -> dominates(s, journey))) {
+                    solutions.removeIf(s -> dominates(journey, s));
+                    solutions.add(journey);
+                }
+            }
+            solutions.sort(Comparator.comparingLong((Raptor.Journey j) -> j.departure).thenComparingLong(j -> j.arrival));
+            if (solutions.size() > limitSolutions)
+                solutions = new ArrayList<>(solutions.subList(0, limitSolutions));
+
+            response.addDebugInfo("routing:" + stopWatch.stop().getSeconds() + "s");
+            if (solutions.isEmpty() && visitedNodes >= maxVisitedNodesForRequest) {
+                response.addError(new MaximumNodesExceededException("No path found - maximum number of nodes exceeded: " + maxVisitedNodesForRequest, maxVisitedNodesForRequest));
+            }
+            response.getHints().putObject("visited_nodes.sum", visitedNodes);
+            response.getHints().putObject("visited_nodes.average", visitedNodes);
+            response.getHints().putObject("raptor.scanned_patterns", raptor.getScannedPatterns());
+            if (solutions.isEmpty()) {
+                response.addError(new ConnectionNotFoundException("No route found", Collections.emptyMap()));
+            }
+            return solutions;
+        }
+
+        private boolean dominates(Raptor.Journey a, Raptor.Journey b) {
+            if (a.arrival > b.arrival)
+                return false;
+            if (profileQuery && a.departure < b.departure)
+                return false;
+            return ignoreTransfers || a.rides <= b.rides;
+        }
+
+        private void findAccessStops(Label.NodeId startNode, Label.NodeId destNode, Raptor raptor) {
+            GraphExplorer accessExplorer = new GraphExplorer(queryGraph, ptGraph, accessWeighting, gtfsStorage, realtimeFeed, false, true, false, walkSpeedKmH, false, blockedRouteTypes);
+            MultiCriteriaLabelSetting accessRouter = new MultiCriteriaLabelSetting(accessExplorer, false, false, false, 0, new ArrayList<>());
+            accessRouter.setBetaStreetTime(betaAccessTime);
+            accessRouter.setLimitStreetTime(limitStreetTime);
+            for (Label label : accessRouter.calcLabels(startNode, initialTime)) {
+                visitedNodes++;
+                if (visitedNodes >= maxVisitedNodesForRequest)
+                    break;
+                if (label.node.equals(destNode) && walkLabel == null) {
+                    walkLabel = label;
+                } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
+                    GtfsStorage.PlatformDescriptor platform = label.edge.getPlatformDescriptor();
+                    int stop = timetable.getStopIndex(platform.feed_id, platform.stop_id);
+                    if (stop >= 0 && !accessLabels.containsKey(stop)) {
+                        accessLabels.put(stop, label);
+                        raptor.addAccess(stop, toSeconds(label.currentTime - initialTime.toEpochMilli()));
+                    }
+                }
+            }
+        }
+
+        private void findEgressStops(Label.NodeId destNode, Raptor raptor) {
+            GraphExplorer egressExplorer = new GraphExplorer(queryGraph, ptGraph, egressWeighting, gtfsStorage, realtimeFeed, true, true, false, walkSpeedKmH, false, blockedRouteTypes);
+            MultiCriteriaLabelSetting egressRouter = new MultiCriteriaLabelSetting(egressExplorer, true, false, false, 0, new ArrayList<>());
+            egressRouter.setBetaStreetTime(betaEgressTime);
+            egressRouter.setLimitStreetTime(limitStreetTime);
+            for (Label label : egressRouter.calcLabels(destNode, initialTime)) {
+                visitedNodes++;
+                if (visitedNodes >= maxVisitedNodesForRequest)
+                    break;
+                if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
+                    GtfsStorage.PlatformDescriptor platform = label.edge.getPlatformDescriptor();
+                    int stop = timetable.getStopIndex(platform.feed_id, platform.stop_id);
+                    if (stop >= 0 && !egressLabels.containsKey(stop)) {
+                        egressLabels.put(stop, label);
+                        raptor.addEgress(stop, toSeconds(initialTime.toEpochMilli() - label.currentTime));
+                    }
+                }
+            }
+        }
+
+        private int toSeconds(long millis) {
+            return (int) ((millis + 999) / 1000);
+        }
+
+        private void parseJourneysAndAddToResponse(List<Raptor.Journey> journeys, PointList waypoints) {
+            TripFromLabel tripFromLabel = new TripFromLabel(queryGraph, encodingManager, gtfsStorage, realtimeFeed, pathDetailsBuilderFactory, walkSpeedKmH);
+            for (Raptor.Journey journey : journeys) {
+                List<Trip.Leg> legs = new ArrayList<>();
+                if (journey.rides == 0) {
+                    legs.addAll(tripFromLabel.parseWalkLegs(Label.getTransitions(walkLabel, false), accessWeighting, translation, requestedPathDetails));
+                } else {
+                    legs.addAll(tripFromLabel.parseWalkLegs(Label.getTransitions(accessLabels.get(journey.accessStop).parent, false), accessWeighting, translation, requestedPathDetails));
+                    for (Raptor.Leg leg : journey.legs) {
+                        if (leg instanceof Raptor.Ride) {
+                            legs.add(createPtLeg((Raptor.Ride) leg));
+                        } else {
+                            int[] edgeKeys = timetable.transferEdgeKeys[((Raptor.Transfer) leg).transfer];
+                            if (edgeKeys != null) {
+                                long departureTime = legs.get(legs.size() - 1).getArrivalTime().getTime();
+                                legs.addAll(tripFromLabel.parseWalkLegs(tripFromLabel.transferPath(edgeKeys, transferWeighting, departureTime), transferWeighting, translation, requestedPathDetails));
+                            }
+                        }
+                    }
+                    legs.addAll(tripFromLabel.parseWalkLegs(Label.getTransitions(egressLabels.get(journey.egressStop).parent, true), egressWeighting, translation, requestedPathDetails));
+                }
+                ResponsePath responsePath = tripFromLabel.createResponsePath(translation, waypoints, legs);
+                responsePath.setTime(journey.arrival * 1000 - initialTime.toEpochMilli());
+                responsePath.setRouteWeight(responsePath.getTime() + Math.max(0, journey.rides - 1) * betaTransfers);
+                response.add(responsePath);
+            }
+            Comparator<ResponsePath> c = Comparator.comparingInt(p -> (p.isImpossible() ? 1 : 0));
+            Comparator<ResponsePath> d = Comparator.comparingDouble(ResponsePath::getTime);
+            response.getAll().sort(c.thenComparing(d));
+        }
+
+        private Trip.PtLeg createPtLeg(Raptor.Ride ride) {
+            int pattern = timetable.tripPattern[ride.trip];
+            String feedId = timetable.feedIds[timetable.patternFeed[pattern]];
+            GTFSFeed feed = timetable.feeds[timetable.patternFeed[pattern]];
+            RaptorTimetable.TripUpdate update = ride.update;
+            List<Trip.Stop> stops = new ArrayList<>();
+            double distance = 0;
+            Stop previous = null;
+            for (int position = ride.boardPosition; position <= ride.alightPosition; position++) {
+                int index = timetable.tripTimesStart[ride.trip] + position;
+                Stop stop = feed.stops.get(timetable.stops[timetable.patternStops[timetable.patternStopsStart[pattern] + position]].stopId);
+                if (previous != null)
+                    distance += DistanceCalcEarth.DIST_EARTH.calcDist(previous.stop_lat, previous.stop_lon, stop.stop_lat, stop.stop_lon);
+                previous = stop;
+                Date plannedArrival = position == ride.boardPosition ? null : toDate(ride, timetable.arrivals[index]);
+                Date predictedArrival = plannedArrival != null && update != null ? toDate(ride, update.arrivals[position]) : null;
+                Date plannedDeparture = position == ride.alightPosition ? null : toDate(ride, timetable.departures[index]);
+                Date predictedDeparture = plannedDeparture != null && update != null ? toDate(ride, update.departures[position]) : null;
+                stops.add(new Trip.Stop(stop.stop_id, stop.stop_name, geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat)),
+                        predictedArrival != null ? predictedArrival : plannedArrival, plannedArrival, predictedArrival, update != null && update.arrivalCancelled[position],
+                        predictedDeparture != null ? predictedDeparture : plannedDeparture, plannedDeparture, predictedDeparture, update != null && update.departureCancelled[position]));
+            }
+            long travelTime = stops.get(stops.size() - 1).arrivalTime.getTime() - stops.get(0).departureTime.getTime();
+            String tripId = timetable.tripIds[ride.trip];
+            return new Trip.PtLeg(feedId, false, tripId, timetable.tripRouteIds[ride.trip],
+                    Optional.ofNullable(feed.trips.get(tripId)).map(t -> t.trip_headsign).orElse("extra"),
+                    stops, distance, travelTime,
+                    geometryFactory.createLineString(stops.stream().map(s -> s.geometry.getCoordinate()).toArray(Coordinate[]::new)));
+        }
+
+        private Date toDate(Raptor.Ride ride, int seconds) {
+            return new Date((ride.dayStart + seconds) * 1000);
+        }
+    }
+
+}
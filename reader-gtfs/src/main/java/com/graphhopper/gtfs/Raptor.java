@@ -0,0 +1,514 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+import static com.graphhopper.gtfs.RaptorTimetable.SECONDS_PER_DAY;
+
+/**
+ * Round-based public transit routing (RAPTOR, Delling, Pajor and Werneck 2012) on a {@link RaptorTimetable}. Round
+ * k calculates the earliest arrival at all stops with k vehicles: every pattern that serves a stop improved in round
+ * k-1 is scanned once, followed by the transfers from all stops improved in round k. There is no priority queue, and
+ * the result contains the journeys that are Pareto-optimal with respect to arrival time and number of vehicles.
+ * <p>
+ * For profile queries, the search is repeated for all departures within the time window from the latest to the
+ * earliest (rRAPTOR) without resetting the labels, so each run only does the work for the journeys that improve on
+ * those that depart later.
+ * <p>
+ * All times are in seconds since the start time of the query.
+ */
+class Raptor {
+
+    static final int INFINITY = Integer.MAX_VALUE;
+
+    private final RaptorTimetable timetable;
+    private final RaptorTimetable.RealtimeOverlay realtime;
+    private final long startTime;
+    private final int profileSeconds;
+    private final IntIntHashMap accessSeconds = new IntIntHashMap();
+    private final IntIntHashMap egressSeconds = new IntIntHashMap();
+    private int maxRounds = 8;
+    private int blockedRouteTypes;
+
+    // per round and stop: the earliest arrival (with a transfer, if that is earlier than with the vehicle)
+    private int[][] arrivals;
+    private int[][] arrivalTransfers;
+    // per round and stop: the earliest arrival with a vehicle and where it was boarded
+    private int[][] rideArrivals;
+    private int[][] rideTrips;
+    private int[][] rideDays;
+    private int[][] rideBoardPositions;
+    private int[][] rideAlightPositions;
+    private int[][] rideBoardRounds;
+    private int[] targetArrivals;
+    private int[] targetStops;
+    private boolean[] targetImproved;
+    private BitSet markedStops;
+    private int[] patternStartPositions;
+    private Day[][] days;
+    private int minDayOffset;
+    private int scannedPatterns;
+
+    // the result of findEarliestTrip
+    private int foundTrip;
+    private int foundDay;
+    private int foundDeparture;
+    private RaptorTimetable.TripUpdate foundUpdate;
+
+    Raptor(RaptorTimetable timetable, RaptorTimetable.RealtimeOverlay realtime, Instant startTime, long profileSeconds) {
+        this.timetable = timetable;
+        this.realtime = realtime;
+        this.startTime = startTime.getEpochSecond();
+        this.profileSeconds = (int) profileSeconds;
+    }
+
+    /**
+     * The maximum number of vehicles of a journey. Default is 8
+     */
+    Raptor setMaxRounds(int maxRounds) {
+        this.maxRounds = maxRounds;
+        return this;
+    }
+
+    Raptor setBlockedRouteTypes(int blockedRouteTypes) {
+        this.blockedRouteTypes = blockedRouteTypes;
+        return this;
+    }
+
+    void addAccess(int stop, int seconds) {
+        if (seconds < accessSeconds.getOrDefault(stop, INFINITY))
+            accessSeconds.put(stop, seconds);
+    }
+
+    void addEgress(int stop, int seconds) {
+        if (seconds < egressSeconds.getOrDefault(stop, INFINITY))
+            egressSeconds.put(stop, seconds);
+    }
+
+    int getScannedPatterns() {
+        return scannedPatterns;
+    }
+
+    /**
+     * @return all journeys found, in the order in which they were found. This contains dominated journeys when
+     * labels are improved in later rounds or, in profile queries, by earlier departures.
+     */
+    List<Journey> calcJourneys() {
+        init();
+        List<Journey> journeys = new ArrayList<>();
+        if (accessSeconds.isEmpty() || egressSeconds.isEmpty())
+            return journeys;
+        if (profileSeconds <= 0) {
+            runIteration(0, journeys);
+        } else {
+            // at the end of the time window, the next departure is optimal, even if it is outside the window
+            runIteration(profileSeconds, journeys);
+            int[] departures = collectDepartures();
+            for (int i = departures.length - 1; i >= 0; i--)
+                runIteration(departures[i], journeys);
+        }
+        return journeys;
+    }
+
+    private void init() {
+        int stopCount = timetable.getStopCount();
+        arrivals = newLabels(stopCount);
+        arrivalTransfers = newLabels(stopCount);
+        rideArrivals = newLabels(stopCount);
+        rideTrips = newLabels(stopCount);
+        rideDays = newLabels(stopCount);
+        rideBoardPositions = newLabels(stopCount);
+        rideAlightPositions = newLabels(stopCount);
+        rideBoardRounds = newLabels(stopCount);
+        targetArrivals = new int[maxRounds + 1];
+        Arrays.fill(targetArrivals, INFINITY);
+        targetStops = new int[maxRounds + 1];
+        targetImproved = new boolean[maxRounds + 1];
+        markedStops = new BitSet(stopCount);
+        patternStartPositions = new int[timetable.getPatternCount()];
+        Arrays.fill(patternStartPositions, -1);
+        // trips of earlier service days can still run at the start time, and we search until the day after the
+        // time window
+        minDayOffset = -timetable.maxDayOverflow - 1;
+        int maxDayOffset = profileSeconds / SECONDS_PER_DAY + 3;
+        days = new Day[timetable.feedIds.length][maxDayOffset - minDayOffset + 1];
+    }
+
+    private int[][] newLabels(int stopCount) {
+        int[][] labels = new int[maxRounds + 1][stopCount];
+        for (int[] label : labels)
+            Arrays.fill(label, INFINITY);
+        return labels;
+    }
+
+    private void runIteration(int departure, List<Journey> journeys) {
+        Arrays.fill(targetImproved, false);
+        markedStops.clear();
+        for (IntIntCursor c : accessSeconds) {
+            int arrival = departure + c.value;
+            if (arrival < arrivals[0][c.key]) {
+                arrivals[0][c.key] = arrival;
+                markedStops.set(c.key);
+            }
+        }
+        for (int round = 1; round <= maxRounds && !markedStops.isEmpty(); round++) {
+            IntArrayList patterns = collectPatterns();
+            markedStops.clear();
+            for (int i = 0; i < patterns.size(); i++) {
+                int pattern = patterns.get(i);
+                scanPattern(pattern, patternStartPositions[pattern], round);
+                patternStartPositions[pattern] = -1;
+            }
+            relaxTransfers(round);
+        }
+        for (int round = 1; round <= maxRounds; round++)
+            if (targetImproved[round])
+                journeys.add(extractJourney(round));
+    }
+
+    private IntArrayList collectPatterns() {
+        IntArrayList patterns = new IntArrayList();
+        for (int stop = markedStops.nextSetBit(0); stop >= 0; stop = markedStops.nextSetBit(stop + 1)) {
+            for (int i = timetable.stopPatternsStart[stop]; i < timetable.stopPatternsStart[stop + 1]; i++) {
+                int pattern = timetable.stopPatterns[i];
+                int position = timetable.stopPatternPositions[i];
+                if (patternStartPositions[pattern] == -1)
+                    patterns.add(pattern);
+                if (patternStartPositions[pattern] == -1 || position < patternStartPositions[pattern])
+                    patternStartPositions[pattern] = position;
+            }
+        }
+        return patterns;
+    }
+
+    private void scanPattern(int pattern, int startPosition, int round) {
+        scannedPatterns++;
+        int stopsStart = timetable.patternStopsStart[pattern];
+        int stopCount = timetable.patternStopsStart[pattern + 1] - stopsStart;
+        int feed = timetable.patternFeed[pattern];
+        int trip = -1;
+        int day = -1;
+        int boardPosition = -1;
+        int boardRound = -1;
+        RaptorTimetable.TripUpdate update = null;
+        for (int position = startPosition; position < stopCount; position++) {
+            int stop = timetable.patternStops[stopsStart + position];
+            if (trip != -1 && (update == null || !update.arrivalCancelled[position])) {
+                int arrival = day(feed, day).start + arrival(trip, update, position);
+                if (arrival < rideArrivals[round][stop] && arrival < earliestArrival(stop, round - 1) && arrival < earliestTargetArrival(round)) {
+                    rideArrivals[round][stop] = arrival;
+                    rideTrips[round][stop] = trip;
+                    rideDays[round][stop] = day;
+                    rideBoardPositions[round][stop] = boardPosition;
+                    rideAlightPositions[round][stop] = position;
+                    rideBoardRounds[round][stop] = boardRound;
+                    if (arrival < arrivals[round][stop]) {
+                        arrivals[round][stop] = arrival;
+                        arrivalTransfers[round][stop] = -1;
+                    }
+                    markedStops.set(stop);
+                    int egress = egressSeconds.getOrDefault(stop, -1);
+                    if (egress >= 0 && arrival + egress < targetArrivals[round]) {
+                        targetArrivals[round] = arrival + egress;
+                        targetStops[round] = stop;
+                        targetImproved[round] = true;
+                    }
+                }
+            }
+            int readyTime = INFINITY;
+            int readyRound = -1;
+            for (int k = 0; k < round; k++) {
+                int time = readyTime(stop, k);
+                if (time < readyTime) {
+                    readyTime = time;
+                    readyRound = k;
+                }
+            }
+            if (readyTime == INFINITY)
+                continue;
+            int currentDeparture = trip == -1 ? INFINITY : day(feed, day).start + departure(trip, update, position);
+            if (readyTime <= currentDeparture && findEarliestTrip(pattern, position, readyTime) && foundDeparture < currentDeparture) {
+                trip = foundTrip;
+                day = foundDay;
+                update = foundUpdate;
+                boardPosition = position;
+                boardRound = readyRound;
+            }
+        }
+    }
+
+    private void relaxTransfers(int round) {
+        BitSet improvedByTransfer = new BitSet();
+        for (int stop = markedStops.nextSetBit(0); stop >= 0; stop = markedStops.nextSetBit(stop + 1)) {
+            int rideArrival = rideArrivals[round][stop];
+            for (int transfer = timetable.transfersStart[stop]; transfer < timetable.transfersStart[stop + 1]; transfer++) {
+                int target = timetable.transferTargets[transfer];
+                int arrival = rideArrival + timetable.transferSeconds[transfer];
+                if (arrival < arrivals[round][target] && arrival < earliestArrival(target, round - 1) && arrival < earliestTargetArrival(round)) {
+                    arrivals[round][target] = arrival;
+                    arrivalTransfers[round][target] = transfer;
+                    improvedByTransfer.set(target);
+                }
+            }
+        }
+        markedStops.or(improvedByTransfer);
+    }
+
+    private int readyTime(int stop, int round) {
+        int arrival = arrivals[round][stop];
+        if (arrival == INFINITY || round == 0 || arrivalTransfers[round][stop] != -1)
+            return arrival;
+        return arrival + timetable.changeSeconds[stop];
+    }
+
+    private int earliestArrival(int stop, int maxRound) {
+        int result = INFINITY;
+        for (int k = 0; k <= maxRound; k++)
+            result = Math.min(result, arrivals[k][stop]);
+        return result;
+    }
+
+    private int earliestTargetArrival(int maxRound) {
+        int result = INFINITY;
+        for (int k = 1; k <= maxRound; k++)
+            result = Math.min(result, targetArrivals[k]);
+        return result;
+    }
+
+    /**
+     * Finds the trip of the pattern that departs first at the given position, not before the ready time. Only trips
+     * of the service days until the day after the ready time are considered.
+     */
+    private boolean findEarliestTrip(int pattern, int position, int readyTime) {
+        int feed = timetable.patternFeed[pattern];
+        int firstTrip = timetable.patternTripsStart[pattern];
+        int endTrip = timetable.patternTripsStart[pattern + 1];
+        IntArrayList updatedTrips = realtime.getUpdatedTrips(pattern);
+        foundTrip = -1;
+        foundDeparture = INFINITY;
+        foundUpdate = null;
+        for (int d = 0; d < days[feed].length; d++) {
+            Day day = day(feed, d);
+            if (day.start > readyTime + SECONDS_PER_DAY || day.start >= foundDeparture)
+                break;
+            int trip = firstTripDepartingAfter(firstTrip, endTrip, position, readyTime - day.start);
+            for (; trip < endTrip; trip++) {
+                int departure = day.start + timetable.departures[timetable.tripTimesStart[trip] + position];
+                if (departure >= foundDeparture)
+                    break;
+                if (isRunning(trip, day) && (updatedTrips == null || realtime.getUpdate(trip, day.epochDay) == null)) {
+                    foundTrip = trip;
+                    foundDay = d;
+                    foundDeparture = departure;
+                    break;
+                }
+            }
+            if (updatedTrips != null) {
+                for (int i = 0; i < updatedTrips.size(); i++) {
+                    int updatedTrip = updatedTrips.get(i);
+                    RaptorTimetable.TripUpdate update = realtime.getUpdate(updatedTrip, day.epochDay);
+                    if (update == null || update.departureCancelled[position] || !isRunning(updatedTrip, day))
+                        continue;
+                    int departure = day.start + update.departures[position];
+                    if (departure >= readyTime && departure < foundDeparture) {
+                        foundTrip = updatedTrip;
+                        foundDay = d;
+                        foundDeparture = departure;
+                        foundUpdate = update;
+                    }
+                }
+            }
+        }
+        return foundTrip != -1;
+    }
+
+    private int firstTripDepartingAfter(int firstTrip, int endTrip, int position, int time) {
+        int low = firstTrip;
+        int high = endTrip;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timetable.departures[timetable.tripTimesStart[mid] + position] < time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private boolean isRunning(int trip, Day day) {
+        return day.activeServices.get(timetable.tripService[trip]) && (blockedRouteTypes & (1 << timetable.tripRouteType[trip])) == 0;
+    }
+
+    private int arrival(int trip, RaptorTimetable.TripUpdate update, int position) {
+        return update != null ? update.arrivals[position] : timetable.arrivals[timetable.tripTimesStart[trip] + position];
+    }
+
+    private int departure(int trip, RaptorTimetable.TripUpdate update, int position) {
+        return update != null ? update.departures[position] : timetable.departures[timetable.tripTimesStart[trip] + position];
+    }
+
+    /**
+     * The departures from the access stops within the time window, in seconds since the start time of the query
+     * when leaving the origin, in ascending order
+     */
+    private int[] collectDepartures() {
+        IntHashSet departures = new IntHashSet();
+        for (IntIntCursor c : accessSeconds) {
+            int stop = c.key;
+            for (int i = timetable.stopPatternsStart[stop]; i < timetable.stopPatternsStart[stop + 1]; i++) {
+                int pattern = timetable.stopPatterns[i];
+                int position = timetable.stopPatternPositions[i];
+                int feed = timetable.patternFeed[pattern];
+                int endTrip = timetable.patternTripsStart[pattern + 1];
+                for (int d = 0; d < days[feed].length; d++) {
+                    Day day = day(feed, d);
+                    int trip = firstTripDepartingAfter(timetable.patternTripsStart[pattern], endTrip, position, c.value - day.start);
+                    for (; trip < endTrip; trip++) {
+                        int departure = day.start + timetable.departures[timetable.tripTimesStart[trip] + position] - c.value;
+                        if (departure >= profileSeconds)
+                            break;
+                        if (isRunning(trip, day))
+                            departures.add(departure);
+                    }
+                }
+            }
+        }
+        int[] result = departures.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private Journey extractJourney(int round) {
+        Journey journey = new Journey();
+        int stop = targetStops[round];
+        journey.egressStop = stop;
+        journey.egressSeconds = egressSeconds.get(stop);
+        journey.arrival = startTime + targetArrivals[round];
+        int k = round;
+        boolean byRide = true;
+        while (true) {
+            if (!byRide) {
+                if (k == 0)
+                    break;
+                int transfer = arrivalTransfers[k][stop];
+                if (transfer != -1) {
+                    journey.legs.add(new Transfer(transfer));
+                    stop = timetable.transferSources[transfer];
+                }
+            }
+            int trip = rideTrips[k][stop];
+            int boardRound = rideBoardRounds[k][stop];
+            Day day = day(timetable.patternFeed[timetable.tripPattern[trip]], rideDays[k][stop]);
+            Ride ride = new Ride(trip, startTime + day.start, realtime.getUpdate(trip, day.epochDay), rideBoardPositions[k][stop], rideAlightPositions[k][stop]);
+            journey.legs.add(ride);
+            stop = ride.boardStop(timetable);
+            k = boardRound;
+            byRide = false;
+        }
+        Collections.reverse(journey.legs);
+        journey.accessStop = stop;
+        journey.accessSeconds = accessSeconds.get(stop);
+        journey.rides = (int) journey.legs.stream().filter(l -> l instanceof Ride).count();
+        journey.departure = ((Ride) journey.legs.get(0)).departureTime(timetable) - journey.accessSeconds;
+        return journey;
+    }
+
+    private Day day(int feed, int d) {
+        Day day = days[feed][d];
+        if (day == null) {
+            LocalDate date = Instant.ofEpochSecond(startTime).atZone(timetable.feedZones[feed]).toLocalDate().plusDays(d + minDayOffset);
+            BitSet activeServices = new BitSet();
+            for (int s = timetable.feedServicesStart[feed]; s < timetable.feedServicesStart[feed + 1]; s++)
+                if (timetable.services[s].activeOn(date))
+                    activeServices.set(s);
+            long start = date.atStartOfDay(timetable.feedZones[feed]).toEpochSecond() - startTime;
+            day = new Day((int) start, date.toEpochDay(), activeServices);
+            days[feed][d] = day;
+        }
+        return day;
+    }
+
+    private static class Day {
+        final int start;
+        final long epochDay;
+        final BitSet activeServices;
+
+        Day(int start, long epochDay, BitSet activeServices) {
+            this.start = start;
+            this.epochDay = epochDay;
+            this.activeServices = activeServices;
+        }
+    }
+
+    static class Journey {
+        int accessStop;
+        int accessSeconds;
+        int egressStop;
+        int egressSeconds;
+        // in epoch seconds, leaving the origin as late as possible
+        long departure;
+        long arrival;
+        int rides;
+        final List<Leg> legs = new ArrayList<>();
+    }
+
+    abstract static class Leg {
+    }
+
+    static class Ride extends Leg {
+        final int trip;
+        // the start of the service day of the trip in epoch seconds
+        final long dayStart;
+        final RaptorTimetable.TripUpdate update;
+        final int boardPosition;
+        final int alightPosition;
+
+        Ride(int trip, long dayStart, RaptorTimetable.TripUpdate update, int boardPosition, int alightPosition) {
+            this.trip = trip;
+            this.dayStart = dayStart;
+            this.update = update;
+            this.boardPosition = boardPosition;
+            this.alightPosition = alightPosition;
+        }
+
+        int boardStop(RaptorTimetable timetable) {
+            return timetable.patternStops[timetable.patternStopsStart[timetable.tripPattern[trip]] + boardPosition];
+        }
+
+        long departureTime(RaptorTimetable timetable) {
+            return dayStart + (update != null ? update.departures[boardPosition] : timetable.departures[timetable.tripTimesStart[trip] + boardPosition]);
+        }
+    }
+
+    static class Transfer extends Leg {
+        final int transfer;
+
+        Transfer(int transfer) {
+            this.transfer = transfer;
+        }
+    }
+}
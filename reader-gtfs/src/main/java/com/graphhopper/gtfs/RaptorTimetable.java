@@ -0,0 +1,572 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.*;
+import com.google.transit.realtime.GtfsRealtime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The timetables of all feeds in flat arrays, as needed by {@link Raptor}. Trips that serve the same sequence of
+ * stops are grouped into patterns. The trips of a pattern are sorted by departure and never overtake each other, so
+ * the earliest trip from a stop can be found with a binary search. Frequency-based trips are expanded into single
+ * trips. Times are in seconds since midnight of the service day, in the time zone of the feed.
+ * <p>
+ * Transfers are the GTFS transfers and the walking transfers between nearby stations, like in the {@link PtGraph}.
+ * This is built once and shared by all requests.
+ */
+public class RaptorTimetable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RaptorTimetable.class);
+    static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    final String[] feedIds;
+    final ZoneId[] feedZones;
+    final GTFSFeed[] feeds;
+    // the services of feed f are feedServicesStart[f] until feedServicesStart[f + 1]
+    final int[] feedServicesStart;
+    final Service[] services;
+
+    final GtfsStorage.FeedIdWithStopId[] stops;
+    private final Map<GtfsStorage.FeedIdWithStopId, Integer> stopIndex;
+    // the same stop can not be re-boarded before this time after alighting, from the GTFS transfer of a stop to itself
+    final int[] changeSeconds;
+
+    final int[] patternFeed;
+    final int[] patternStopsStart;
+    final int[] patternStops;
+    final int[] patternTripsStart;
+
+    final int[] tripPattern;
+    final int[] tripTimesStart;
+    final int[] tripService;
+    final int[] tripRouteType;
+    // the start time of trips that were expanded from a frequency, -1 for all other trips
+    final int[] tripStartTime;
+    final String[] tripIds;
+    final String[] tripRouteIds;
+    final int[] arrivals;
+    final int[] departures;
+    final int[] stopSequences;
+    // the number of days the times of a trip reach into the following days
+    final int maxDayOverflow;
+
+    final int[] stopPatternsStart;
+    final int[] stopPatterns;
+    final int[] stopPatternPositions;
+
+    final int[] transfersStart;
+    final int[] transferSources;
+    final int[] transferTargets;
+    final int[] transferSeconds;
+    // the street edges of walking transfers, null for GTFS transfers
+    final int[][] transferEdgeKeys;
+
+    private final Map<String, Map<String, IntArrayList>> tripsByTripId;
+
+    private RaptorTimetable(Builder b) {
+        feedIds = b.feedIds.toArray(new String[0]);
+        feedZones = b.feedZones.toArray(new ZoneId[0]);
+        feeds = b.feeds.toArray(new GTFSFeed[0]);
+        feedServicesStart = b.feedServicesStart.toArray();
+        services = b.services.toArray(new Service[0]);
+        stops = b.stops.toArray(new GtfsStorage.FeedIdWithStopId[0]);
+        stopIndex = b.stopIndex;
+        changeSeconds = b.changeSeconds.toArray();
+
+        int patternCount = b.patterns.size();
+        patternFeed = new int[patternCount];
+        patternStopsStart = new int[patternCount + 1];
+        patternTripsStart = new int[patternCount + 1];
+        IntArrayList patternStopList = new IntArrayList();
+        List<TripInstance> trips = new ArrayList<>();
+        for (int p = 0; p < patternCount; p++) {
+            Pattern pattern = b.patterns.get(p);
+            patternFeed[p] = pattern.feed;
+            patternStopsStart[p] = patternStopList.size();
+            patternStopList.add(pattern.stops);
+            patternTripsStart[p] = trips.size();
+            trips.addAll(pattern.trips);
+        }
+        patternStopsStart[patternCount] = patternStopList.size();
+        patternTripsStart[patternCount] = trips.size();
+        patternStops = patternStopList.toArray();
+
+        int tripCount = trips.size();
+        tripPattern = new int[tripCount];
+        tripTimesStart = new int[tripCount];
+        tripService = new int[tripCount];
+        tripRouteType = new int[tripCount];
+        tripStartTime = new int[tripCount];
+        tripIds = new String[tripCount];
+        tripRouteIds = new String[tripCount];
+        int timesCount = 0;
+        for (TripInstance trip : trips)
+            timesCount += trip.schedule.arrivals.length;
+        arrivals = new int[timesCount];
+        departures = new int[timesCount];
+        stopSequences = new int[timesCount];
+        tripsByTripId = new HashMap<>();
+        int maxTime = 0;
+        int timesStart = 0;
+        for (int p = 0; p < patternCount; p++) {
+            for (int t = patternTripsStart[p]; t < patternTripsStart[p + 1]; t++) {
+                TripInstance trip = trips.get(t);
+                Schedule schedule = trip.schedule;
+                tripPattern[t] = p;
+                tripTimesStart[t] = timesStart;
+                tripService[t] = schedule.service;
+                tripRouteType[t] = schedule.routeType;
+                tripStartTime[t] = trip.startTime;
+                tripIds[t] = schedule.tripId;
+                tripRouteIds[t] = schedule.routeId;
+                for (int i = 0; i < schedule.arrivals.length; i++) {
+                    arrivals[timesStart + i] = schedule.arrivals[i] + trip.offset;
+                    departures[timesStart + i] = schedule.departures[i] + trip.offset;
+                    stopSequences[timesStart + i] = schedule.stopSequences[i];
+                    maxTime = Math.max(maxTime, Math.max(arrivals[timesStart + i], departures[timesStart + i]));
+                }
+                timesStart += schedule.arrivals.length;
+                tripsByTripId.computeIfAbsent(feedIds[patternFeed[p]], f -> new HashMap<>())
+                        .computeIfAbsent(schedule.tripId, id -> new IntArrayList()).add(t);
+            }
+        }
+        maxDayOverflow = maxTime / SECONDS_PER_DAY;
+
+        List<IntArrayList> patternsByStop = new ArrayList<>();
+        List<IntArrayList> positionsByStop = new ArrayList<>();
+        for (int s = 0; s < stops.length; s++) {
+            patternsByStop.add(new IntArrayList());
+            positionsByStop.add(new IntArrayList());
+        }
+        for (int p = 0; p < patternCount; p++) {
+            for (int i = patternStopsStart[p]; i < patternStopsStart[p + 1]; i++) {
+                patternsByStop.get(patternStops[i]).add(p);
+                positionsByStop.get(patternStops[i]).add(i - patternStopsStart[p]);
+            }
+        }
+        stopPatternsStart = new int[stops.length + 1];
+        IntArrayList stopPatternList = new IntArrayList();
+        IntArrayList stopPatternPositionList = new IntArrayList();
+        for (int s = 0; s < stops.length; s++) {
+            stopPatternsStart[s] = stopPatternList.size();
+            stopPatternList.addAll(patternsByStop.get(s));
+            stopPatternPositionList.addAll(positionsByStop.get(s));
+        }
+        stopPatternsStart[stops.length] = stopPatternList.size();
+        stopPatterns = stopPatternList.toArray();
+        stopPatternPositions = stopPatternPositionList.toArray();
+
+        List<Footpath> footpaths = new ArrayList<>(b.footpaths.values());
+        footpaths.sort(Comparator.comparingInt((Footpath f) -> f.from).thenComparingInt(f -> f.to));
+        transfersStart = new int[stops.length + 1];
+        transferSources = new int[footpaths.size()];
+        transferTargets = new int[footpaths.size()];
+        transferSeconds = new int[footpaths.size()];
+        transferEdgeKeys = new int[footpaths.size()][];
+        int stop = 0;
+        for (int i = 0; i < footpaths.size(); i++) {
+            Footpath footpath = footpaths.get(i);
+            while (stop <= footpath.from)
+                transfersStart[stop++] = i;
+            transferSources[i] = footpath.from;
+            transferTargets[i] = footpath.to;
+            transferSeconds[i] = footpath.seconds;
+            transferEdgeKeys[i] = footpath.edgeKeys;
+        }
+        while (stop <= stops.length)
+            transfersStart[stop++] = footpaths.size();
+    }
+
+    public static RaptorTimetable build(GtfsStorage gtfsStorage) {
+        Builder builder = new Builder();
+        List<String> feedIds = new ArrayList<>(gtfsStorage.getGtfsFeeds().keySet());
+        Collections.sort(feedIds);
+        for (String feedId : feedIds) {
+            GTFSFeed feed = gtfsStorage.getGtfsFeeds().get(feedId);
+            builder.addFeed(feedId, feed, new Transfers(feed));
+        }
+        builder.addWalkingTransfers(gtfsStorage);
+        RaptorTimetable timetable = new RaptorTimetable(builder);
+        LOGGER.info("Created RAPTOR timetable with {} stops, {} patterns, {} trips and {} transfers", timetable.stops.length,
+                timetable.patternFeed.length, timetable.tripIds.length, timetable.transferTargets.length);
+        return timetable;
+    }
+
+    /**
+     * @return the index of the stop, or -1 if it is not in the timetable
+     */
+    int getStopIndex(String feedId, String stopId) {
+        return stopIndex.getOrDefault(new GtfsStorage.FeedIdWithStopId(feedId, stopId), -1);
+    }
+
+    int getStopCount() {
+        return stops.length;
+    }
+
+    int getPatternCount() {
+        return patternFeed.length;
+    }
+
+    /**
+     * Applies the trip updates of the realtime feed to the trips on the day of the feed timestamp. Like in
+     * {@link RealtimeFeed}, departures are never earlier than scheduled, and added trips are not supported.
+     */
+    RealtimeOverlay createRealtimeOverlay(RealtimeFeed realtimeFeed) {
+        RealtimeOverlay overlay = new RealtimeOverlay();
+        realtimeFeed.feedMessages.forEach((feedId, feedMessage) -> {
+            int feed = Arrays.asList(feedIds).indexOf(feedId);
+            if (feed < 0)
+                return;
+            Map<String, IntArrayList> tripsOfFeed = tripsByTripId.getOrDefault(feedId, Collections.emptyMap());
+            long epochDay = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp()).atZone(feedZones[feed]).toLocalDate().toEpochDay();
+            for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
+                if (!entity.hasTripUpdate() || entity.getTripUpdate().getTrip().getScheduleRelationship() != GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
+                    continue;
+                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
+                IntArrayList candidates = tripsOfFeed.get(tripUpdate.getTrip().getTripId());
+                if (candidates == null) {
+                    LOGGER.warn("Trip not found: {}", tripUpdate.getTrip());
+                    continue;
+                }
+                int startTime = tripUpdate.getTrip().hasStartTime() ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : -1;
+                int trip = -1;
+                for (int i = 0; i < candidates.size(); i++) {
+                    int candidate = candidates.get(i);
+                    if (tripStartTime[candidate] == -1 || tripStartTime[candidate] == startTime) {
+                        trip = candidate;
+                        break;
+                    }
+                }
+                if (trip == -1) {
+                    LOGGER.warn("Trip not found: {}", tripUpdate.getTrip());
+                    continue;
+                }
+                GtfsReader.TripWithStopTimes updated = RealtimeFeed.toTripWithStopTimes(feeds[feed], tripUpdate);
+                Map<Integer, StopTime> updatedBySequence = new HashMap<>();
+                for (StopTime stopTime : updated.stopTimes)
+                    updatedBySequence.put(stopTime.stop_sequence, stopTime);
+                int offset = Math.max(0, tripStartTime[trip]);
+                int p = tripPattern[trip];
+                int n = patternStopsStart[p + 1] - patternStopsStart[p];
+                TripUpdate result = new TripUpdate(epochDay, n);
+                for (int i = 0; i < n; i++) {
+                    int index = tripTimesStart[trip] + i;
+                    StopTime stopTime = updatedBySequence.get(stopSequences[index]);
+                    if (stopTime == null) {
+                        result.arrivals[i] = arrivals[index];
+                        result.departures[i] = departures[index];
+                    } else {
+                        result.arrivals[i] = stopTime.arrival_time + offset;
+                        result.departures[i] = Math.max(departures[index], stopTime.departure_time + offset);
+                    }
+                    result.arrivalCancelled[i] = updated.cancelledArrivals.contains(stopSequences[index]);
+                    result.departureCancelled[i] = updated.cancelledDeparture.contains(stopSequences[index]);
+                }
+                overlay.add(trip, p, result);
+            }
+        });
+        return overlay;
+    }
+
+    /**
+     * The realtime times of a trip on one day
+     */
+    static class TripUpdate {
+        final long epochDay;
+        final int[] arrivals;
+        final int[] departures;
+        final boolean[] arrivalCancelled;
+        final boolean[] departureCancelled;
+
+        TripUpdate(long epochDay, int stopCount) {
+            this.epochDay = epochDay;
+            this.arrivals = new int[stopCount];
+            this.departures = new int[stopCount];
+            this.arrivalCancelled = new boolean[stopCount];
+            this.departureCancelled = new boolean[stopCount];
+        }
+    }
+
+    static class RealtimeOverlay {
+        private final IntObjectHashMap<TripUpdate> updatesByTrip = new IntObjectHashMap<>();
+        private final IntObjectHashMap<IntArrayList> updatedTripsByPattern = new IntObjectHashMap<>();
+
+        static RealtimeOverlay empty() {
+            return new RealtimeOverlay();
+        }
+
+        private void add(int trip, int pattern, TripUpdate update) {
+            if (updatesByTrip.put(trip, update) == null) {
+                IntArrayList trips = updatedTripsByPattern.get(pattern);
+                if (trips == null) {
+                    trips = new IntArrayList();
+                    updatedTripsByPattern.put(pattern, trips);
+                }
+                trips.add(trip);
+            }
+        }
+
+        boolean isEmpty() {
+            return updatesByTrip.isEmpty();
+        }
+
+        /**
+         * @return the update of the trip on the given day, or null if it runs as scheduled
+         */
+        TripUpdate getUpdate(int trip, long epochDay) {
+            TripUpdate update = updatesByTrip.get(trip);
+            return update != null && update.epochDay == epochDay ? update : null;
+        }
+
+        IntArrayList getUpdatedTrips(int pattern) {
+            return updatedTripsByPattern.get(pattern);
+        }
+    }
+
+    private static class Schedule {
+        String tripId;
+        String routeId;
+        int routeType;
+        int service;
+        int[] stops;
+        int[] arrivals;
+        int[] departures;
+        int[] stopSequences;
+    }
+
+    private static class TripInstance {
+        final Schedule schedule;
+        final int offset;
+        final int startTime;
+
+        TripInstance(Schedule schedule, int offset, int startTime) {
+            this.schedule = schedule;
+            this.offset = offset;
+            this.startTime = startTime;
+        }
+
+        int departure(int i) {
+            return schedule.departures[i] + offset;
+        }
+
+        int arrival(int i) {
+            return schedule.arrivals[i] + offset;
+        }
+    }
+
+    private static class Pattern {
+        final int feed;
+        final int[] stops;
+        final List<TripInstance> trips = new ArrayList<>();
+
+        Pattern(int feed, int[] stops) {
+            this.feed = feed;
+            this.stops = stops;
+        }
+
+        boolean isOvertakenBy(TripInstance trip) {
+            if (trips.isEmpty())
+                return false;
+            TripInstance last = trips.get(trips.size() - 1);
+            for (int i = 0; i < stops.length; i++)
+                if (trip.departure(i) < last.departure(i) || trip.arrival(i) < last.arrival(i))
+                    return true;
+            return false;
+        }
+    }
+
+    private static class Footpath {
+        final int from;
+        final int to;
+        final int seconds;
+        final int[] edgeKeys;
+
+        Footpath(int from, int to, int seconds, int[] edgeKeys) {
+            this.from = from;
+            this.to = to;
+            this.seconds = seconds;
+            this.edgeKeys = edgeKeys;
+        }
+    }
+
+    private static class Builder {
+        final List<String> feedIds = new ArrayList<>();
+        final List<ZoneId> feedZones = new ArrayList<>();
+        final List<GTFSFeed> feeds = new ArrayList<>();
+        final IntArrayList feedServicesStart = IntArrayList.from(0);
+        final List<Service> services = new ArrayList<>();
+        final List<GtfsStorage.FeedIdWithStopId> stops = new ArrayList<>();
+        final Map<GtfsStorage.FeedIdWithStopId, Integer> stopIndex = new HashMap<>();
+        final IntArrayList changeSeconds = new IntArrayList();
+        final List<Pattern> patterns = new ArrayList<>();
+        // the footpath with the smallest time for each pair of stops
+        final Map<Long, Footpath> footpaths = new HashMap<>();
+
+        void addFeed(String feedId, GTFSFeed feed, Transfers transfers) {
+            int feedIndex = feedIds.size();
+            feedIds.add(feedId);
+            feedZones.add(ZoneId.of(feed.agency.values().iterator().next().agency_timezone));
+            feeds.add(feed);
+
+            Map<String, Integer> serviceIndex = new HashMap<>();
+            for (Service service : feed.services.values()) {
+                serviceIndex.put(service.service_id, services.size());
+                services.add(service);
+            }
+            feedServicesStart.add(services.size());
+
+            for (Stop stop : feed.stops.values()) {
+                if (stop.location_type == 0) {
+                    GtfsStorage.FeedIdWithStopId id = new GtfsStorage.FeedIdWithStopId(feedId, stop.stop_id);
+                    stopIndex.put(id, stops.size());
+                    stops.add(id);
+                    changeSeconds.add(0);
+                }
+            }
+
+            Map<List<Integer>, List<TripInstance>> tripsByStops = new LinkedHashMap<>();
+            for (Trip trip : feed.trips.values()) {
+                Schedule schedule = createSchedule(feedId, feed, trip, serviceIndex);
+                if (schedule == null)
+                    continue;
+                List<Integer> key = Arrays.stream(schedule.stops).boxed().collect(Collectors.toList());
+                List<TripInstance> instances = tripsByStops.computeIfAbsent(key, k -> new ArrayList<>());
+                Collection<Frequency> frequencies = feed.getFrequencies(trip.trip_id);
+                if (frequencies.isEmpty()) {
+                    instances.add(new TripInstance(schedule, 0, -1));
+                } else {
+                    // like in the GtfsReader, the times of the trip are relative to the start of the frequency
+                    for (Frequency frequency : frequencies)
+                        for (int time = frequency.start_time; time < frequency.end_time; time += frequency.headway_secs)
+                            instances.add(new TripInstance(schedule, time, time));
+                }
+            }
+            tripsByStops.forEach((key, instances) -> {
+                int[] patternStops = key.stream().mapToInt(Integer::intValue).toArray();
+                instances.sort(Comparator.comparingInt(trip -> trip.departure(0)));
+                List<Pattern> variants = new ArrayList<>();
+                for (TripInstance trip : instances) {
+                    Pattern pattern = variants.stream().filter(v -> !v.isOvertakenBy(trip)).findFirst().orElse(null);
+                    if (pattern == null) {
+                        pattern = new Pattern(feedIndex, patternStops);
+                        variants.add(pattern);
+                    }
+                    pattern.trips.add(trip);
+                }
+                patterns.addAll(variants);
+            });
+
+            for (Stop stop : feed.stops.values()) {
+                Integer from = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedId, stop.stop_id));
+                if (from == null)
+                    continue;
+                for (Transfer transfer : transfers.getTransfersFromStop(stop.stop_id)) {
+                    Integer to = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedId, transfer.to_stop_id));
+                    if (to == null)
+                        continue;
+                    // route specific rules are not supported, we use the longest time of all rules of a stop to
+                    // itself and the shortest time of all rules between two different stops
+                    if (from.equals(to))
+                        changeSeconds.set(from, Math.max(changeSeconds.get(from), transfer.min_transfer_time));
+                    else
+                        addFootpath(new Footpath(from, to, transfer.min_transfer_time, null));
+                }
+            }
+        }
+
+        private Schedule createSchedule(String feedId, GTFSFeed feed, Trip trip, Map<String, Integer> serviceIndex) {
+            List<StopTime> stopTimes = new ArrayList<>();
+            feed.getInterpolatedStopTimesForTrip(trip.trip_id).forEach(stopTimes::add);
+            Integer service = serviceIndex.get(trip.service_id);
+            if (stopTimes.size() < 2 || service == null)
+                return null;
+            Schedule schedule = new Schedule();
+            schedule.tripId = trip.trip_id;
+            schedule.routeId = trip.route_id;
+            schedule.routeType = feed.routes.get(trip.route_id).route_type;
+            schedule.service = service;
+            schedule.stops = new int[stopTimes.size()];
+            schedule.arrivals = new int[stopTimes.size()];
+            schedule.departures = new int[stopTimes.size()];
+            schedule.stopSequences = new int[stopTimes.size()];
+            for (int i = 0; i < stopTimes.size(); i++) {
+                StopTime stopTime = stopTimes.get(i);
+                Integer stop = stopIndex.get(new GtfsStorage.FeedIdWithStopId(feedId, stopTime.stop_id));
+                if (stop == null) {
+                    LOGGER.warn("Trip {} of feed {} uses unknown stop {}", trip.trip_id, feedId, stopTime.stop_id);
+                    return null;
+                }
+                schedule.stops[i] = stop;
+                schedule.arrivals[i] = stopTime.arrival_time;
+                schedule.departures[i] = stopTime.departure_time;
+                schedule.stopSequences[i] = stopTime.stop_sequence;
+            }
+            return schedule;
+        }
+
+        private void addFootpath(Footpath footpath) {
+            footpaths.merge(((long) footpath.from << 32) | footpath.to, footpath, (a, b) -> a.seconds <= b.seconds ? a : b);
+        }
+
+        /**
+         * Adds the walking transfers between stops at nearby stations from the walks that GraphHopperGtfs found and
+         * stored during the import, so both engines see the same transfers.
+         */
+        void addWalkingTransfers(GtfsStorage gtfsStorage) {
+            Set<Long> gtfsFootpaths = new HashSet<>(footpaths.keySet());
+            PtGraph ptGraph = gtfsStorage.getPtGraph();
+            gtfsStorage.getStationNodes().values().stream().distinct().forEach(stationPtNode -> {
+                IntArrayList toStops = new IntArrayList();
+                for (PtGraph.PtEdge ptEdge : ptGraph.edgesAround(stationPtNode)) {
+                    if (ptEdge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
+                        GtfsStorage.PlatformDescriptor platform = ptEdge.getAttrs().platformDescriptor;
+                        Integer to = stopIndex.get(new GtfsStorage.FeedIdWithStopId(platform.feed_id, platform.stop_id));
+                        if (to != null && !toStops.contains(to))
+                            toStops.add(to);
+                    }
+                }
+                if (toStops.isEmpty())
+                    return;
+                for (StationWalks.Walk walk : gtfsStorage.getStationWalks().get(stationPtNode)) {
+                    GtfsStorage.PlatformDescriptor platform = ptGraph.edge(walk.exitEdge).getAttrs().platformDescriptor;
+                    Integer from = stopIndex.get(new GtfsStorage.FeedIdWithStopId(platform.feed_id, platform.stop_id));
+                    if (from == null)
+                        continue;
+                    for (int i = 0; i < toStops.size(); i++) {
+                        int to = toStops.get(i);
+                        if (from == to || gtfsFootpaths.contains(((long) from << 32) | to))
+                            continue;
+                        addFootpath(new Footpath(from, to, walk.seconds, walk.edgeKeys.length > 0 ? walk.edgeKeys : null));
+                    }
+                }
+            });
+        }
+    }
+}
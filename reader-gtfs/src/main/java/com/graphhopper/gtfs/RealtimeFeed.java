@@ -52,25 +52,186 @@ public class RealtimeFeed {
     private final IntLongHashMap delaysForAlightEdges;
     private final List<PtGraph.PtEdge> additionalEdges;
     public final Map<String, GtfsRealtime.FeedMessage> feedMessages;
+    // what the trip updates of each feed contributed, so that the next update only has to process changed trips
+    private final Map<String, FeedState> feedStates;
+    // the static GTFS whose edges this feed refers to, null for the empty feed
+    private final GtfsStorage staticGtfs;
 
     private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, IntHashSet blockedEdges,
-                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges) {
+                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges,
+                         Map<String, FeedState> feedStates, GtfsStorage staticGtfs) {
         this.feedMessages = feedMessages;
         this.blockedEdges = blockedEdges;
         this.delaysForBoardEdges = delaysForBoardEdges;
         this.delaysForAlightEdges = delaysForAlightEdges;
         this.additionalEdges = additionalEdges;
+        this.feedStates = feedStates;
+        this.staticGtfs = staticGtfs;
     }
 
     public static RealtimeFeed empty() {
-        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList());
+        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList(),
+                Collections.emptyMap(), null);
+    }
+
+    /**
+     * @return the feed for queries on the given static GTFS: this feed, or the empty feed if this one was created for
+     * a schedule which has been replaced in the meantime.
+     */
+    public RealtimeFeed forStaticGtfs(GtfsStorage staticGtfs) {
+        return this.staticGtfs == null || this.staticGtfs == staticGtfs ? this : empty();
     }
 
     public static RealtimeFeed fromProtobuf(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
-        final IntHashSet blockedEdges = new IntHashSet();
-        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
-        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
-        final LinkedList<PtGraph.PtEdge> additionalEdges = new LinkedList<>();
+        return empty().update(staticGtfs, transfers, feedMessages);
+    }
+
+    /**
+     * Creates the realtime feed for new feed messages. Only the trip updates that are not contained in the feed
+     * messages of this feed are processed, the delays and blocked edges of the other trips are taken over. This feed
+     * is not modified, so queries that still use it are not affected. The static GTFS has to be the same as the one
+     * this feed was created for.
+     */
+    public RealtimeFeed update(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
+        if (this.staticGtfs != null && this.staticGtfs != staticGtfs)
+            throw new IllegalArgumentException("This realtime feed was created for a different static GTFS");
+        // the board and leave edges of the trips known from this feed, trips which could not be found are not kept
+        Map<GtfsRealtime.TripDescriptor, TripEdges> tripEdges = new HashMap<>();
+        feedStates.values().forEach(feedState -> feedState.scheduledTrips.forEach(t -> tripEdges.put(t.tripUpdate.getTrip(), t.edges)));
+        Map<String, FeedState> newFeedStates = new LinkedHashMap<>();
+        feedMessages.forEach((feedKey, feedMessage) -> {
+            GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
+            ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
+            Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
+            LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
+            FeedState previous = feedStates.get(feedKey);
+            Map<GtfsRealtime.TripUpdate, TripState> tripStates = new HashMap<>();
+            List<TripState> scheduledTrips = new ArrayList<>();
+            List<GtfsRealtime.TripUpdate> addedTrips = new ArrayList<>();
+            for (GtfsRealtime.FeedEntity entity : feedMessage.getEntityList()) {
+                if (!entity.hasTripUpdate())
+                    continue;
+                GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
+                if (tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED) {
+                    TripState tripState = tripStates.get(tripUpdate);
+                    if (tripState == null && previous != null)
+                        tripState = previous.tripStates.get(tripUpdate);
+                    if (tripState == null)
+                        tripState = createTripState(staticGtfs, feedKey, feed, tripUpdate, tripEdges);
+                    if (tripState == null)
+                        continue;
+                    tripStates.put(tripUpdate, tripState);
+                    scheduledTrips.add(tripState);
+                } else if (tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED) {
+                    addedTrips.add(tripUpdate);
+                }
+            }
+            newFeedStates.put(feedKey, new FeedState(dateToChange, scheduledTrips, tripStates, addedTrips));
+        });
+
+        Set<TripState> oldTrips = Collections.newSetFromMap(new IdentityHashMap<>());
+        feedStates.values().forEach(feedState -> oldTrips.addAll(feedState.scheduledTrips));
+        Set<TripState> newTrips = Collections.newSetFromMap(new IdentityHashMap<>());
+        newFeedStates.values().forEach(feedState -> newTrips.addAll(feedState.scheduledTrips));
+        List<TripState> removedTrips = oldTrips.stream().filter(t -> !newTrips.contains(t)).collect(Collectors.toList());
+        List<TripState> addedTrips = newTrips.stream().filter(t -> !oldTrips.contains(t)).collect(Collectors.toList());
+
+        IntHashSet newBlockedEdges = blockedEdges;
+        IntLongHashMap newDelaysForAlightEdges = delaysForAlightEdges;
+        if (!removedTrips.isEmpty() || !addedTrips.isEmpty()) {
+            // copy on write, the maps of this feed can still be in use
+            newBlockedEdges = blockedEdges.clone();
+            newDelaysForAlightEdges = delaysForAlightEdges.clone();
+            for (TripState tripState : removedTrips) {
+                for (int blockedEdge : tripState.blockedEdges)
+                    newBlockedEdges.remove(blockedEdge);
+                for (int alightEdge : tripState.alightEdges)
+                    newDelaysForAlightEdges.remove(alightEdge);
+            }
+            for (TripState tripState : addedTrips) {
+                newBlockedEdges.addAll(tripState.blockedEdges);
+                for (int i = 0; i < tripState.alightEdges.length; i++)
+                    newDelaysForAlightEdges.put(tripState.alightEdges[i], tripState.alightDelays[i]);
+            }
+        }
+
+        IntLongHashMap newDelaysForBoardEdges = delaysForBoardEdges;
+        List<PtGraph.PtEdge> newAdditionalEdges = additionalEdges;
+        if (!overlayKeys(newFeedStates).equals(overlayKeys(feedStates))) {
+            newDelaysForBoardEdges = new IntLongHashMap();
+            newAdditionalEdges = new LinkedList<>();
+            createOverlay(staticGtfs, transfers, newFeedStates, newDelaysForBoardEdges, newAdditionalEdges);
+        }
+        logger.debug("Realtime update with {} changed and {} removed trips", addedTrips.size(), removedTrips.size());
+        return new RealtimeFeed(feedMessages, newBlockedEdges, newDelaysForBoardEdges, newDelaysForAlightEdges, newAdditionalEdges, newFeedStates, staticGtfs);
+    }
+
+    private static TripState createTripState(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripUpdate tripUpdate,
+                                             Map<GtfsRealtime.TripDescriptor, TripEdges> tripEdges) {
+        TripEdges edges = tripEdges.get(tripUpdate.getTrip());
+        if (edges == null) {
+            int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
+            int[] leaveEdges = findLeaveEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
+            if (boardEdges == null || leaveEdges == null) {
+                logger.warn("Trip not found: {}", tripUpdate.getTrip());
+                return null;
+            }
+            edges = new TripEdges(boardEdges, leaveEdges);
+            tripEdges.put(tripUpdate.getTrip(), edges);
+        }
+        final int[] boardEdges = edges.boardEdges;
+        final int[] leaveEdges = edges.leaveEdges;
+        Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
+        int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
+        IntArrayList blocked = new IntArrayList();
+        tripUpdate.getStopTimeUpdateList().stream()
+                .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
+                .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
+                .forEach(skippedStopSequenceNumber -> {
+                    blocked.add(boardEdges[skippedStopSequenceNumber]);
+                    blocked.add(leaveEdges[skippedStopSequenceNumber]);
+                });
+        IntArrayList alightEdges = new IntArrayList();
+        List<Long> alightDelays = new ArrayList<>();
+        List<DelayedDeparture> delayedDepartures = new ArrayList<>();
+        GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, tripUpdate);
+        tripWithStopTimes.stopTimes.forEach(stopTime -> {
+            if (stopTime.stop_sequence > leaveEdges.length - 1) {
+                logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
+                return;
+            }
+            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
+            int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
+            alightEdges.add(leaveEdges[stopTime.stop_sequence]);
+            alightDelays.add(arrivalDelay * 1000L);
+            int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
+            if (departureDelay > 0) {
+                int boardEdge = boardEdges[stopTime.stop_sequence];
+                int departureNode = staticGtfs.getPtGraph().edge(boardEdge).getAdjNode();
+                delayedDepartures.add(new DelayedDeparture(stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, departureDelay * 1000L));
+            }
+        });
+        return new TripState(tripUpdate, edges, blocked.toArray(), alightEdges.toArray(), alightDelays.stream().mapToLong(Long::longValue).toArray(), delayedDepartures);
+    }
+
+    /**
+     * The additional edges depend on the delayed departures, the added trips and the service day of each feed. If
+     * these are the same, the additional edges of the previous feed can be kept.
+     */
+    private static Map<String, List<Object>> overlayKeys(Map<String, FeedState> feedStates) {
+        Map<String, List<Object>> result = new HashMap<>();
+        feedStates.forEach((feedKey, feedState) -> {
+            List<Object> key = new ArrayList<>();
+            key.add(feedState.date);
+            feedState.scheduledTrips.stream().filter(t -> !t.delayedDepartures.isEmpty()).forEach(key::add);
+            key.addAll(feedState.addedTrips);
+            result.put(feedKey, key);
+        });
+        return result;
+    }
+
+    private static void createOverlay(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, FeedState> feedStates,
+                                      IntLongHashMap delaysForBoardEdges, List<PtGraph.PtEdge> additionalEdges) {
         final GtfsReader.PtGraphOut overlayGraph = new GtfsReader.PtGraphOut() {
             int nextEdge = staticGtfs.getPtGraph().getEdgeCount();
             int nextNode = staticGtfs.getPtGraph().getNodeCount();
@@ -89,82 +250,42 @@ public class RealtimeFeed {
 
         };
 
-        feedMessages.forEach((feedKey, feedMessage) -> {
+        feedStates.forEach((feedKey, feedState) -> {
             GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
             ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
             PtGraph ptGraphNodesAndEdges = staticGtfs.getPtGraph();
             final GtfsReader gtfsReader = new GtfsReader(feedKey, ptGraphNodesAndEdges, overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
-            Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
-            LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
             BitSet validOnDay = new BitSet();
             LocalDate startDate = feed.getStartDate();
-            validOnDay.set((int) DAYS.between(startDate, dateToChange));
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
-                    .forEach(tripUpdate -> {
-                        Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
-                        int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
-                        final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
-                        final int[] leaveEdges = findLeaveEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
-                        if (boardEdges == null || leaveEdges == null) {
-                            logger.warn("Trip not found: {}", tripUpdate.getTrip());
-                            return;
-                        }
-                        tripUpdate.getStopTimeUpdateList().stream()
-                                .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
-                                .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
-                                .forEach(skippedStopSequenceNumber -> {
-                                    blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
-                                    blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
-                                });
-                        GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, tripUpdate);
-                        tripWithStopTimes.stopTimes.forEach(stopTime -> {
-                            if (stopTime.stop_sequence > leaveEdges.length - 1) {
-                                logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
-                                return;
-                            }
-                            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
-                            int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
-                            delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
-                            int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
-                            if (departureDelay > 0) {
-                                int boardEdge = boardEdges[stopTime.stop_sequence];
-                                int departureNode = ptGraphNodesAndEdges.edge(boardEdge).getAdjNode();
-                                int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripUpdate.getTrip(), stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, validOnDay);
-                                delaysForBoardEdges.put(delayedBoardEdge, departureDelay * 1000);
-                            }
-                        });
-                    });
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
-                    .forEach(tripUpdate -> {
-                        Trip trip = new Trip();
-                        trip.trip_id = tripUpdate.getTrip().getTripId();
-                        trip.route_id = tripUpdate.getTrip().getRouteId();
-                        final List<StopTime> stopTimes = tripUpdate.getStopTimeUpdateList().stream()
-                                .map(stopTimeUpdate -> {
-                                    final StopTime stopTime = new StopTime();
-                                    stopTime.stop_sequence = stopTimeUpdate.getStopSequence();
-                                    stopTime.stop_id = stopTimeUpdate.getStopId();
-                                    stopTime.trip_id = trip.trip_id;
-                                    final ZonedDateTime arrival_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
-                                    stopTime.arrival_time = (int) Duration.between(arrival_time.truncatedTo(ChronoUnit.DAYS), arrival_time).getSeconds();
-                                    final ZonedDateTime departure_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
-                                    stopTime.departure_time = (int) Duration.between(departure_time.truncatedTo(ChronoUnit.DAYS), departure_time).getSeconds();
-                                    return stopTime;
-                                })
-                                .collect(Collectors.toList());
-                        GtfsReader.TripWithStopTimes tripWithStopTimes = new GtfsReader.TripWithStopTimes(trip, stopTimes, validOnDay, Collections.emptySet(), Collections.emptySet());
-                        gtfsReader.addTrip(timezone, 0, new ArrayList<>(), tripWithStopTimes, tripUpdate.getTrip());
-                    });
+            validOnDay.set((int) DAYS.between(startDate, feedState.date));
+            for (TripState tripState : feedState.scheduledTrips) {
+                for (DelayedDeparture delayedDeparture : tripState.delayedDepartures) {
+                    int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripState.tripUpdate.getTrip(), delayedDeparture.stopSequence, delayedDeparture.departureTime, delayedDeparture.departureNode, validOnDay);
+                    delaysForBoardEdges.put(delayedBoardEdge, delayedDeparture.delay);
+                }
+            }
+            feedState.addedTrips.forEach(tripUpdate -> {
+                Trip trip = new Trip();
+                trip.trip_id = tripUpdate.getTrip().getTripId();
+                trip.route_id = tripUpdate.getTrip().getRouteId();
+                final List<StopTime> stopTimes = tripUpdate.getStopTimeUpdateList().stream()
+                        .map(stopTimeUpdate -> {
+                            final StopTime stopTime = new StopTime();
+                            stopTime.stop_sequence = stopTimeUpdate.getStopSequence();
+                            stopTime.stop_id = stopTimeUpdate.getStopId();
+                            stopTime.trip_id = trip.trip_id;
+                            final ZonedDateTime arrival_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
+                            stopTime.arrival_time = (int) Duration.between(arrival_time.truncatedTo(ChronoUnit.DAYS), arrival_time).getSeconds();
+                            final ZonedDateTime departure_time = Instant.ofEpochSecond(stopTimeUpdate.getArrival().getTime()).atZone(timezone);
+                            stopTime.departure_time = (int) Duration.between(departure_time.truncatedTo(ChronoUnit.DAYS), departure_time).getSeconds();
+                            return stopTime;
+                        })
+                        .collect(Collectors.toList());
+                GtfsReader.TripWithStopTimes tripWithStopTimes = new GtfsReader.TripWithStopTimes(trip, stopTimes, validOnDay, Collections.emptySet(), Collections.emptySet());
+                gtfsReader.addTrip(timezone, 0, new ArrayList<>(), tripWithStopTimes, tripUpdate.getTrip());
+            });
             gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
         });
-
-        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
     }
 
     private static int[] findLeaveEdgesForTrip(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
@@ -434,4 +555,64 @@ public class RealtimeFeed {
         }
     }
 
+    private static class FeedState {
+        final LocalDate date;
+        final List<TripState> scheduledTrips;
+        final Map<GtfsRealtime.TripUpdate, TripState> tripStates;
+        final List<GtfsRealtime.TripUpdate> addedTrips;
+
+        FeedState(LocalDate date, List<TripState> scheduledTrips, Map<GtfsRealtime.TripUpdate, TripState> tripStates, List<GtfsRealtime.TripUpdate> addedTrips) {
+            this.date = date;
+            this.scheduledTrips = scheduledTrips;
+            this.tripStates = tripStates;
+            this.addedTrips = addedTrips;
+        }
+    }
+
+    /**
+     * What a trip update of a scheduled trip contributes to the feed. It only depends on the trip update and the
+     * static GTFS, so it can be reused as long as the trip update does not change.
+     */
+    private static class TripState {
+        final GtfsRealtime.TripUpdate tripUpdate;
+        final TripEdges edges;
+        final int[] blockedEdges;
+        final int[] alightEdges;
+        final long[] alightDelays;
+        final List<DelayedDeparture> delayedDepartures;
+
+        TripState(GtfsRealtime.TripUpdate tripUpdate, TripEdges edges, int[] blockedEdges, int[] alightEdges, long[] alightDelays, List<DelayedDeparture> delayedDepartures) {
+            this.tripUpdate = tripUpdate;
+            this.edges = edges;
+            this.blockedEdges = blockedEdges;
+            this.alightEdges = alightEdges;
+            this.alightDelays = alightDelays;
+            this.delayedDepartures = delayedDepartures;
+        }
+    }
+
+    private static class DelayedDeparture {
+        final int stopSequence;
+        final int departureTime;
+        final int departureNode;
+        final long delay;
+
+        DelayedDeparture(int stopSequence, int departureTime, int departureNode, long delay) {
+            this.stopSequence = stopSequence;
+            this.departureTime = departureTime;
+            this.departureNode = departureNode;
+            this.delay = delay;
+        }
+    }
+
+    private static class TripEdges {
+        final int[] boardEdges;
+        final int[] leaveEdges;
+
+        TripEdges(int[] boardEdges, int[] leaveEdges) {
+            this.boardEdges = boardEdges;
+            this.leaveEdges = leaveEdges;
+        }
+    }
+
 }
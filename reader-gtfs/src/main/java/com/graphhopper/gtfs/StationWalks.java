@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.Directory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The walks between nearby stations, as a sparse matrix with one row per station node. The row of a station contains
+ * the walks that end there, found by one bounded foot search per station during the import. A walk starts at the
+ * EXIT_PT edge of the platform where it begins and has its walking time and street edges.
+ * <p>
+ * Both the interpolated transfers of the {@link PtGraph} and the footpaths of the {@link RaptorTimetable} are made from
+ * these walks, so the street network only has to be searched once.
+ */
+public class StationWalks {
+
+    public static class Walk {
+        public final int exitEdge;
+        public final int seconds;
+        public final int[] edgeKeys;
+
+        public Walk(int exitEdge, int seconds, int[] edgeKeys) {
+            this.exitEdge = exitEdge;
+            this.seconds = seconds;
+            this.edgeKeys = edgeKeys;
+        }
+    }
+
+    private final FlatIntArrayMap rows;
+
+    public StationWalks(Directory dir) {
+        rows = new FlatIntArrayMap(dir, "pt_station_walks");
+    }
+
+    public void create() {
+        rows.create();
+    }
+
+    public boolean loadExisting() {
+        return rows.loadExisting();
+    }
+
+    public void put(int stationNode, List<Walk> walks) {
+        int length = 0;
+        for (Walk walk : walks)
+            length += 3 + walk.edgeKeys.length;
+        int[] row = new int[length];
+        int i = 0;
+        for (Walk walk : walks) {
+            row[i++] = walk.exitEdge;
+            row[i++] = walk.seconds;
+            row[i++] = walk.edgeKeys.length;
+            System.arraycopy(walk.edgeKeys, 0, row, i, walk.edgeKeys.length);
+            i += walk.edgeKeys.length;
+        }
+        rows.put(stationNode, row);
+    }
+
+    /**
+     * @return the walks that end at the given station, in the order in which they were found
+     */
+    public List<Walk> get(int stationNode) {
+        int[] row = rows.get(stationNode);
+        if (row == null)
+            return Collections.emptyList();
+        List<Walk> walks = new ArrayList<>();
+        int i = 0;
+        while (i < row.length) {
+            int exitEdge = row[i++];
+            int seconds = row[i++];
+            int[] edgeKeys = new int[row[i++]];
+            System.arraycopy(row, i, edgeKeys, 0, edgeKeys.length);
+            i += edgeKeys.length;
+            walks.add(new Walk(exitEdge, seconds, edgeKeys));
+        }
+        return walks;
+    }
+
+    public void flush() {
+        rows.flush();
+    }
+
+    public void close() {
+        rows.close();
+    }
+}
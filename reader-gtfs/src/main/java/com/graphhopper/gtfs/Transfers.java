@@ -143,6 +143,13 @@ public class Transfers {
         return result;
     }
 
+    // All transfers from a stop, without the route specific rules applied.
+    List<Transfer> getTransfersFromStop(String fromStopId) {
+        return transfersFromStop.getOrDefault(fromStopId, Collections.emptyList()).stream()
+                .filter(t -> t.transfer_type == 0 || t.transfer_type == 2)
+                .collect(Collectors.toList());
+    }
+
     private Transfer findMostSpecificRule(List<Transfer> transfers, String fromRouteId, String toRouteId) {
         final ArrayList<Transfer> transfersBySpecificity = new ArrayList<>(transfers);
         transfersBySpecificity.sort(Comparator.comparingInt(t -> {
@@ -88,7 +88,14 @@ class TripFromLabel {
                 weighting = transferWeighting;
             legs.addAll(parsePartitionToLegs(partitions.get(i), queryGraph, encodedValueLookup, weighting, tr, requestedPathDetails));
         }
+        return createResponsePath(tr, waypoints, legs);
+    }
 
+    /**
+     * Creates the response path from legs that were already assembled, like the walk legs from
+     * {@link #parseWalkLegs} and the pt legs of a {@link Raptor} journey.
+     */
+    ResponsePath createResponsePath(Translation tr, PointList waypoints, List<Trip.Leg> legs) {
         if (legs.size() > 1 && legs.get(0) instanceof Trip.WalkLeg) {
             final Trip.WalkLeg accessLeg = (Trip.WalkLeg) legs.get(0);
             legs.set(0, new Trip.WalkLeg(accessLeg.departureLocation, new Date(legs.get(1).getDepartureTime().getTime() - (accessLeg.getArrivalTime().getTime() - accessLeg.getDepartureTime().getTime())),
@@ -423,6 +430,10 @@ class TripFromLabel {
         }
     }
 
+    List<Trip.Leg> parseWalkLegs(List<Label.Transition> path, Weighting weighting, Translation tr, List<String> requestedPathDetails) {
+        return parsePartitionToLegs(path, graph, encodedValueLookup, weighting, tr, requestedPathDetails);
+    }
+
     public List<Label.Transition> transferPath(int[] skippedEdgesForTransfer, Weighting transferWeighting, long currentTime) {
         GraphExplorer graphExplorer = new GraphExplorer(graph, gtfsStorage.getPtGraph(), transferWeighting, gtfsStorage, realtimeFeed, false, true, false, walkSpeedKmH, false, 0);
         return graphExplorer.walkPath(skippedEdgesForTransfer, currentTime);
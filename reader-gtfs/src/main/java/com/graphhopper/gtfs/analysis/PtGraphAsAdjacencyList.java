@@ -148,6 +148,11 @@ class PtGraphAsAdjacencyList implements Graph {
                 throw new RuntimeException();
             }
 
+            @Override
+            public void appendWayGeometry(FetchMode mode, PointList target) {
+                throw new RuntimeException();
+            }
+
             @Override
             public EdgeIteratorState setWayGeometry(PointList list) {
                 throw new RuntimeException();
@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs.fare;
+
+import com.conveyal.gtfs.model.Fare;
+import com.conveyal.gtfs.model.FareRule;
+
+import java.util.*;
+
+/**
+ * The fares of one feed, indexed by the rules that make them apply to a segment: fares without rules apply to every
+ * segment, the others are looked up by route and by origin and destination zone. Only the zone rules are checked one
+ * by one. The fares are returned in the order of the map they were created from.
+ */
+final class FareIndex {
+    private final List<Fare> fares;
+    private final BitSet unrestricted = new BitSet();
+    private final Map<String, BitSet> byRoute = new HashMap<>();
+    private final Map<List<String>, BitSet> byOriginDestination = new HashMap<>();
+    private final List<ZoneRule> zoneRules = new ArrayList<>();
+    private final List<Integer> zoneRuleFares = new ArrayList<>();
+
+    FareIndex(Map<String, Fare> fares) {
+        this.fares = new ArrayList<>(fares.values());
+        for (int i = 0; i < this.fares.size(); i++) {
+            List<FareRule> rules = this.fares.get(i).fare_rules;
+            if (rules.isEmpty()) {
+                unrestricted.set(i);
+                continue;
+            }
+            List<String> zones = new ArrayList<>();
+            for (FareRule rule : rules) {
+                if (rule.route_id != null)
+                    byRoute.computeIfAbsent(rule.route_id, r -> new BitSet()).set(i);
+                if (rule.origin_id != null && rule.destination_id != null)
+                    byOriginDestination.computeIfAbsent(Arrays.asList(rule.origin_id, rule.destination_id), od -> new BitSet()).set(i);
+                if (rule.contains_id != null)
+                    zones.add(rule.contains_id);
+            }
+            // an empty zone rule applies to nothing
+            if (!zones.isEmpty()) {
+                zoneRules.add(new ZoneRule(zones));
+                zoneRuleFares.add(i);
+            }
+        }
+    }
+
+    List<Fare> possibleFares(Trip.Segment segment) {
+        BitSet result = (BitSet) unrestricted.clone();
+        BitSet route = byRoute.get(segment.getRoute());
+        if (route != null)
+            result.or(route);
+        BitSet originDestination = byOriginDestination.get(Arrays.asList(segment.getOriginId(), segment.getDestinationId()));
+        if (originDestination != null)
+            result.or(originDestination);
+        for (int i = 0; i < zoneRules.size(); i++) {
+            if (!result.get(zoneRuleFares.get(i)) && zoneRules.get(i).appliesTo(segment))
+                result.set(zoneRuleFares.get(i));
+        }
+        List<Fare> possibleFares = new ArrayList<>(result.cardinality());
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1))
+            possibleFares.add(fares.get(i));
+        return possibleFares;
+    }
+}
@@ -19,18 +19,52 @@
 package com.graphhopper.gtfs.fare;
 
 import com.conveyal.gtfs.model.Fare;
-import com.conveyal.gtfs.model.FareRule;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toList;
-
 public class Fares {
+
+    // The caches are keyed by the identity of the fare maps, and dropped together with them.
+    private static final LoadingCache<Map<String, Fare>, FareIndex> INDEXES = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(FareIndex::new));
+    private static final LoadingCache<Map<String, Map<String, Fare>>, Cache<List<List<Object>>, Optional<Amount>>> CHEAPEST_FARES = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Map<String, Map<String, Fare>>, Cache<List<List<Object>>, Optional<Amount>>>() {
+                @Override
+                public Cache<List<List<Object>>, Optional<Amount>> load(Map<String, Map<String, Fare>> fares) {
+                    return CacheBuilder.newBuilder().maximumSize(10_000).build();
+                }
+            });
+
+    /**
+     * The cheapest fare for the trip. The result only depends on the route, the zones and the start time of each
+     * segment relative to the first one, so it is cached by these.
+     */
     public static Optional<Amount> cheapestFare(Map<String, Map<String, Fare>> fares, Trip trip) {
-        return ticketsBruteForce(fares, trip)
+        List<List<Object>> key = new ArrayList<>(trip.segments.size());
+        long firstStartTime = trip.segments.isEmpty() ? 0 : trip.segments.get(0).getStartTime();
+        for (Trip.Segment segment : trip.segments) {
+            key.add(Arrays.asList(segment.feed_id, segment.getRoute(), segment.getStartTime() - firstStartTime,
+                    segment.getOriginId(), segment.getDestinationId(), segment.getZones()));
+        }
+        try {
+            return CHEAPEST_FARES.getUnchecked(fares).get(key, () -> calcCheapestFare(fares, trip));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Optional<Amount> calcCheapestFare(Map<String, Map<String, Fare>> fares, Trip trip) {
+        return cheapestTickets(fares, trip)
                 .flatMap(tickets -> tickets.stream()
                         .map(ticket -> {
                             Fare fare = fares.get(ticket.feed_id).get(ticket.getFare().fare_id);
@@ -44,13 +78,110 @@ public class Fares {
                         .map(e -> new Amount(e.getValue(), e.getKey())));
     }
 
-    static Optional<List<Ticket>> ticketsBruteForce(Map<String, Map<String, Fare>> fares, Trip trip) {
-        // Recursively enumerate all packages of tickets with which the trip can be done.
-        // Take the cheapest.
-        TicketPurchaseScoreCalculator ticketPurchaseScoreCalculator = new TicketPurchaseScoreCalculator();
-        return allShoppingCarts(fares, trip)
-                .max(Comparator.comparingDouble(ticketPurchaseScoreCalculator::calculateScore))
-                .map(TicketPurchase::getTickets);
+    /**
+     * Finds the cheapest tickets for the trip. The ticket purchases are the same as enumerated by
+     * {@link #allShoppingCarts}, but the cheapest way to pay for the remaining segments is only searched once for each
+     * set of tickets that are still valid for a transfer.
+     */
+    static Optional<List<Ticket>> cheapestTickets(Map<String, Map<String, Fare>> fares, Trip trip) {
+        List<Trip.Segment> segments = trip.segments;
+        List<List<Fare>> possibleFares = new ArrayList<>(segments.size());
+        for (Trip.Segment segment : segments) {
+            List<Fare> fs = possibleFares(fares.get(segment.feed_id), segment);
+            if (fs.isEmpty())
+                return Optional.empty();
+            possibleFares.add(fs);
+        }
+        // a ticket that is only valid before all remaining segments start can not be used for them
+        long[] earliestStartTime = new long[segments.size() + 1];
+        earliestStartTime[segments.size()] = Long.MAX_VALUE;
+        for (int i = segments.size() - 1; i >= 0; i--)
+            earliestStartTime[i] = Math.min(segments.get(i).getStartTime(), earliestStartTime[i + 1]);
+        List<Map<Map<String, HeldTicket>, Purchase>> cheapestPurchases = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++)
+            cheapestPurchases.add(new HashMap<>());
+        return Optional.of(cheapestPurchase(0, Collections.emptyMap(), segments, possibleFares, earliestStartTime, cheapestPurchases).getTickets());
+    }
+
+    private static Purchase cheapestPurchase(int i, Map<String, HeldTicket> heldTickets, List<Trip.Segment> segments, List<List<Fare>> possibleFares,
+                                             long[] earliestStartTime, List<Map<Map<String, HeldTicket>, Purchase>> cheapestPurchases) {
+        if (i == segments.size())
+            return Purchase.NOTHING;
+        Purchase best = cheapestPurchases.get(i).get(heldTickets);
+        if (best != null)
+            return best;
+        Trip.Segment segment = segments.get(i);
+        for (Fare fare : possibleFares.get(i)) {
+            // the same rules as in TicketPurchase.getTickets
+            String fareKey = fare.fare_id + "_" + fare.fare_attribute.feed_id;
+            HeldTicket heldTicket = heldTickets.get(fareKey);
+            Ticket ticket = null;
+            if (heldTicket == null || segment.getStartTime() > heldTicket.validUntil || heldTicket.nMoreTransfers == 0) {
+                ticket = new Ticket(segment.feed_id, fare);
+                heldTicket = new HeldTicket(segment.getStartTime() + fare.fare_attribute.transfer_duration, fare.fare_attribute.transfers);
+            } else {
+                heldTicket = new HeldTicket(heldTicket.validUntil, heldTicket.nMoreTransfers - 1);
+            }
+            Map<String, HeldTicket> nextHeldTickets = new HashMap<>(heldTickets);
+            nextHeldTickets.put(fareKey, heldTicket);
+            // tickets that can not be used for a transfer anymore are the same as no ticket
+            nextHeldTickets.values().removeIf(t -> t.nMoreTransfers == 0 || t.validUntil < earliestStartTime[i + 1]);
+            Purchase rest = cheapestPurchase(i + 1, nextHeldTickets, segments, possibleFares, earliestStartTime, cheapestPurchases);
+            double cost = rest.cost + (ticket != null ? fare.fare_attribute.price : 0);
+            if (best == null || cost < best.cost)
+                best = new Purchase(cost, ticket, rest);
+        }
+        cheapestPurchases.get(i).put(heldTickets, best);
+        return best;
+    }
+
+    private static final class HeldTicket {
+        final long validUntil;
+        final int nMoreTransfers;
+
+        HeldTicket(long validUntil, int nMoreTransfers) {
+            this.validUntil = validUntil;
+            this.nMoreTransfers = nMoreTransfers;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            HeldTicket that = (HeldTicket) o;
+            return validUntil == that.validUntil && nMoreTransfers == that.nMoreTransfers;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(validUntil, nMoreTransfers);
+        }
+    }
+
+    /**
+     * The tickets bought for the segments from some segment on, as a linked list which shares its tail with the
+     * purchases of other choices for the earlier segments.
+     */
+    private static final class Purchase {
+        static final Purchase NOTHING = new Purchase(0, null, null);
+        final double cost;
+        final Ticket ticket;
+        final Purchase rest;
+
+        Purchase(double cost, Ticket ticket, Purchase rest) {
+            this.cost = cost;
+            this.ticket = ticket;
+            this.rest = rest;
+        }
+
+        List<Ticket> getTickets() {
+            List<Ticket> tickets = new ArrayList<>();
+            for (Purchase p = this; p != null; p = p.rest) {
+                if (p.ticket != null)
+                    tickets.add(p.ticket);
+            }
+            return tickets;
+        }
     }
 
     static Stream<TicketPurchase> allShoppingCarts(Map<String, Map<String, Fare>> fares, Trip trip) {
@@ -84,21 +215,8 @@ public class Fares {
         }
     }
 
-    static Collection<Fare> possibleFares(Map<String, Fare> fares, Trip.Segment segment) {
-        return fares.values().stream().filter(fare -> applies(fare, segment)).collect(toList());
-    }
-
-    private static boolean applies(Fare fare, Trip.Segment segment) {
-        return fare.fare_rules.isEmpty() || sanitizeFareRules(fare.fare_rules).stream().anyMatch(rule -> rule.appliesTo(segment));
-    }
-
-    static List<SanitizedFareRule> sanitizeFareRules(List<FareRule> gtfsFareRules) {
-        // Make proper fare rule objects from the CSV-like FareRule
-        ArrayList<SanitizedFareRule> result = new ArrayList<>();
-        result.addAll(gtfsFareRules.stream().filter(rule -> rule.route_id != null).map(rule -> new RouteRule(rule.route_id)).collect(toList()));
-        result.addAll(gtfsFareRules.stream().filter(rule -> rule.origin_id != null && rule.destination_id != null).map(rule -> new OriginDestinationRule(rule.origin_id, rule.destination_id)).collect(toList()));
-        result.add(gtfsFareRules.stream().filter(rule -> rule.contains_id != null).map(rule -> rule.contains_id).collect(Collectors.collectingAndThen(toList(), ZoneRule::new)));
-        return result;
+    static List<Fare> possibleFares(Map<String, Fare> fares, Trip.Segment segment) {
+        return INDEXES.getUnchecked(fares).possibleFares(segment);
     }
 
 }
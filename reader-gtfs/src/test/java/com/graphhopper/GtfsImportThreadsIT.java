@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper;
+
+import com.graphhopper.gtfs.GraphHopperGtfs;
+import com.graphhopper.gtfs.GtfsStorage;
+import com.graphhopper.gtfs.PtEdgeAttributes;
+import com.graphhopper.gtfs.PtGraph;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The pt graph must not depend on gtfs.import_threads.
+ */
+public class GtfsImportThreadsIT {
+
+    private static final String GRAPH_LOC = "target/GtfsImportThreadsIT";
+    private static GraphHopperGtfs singleThreaded;
+    private static GraphHopperGtfs multiThreaded;
+
+    @BeforeAll
+    public static void init() {
+        singleThreaded = importGtfs(1);
+        multiThreaded = importGtfs(4);
+    }
+
+    private static GraphHopperGtfs importGtfs(int threads) {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC + threads);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("datareader.file", "files/beatty.osm");
+        ghConfig.putObject("gtfs.file", "files/sample-feed,files/another-sample-feed");
+        ghConfig.putObject("gtfs.import_threads", threads);
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+        ghConfig.setProfiles(List.of(
+                TestProfiles.accessSpeedAndPriority("foot"),
+                TestProfiles.accessAndSpeed("car")));
+        Helper.removeDir(new File(GRAPH_LOC + threads));
+        GraphHopperGtfs graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+        return graphHopperGtfs;
+    }
+
+    @AfterAll
+    public static void close() {
+        singleThreaded.close();
+        multiThreaded.close();
+    }
+
+    @Test
+    public void testSameGraph() {
+        PtGraph expected = singleThreaded.getPtGraph();
+        PtGraph actual = multiThreaded.getPtGraph();
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        for (int edgeId = 0; edgeId < expected.getEdgeCount(); edgeId++) {
+            PtGraph.PtEdge e = expected.edge(edgeId);
+            PtGraph.PtEdge a = actual.edge(edgeId);
+            String message = "edge " + edgeId;
+            assertEquals(e.getBaseNode(), a.getBaseNode(), message);
+            assertEquals(e.getAdjNode(), a.getAdjNode(), message);
+            PtEdgeAttributes ea = e.getAttrs();
+            PtEdgeAttributes aa = a.getAttrs();
+            assertEquals(ea.type, aa.type, message);
+            assertEquals(ea.time, aa.time, message);
+            assertEquals(ea.validity, aa.validity, message);
+            assertEquals(ea.route_type, aa.route_type, message);
+            assertEquals(ea.feedIdWithTimezone, aa.feedIdWithTimezone, message);
+            assertEquals(ea.transfers, aa.transfers, message);
+            assertEquals(ea.stop_sequence, aa.stop_sequence, message);
+            assertEquals(ea.tripDescriptor, aa.tripDescriptor, message);
+            assertEquals(ea.platformDescriptor, aa.platformDescriptor, message);
+        }
+
+        GtfsStorage expectedStorage = singleThreaded.getGtfsStorage();
+        GtfsStorage actualStorage = multiThreaded.getGtfsStorage();
+        assertEquals(expectedStorage.getStationNodes(), actualStorage.getStationNodes());
+        for (int node = 0; node < expected.getNodeCount(); node++)
+            assertEquals(expectedStorage.getPtToStreet().getOrDefault(node, -1), actualStorage.getPtToStreet().getOrDefault(node, -1), "node " + node);
+    }
+}
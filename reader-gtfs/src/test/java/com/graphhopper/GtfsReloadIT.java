@@ -0,0 +1,147 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper;
+
+import com.graphhopper.gtfs.*;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.TranslationMap;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.gtfs.GtfsHelper.time;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GtfsReloadIT {
+
+    private static final String GRAPH_LOC = "target/GtfsReloadIT";
+    private static final ZoneId zoneId = ZoneId.of("America/Los_Angeles");
+    private static GraphHopperConfig ghConfig;
+    private static GraphHopperGtfs graphHopperGtfs;
+
+    @BeforeAll
+    public static void init() {
+        ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("datareader.file", "files/beatty.osm");
+        ghConfig.putObject("gtfs.file", "files/sample-feed");
+        ghConfig.putObject("gtfs.raptor", true);
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+        ghConfig.setProfiles(List.of(
+                TestProfiles.accessSpeedAndPriority("foot"),
+                TestProfiles.accessAndSpeed("car")));
+        Helper.removeDir(new File(GRAPH_LOC));
+        graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+    }
+
+    @BeforeEach
+    public void resetSchedule() {
+        // every test starts with the sample feed only, no matter what the previous test has reloaded
+        graphHopperGtfs.reloadPublicTransit(Arrays.asList("files/sample-feed"));
+    }
+
+    @AfterAll
+    public static void close() {
+        graphHopperGtfs.close();
+    }
+
+    private static PtRouter createRouter(GtfsStorage gtfsStorage) {
+        return new PtRouterImpl.Factory(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), gtfsStorage)
+                .createWithoutRealtimeFeed();
+    }
+
+    @Test
+    public void testReloadWithAnotherFeed() {
+        GtfsStorage before = graphHopperGtfs.getGtfsStorage();
+        PtRouter routerBefore = createRouter(before);
+        Request ghRequest = new Request(
+                Arrays.asList(
+                        new GHStationLocation("JUSTICE_COURT"),
+                        new GHStationLocation("MUSEUM")
+                ),
+                LocalDateTime.of(2007, 1, 1, 8, 30, 0).atZone(zoneId).toInstant()
+        );
+        ghRequest.setIgnoreTransfers(true);
+        ghRequest.setWalkSpeedKmH(0.005); // Prevent walk solution
+        assertEquals(1, before.getGtfsFeeds().size());
+        assertThrows(PointNotFoundException.class, () -> routerBefore.route(ghRequest));
+
+        graphHopperGtfs.reloadPublicTransit(Arrays.asList("files/sample-feed", "files/another-sample-feed"));
+        GtfsStorage after = graphHopperGtfs.getGtfsStorage();
+        assertNotSame(before, after);
+        assertEquals(2, after.getGtfsFeeds().size());
+        // no query was using the old schedule, so it is closed right away
+        assertFalse(before.retain());
+        assertTrue(before.getPtGraph().isClosed());
+        assertTrue(before.getStopIndex().isClosed());
+        assertThrows(IllegalStateException.class, () -> routerBefore.route(ghRequest));
+
+        GHResponse route = createRouter(after).route(ghRequest);
+        assertFalse(route.hasErrors());
+        assertEquals(time(1, 30), route.getBest().getTime(), "Expected total travel time == scheduled travel time + wait time");
+
+        // the timetable for RAPTOR was built before the new schedule was published
+        assertNotNull(after.getRaptorTimetable());
+        assertNotSame(before.getRaptorTimetable(), after.getRaptorTimetable());
+        PtRouter raptorRouter = new PtRouterRaptorImpl(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(),
+                graphHopperGtfs.getLocationIndex(), after, RealtimeFeed.empty(), new PathDetailsBuilderFactory());
+        assertEquals(time(1, 30), raptorRouter.route(ghRequest).getBest().getTime());
+    }
+
+    @Test
+    public void testRunningQueriesKeepTheOldSchedule() {
+        GtfsStorage before = graphHopperGtfs.getGtfsStorage();
+        PtRouter routerBefore = createRouter(before);
+        // a query which is still running on the old schedule
+        assertTrue(before.retain());
+
+        graphHopperGtfs.reloadPublicTransit(Arrays.asList("files/sample-feed"));
+        assertNotSame(before, graphHopperGtfs.getGtfsStorage());
+
+        Request ghRequest = new Request(Arrays.asList(
+                new GHStationLocation("NADAV"),
+                new GHStationLocation("NANAA")),
+                LocalDateTime.of(2007, 1, 1, 0, 0, 0).atZone(zoneId).toInstant());
+        ghRequest.setIgnoreTransfers(true);
+        ghRequest.setWalkSpeedKmH(0.005); // Prevent walk solution
+        GHResponse route = routerBefore.route(ghRequest);
+        assertFalse(route.hasErrors());
+        assertEquals(time(6, 49), route.getBest().getTime(), "Expected travel time == scheduled arrival time");
+        assertEquals(route.getBest().getTime(), createRouter(graphHopperGtfs.getGtfsStorage()).route(ghRequest).getBest().getTime());
+
+        assertFalse(before.getPtGraph().isClosed());
+        before.release();
+        assertFalse(before.retain());
+        assertTrue(before.getPtGraph().isClosed());
+        assertTrue(before.getStopIndex().isClosed());
+    }
+}
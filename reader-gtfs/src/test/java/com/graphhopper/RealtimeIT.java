@@ -22,7 +22,9 @@ import com.google.transit.realtime.GtfsRealtime;
 import com.graphhopper.gtfs.GraphHopperGtfs;
 import com.graphhopper.gtfs.PtRouter;
 import com.graphhopper.gtfs.PtRouterImpl;
+import com.graphhopper.gtfs.RealtimeFeed;
 import com.graphhopper.gtfs.Request;
+import com.graphhopper.gtfs.Transfers;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.TranslationMap;
@@ -33,7 +35,9 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.math.BigDecimal;
 import java.time.*;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.transit.realtime.GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED;
 import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SCHEDULED;
@@ -739,6 +743,56 @@ public class RealtimeIT {
     }
 
 
+    @Test
+    public void testIncrementalUpdate() {
+        final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
+        final double TO_LAT = 36.914944, TO_LON = -116.761472; // NANAA stop
+        Request ghRequest = new Request(
+                FROM_LAT, FROM_LON,
+                TO_LAT, TO_LON
+        );
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 6, 44).atZone(zoneId).toInstant());
+        Map<String, Transfers> transfers = new HashMap<>();
+        graphHopperGtfs.getGtfsStorage().getGtfsFeeds().forEach((feedId, feed) -> transfers.put(feedId, new Transfers(feed)));
+
+        // First the 6:00 departure of my line skips my departure stop..
+        final GtfsRealtime.FeedMessage.Builder skipped = GtfsRealtime.FeedMessage.newBuilder();
+        skipped.setHeader(header());
+        skipped.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setStopSequence(3)
+                .setScheduleRelationship(SKIPPED);
+        RealtimeFeed skippedFeed = RealtimeFeed.fromProtobuf(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", skipped.build()));
+
+        // ..then it stops there after all, but is super-late
+        final GtfsRealtime.FeedMessage.Builder delayed = GtfsRealtime.FeedMessage.newBuilder();
+        delayed.setHeader(header());
+        delayed.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setScheduleRelationship(SCHEDULED)
+                .setStopSequence(3)
+                .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(3600).build());
+        RealtimeFeed delayedFeed = skippedFeed.update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", delayed.build()));
+
+        GHResponse response = graphHopperFactory.createWith(delayedFeed).route(ghRequest);
+        assertEquals(2, response.getAll().size());
+        Trip.PtLeg impossiblePtLeg = (Trip.PtLeg) response.getAll().get(1).getLegs().get(0);
+        assertFalse(impossiblePtLeg.stops.get(0).departureCancelled, "The skipped stop is not blocked any more");
+        assertEquals(LocalDateTime.parse("2007-01-01T07:49:00").atZone(zoneId).toInstant(), impossiblePtLeg.stops.get(impossiblePtLeg.stops.size() - 1).predictedArrivalTime.toInstant());
+
+        // The previous feed is not changed by the update
+        response = graphHopperFactory.createWith(skippedFeed).route(ghRequest);
+        ResponsePath impossibleAlternative = response.getAll().stream().filter(ResponsePath::isImpossible).findFirst().get();
+        assertTrue(((Trip.PtLeg) impossibleAlternative.getLegs().get(0)).stops.get(0).departureCancelled);
+    }
+
+
     public GtfsRealtime.FeedHeader.Builder header() {
         return GtfsRealtime.FeedHeader.newBuilder()
                 .setGtfsRealtimeVersion("1")
@@ -0,0 +1,82 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlatIntIntMapTest {
+
+    @TempDir
+    Path location;
+
+    @Test
+    public void testStoreAndLoad() {
+        RAMDirectory dir = new RAMDirectory(location.toString(), true);
+        FlatIntIntMap map = new FlatIntIntMap(dir, "map");
+        FlatIntArrayMap arrays = new FlatIntArrayMap(dir, "arrays");
+        map.create();
+        arrays.create();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 7, i);
+            if (i % 3 == 0)
+                arrays.put(i, new int[]{i, i + 1});
+        }
+        arrays.put(1, new int[0]);
+        map.flush();
+        arrays.flush();
+        assertEquals(1000, map.size());
+        assertEquals(5, map.getOrDefault(35, -1));
+        assertThrows(IllegalStateException.class, () -> map.put(1, 1));
+        map.close();
+        arrays.close();
+
+        dir = new RAMDirectory(location.toString(), true);
+        FlatIntIntMap loadedMap = new FlatIntIntMap(dir, "map");
+        FlatIntArrayMap loadedArrays = new FlatIntArrayMap(dir, "arrays");
+        assertTrue(loadedMap.loadExisting());
+        assertTrue(loadedArrays.loadExisting());
+        assertEquals(1000, loadedMap.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, loadedMap.getOrDefault(i * 7, -1));
+            assertEquals(-1, loadedMap.getOrDefault(i * 7 + 1, -1));
+            if (i % 3 == 0)
+                assertArrayEquals(new int[]{i, i + 1}, loadedArrays.get(i));
+            else if (i != 1)
+                assertNull(loadedArrays.get(i));
+        }
+        assertArrayEquals(new int[0], loadedArrays.get(1));
+        assertEquals(-1, loadedMap.getOrDefault(-5, -1));
+    }
+
+    @Test
+    public void testEmpty() {
+        RAMDirectory dir = new RAMDirectory();
+        FlatIntIntMap map = new FlatIntIntMap(dir, "map");
+        map.create();
+        map.flush();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.getOrDefault(0, -1));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import org.junit.jupiter.api.Test;
+
+import static com.graphhopper.gtfs.LabelArena.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LabelArenaTest {
+
+    private static int add(LabelArena arena, long time, int ptNode, int parent) {
+        return arena.add(time, null, -1, ptNode, 0, NO_DEPARTURE, 0, 0, 0, false, parent);
+    }
+
+    @Test
+    public void testReuse() {
+        Object search1 = new Object();
+        LabelArena arena = LabelArena.acquire(search1);
+        int first = add(arena, 10, 0, NO_LABEL);
+        int second = add(arena, 20, 1, first);
+        arena.setFirstInBag(nodeKey(-1, 1), second);
+        // the parent is settled first, like in the search
+        Label parent = arena.settle(first);
+        Label label = arena.settle(second);
+        assertEquals(20, label.currentTime);
+        assertSame(parent, label.parent);
+        assertSame(label, arena.settle(second));
+
+        Object search2 = new Object();
+        assertSame(arena, LabelArena.acquire(search2));
+        assertTrue(arena.isOwnedBy(search2));
+        assertFalse(arena.isOwnedBy(search1));
+        assertEquals(0, arena.size);
+        assertEquals(0, arena.heapSize);
+        assertEquals(NO_LABEL, arena.firstInBag(nodeKey(-1, 1)));
+        // the labels of the previous search are not handed out again
+        int reused = add(arena, 30, 1, NO_LABEL);
+        assertEquals(first, reused);
+        assertNotSame(label, arena.settle(reused));
+        // but the settled labels of the previous search are still valid
+        assertEquals(20, label.currentTime);
+    }
+
+    @Test
+    public void testLargeArenaIsNotRetained() {
+        Object search = new Object();
+        LabelArena arena = LabelArena.acquire(search);
+        for (int i = 0; i <= MAX_RETAINED_CAPACITY; i++)
+            add(arena, i, i, NO_LABEL);
+
+        LabelArena next = LabelArena.acquire(new Object());
+        assertNotSame(arena, next);
+        assertEquals(0, next.size);
+        // the large search can still be continued, it has the arena for itself
+        assertTrue(arena.isOwnedBy(search));
+        assertEquals(MAX_RETAINED_CAPACITY + 1, arena.size);
+        assertSame(next, LabelArena.acquire(new Object()));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiCriteriaLabelSettingTest {
+
+    private static final Instant START = Instant.parse("2007-01-01T08:00:00Z");
+
+    private PtGraph ptGraph;
+    private GraphExplorer explorer;
+
+    @BeforeEach
+    public void setUp() {
+        RAMDirectory dir = new RAMDirectory();
+        ptGraph = new PtGraph(dir, 0);
+        ptGraph.create(100);
+        explorer = new GraphExplorer(new BaseGraph.Builder(4).create(), ptGraph, null, new GtfsStorage(dir), RealtimeFeed.empty(),
+                false, false, true, 5.0, true, 0);
+    }
+
+    private void edge(int from, int to, GtfsStorage.EdgeType type, int seconds, int transfers) {
+        ptGraph.createEdge(from, to, new PtEdgeAttributes(type, seconds, null, 0, null, transfers, -1, null, null));
+    }
+
+    private List<Label> search(boolean mindTransfers, boolean profileQuery, long maxProfileDuration) {
+        MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(explorer, false, mindTransfers, profileQuery, maxProfileDuration, new ArrayList<>());
+        List<Label> labels = new ArrayList<>();
+        router.calcLabels(new Label.NodeId(-1, 0), START).forEach(labels::add);
+        return labels;
+    }
+
+    private static List<Label> at(List<Label> labels, int ptNode) {
+        return labels.stream().filter(l -> l.node.ptNode == ptNode).collect(Collectors.toList());
+    }
+
+    private static long seconds(Label label) {
+        return (label.currentTime - START.toEpochMilli()) / 1000;
+    }
+
+    @Test
+    public void testHeapOrder() {
+        Random random = new Random(42);
+        int nodes = 50;
+        long[] expected = new long[nodes];
+        Arrays.fill(expected, Long.MAX_VALUE);
+        expected[0] = 0;
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int[] e = {random.nextInt(nodes), random.nextInt(nodes), 1 + random.nextInt(100)};
+            edges.add(e);
+            edge(e[0], e[1], GtfsStorage.EdgeType.HOP, e[2], 0);
+        }
+        for (int i = 0; i < nodes; i++)
+            for (int[] e : edges)
+                if (expected[e[0]] != Long.MAX_VALUE)
+                    expected[e[1]] = Math.min(expected[e[1]], expected[e[0]] + e[2]);
+
+        List<Label> labels = search(false, false, 0);
+        for (int i = 1; i < labels.size(); i++)
+            assertTrue(labels.get(i - 1).currentTime <= labels.get(i).currentTime, "labels must be settled by increasing time");
+        // with a single criterion there is exactly one label per reachable node, the one with the earliest arrival
+        Set<Integer> settled = new HashSet<>();
+        for (Label label : labels) {
+            assertTrue(settled.add(label.node.ptNode), "node " + label.node.ptNode + " was settled twice");
+            assertEquals(expected[label.node.ptNode], seconds(label));
+        }
+        assertEquals(Arrays.stream(expected).filter(t -> t != Long.MAX_VALUE).count(), labels.size());
+    }
+
+    @Test
+    public void testDominatedLabelsAreDeleted() {
+        // two labels at node 1 which don't dominate each other: faster with a transfer, or slower without
+        edge(0, 1, GtfsStorage.EdgeType.BOARD, 50, 1);
+        edge(0, 1, GtfsStorage.EdgeType.HOP, 100, 0);
+        // both are dominated by the label via node 2, which is added while they are still in the heap
+        edge(0, 2, GtfsStorage.EdgeType.HOP, 10, 0);
+        edge(2, 1, GtfsStorage.EdgeType.HOP, 20, 0);
+
+        List<Label> labels = search(true, false, 0);
+        List<Label> atNode1 = at(labels, 1);
+        assertEquals(1, atNode1.size());
+        assertEquals(30, seconds(atNode1.get(0)));
+        assertEquals(0, atNode1.get(0).nTransfers);
+        assertEquals(2, atNode1.get(0).parent.node.ptNode);
+
+        // without the shortcut both labels at node 1 are settled
+        setUp();
+        edge(0, 1, GtfsStorage.EdgeType.BOARD, 50, 1);
+        edge(0, 1, GtfsStorage.EdgeType.HOP, 100, 0);
+        atNode1 = at(search(true, false, 0), 1);
+        assertEquals(Arrays.asList(50L, 100L), atNode1.stream().map(MultiCriteriaLabelSettingTest::seconds).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(1, 0), atNode1.stream().map(l -> l.nTransfers).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testProfileQueryDepartureFilter() {
+        // departing after 100s and arriving after 200s, or departing after 300s and arriving after 350s
+        edge(0, 1, GtfsStorage.EdgeType.WAIT, 100, 0);
+        edge(1, 3, GtfsStorage.EdgeType.HOP, 100, 0);
+        edge(0, 2, GtfsStorage.EdgeType.WAIT, 300, 0);
+        edge(2, 3, GtfsStorage.EdgeType.HOP, 50, 0);
+
+        // the earlier departure does not dominate the later one within the profile duration
+        List<Label> atNode3 = at(search(false, true, 1000_000), 3);
+        assertEquals(Arrays.asList(200L, 350L), atNode3.stream().map(MultiCriteriaLabelSettingTest::seconds).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(START.toEpochMilli() + 100_000, START.toEpochMilli() + 300_000),
+                atNode3.stream().map(l -> l.departureTime).collect(Collectors.toList()));
+
+        // the later departure is after the profile duration, so it is dominated
+        atNode3 = at(search(false, true, 50_000), 3);
+        assertEquals(1, atNode3.size());
+        assertEquals(200, seconds(atNode3.get(0)));
+
+        // no profile query: only the earliest arrival
+        atNode3 = at(search(false, false, 0), 3);
+        assertEquals(1, atNode3.size());
+        assertEquals(200, seconds(atNode3.get(0)));
+    }
+
+    @Test
+    public void testOneSearchPerThread() {
+        edge(0, 1, GtfsStorage.EdgeType.HOP, 10, 0);
+        edge(1, 2, GtfsStorage.EdgeType.HOP, 10, 0);
+        MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(explorer, false, false, false, 0, new ArrayList<>());
+        Iterator<Label> first = router.calcLabels(new Label.NodeId(-1, 0), START).iterator();
+        assertEquals(0, first.next().node.ptNode);
+        // a second search on this thread takes over the arena, the first search cannot be continued
+        assertEquals(3, search(false, false, 0).size());
+        assertThrows(IllegalStateException.class, first::next);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.google.transit.realtime.GtfsRealtime;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PtGraphTest {
+
+    @TempDir
+    Path location;
+
+    @Test
+    public void testSharedAttributes() {
+        RAMDirectory dir = new RAMDirectory(location.toString(), true);
+        PtGraph ptGraph = new PtGraph(dir, 0);
+        ptGraph.create(100);
+        GtfsStorage.Validity validity = new GtfsStorage.Validity(new BitSet(), ZoneId.of("UTC"), LocalDate.of(2007, 1, 1));
+        // two trips of the same pattern, with the same hop and dwell times
+        for (int trip = 0; trip < 2; trip++) {
+            GtfsRealtime.TripDescriptor tripDescriptor = GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip" + trip).build();
+            int n = trip * 4;
+            ptGraph.createEdge(n, n + 1, new PtEdgeAttributes(GtfsStorage.EdgeType.BOARD, 0, validity, -1, null, 1, 1, tripDescriptor, null));
+            ptGraph.createEdge(n + 1, n + 2, new PtEdgeAttributes(GtfsStorage.EdgeType.HOP, 300, null, -1, null, 0, 2, null, null));
+            ptGraph.createEdge(n + 2, n + 3, new PtEdgeAttributes(GtfsStorage.EdgeType.DWELL, 60, null, -1, null, 0, -1, null, null));
+        }
+        ptGraph.createEdge(3, 7, new PtEdgeAttributes(GtfsStorage.EdgeType.WAIT, 600, null, -1, null, 0, -1, null, null));
+        // 2 board records of 6 ints, one hop record of 3 ints, one dwell and one wait record of 2 ints
+        assertEquals((2 * 6 + 3 + 2 * 2) * 4, ptGraph.currentPointer);
+        ptGraph.flush();
+        ptGraph.close();
+
+        dir = new RAMDirectory(location.toString(), true);
+        PtGraph loaded = new PtGraph(dir, 0);
+        assertTrue(loaded.loadExisting());
+        assertEquals(7, loaded.getEdgeCount());
+        for (int trip = 0; trip < 2; trip++) {
+            PtEdgeAttributes board = loaded.edge(trip * 3).getAttrs();
+            assertEquals(GtfsStorage.EdgeType.BOARD, board.type);
+            assertEquals("trip" + trip, board.tripDescriptor.getTripId());
+            assertEquals(1, board.transfers);
+            PtGraph.PtEdge hop = loaded.edge(trip * 3 + 1);
+            assertEquals(GtfsStorage.EdgeType.HOP, hop.getType());
+            assertEquals(300, hop.getTime());
+            assertEquals(2, hop.getAttrs().stop_sequence);
+            assertEquals(trip * 4 + 2, hop.getAdjNode());
+            assertEquals(60, loaded.edge(trip * 3 + 2).getTime());
+        }
+        assertEquals(GtfsStorage.EdgeType.WAIT, loaded.edge(6).getType());
+        assertEquals(600, loaded.edge(6).getTime());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StationWalksTest {
+
+    @TempDir
+    Path location;
+
+    @Test
+    public void testStoreAndLoad() {
+        RAMDirectory dir = new RAMDirectory(location.toString(), true);
+        StationWalks walks = new StationWalks(dir);
+        walks.create();
+        walks.put(3, Arrays.asList(new StationWalks.Walk(7, 60, new int[]{4, 9, 2}), new StationWalks.Walk(8, 0, new int[0])));
+        walks.put(5, Collections.emptyList());
+        walks.flush();
+        walks.close();
+
+        dir = new RAMDirectory(location.toString(), true);
+        StationWalks loaded = new StationWalks(dir);
+        assertTrue(loaded.loadExisting());
+        List<StationWalks.Walk> row = loaded.get(3);
+        assertEquals(2, row.size());
+        assertEquals(7, row.get(0).exitEdge);
+        assertEquals(60, row.get(0).seconds);
+        assertArrayEquals(new int[]{4, 9, 2}, row.get(0).edgeKeys);
+        assertEquals(8, row.get(1).exitEdge);
+        assertEquals(0, row.get(1).seconds);
+        assertArrayEquals(new int[0], row.get(1).edgeKeys);
+        assertEquals(Collections.emptyList(), loaded.get(5));
+        assertEquals(Collections.emptyList(), loaded.get(4));
+        loaded.close();
+    }
+
+    @Test
+    public void testWalkingTransfersFromStoredWalks() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", location.toString());
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("datareader.file", "files/beatty.osm");
+        ghConfig.putObject("gtfs.file", "files/sample-feed,files/another-sample-feed");
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+        ghConfig.setProfiles(List.of(
+                TestProfiles.accessSpeedAndPriority("foot"),
+                TestProfiles.accessAndSpeed("car")));
+
+        // the walks and transfers right after they were searched
+        GraphHopperGtfs imported = new GraphHopperGtfs(ghConfig);
+        imported.init(ghConfig);
+        imported.importOrLoad();
+        Map<Integer, List<StationWalks.Walk>> searchedWalks = new HashMap<>();
+        for (int stationNode : new HashSet<>(imported.getGtfsStorage().getStationNodes().values()))
+            searchedWalks.put(stationNode, imported.getGtfsStorage().getStationWalks().get(stationNode));
+        RaptorTimetable searched = RaptorTimetable.build(imported.getGtfsStorage());
+        imported.close();
+        assertTrue(searchedWalks.values().stream().anyMatch(walks -> !walks.isEmpty()));
+
+        GraphHopperGtfs loaded = new GraphHopperGtfs(ghConfig);
+        loaded.init(ghConfig);
+        loaded.importOrLoad();
+        assertEquals(searchedWalks.keySet(), new HashSet<>(loaded.getGtfsStorage().getStationNodes().values()));
+        searchedWalks.forEach((stationNode, expected) -> {
+            List<StationWalks.Walk> actual = loaded.getGtfsStorage().getStationWalks().get(stationNode);
+            assertEquals(expected.size(), actual.size(), "station " + stationNode);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).exitEdge, actual.get(i).exitEdge);
+                assertEquals(expected.get(i).seconds, actual.get(i).seconds);
+                assertArrayEquals(expected.get(i).edgeKeys, actual.get(i).edgeKeys);
+            }
+        });
+
+        RaptorTimetable stored = RaptorTimetable.build(loaded.getGtfsStorage());
+        loaded.close();
+        // make sure the comparison below is not about empty arrays
+        assertTrue(searched.transferSources.length > 0);
+        assertArrayEquals(searched.transfersStart, stored.transfersStart);
+        assertArrayEquals(searched.transferSources, stored.transferSources);
+        assertArrayEquals(searched.transferTargets, stored.transferTargets);
+        assertArrayEquals(searched.transferSeconds, stored.transferSeconds);
+        assertArrayEquals(searched.transferEdgeKeys, stored.transferEdgeKeys);
+    }
+}
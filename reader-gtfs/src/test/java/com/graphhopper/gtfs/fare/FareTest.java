@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
@@ -218,6 +219,20 @@ public class FareTest {
         assertTrue(cheapestFareWhereEveryLegGoesThroughAllZones >= cheapestFare);
     }
 
+    @ParameterizedTest(name = "{2}")
+    @ArgumentsSource(DataPointProvider.class)
+    public void cheapestFareIsTheCheapestOfAllShoppingCarts(Map<String, Map<String, Fare>> fares, Trip trip, String displayName) {
+        Optional<Double> cheapestShoppingCart = Fares.allShoppingCarts(fares, trip)
+                .map(purchase -> purchase.getTickets().stream().mapToDouble(ticket -> ticket.getFare().fare_attribute.price).sum())
+                .min(Double::compare);
+        Optional<Amount> cheapestFare = Fares.cheapestFare(fares, trip);
+        if (cheapestShoppingCart.isEmpty())
+            assertTrue(cheapestFare.isEmpty());
+        cheapestFare.ifPresent(amount -> assertEquals(cheapestShoppingCart.get(), amount.getAmount().doubleValue(), 1e-9));
+        // the second time, the fare comes from the cache
+        assertSame(cheapestFare.orElse(null), Fares.cheapestFare(fares, trip).orElse(null));
+    }
+
     @ParameterizedTest(name = "{2}")
     @ArgumentsSource(DataPointProvider.class)
     public void ifIOnlyHaveOneTicketAndItIsZoneBasedItMustBeGoodForAllZonesOnMyTrip(Map<String, Map<String, Fare>> fares, Trip trip, String displayName) {
@@ -50,6 +50,9 @@ public class ResponsePath {
     private final Map<String, List<PathDetail>> pathDetails = new HashMap<>();
     private BigDecimal fare;
     private boolean impossible = false;
+    private Runnable deferredBuilder;
+    // read without a lock on every access of the points, instructions and path details
+    private volatile boolean deferred;
 
     /**
      * @return the description of this route alternative to make it meaningful for the user e.g. it
@@ -98,6 +101,7 @@ public class ResponsePath {
      */
     public PointList getPoints() {
         check("getPoints");
+        materialize();
         return pointList;
     }
 
@@ -130,6 +134,7 @@ public class ResponsePath {
 
     public List<Integer> getWaypointIndices() {
         check("getWaypointIndices");
+        materialize();
         return waypointIndices;
     }
 
@@ -162,6 +167,7 @@ public class ResponsePath {
      * @return ascend in meter
      */
     public double getAscend() {
+        materialize();
         return ascend;
     }
 
@@ -180,6 +186,7 @@ public class ResponsePath {
      * @return decline in meter
      */
     public double getDescend() {
+        materialize();
         return descend;
     }
 
@@ -224,6 +231,7 @@ public class ResponsePath {
      */
     public Envelope calcBBox2D() {
         check("calcBBox2D");
+        materialize();
         Envelope bounds = new Envelope();
         for (int i = 0; i < pointList.size(); i++) {
             bounds.expandToInclude(pointList.getLon(i), pointList.getLat(i));
@@ -233,6 +241,7 @@ public class ResponsePath {
 
     @Override
     public String toString() {
+        materialize();
         String str = "nodes:" + pointList.size() + "; " + pointList.toString();
         if (instructions != null && !instructions.isEmpty())
             str += ", " + instructions.toString();
@@ -245,6 +254,7 @@ public class ResponsePath {
 
     public InstructionList getInstructions() {
         check("getInstructions");
+        materialize();
         if (instructions == null)
             throw new IllegalArgumentException("To access instructions you need to enable creation before routing");
 
@@ -262,6 +272,7 @@ public class ResponsePath {
      * @param details The PathDetails to add
      */
     public void addPathDetails(Map<String, List<PathDetail>> details) {
+        materialize();
         if (!this.pathDetails.isEmpty() && !details.isEmpty() && this.pathDetails.size() != details.size()) {
             throw new IllegalStateException("Details have to be the same size");
         }
@@ -277,9 +288,56 @@ public class ResponsePath {
     }
 
     public Map<String, List<PathDetail>> getPathDetails() {
+        materialize();
         return this.pathDetails;
     }
 
+    /**
+     * Registers a builder that fills in the points, waypoint indices, instructions, path details and ascend/descend
+     * of this path. The builder runs at most once and only when one of these is accessed for the first time. This
+     * way callers that are only interested in e.g. the distance or the time do not pay for creating them.
+     */
+    public synchronized ResponsePath setDeferredBuilder(Runnable deferredBuilder) {
+        if (this.deferredBuilder != null)
+            throw new IllegalStateException("Cannot call setDeferredBuilder twice");
+        this.deferredBuilder = deferredBuilder;
+        deferred = true;
+        return this;
+    }
+
+    /**
+     * @return true if the points, instructions and path details of this path were not yet created
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Runs the deferred builder if it did not run yet, see {@link #setDeferredBuilder}. This happens implicitly when
+     * the points, instructions or path details are accessed, usually when the response is serialized. Concurrent
+     * callers wait until the builder has finished. An exception of the builder is thrown to the caller and is also
+     * added to the errors of this path.
+     */
+    public void materialize() {
+        if (!deferred)
+            return;
+        synchronized (this) {
+            // the builder itself uses the getters of this class, so it is reset before it runs
+            Runnable builder = deferredBuilder;
+            if (builder == null)
+                return;
+            deferredBuilder = null;
+            try {
+                builder.run();
+            } catch (RuntimeException ex) {
+                addError(ex);
+                throw ex;
+            } finally {
+                deferred = false;
+            }
+        }
+    }
+
     private void check(String method) {
         if (hasErrors()) {
             throw new RuntimeException("You cannot call " + method + " if response contains errors. Check this with ghResponse.hasErrors(). "
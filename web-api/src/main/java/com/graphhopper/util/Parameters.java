@@ -56,6 +56,10 @@ public class Parameters {
          * round trip algorithm (not yet for CH)
          */
         public static final String ROUND_TRIP = "round_trip";
+        /**
+         * route with the highest scenic score within a detour limit (not for CH)
+         */
+        public static final String SCENIC_ROUTE = "scenic_route";
 
         /**
          * All public properties for alternative routing.
@@ -66,6 +70,8 @@ public class Parameters {
             public static final String MAX_WEIGHT = ALT_ROUTE + ".max_weight_factor";
 
             public static final String MAX_SHARE = ALT_ROUTE + ".max_share_factor";
+
+            public static final String TIME_BUDGET_MS = ALT_ROUTE + ".time_budget_ms";
         }
 
         public static final class AStar {
@@ -83,8 +89,17 @@ public class Parameters {
             public static final String DISTANCE = ROUND_TRIP + ".distance";
             public static final String SEED = ROUND_TRIP + ".seed";
             public static final String POINTS = ROUND_TRIP + ".points";
+            public static final String SEARCH = ROUND_TRIP + ".search";
             public static final String INIT_MAX_RETRIES = ROUTING_INIT_PREFIX + ROUND_TRIP + ".max_retries";
         }
+
+        /**
+         * All public properties for scenic routing.
+         */
+        public static final class ScenicRoute {
+            public static final String MAX_DETOUR_FACTOR = SCENIC_ROUTE + ".max_detour_factor";
+            public static final String MAX_LABELS_PER_NODE = SCENIC_ROUTE + ".max_labels_per_node";
+        }
     }
 
     /**
@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import com.graphhopper.ResponsePath;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponsePathTest {
+    @Test
+    public void testDeferredBuilderRunsOnceOnAccess() {
+        AtomicInteger calls = new AtomicInteger();
+        ResponsePath path = new ResponsePath().setDistance(100).setTime(2000);
+        path.setDeferredBuilder(() -> {
+            calls.incrementAndGet();
+            PointList points = new PointList();
+            points.add(1, 2);
+            points.add(1.1, 2.1);
+            path.setPoints(points);
+            // the builder may access the path itself without triggering another run
+            assertEquals(2, path.getPoints().size());
+        });
+        assertTrue(path.isDeferred());
+        assertEquals(100, path.getDistance(), 1.e-6);
+        assertEquals(2000, path.getTime());
+        assertEquals(0, calls.get());
+
+        assertEquals(2, path.getPoints().size());
+        assertEquals(1, calls.get());
+        assertFalse(path.isDeferred());
+        path.calcBBox2D();
+        path.getPathDetails();
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        ResponsePath path = new ResponsePath();
+        path.setDeferredBuilder(() -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            PointList points = new PointList();
+            points.add(1, 2);
+            points.add(1.1, 2.1);
+            path.setPoints(points);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(() -> path.getPoints().size());
+            started.await();
+            // the second caller waits for the builder that is already running instead of seeing an empty path
+            Future<Integer> second = executor.submit(() -> path.getPoints().size());
+            assertEquals(2, first.get());
+            assertEquals(2, second.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testDeferredBuilderCanBeSetOnlyOnce() {
+        ResponsePath path = new ResponsePath();
+        path.setDeferredBuilder(() -> {
+        });
+        assertThrows(IllegalStateException.class, () -> path.setDeferredBuilder(() -> {
+        }));
+    }
+
+    @Test
+    public void testDeferredBuilderError() {
+        ResponsePath path = new ResponsePath().setDistance(100);
+        path.setDeferredBuilder(() -> {
+            throw new IllegalArgumentException("unknown path detail");
+        });
+        assertFalse(path.hasErrors());
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, path::getPoints);
+        assertEquals("unknown path detail", ex.getMessage());
+        assertFalse(path.isDeferred());
+        // the builder does not run again, but later calls see the error
+        assertTrue(path.hasErrors());
+        assertSame(ex, path.getErrors().get(0));
+        assertThrows(RuntimeException.class, path::getPoints);
+    }
+}
@@ -43,6 +43,7 @@ import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 import javax.inject.Inject;
+import java.util.concurrent.ExecutorService;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
@@ -257,6 +258,12 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        int isochroneBatchThreads = configuration.getGraphHopperConfiguration().getInt("isochrone.batch_threads", 4);
+        final ExecutorService isochroneBatchExecutor = environment.lifecycle().executorService("isochrone-batch-%d")
+                .minThreads(isochroneBatchThreads).maxThreads(isochroneBatchThreads).build();
+        int mapMatchingThreads = configuration.getGraphHopperConfiguration().getInt("map_matching.threads", 4);
+        final ExecutorService mapMatchingExecutor = environment.lifecycle().executorService("map-matching-%d")
+                .minThreads(mapMatchingThreads).maxThreads(mapMatchingThreads).build();
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
@@ -264,6 +271,9 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
                 bind(graphHopper).to(GraphHopper.class);
 
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
+                bind(isochroneBatchExecutor).to(ExecutorService.class).named("isochroneBatchExecutor");
+                bind(mapMatchingExecutor).to(ExecutorService.class).named("mapMatchingExecutor");
+                bind(new MVTTileCache(graphHopper, configuration.getGraphHopperConfiguration())).to(MVTTileCache.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
@@ -281,7 +291,9 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
         environment.jersey().register(IsochroneResource.class);
+        environment.jersey().register(IsochroneBatchResource.class);
         environment.jersey().register(MapMatchingResource.class);
+        environment.jersey().register(MapMatchingBulkResource.class);
         if (configuration.getGraphHopperConfiguration().has("gtfs.file")) {
             // These are pt-specific implementations of /route and /isochrone, but the same API.
             // We serve them under different paths (/route-pt and /isochrone-pt), and forward
@@ -289,7 +301,10 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             environment.jersey().register(new AbstractBinder() {
                 @Override
                 protected void configure() {
-                    if (configuration.getGraphHopperConfiguration().getBool("gtfs.free_walk", false)) {
+                    if (configuration.getGraphHopperConfiguration().getBool("gtfs.raptor", false)) {
+                        // the timetable is built by GraphHopperGtfs and comes with the GtfsStorage
+                        bind(PtRouterRaptorImpl.class).to(PtRouter.class);
+                    } else if (configuration.getGraphHopperConfiguration().getBool("gtfs.free_walk", false)) {
                         bind(PtRouterFreeWalkImpl.class).to(PtRouter.class);
                     } else {
                         bind(PtRouterImpl.class).to(PtRouter.class);
@@ -300,6 +315,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             environment.jersey().register(PtIsochroneResource.class);
             environment.jersey().register(PtMVTResource.class);
             environment.jersey().register(PtRedirectFilter.class);
+            environment.admin().addTask(new ReloadGtfsTask((GraphHopperGtfs) graphHopper, configuration.getGraphHopperConfiguration()));
         }
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
@@ -0,0 +1,435 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Encodes lines and points into a Mapbox vector tile. In contrast to the VectorTileEncoder this class does not need
+ * JTS geometries: the coordinates are projected straight to integer tile coordinates, clipped against the buffered
+ * tile and written as delta encoded commands into the protobuf bytes of the feature. The attributes of a feature are
+ * only requested if a part of its geometry is inside the tile.
+ * <p>
+ * The output is the same as of the VectorTileEncoder with its default settings, i.e. an extent of 4096 and a clip
+ * buffer of 8 pixels (of 256), except for tiny differences where a line crosses the clip border.
+ * <p>
+ * The coordinates are interpolated linearly within the tile like the previously used AffineTransformation did.
+ * This class is not thread-safe.
+ */
+public class MVTEncoder {
+
+    public static final int EXTENT = 4096;
+    private static final int CLIP_BUFFER = 8 * EXTENT / 256;
+
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int GEOM_TYPE_POINT = 1;
+    private static final int GEOM_TYPE_LINESTRING = 2;
+
+    private final double minLon;
+    private final double maxLat;
+    private final double scaleX;
+    private final double scaleY;
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+    // the commands of the current feature, reused for all features
+    private final IntArrayList geometry = new IntArrayList();
+    private final IntArrayList tags = new IntArrayList();
+    private int cursorX, cursorY;
+    // the index of the MoveTo command of the current line or -1 if no line was started
+    private int lineStart;
+    private int lineStartCursorX, lineStartCursorY;
+    // the visible part of the clipped segment
+    private double t0, t1;
+
+    public MVTEncoder(BBox tileBounds) {
+        minLon = tileBounds.minLon;
+        maxLat = tileBounds.maxLat;
+        scaleX = EXTENT / (tileBounds.maxLon - tileBounds.minLon);
+        scaleY = EXTENT / (tileBounds.maxLat - tileBounds.minLat);
+    }
+
+    /**
+     * @return the bounds of the specified web mercator tile
+     */
+    public static BBox getTileBounds(int z, int x, int y) {
+        double n = Math.pow(2, z);
+        // unfortunately latitude numbers goes from north to south
+        double maxLat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / n))));
+        double minLat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * (y + 1) / n))));
+        return new BBox(x / n * 360.0 - 180.0, (x + 1) / n * 360.0 - 180.0, minLat, maxLat);
+    }
+
+    /**
+     * Adds the line to the layer. Parts of the line that are outside of the tile are removed, so the feature can
+     * consist of several lines.
+     *
+     * @param attributes is only called if the line intersects the tile
+     * @return true if the line was added, false if it is outside of the tile
+     */
+    public boolean addLineString(String layerName, PointList points, long id, Supplier<Map<String, ?>> attributes) {
+        if (points.size() < 2)
+            return false;
+        startFeature();
+        boolean inside = false;
+        double length = 0;
+        double prevX = toTileX(points.getLon(0)), prevY = toTileY(points.getLat(0));
+        for (int i = 1; i < points.size(); i++) {
+            double x = toTileX(points.getLon(i)), y = toTileY(points.getLat(i));
+            length += Math.sqrt((x - prevX) * (x - prevX) + (y - prevY) * (y - prevY));
+            inside = clipAndAddSegment(prevX, prevY, x, y, inside);
+            prevX = x;
+            prevY = y;
+        }
+        finishLine();
+        // like VectorTileEncoder we skip lines that are shorter than the resolution of the tile
+        if (geometry.isEmpty() || length < 1)
+            return false;
+        addFeature(layerName, GEOM_TYPE_LINESTRING, id, attributes.get());
+        return true;
+    }
+
+    /**
+     * Adds the point to the layer if it is inside the tile including the clip buffer.
+     *
+     * @return true if the point was added
+     */
+    public boolean addPoint(String layerName, double lat, double lon, long id, Map<String, ?> attributes) {
+        double x = toTileX(lon), y = toTileY(lat);
+        if (x < -CLIP_BUFFER || x > EXTENT + CLIP_BUFFER || y < -CLIP_BUFFER || y > EXTENT + CLIP_BUFFER)
+            return false;
+        startFeature();
+        geometry.add(commandAndLength(MOVE_TO, 1), zigZagEncode((int) Math.round(x)), zigZagEncode((int) Math.round(y)));
+        addFeature(layerName, GEOM_TYPE_POINT, id, attributes);
+        return true;
+    }
+
+    /**
+     * @return the protobuf bytes of the vector tile
+     */
+    public byte[] encode() {
+        ProtobufBuffer tile = new ProtobufBuffer(1024);
+        ProtobufBuffer layerBuffer = new ProtobufBuffer(1024);
+        ProtobufBuffer valueBuffer = new ProtobufBuffer(16);
+        for (Map.Entry<String, Layer> e : layers.entrySet()) {
+            Layer layer = e.getValue();
+            layerBuffer.clear();
+            layerBuffer.writeString(1, e.getKey());
+            layerBuffer.writeBytes(layer.features);
+            for (String key : layer.keys)
+                layerBuffer.writeString(3, key);
+            for (Object value : layer.values) {
+                valueBuffer.clear();
+                writeValue(valueBuffer, value);
+                layerBuffer.writeMessage(4, valueBuffer);
+            }
+            layerBuffer.writeTag(5, 0);
+            layerBuffer.writeVarint(EXTENT);
+            layerBuffer.writeTag(15, 0);
+            layerBuffer.writeVarint(2);
+            tile.writeMessage(3, layerBuffer);
+        }
+        return tile.toByteArray();
+    }
+
+    private double toTileX(double lon) {
+        return (lon - minLon) * scaleX;
+    }
+
+    private double toTileY(double lat) {
+        return (maxLat - lat) * scaleY;
+    }
+
+    private void startFeature() {
+        geometry.elementsCount = 0;
+        cursorX = 0;
+        cursorY = 0;
+        lineStart = -1;
+    }
+
+    /**
+     * Clips the segment against the buffered tile using the Liang-Barsky algorithm and appends the visible part.
+     *
+     * @param connected true if the previous segment ended inside the tile, i.e. where this segment starts
+     * @return true if the segment ends inside the tile
+     */
+    private boolean clipAndAddSegment(double x0, double y0, double x1, double y1, boolean connected) {
+        double min = -CLIP_BUFFER, max = EXTENT + CLIP_BUFFER;
+        double dx = x1 - x0, dy = y1 - y0;
+        t0 = 0;
+        t1 = 1;
+        if (!clip(-dx, x0 - min) || !clip(dx, max - x0) || !clip(-dy, y0 - min) || !clip(dy, max - y0))
+            return false;
+        if (!connected || t0 > 0) {
+            finishLine();
+            startLine(x0 + t0 * dx, y0 + t0 * dy);
+        }
+        lineTo(x0 + t1 * dx, y0 + t1 * dy);
+        return t1 == 1;
+    }
+
+    private boolean clip(double p, double q) {
+        if (p == 0)
+            return q >= 0;
+        double t = q / p;
+        if (p < 0) {
+            if (t > t1) return false;
+            if (t > t0) t0 = t;
+        } else {
+            if (t < t0) return false;
+            if (t < t1) t1 = t;
+        }
+        return true;
+    }
+
+    private void startLine(double x, double y) {
+        lineStart = geometry.size();
+        lineStartCursorX = cursorX;
+        lineStartCursorY = cursorY;
+        int ix = (int) Math.round(x), iy = (int) Math.round(y);
+        // the LineTo command is updated with the number of points in finishLine
+        geometry.add(commandAndLength(MOVE_TO, 1), zigZagEncode(ix - cursorX), zigZagEncode(iy - cursorY), 0);
+        cursorX = ix;
+        cursorY = iy;
+    }
+
+    private void lineTo(double x, double y) {
+        int ix = (int) Math.round(x), iy = (int) Math.round(y);
+        // skip points that are equal to the previous one
+        if (ix == cursorX && iy == cursorY)
+            return;
+        geometry.add(zigZagEncode(ix - cursorX), zigZagEncode(iy - cursorY));
+        cursorX = ix;
+        cursorY = iy;
+    }
+
+    private void finishLine() {
+        if (lineStart < 0)
+            return;
+        int points = (geometry.size() - lineStart - 4) / 2;
+        if (points == 0) {
+            // a line needs at least two different points
+            geometry.elementsCount = lineStart;
+            cursorX = lineStartCursorX;
+            cursorY = lineStartCursorY;
+        } else {
+            geometry.set(lineStart + 3, commandAndLength(LINE_TO, points));
+        }
+        lineStart = -1;
+    }
+
+    private void addFeature(String layerName, int geomType, long id, Map<String, ?> attributes) {
+        Layer layer = layers.computeIfAbsent(layerName, k -> new Layer());
+        tags.elementsCount = 0;
+        for (Map.Entry<String, ?> e : attributes.entrySet()) {
+            // skip attribute without value
+            if (e.getValue() == null)
+                continue;
+            tags.add(layer.key(e.getKey()), layer.value(e.getValue()));
+        }
+
+        int size = 0;
+        if (id >= 0)
+            size += 1 + ProtobufBuffer.varintSize(id);
+        int tagsSize = packedSize(tags);
+        if (!tags.isEmpty())
+            size += 1 + ProtobufBuffer.varintSize(tagsSize) + tagsSize;
+        size += 2;
+        int geometrySize = packedSize(geometry);
+        size += 1 + ProtobufBuffer.varintSize(geometrySize) + geometrySize;
+
+        ProtobufBuffer out = layer.features;
+        out.writeTag(2, 2);
+        out.writeVarint(size);
+        if (id >= 0) {
+            out.writeTag(1, 0);
+            out.writeVarint(id);
+        }
+        if (!tags.isEmpty())
+            out.writePacked(2, tags, tagsSize);
+        out.writeTag(3, 0);
+        out.writeVarint(geomType);
+        out.writePacked(4, geometry, geometrySize);
+    }
+
+    private static void writeValue(ProtobufBuffer out, Object value) {
+        if (value instanceof Integer || value instanceof Long) {
+            long l = ((Number) value).longValue();
+            out.writeTag(6, 0);
+            out.writeVarint((l << 1) ^ (l >> 63));
+        } else if (value instanceof Float) {
+            out.writeTag(2, 5);
+            out.writeFixed32(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Double || value instanceof Number && !(value instanceof BigDecimal)) {
+            out.writeTag(3, 1);
+            out.writeFixed64(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            out.writeTag(7, 0);
+            out.writeVarint((Boolean) value ? 1 : 0);
+        } else {
+            out.writeString(1, value.toString());
+        }
+    }
+
+    private static int packedSize(IntArrayList list) {
+        int size = 0;
+        for (int i = 0; i < list.size(); i++)
+            size += ProtobufBuffer.varintSize(list.get(i) & 0xFFFFFFFFL);
+        return size;
+    }
+
+    private static int commandAndLength(int command, int repeat) {
+        return repeat << 3 | command;
+    }
+
+    private static int zigZagEncode(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static class Layer {
+        final ProtobufBuffer features = new ProtobufBuffer(4096);
+        final Map<String, Integer> keyIndex = new HashMap<>();
+        final List<String> keys = new ArrayList<>();
+        final Map<Object, Integer> valueIndex = new HashMap<>();
+        final List<Object> values = new ArrayList<>();
+
+        int key(String key) {
+            Integer index = keyIndex.get(key);
+            if (index == null) {
+                index = keys.size();
+                keyIndex.put(key, index);
+                keys.add(key);
+            }
+            return index;
+        }
+
+        int value(Object value) {
+            Integer index = valueIndex.get(value);
+            if (index == null) {
+                index = values.size();
+                valueIndex.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * A growable byte array with the few protobuf primitives a vector tile needs.
+     */
+    private static class ProtobufBuffer {
+        private byte[] bytes;
+        private int size;
+
+        ProtobufBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[size];
+            System.arraycopy(bytes, 0, result, 0, size);
+            return result;
+        }
+
+        static int varintSize(long value) {
+            int size = 1;
+            while ((value & ~0x7FL) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+
+        void writeTag(int field, int wireType) {
+            writeVarint(field << 3 | wireType);
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeFixed32(int value) {
+            ensureCapacity(4);
+            for (int i = 0; i < 4; i++)
+                bytes[size++] = (byte) (value >>> (8 * i));
+        }
+
+        void writeFixed64(long value) {
+            ensureCapacity(8);
+            for (int i = 0; i < 8; i++)
+                bytes[size++] = (byte) (value >>> (8 * i));
+        }
+
+        void writeString(int field, String str) {
+            byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+            writeTag(field, 2);
+            writeVarint(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void writeMessage(int field, ProtobufBuffer message) {
+            writeTag(field, 2);
+            writeVarint(message.size);
+            writeBytes(message);
+        }
+
+        void writeBytes(ProtobufBuffer other) {
+            ensureCapacity(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        void writePacked(int field, IntArrayList values, int valuesSize) {
+            writeTag(field, 2);
+            writeVarint(valuesSize);
+            for (int i = 0; i < values.size(); i++)
+                // like writeUInt32NoTag of protobuf
+                writeVarint(values.get(i) & 0xFFFFFFFFL);
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                byte[] newBytes = new byte[Math.max(bytes.length * 2, size + additional)];
+                System.arraycopy(bytes, 0, newBytes, 0, size);
+                bytes = newBytes;
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.resources.MVTResource;
+import com.graphhopper.storage.StorableProperties;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Caches the vector tiles of the road network created by {@link MVTResource}. Tiles are kept in an in-memory LRU
+ * cache bounded by their size in bytes and optionally also stored as z/x/y files in the 'mvt' folder of the graph
+ * directory, so they survive restarts and can be pre-generated at import time. Only tiles within the bounds of the
+ * graph are stored on disk and the oldest ones are removed when there are more than mvt.cache_disk_max_tiles.
+ * <p>
+ * Tiles are tagged with a version that is derived from the imported graph, so a re-import never serves stale tiles
+ * and clients can revalidate their copy using the ETag returned by {@link #getETag}. Whoever modifies the graph at
+ * runtime has to call {@link #invalidate()}.
+ */
+public class MVTTileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MVTTileCache.class);
+    public static final int PREGENERATE_MIN_ZOOM = 10;
+    public static final int PREGENERATE_MAX_ZOOM = 14;
+
+    private final GraphHopper graphHopper;
+    private final Cache<String, byte[]> memoryCache;
+    private final boolean diskEnabled;
+    private final int maxDiskTiles;
+    private final int minZoom;
+    private final int maxZoom;
+    // the keys of the tiles on disk, the oldest first. null until the directory was scanned
+    private LinkedHashSet<String> diskTiles;
+    private final AtomicLong generation = new AtomicLong();
+    // the graph is loaded only after the cache was created, so we cannot determine the version in the constructor
+    private volatile String graphVersion;
+
+    public MVTTileCache(GraphHopper graphHopper, GraphHopperConfig config) {
+        this(graphHopper, config.getLong("mvt.cache_size_mb", 64) * 1024 * 1024, config.getBool("mvt.cache_disk", false),
+                config.getInt("mvt.cache_disk_max_tiles", 100_000), config.getInt("mvt.min_zoom", 0), config.getInt("mvt.max_zoom", 22));
+    }
+
+    public MVTTileCache(GraphHopper graphHopper, long maxBytes, boolean diskEnabled, int maxDiskTiles, int minZoom, int maxZoom) {
+        if (minZoom < 0 || maxZoom > 30 || minZoom > maxZoom)
+            throw new IllegalArgumentException("mvt.min_zoom and mvt.max_zoom must be in the range [0, 30], but were " + minZoom + " and " + maxZoom);
+        this.graphHopper = graphHopper;
+        this.diskEnabled = diskEnabled;
+        this.maxDiskTiles = maxDiskTiles;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.memoryCache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, byte[]>weigher((key, bytes) -> bytes.length)
+                .build();
+    }
+
+    /**
+     * @return the tile from memory or disk, or creates and caches it if it was not found.
+     */
+    public byte[] get(int z, int x, int y, boolean renderAll) {
+        checkTile(z, x, y);
+        String key = getKey(z, x, y, renderAll);
+        byte[] bytes = memoryCache.getIfPresent(key);
+        if (bytes != null)
+            return bytes;
+
+        File file = getFile(key);
+        if (file != null && file.exists()) {
+            try {
+                bytes = Files.readAllBytes(file.toPath());
+            } catch (IOException ex) {
+                logger.warn("Cannot read tile " + file + ", creating it again", ex);
+            }
+        }
+        if (bytes == null) {
+            bytes = MVTResource.createTile(graphHopper, z, x, y, renderAll);
+            // tiles outside the graph are all the same and cheap to create, so they are not worth the disk space
+            if (file != null && isInsideGraph(z, x, y)) {
+                try {
+                    writeToDisk(key, file, bytes);
+                } catch (UncheckedIOException ex) {
+                    logger.warn("Cannot store tile on disk", ex);
+                }
+            }
+        }
+        memoryCache.put(key, bytes);
+        return bytes;
+    }
+
+    /**
+     * The ETag only depends on the tile coordinates and the graph version, so it can be checked without creating the
+     * tile.
+     */
+    public String getETag(int z, int x, int y, boolean renderAll) {
+        checkTile(z, x, y);
+        return getGraphVersion() + "-" + generation.get() + "-" + getKey(z, x, y, renderAll).replace('/', '-');
+    }
+
+    /**
+     * Removes all tiles from memory and disk and changes the ETags of all tiles. This has to be called whenever the
+     * edges of the graph change without a re-import.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        memoryCache.invalidateAll();
+        if (diskEnabled) {
+            synchronized (this) {
+                Helper.removeDir(getDirectory());
+                diskTiles = new LinkedHashSet<>();
+            }
+        }
+    }
+
+    /**
+     * Creates all tiles of the given zoom levels that cover the bounds of the graph and stores them on disk. Tiles
+     * that already exist are skipped and no more tiles are created once mvt.cache_disk_max_tiles is reached.
+     *
+     * @return the number of created tiles
+     */
+    public int pregenerate(int minZoom, int maxZoom) {
+        if (!diskEnabled)
+            throw new IllegalStateException("Pre-generating tiles requires mvt.cache_disk: true");
+        BBox bounds = graphHopper.getBaseGraph().getBounds();
+        if (!bounds.isValid())
+            return 0;
+        int created = 0;
+        for (int z = Math.max(minZoom, this.minZoom); z <= Math.min(maxZoom, this.maxZoom); z++) {
+            StopWatch sw = new StopWatch().start();
+            int minX = lonToTileX(bounds.minLon, z), maxX = lonToTileX(bounds.maxLon, z);
+            int minY = latToTileY(bounds.maxLat, z), maxY = latToTileY(bounds.minLat, z);
+            int createdForZoom = 0;
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    String key = getKey(z, x, y, false);
+                    File file = getFile(key);
+                    if (file.exists())
+                        continue;
+                    if (getDiskTiles().size() >= maxDiskTiles) {
+                        logger.warn("stopped pre-generating tiles at zoom " + z + ", because mvt.cache_disk_max_tiles=" + maxDiskTiles + " was reached");
+                        return created + createdForZoom;
+                    }
+                    writeToDisk(key, file, MVTResource.createTile(graphHopper, z, x, y, false));
+                    createdForZoom++;
+                }
+            }
+            logger.info("pre-generated " + createdForZoom + " tiles for zoom " + z + ", took: " + sw.stop().getSeconds() + "s");
+            created += createdForZoom;
+        }
+        return created;
+    }
+
+    private void checkTile(int z, int x, int y) {
+        if (z < minZoom || z > maxZoom)
+            throw new IllegalArgumentException("Zoom level " + z + " is not in the range [" + minZoom + ", " + maxZoom + "]");
+        int n = 1 << z;
+        if (x < 0 || x >= n || y < 0 || y >= n)
+            throw new IllegalArgumentException("Tile " + x + "/" + y + " does not exist for zoom level " + z);
+    }
+
+    private boolean isInsideGraph(int z, int x, int y) {
+        BBox bounds = graphHopper.getBaseGraph().getBounds();
+        return bounds.isValid()
+                && x >= lonToTileX(bounds.minLon, z) && x <= lonToTileX(bounds.maxLon, z)
+                && y >= latToTileY(bounds.maxLat, z) && y <= latToTileY(bounds.minLat, z);
+    }
+
+    private void writeToDisk(String key, File file, byte[] bytes) {
+        write(file, bytes);
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            LinkedHashSet<String> tiles = getDiskTiles();
+            tiles.add(key);
+            Iterator<String> iter = tiles.iterator();
+            while (tiles.size() > maxDiskTiles) {
+                evicted.add(iter.next());
+                iter.remove();
+            }
+        }
+        for (String evictedKey : evicted) {
+            if (!getFile(evictedKey).delete())
+                logger.warn("Cannot remove tile " + evictedKey + " from disk");
+        }
+    }
+
+    /**
+     * Scans the tiles on disk on first use, the tiles of previous graph versions are removed.
+     */
+    private synchronized LinkedHashSet<String> getDiskTiles() {
+        if (diskTiles != null)
+            return diskTiles;
+        File[] versions = getDirectory().getParentFile().listFiles();
+        if (versions != null) {
+            for (File version : versions) {
+                if (!version.getName().equals(getGraphVersion()))
+                    Helper.removeDir(version);
+            }
+        }
+        diskTiles = new LinkedHashSet<>();
+        Path dir = getDirectory().toPath();
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.filter(f -> f.toString().endsWith(".mvt"))
+                        .sorted(Comparator.<Path>comparingLong(f -> f.toFile().lastModified()).thenComparing(Path::toString))
+                        .forEach(f -> {
+                            String name = dir.relativize(f).toString().replace(File.separatorChar, '/');
+                            diskTiles.add(name.substring(0, name.length() - ".mvt".length()));
+                        });
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot read tiles from " + dir, ex);
+            }
+        }
+        return diskTiles;
+    }
+
+    private String getGraphVersion() {
+        if (graphVersion == null) {
+            StorableProperties properties = graphHopper.getProperties();
+            String str = Constants.VERSION + "|" + properties.get("datareader.import.date") + "|"
+                    + properties.get("datareader.data.date") + "|" + properties.get("graph.encoded_values");
+            graphVersion = Integer.toHexString(str.hashCode());
+        }
+        return graphVersion;
+    }
+
+    private File getDirectory() {
+        return new File(graphHopper.getGraphHopperLocation(), "mvt/" + getGraphVersion());
+    }
+
+    private File getFile(String key) {
+        return diskEnabled ? new File(getDirectory(), key + ".mvt") : null;
+    }
+
+    private static String getKey(int z, int x, int y, boolean renderAll) {
+        return z + "/" + x + "/" + y + (renderAll ? "_all" : "");
+    }
+
+    private static void write(File file, byte[] bytes) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            // write to a temporary file first so that concurrent readers never see a partially written tile
+            File tmp = File.createTempFile("tile", ".tmp", file.getParentFile());
+            Files.write(tmp.toPath(), bytes);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot write tile " + file, ex);
+        }
+    }
+
+    static int lonToTileX(double lon, int zoom) {
+        int n = 1 << zoom;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((lon + 180) / 360 * n)));
+    }
+
+    static int latToTileY(double lat, int zoom) {
+        int n = 1 << zoom;
+        double latRad = Math.toRadians(lat);
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n)));
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.glassfish.hk2.api.Factory;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.HashMap;
@@ -50,14 +51,15 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
     private final HttpClient httpClient;
     private final BaseGraph baseGraph;
     private final EncodingManager encodingManager;
-    private final GtfsStorage gtfsStorage;
+    // the current static GTFS, which changes when the schedule is reloaded
+    private final Provider<GtfsStorage> gtfsStorage;
     private final RealtimeBundleConfiguration bundleConfiguration;
     private ExecutorService executor;
-    private LoadingCache<String, RealtimeFeed> cache;
-    private Map<String, Transfers> transfers;
+    private LoadingCache<GtfsStorage, RealtimeFeed> cache;
+    private LoadingCache<GtfsStorage, Map<String, Transfers>> transfers;
 
     @Inject
-    RealtimeFeedLoadingCache(BaseGraph baseGraph, EncodingManager encodingManager, GtfsStorage gtfsStorage, HttpClient httpClient, RealtimeBundleConfiguration bundleConfiguration) {
+    RealtimeFeedLoadingCache(BaseGraph baseGraph, EncodingManager encodingManager, Provider<GtfsStorage> gtfsStorage, HttpClient httpClient, RealtimeBundleConfiguration bundleConfiguration) {
         this.baseGraph = baseGraph;
         this.encodingManager = encodingManager;
         this.gtfsStorage = gtfsStorage;
@@ -67,22 +69,32 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
 
     @Override
     public void start() {
-        this.transfers = new HashMap<>();
-        for (Map.Entry<String, GTFSFeed> entry : this.gtfsStorage.getGtfsFeeds().entrySet()) {
-            this.transfers.put(entry.getKey(), new Transfers(entry.getValue()));
-        }
+        this.transfers = CacheBuilder.newBuilder()
+                .weakKeys()
+                .build(new CacheLoader<GtfsStorage, Map<String, Transfers>>() {
+                    public Map<String, Transfers> load(GtfsStorage staticGtfs) {
+                        Map<String, Transfers> transfers = new HashMap<>();
+                        for (Map.Entry<String, GTFSFeed> entry : staticGtfs.getGtfsFeeds().entrySet()) {
+                            transfers.put(entry.getKey(), new Transfers(entry.getValue()));
+                        }
+                        return transfers;
+                    }
+                });
         this.executor = Executors.newSingleThreadExecutor();
+        // keyed by the static GTFS, so the realtime feed starts over when the schedule is reloaded
         this.cache = CacheBuilder.newBuilder()
                 .maximumSize(1)
                 .refreshAfterWrite(1, TimeUnit.MINUTES)
-                .build(new CacheLoader<String, RealtimeFeed>() {
-                    public RealtimeFeed load(String key) {
-                        return fetchFeedsAndCreateGraph();
+                .build(new CacheLoader<GtfsStorage, RealtimeFeed>() {
+                    public RealtimeFeed load(GtfsStorage staticGtfs) {
+                        return fetchFeedsAndCreateGraph(staticGtfs, RealtimeFeed.empty());
                     }
 
                     @Override
-                    public ListenableFuture<RealtimeFeed> reload(String key, RealtimeFeed oldValue) {
-                        ListenableFutureTask<RealtimeFeed> task = ListenableFutureTask.create(() -> fetchFeedsAndCreateGraph());
+                    public ListenableFuture<RealtimeFeed> reload(GtfsStorage staticGtfs, RealtimeFeed oldValue) {
+                        // only the trips that changed since the old feed are processed, the old feed stays valid for
+                        // the queries that still use it until the cache swaps in the new one
+                        ListenableFutureTask<RealtimeFeed> task = ListenableFutureTask.create(() -> fetchFeedsAndCreateGraph(staticGtfs, oldValue));
                         executor.execute(task);
                         return task;
                     }
@@ -92,7 +104,7 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
     @Override
     public RealtimeFeed provide() {
         try {
-            return cache.get("pups");
+            return cache.get(gtfsStorage.get());
         } catch (ExecutionException | RuntimeException e) {
             e.printStackTrace();
             return RealtimeFeed.empty();
@@ -108,7 +120,7 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
     public void stop() {
     }
 
-    private RealtimeFeed fetchFeedsAndCreateGraph() {
+    private RealtimeFeed fetchFeedsAndCreateGraph(GtfsStorage staticGtfs, RealtimeFeed previous) {
         Map<String, GtfsRealtime.FeedMessage> feedMessageMap = new HashMap<>();
         for (FeedConfiguration configuration : bundleConfiguration.gtfsrealtime().getFeeds()) {
             try {
@@ -119,7 +131,7 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
                 throw new RuntimeException(e);
             }
         }
-        return RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, feedMessageMap);
+        return previous.update(staticGtfs, transfers.getUnchecked(staticGtfs), feedMessageMap);
     }
 
 }
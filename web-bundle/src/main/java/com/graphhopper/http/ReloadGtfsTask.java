@@ -0,0 +1,52 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.gtfs.GraphHopperGtfs;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports the GTFS files again, while the public transit API keeps answering queries from the current schedule. Run
+ * it with <code>curl -X POST http://localhost:8990/tasks/reload-gtfs</code> after the files of gtfs.file have been
+ * updated, or pass other files with one or more <code>file</code> parameters.
+ */
+public class ReloadGtfsTask extends Task {
+
+    private final GraphHopperGtfs graphHopper;
+    private final GraphHopperConfig config;
+
+    public ReloadGtfsTask(GraphHopperGtfs graphHopper, GraphHopperConfig config) {
+        super("reload-gtfs");
+        this.graphHopper = graphHopper;
+        this.config = config;
+    }
+
+    @Override
+    public void execute(Map<String, List<String>> parameters, PrintWriter output) {
+        List<String> files = parameters.getOrDefault("file", Arrays.asList(config.getString("gtfs.file", "").split(",")));
+        graphHopper.reloadPublicTransit(files);
+        output.println("Reloaded " + files);
+    }
+}
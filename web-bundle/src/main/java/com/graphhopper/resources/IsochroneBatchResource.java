@@ -0,0 +1,274 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.Profile;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.isochrone.algorithm.GridTriangulator;
+import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.isochrone.algorithm.Triangulator;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.JsonFeature;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.GHPoint;
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.ToDoubleFunction;
+
+import static com.graphhopper.resources.IsochroneResource.*;
+
+/**
+ * Calculates the isochrones of many points with one request. The features are streamed as a GeoJSON
+ * FeatureCollection as soon as they are ready, so their order is not the order of the points.
+ * <p>
+ * In the nearest_seed mode there is only one search that starts from all points at once, i.e. every location is
+ * assigned to the point it can be reached from the fastest, and there is one (multi)polygon per bucket. In the per_seed
+ * mode every point gets its own polygons, these searches run in parallel on the worker pool that is configured via
+ * isochrone.batch_threads.
+ */
+@Path("isochrone/batch")
+public class IsochroneBatchResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(IsochroneBatchResource.class);
+
+    public enum Mode {nearest_seed, per_seed}
+
+    public static class Request {
+        public String profile;
+        public List<GHPoint> points = new ArrayList<>();
+        public Mode mode = Mode.per_seed;
+        public int buckets = 1;
+        public boolean reverseFlow;
+        // in seconds
+        public long timeLimit = 600;
+        // in meters
+        public long distanceLimit = -1;
+        public long weightLimit = -1;
+        // in meters
+        public double tolerance;
+        public ContourType contour = ContourType.delaunay;
+        // only for the per_seed mode, in the nearest_seed mode we always return all polygons
+        public boolean fullGeometry;
+        // like for GET /isochrone this prevents the use of PHAST
+        @JsonProperty("ch.disable")
+        public boolean disableCH;
+    }
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final Triangulator triangulator;
+    private final Triangulator gridTriangulator = new GridTriangulator();
+    private final ProfileResolver profileResolver;
+    private final ExecutorService executorService;
+    private final int maxPoints;
+    private final int maxTasksInFlight;
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+    @Inject
+    public IsochroneBatchResource(GraphHopperConfig config, GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver,
+                                  @Named("isochroneBatchExecutor") ExecutorService executorService) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.triangulator = triangulator;
+        this.profileResolver = profileResolver;
+        this.executorService = executorService;
+        this.maxPoints = config.getInt("isochrone.batch_max_points", 1_000);
+        // a few more tasks than threads keep the pool busy, but one batch must not queue all its points at once
+        this.maxTasksInFlight = 2 * config.getInt("isochrone.batch_threads", 4);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull Request request) {
+        StopWatch sw = new StopWatch().start();
+        if (request.points.isEmpty())
+            throw new IllegalArgumentException("At least one point is required");
+        if (request.points.size() > maxPoints)
+            throw new IllegalArgumentException("Too many points (" + request.points.size() + "), the maximum is " + maxPoints);
+        if (request.buckets < 1 || request.buckets > 20)
+            throw new IllegalArgumentException("buckets must be in the range [1, 20]");
+
+        PMap hintsMap = new PMap();
+        hintsMap.putObject(Parameters.CH.DISABLE, true);
+        hintsMap.putObject(Parameters.Landmark.DISABLE, true);
+        PMap profileResolverHints = new PMap(hintsMap);
+        profileResolverHints.putObject("profile", request.profile);
+        String profileName = profileResolver.resolveProfile(profileResolverHints);
+        Profile profile = graphHopper.getProfile(profileName);
+        if (profile == null)
+            throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
+
+        LimitType limitType;
+        double limit;
+        if (request.weightLimit > 0) {
+            limitType = LimitType.WEIGHT;
+            limit = request.weightLimit;
+        } else if (request.distanceLimit > 0) {
+            limitType = LimitType.DISTANCE;
+            limit = request.distanceLimit;
+        } else {
+            limitType = LimitType.TIME;
+            limit = request.timeLimit * 1000d;
+        }
+
+        boolean usePhast = usePhast(config, hintsMap, request.disableCH, limitType, limit);
+
+        // we snap all points upfront so that invalid points are reported as usual and not in the middle of the stream
+        BaseGraph graph = graphHopper.getBaseGraph();
+        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
+        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        DefaultSnapFilter snapFilter = new DefaultSnapFilter(weighting, inSubnetworkEnc);
+        List<Snap> snaps = new ArrayList<>(request.points.size());
+        for (int i = 0; i < request.points.size(); i++) {
+            GHPoint point = request.points.get(i);
+            Snap snap = graphHopper.getLocationIndex().findClosest(point.lat, point.lon, snapFilter);
+            if (!snap.isValid())
+                throw new IllegalArgumentException("Point " + i + " not found: " + point);
+            snaps.add(snap);
+        }
+
+        double tolerance = degreesFromMeters(request.tolerance);
+        Triangulator triangulator = request.contour == ContourType.grid ? gridTriangulator : this.triangulator;
+        CompletionService<List<JsonFeature>> completionService = new ExecutorCompletionService<>(executorService);
+        List<Callable<List<JsonFeature>>> tasks = new ArrayList<>();
+        if (request.mode == Mode.nearest_seed) {
+            tasks.add(createTask(-1, () -> {
+                // one query graph for all points, every point is a start node of the search
+                QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+                int[] startNodes = snaps.stream().mapToInt(Snap::getClosestNode).toArray();
+                ShortestPathTree shortestPathTree = createShortestPathTree(graphHopper, profile, queryGraph, weighting, request.reverseFlow, usePhast);
+                ToDoubleFunction<ShortestPathTree.IsoLabel> fz = initLimit(shortestPathTree, limitType, limit);
+                Triangulator.Result result = triangulator.triangulate(startNodes, queryGraph, shortestPathTree, fz, tolerance);
+                return buildIsochrones(result, limit, request.buckets, null);
+            }));
+        } else {
+            for (int i = 0; i < snaps.size(); i++) {
+                Snap snap = snaps.get(i);
+                GHPoint mainComponentPoint = request.fullGeometry ? null : request.points.get(i);
+                tasks.add(createTask(i, () -> {
+                    QueryGraph queryGraph = QueryGraph.create(graph, snap);
+                    ShortestPathTree shortestPathTree = createShortestPathTree(graphHopper, profile, queryGraph, weighting, request.reverseFlow, usePhast);
+                    ToDoubleFunction<ShortestPathTree.IsoLabel> fz = initLimit(shortestPathTree, limitType, limit);
+                    Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, tolerance);
+                    return buildIsochrones(result, limit, request.buckets, mainComponentPoint);
+                }));
+            }
+        }
+
+        StreamingOutput out = output -> {
+            List<Future<List<JsonFeature>>> futures = new ArrayList<>(tasks.size());
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                generator.writeStartObject();
+                generator.writeStringField("type", "FeatureCollection");
+                generator.writeArrayFieldStart("features");
+                while (futures.size() < Math.min(maxTasksInFlight, tasks.size()))
+                    futures.add(completionService.submit(tasks.get(futures.size())));
+                for (int i = 0; i < tasks.size(); i++) {
+                    List<JsonFeature> features = completionService.take().get();
+                    if (futures.size() < tasks.size())
+                        futures.add(completionService.submit(tasks.get(futures.size())));
+                    for (JsonFeature feature : features) {
+                        objectMapper.writeValue(generator, feature);
+                    }
+                    generator.flush();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            } catch (ExecutionException ex) {
+                throw new IOException(ex.getCause());
+            } finally {
+                // e.g. if the client went away we do not need to finish the remaining points, the points that
+                // were not submitted yet are not calculated at all
+                futures.forEach(f -> f.cancel(true));
+                logger.info("took: " + sw.stop().getSeconds() + ", points: " + snaps.size() + ", mode: " + request.mode);
+            }
+        };
+        return Response.ok(out).build();
+    }
+
+    /**
+     * Creates the calculation of the isochrones for one point, or for all points if seed is negative. An error does
+     * not fail the entire batch, which is already partially streamed, instead we return a feature with the error
+     * message.
+     */
+    private Callable<List<JsonFeature>> createTask(int seed, Callable<List<Geometry>> task) {
+        return () -> {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("copyrights", config.getCopyrights());
+            if (seed >= 0)
+                properties.put("seed", seed);
+            List<Geometry> isochrones;
+            try {
+                isochrones = task.call();
+            } catch (Exception ex) {
+                if (ex instanceof IllegalArgumentException) {
+                    properties.put("message", ex.getMessage());
+                } else {
+                    logger.error("Cannot calculate the isochrones of seed " + seed, ex);
+                    properties.put("message", "Cannot calculate the isochrones of this point: " + ex);
+                }
+                JsonFeature feature = new JsonFeature();
+                feature.setProperties(properties);
+                return Collections.singletonList(feature);
+            }
+            List<JsonFeature> features = new ArrayList<>(isochrones.size());
+            for (int bucket = 0; bucket < isochrones.size(); bucket++) {
+                JsonFeature feature = new JsonFeature();
+                Map<String, Object> bucketProperties = new HashMap<>(properties);
+                bucketProperties.put("bucket", bucket);
+                feature.setProperties(bucketProperties);
+                feature.setGeometry(isochrones.get(bucket));
+                features.add(feature);
+            }
+            return features;
+        };
+    }
+}
@@ -8,19 +8,24 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
+import com.graphhopper.isochrone.algorithm.GridTriangulator;
+import com.graphhopper.isochrone.algorithm.PhastShortestPathTree;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
 import org.hibernate.validator.constraints.Range;
 import org.locationtech.jts.geom.*;
 import org.slf4j.Logger;
@@ -35,6 +40,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
 import java.util.function.ToDoubleFunction;
@@ -52,6 +58,7 @@ public class IsochroneResource {
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
     private final Triangulator triangulator;
+    private final Triangulator gridTriangulator = new GridTriangulator();
     private final ProfileResolver profileResolver;
     private final String osmDate;
 
@@ -66,6 +73,14 @@ public class IsochroneResource {
 
     public enum ResponseType {json, geojson}
 
+    /**
+     * delaunay triangulates the nodes of the shortest path tree, grid rasterizes its edges which is faster and needs
+     * less memory for large isochrones.
+     */
+    public enum ContourType {delaunay, grid}
+
+    enum LimitType {TIME, DISTANCE, WEIGHT}
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response doGet(
@@ -79,10 +94,12 @@ public class IsochroneResource {
             @QueryParam("weight_limit") @DefaultValue("-1") OptionalLong weightLimit,
             @QueryParam("type") @DefaultValue("json") ResponseType respType,
             @QueryParam("tolerance") @DefaultValue("0") double toleranceInMeter,
+            @QueryParam("contour") @DefaultValue("delaunay") ContourType contour,
             @QueryParam("full_geometry") @DefaultValue("false") boolean fullGeometry) {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        boolean disableCH = hintsMap.getBool(Parameters.CH.DISABLE, false);
         hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
@@ -102,44 +119,26 @@ public class IsochroneResource {
         if (!snap.isValid())
             throw new IllegalArgumentException("Point not found:" + point);
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
-        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
 
+        LimitType limitType;
         double limit;
-        ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
         if (weightLimit.orElseThrow(() -> new IllegalArgumentException("query param weight_limit is not a number.")) > 0) {
+            limitType = LimitType.WEIGHT;
             limit = weightLimit.getAsLong();
-            shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 200));
-            fz = l -> l.weight;
         } else if (distanceLimitInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
+            limitType = LimitType.DISTANCE;
             limit = distanceLimitInMeter.getAsLong();
-            shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
-            fz = l -> l.distance;
         } else {
+            limitType = LimitType.TIME;
             limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
-            shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
-            fz = l -> l.time;
-        }
-        ArrayList<Double> zs = new ArrayList<>();
-        double delta = limit / nBuckets.orElseThrow(() -> new IllegalArgumentException("query param buckets is not a number."));
-        for (int i = 0; i < nBuckets.getAsInt(); i++) {
-            zs.add((i + 1) * delta);
         }
+        ShortestPathTree shortestPathTree = createShortestPathTree(graphHopper, profile, queryGraph, weighting, reverseFlow,
+                usePhast(config, hintsMap, disableCH, limitType, limit));
+        ToDoubleFunction<ShortestPathTree.IsoLabel> fz = initLimit(shortestPathTree, limitType, limit);
+        int buckets = nBuckets.orElseThrow(() -> new IllegalArgumentException("query param buckets is not a number."));
 
-        Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
-
-        ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
-        ArrayList<Geometry> isochrones = new ArrayList<>();
-        for (Double z : zs) {
-            logger.info("Building contour z={}", z);
-            MultiPolygon isochrone = contourBuilder.computeIsoline(z, result.seedEdges);
-            if (fullGeometry) {
-                isochrones.add(isochrone);
-            } else {
-                Polygon maxPolygon = heuristicallyFindMainConnectedComponent(isochrone, isochrone.getFactory().createPoint(new Coordinate(point.get().lon, point.get().lat)));
-                isochrones.add(isochrone.getFactory().createPolygon(((LinearRing) maxPolygon.getExteriorRing())));
-            }
-        }
+        Triangulator.Result result = (contour == ContourType.grid ? gridTriangulator : triangulator).triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
+        List<Geometry> isochrones = buildIsochrones(result, limit, buckets, fullGeometry ? null : point.get());
         ArrayList<JsonFeature> features = new ArrayList<>();
         for (Geometry isochrone : isochrones) {
             JsonFeature feature = new JsonFeature();
@@ -174,7 +173,76 @@ public class IsochroneResource {
                 build();
     }
 
-    private Polygon heuristicallyFindMainConnectedComponent(MultiPolygon multiPolygon, Point point) {
+    /**
+     * PHAST explores the entire graph, so it is only faster than a Dijkstra for large limits. It is opt-in: it is
+     * used for time limits of at least isochrone.phast_min_time_limit seconds, if CH was not disabled for this request.
+     * The default of 0 never uses PHAST.
+     * <p>
+     * PHAST uses the weighting of the CH preparation, so it is not used if the request hints change the weighting,
+     * e.g. with a custom model.
+     */
+    static boolean usePhast(GraphHopperConfig config, PMap hints, boolean disableCH, LimitType limitType, double limit) {
+        long minTimeLimit = config.getLong("isochrone.phast_min_time_limit", 0);
+        if (disableCH || minTimeLimit <= 0 || limitType != LimitType.TIME || limit < minTimeLimit * 1000d)
+            return false;
+        // see DefaultWeightingFactory.createWeighting
+        return !hints.has(CustomModel.KEY) && !hints.has(Parameters.Routing.HEADING_PENALTY) && !hints.has(Parameters.Routing.U_TURN_COSTS);
+    }
+
+    /**
+     * Uses PHAST if requested and if there is a node-based CH preparation for the profile, see {@link #usePhast}.
+     */
+    static ShortestPathTree createShortestPathTree(GraphHopper graphHopper, Profile profile, QueryGraph queryGraph,
+                                                   Weighting weighting, boolean reverseFlow, boolean usePhast) {
+        RoutingCHGraph chGraph = !usePhast || profile.hasTurnCosts() ? null : graphHopper.getCHGraphs().get(profile.getName());
+        if (chGraph != null && !chGraph.isEdgeBased())
+            return new PhastShortestPathTree(queryGraph, new QueryRoutingCHGraph(chGraph, queryGraph),
+                    PhastShortestPathTree.NodeOrder.of(chGraph), reverseFlow);
+        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
+        return new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+    }
+
+    /**
+     * Sets the limit of the shortest path tree and returns the value of a label that is compared against the limit.
+     * The tree explores a bit more than requested, because the triangulation needs the nodes behind the limit, too.
+     */
+    static ToDoubleFunction<ShortestPathTree.IsoLabel> initLimit(ShortestPathTree shortestPathTree, LimitType limitType, double limit) {
+        switch (limitType) {
+            case WEIGHT:
+                shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 200));
+                return l -> l.weight;
+            case DISTANCE:
+                shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
+                return l -> l.distance;
+            default:
+                shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
+                return l -> l.time;
+        }
+    }
+
+    /**
+     * Builds one isochrone per bucket. If mainComponentPoint is null all polygons are returned, otherwise only the
+     * outer ring of the polygon that contains this point.
+     */
+    static List<Geometry> buildIsochrones(Triangulator.Result result, double limit, int buckets, GHPoint mainComponentPoint) {
+        ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
+        List<Geometry> isochrones = new ArrayList<>(buckets);
+        double delta = limit / buckets;
+        for (int i = 0; i < buckets; i++) {
+            double z = (i + 1) * delta;
+            logger.info("Building contour z={}", z);
+            MultiPolygon isochrone = contourBuilder.computeIsoline(z, result.seedEdges);
+            if (mainComponentPoint == null) {
+                isochrones.add(isochrone);
+            } else {
+                Polygon maxPolygon = heuristicallyFindMainConnectedComponent(isochrone, isochrone.getFactory().createPoint(new Coordinate(mainComponentPoint.lon, mainComponentPoint.lat)));
+                isochrones.add(isochrone.getFactory().createPolygon(((LinearRing) maxPolygon.getExteriorRing())));
+            }
+        }
+        return isochrones;
+    }
+
+    private static Polygon heuristicallyFindMainConnectedComponent(MultiPolygon multiPolygon, Point point) {
         int maxPoints = 0;
         Polygon maxPolygon = null;
         for (int j = 0; j < multiPolygon.getNumGeometries(); j++) {
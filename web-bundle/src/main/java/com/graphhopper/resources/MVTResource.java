@@ -1,6 +1,8 @@
 package com.graphhopper.resources;
 
 import com.graphhopper.GraphHopper;
+import com.graphhopper.http.MVTEncoder;
+import com.graphhopper.http.MVTTileCache;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.search.KVStorage;
@@ -11,12 +13,6 @@ import com.graphhopper.util.FetchMode;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.BBox;
-import no.ecc.vectortile.VectorTileEncoder;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
-import org.locationtech.jts.geom.util.AffineTransformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,7 +20,9 @@ import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.util.LinkedHashMap;
@@ -36,13 +34,11 @@ public class MVTResource {
 
     private static final Logger logger = LoggerFactory.getLogger(MVTResource.class);
     private static final MediaType PBF = new MediaType("application", "x-protobuf");
-    private final GraphHopper graphHopper;
-    private final EncodingManager encodingManager;
+    private final MVTTileCache tileCache;
 
     @Inject
-    public MVTResource(GraphHopper graphHopper, EncodingManager encodingManager) {
-        this.graphHopper = graphHopper;
-        this.encodingManager = encodingManager;
+    public MVTResource(MVTTileCache tileCache) {
+        this.tileCache = tileCache;
     }
 
     @GET
@@ -51,113 +47,98 @@ public class MVTResource {
     public Response doGetXyz(
             @Context HttpServletRequest httpReq,
             @Context UriInfo uriInfo,
+            @Context Request request,
             @PathParam("z") int zInfo,
             @PathParam("x") int xInfo,
             @PathParam("y") int yInfo,
             @QueryParam("render_all") @DefaultValue("false") Boolean renderAll) {
 
-        if (zInfo <= 9) {
-            byte[] bytes = new VectorTileEncoder().encode();
-            return Response.fromResponse(Response.ok(bytes, PBF).build())
-                    .header("X-GH-Took", "0")
-                    .build();
-        }
-
         StopWatch totalSW = new StopWatch().start();
-        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
-        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
-        LocationIndexTree locationIndex = (LocationIndexTree) graphHopper.getLocationIndex();
-        final NodeAccess na = graphHopper.getBaseGraph().getNodeAccess();
-        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
+        EntityTag eTag = new EntityTag(tileCache.getETag(zInfo, xInfo, yInfo, renderAll));
+        // the browser already has the current tile
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+        if (notModified != null)
+            return notModified.header("X-GH-Took", "0").build();
+
+        byte[] bytes = tileCache.get(zInfo, xInfo, yInfo, renderAll);
+        totalSW.stop();
+        return Response.ok(bytes, PBF).tag(eTag).header("X-GH-Took", "" + totalSW.getSeconds() * 1000)
+                .build();
+    }
+
+    /**
+     * Creates the vector tile with the road network for the given tile coordinates.
+     */
+    public static byte[] createTile(GraphHopper graphHopper, int zInfo, int xInfo, int yInfo, boolean renderAll) {
+        BBox bbox = MVTEncoder.getTileBounds(zInfo, xInfo, yInfo);
         if (!bbox.isValid())
             throw new IllegalStateException("Invalid bbox " + bbox);
+        MVTEncoder mvtEncoder = new MVTEncoder(bbox);
+        if (zInfo <= 9)
+            return mvtEncoder.encode();
 
-        final GeometryFactory geometryFactory = new GeometryFactory();
+        StopWatch totalSW = new StopWatch().start();
+        EncodingManager encodingManager = graphHopper.getEncodingManager();
+        LocationIndexTree locationIndex = (LocationIndexTree) graphHopper.getLocationIndex();
+        final NodeAccess na = graphHopper.getBaseGraph().getNodeAccess();
         if (!encodingManager.hasEncodedValue(RoadClass.KEY))
             throw new IllegalStateException("You need to configure GraphHopper to store road_class, e.g. graph.encoded_values: road_class,max_speed,... ");
 
         final EnumEncodedValue<RoadClass> roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
         final AtomicInteger edgeCounter = new AtomicInteger(0);
-
-        // 256x256 pixels per MVT. here we transform from the global coordinate system to the local one of the tile.
-        AffineTransformation affineTransformation = new AffineTransformation();
-        affineTransformation.translate(-nw.x, -se.y);
-        affineTransformation.scale(
-                256.0 / (se.x - nw.x),
-                -256.0 / (nw.y - se.y)
-        );
-        affineTransformation.translate(0, 256);
-
-        // if performance of the vector tile encoding becomes an issue it might be worth to get rid of the simplification
-        // and clipping in the no.ecc code? https://github.com/graphhopper/graphhopper/commit/0f96c2deddb24efa97109e35e0c05f1c91221f59#r90830001
-        VectorTileEncoder vectorTileEncoder = new VectorTileEncoder();
+        // reused for all edges, MVTEncoder projects the points directly into the tile
+        final PointList pointList = new PointList(10, false);
         locationIndex.query(bbox, edgeId -> {
             EdgeIteratorState edge = graphHopper.getBaseGraph().getEdgeIteratorStateForKey(edgeId * 2);
-            LineString lineString;
+            pointList.clear();
             if (renderAll) {
-                PointList pl = edge.fetchWayGeometry(FetchMode.ALL);
-                lineString = pl.toLineString(false);
+                edge.appendWayGeometry(FetchMode.ALL, pointList);
             } else {
                 RoadClass rc = edge.get(roadClassEnc);
                 if (zInfo >= 14) {
-                    PointList pl = edge.fetchWayGeometry(FetchMode.ALL);
-                    lineString = pl.toLineString(false);
+                    edge.appendWayGeometry(FetchMode.ALL, pointList);
                 } else if (rc == RoadClass.MOTORWAY
                         || zInfo > 10 && (rc == RoadClass.PRIMARY || rc == RoadClass.TRUNK)
                         || zInfo > 11 && (rc == RoadClass.SECONDARY)
                         || zInfo > 12) {
-                    double lat = na.getLat(edge.getBaseNode());
-                    double lon = na.getLon(edge.getBaseNode());
-                    double toLat = na.getLat(edge.getAdjNode());
-                    double toLon = na.getLon(edge.getAdjNode());
-                    lineString = geometryFactory.createLineString(new Coordinate[]{new Coordinate(lon, lat), new Coordinate(toLon, toLat)});
+                    pointList.add(na.getLat(edge.getBaseNode()), na.getLon(edge.getBaseNode()));
+                    pointList.add(na.getLat(edge.getAdjNode()), na.getLon(edge.getAdjNode()));
                 } else {
                     // skip edge for certain zoom
                     return;
                 }
             }
 
-            edgeCounter.incrementAndGet();
-            Map<String, Object> map = new LinkedHashMap<>();
-            for (Map.Entry<String, KVStorage.KValue> e : edge.getKeyValues().entrySet()) {
-                map.put(e.getKey(), e.getValue().toString());
-            }
-            map.put("edge_id", edge.getEdge());
-            map.put("edge_key", edge.getEdgeKey());
-            map.put("base_node", edge.getBaseNode());
-            map.put("adj_node", edge.getAdjNode());
-            map.put("distance", edge.getDistance());
-            encodingManager.getEncodedValues().forEach(ev -> {
-                if (ev instanceof EnumEncodedValue)
-                    map.put(ev.getName(), edge.get((EnumEncodedValue) ev).toString() + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((EnumEncodedValue) ev).toString() : ""));
-                else if (ev instanceof DecimalEncodedValue)
-                    map.put(ev.getName(), edge.get((DecimalEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((DecimalEncodedValue) ev) : ""));
-                else if (ev instanceof BooleanEncodedValue)
-                    map.put(ev.getName(), edge.get((BooleanEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((BooleanEncodedValue) ev) : ""));
-                else if (ev instanceof IntEncodedValue)
-                    map.put(ev.getName(), edge.get((IntEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((IntEncodedValue) ev) : ""));
-            });
-            lineString.setUserData(map);
-
-            Geometry g = affineTransformation.transform(lineString);
-            vectorTileEncoder.addFeature("roads", map, g, edge.getEdge());
+            if (mvtEncoder.addLineString("roads", pointList, edge.getEdge(), () -> createProperties(edge, encodingManager)))
+                edgeCounter.incrementAndGet();
         });
 
-
-        byte[] bytes = vectorTileEncoder.encode();
+        byte[] bytes = mvtEncoder.encode();
         totalSW.stop();
         logger.debug("took: " + totalSW.getMillis() + "ms, edges:" + edgeCounter.get());
-        return Response.ok(bytes, PBF).header("X-GH-Took", "" + totalSW.getSeconds() * 1000)
-                .build();
+        return bytes;
     }
 
-    Coordinate num2deg(int xInfo, int yInfo, int zoom) {
-        // inverse web mercator projection
-        double n = Math.pow(2, zoom);
-        double lonDeg = xInfo / n * 360.0 - 180.0;
-        // unfortunately latitude numbers goes from north to south
-        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
-        double latDeg = Math.toDegrees(latRad);
-        return new Coordinate(lonDeg, latDeg);
+    private static Map<String, Object> createProperties(EdgeIteratorState edge, EncodingManager encodingManager) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, KVStorage.KValue> e : edge.getKeyValues().entrySet()) {
+            map.put(e.getKey(), e.getValue().toString());
+        }
+        map.put("edge_id", edge.getEdge());
+        map.put("edge_key", edge.getEdgeKey());
+        map.put("base_node", edge.getBaseNode());
+        map.put("adj_node", edge.getAdjNode());
+        map.put("distance", edge.getDistance());
+        encodingManager.getEncodedValues().forEach(ev -> {
+            if (ev instanceof EnumEncodedValue)
+                map.put(ev.getName(), edge.get((EnumEncodedValue) ev).toString() + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((EnumEncodedValue) ev).toString() : ""));
+            else if (ev instanceof DecimalEncodedValue)
+                map.put(ev.getName(), edge.get((DecimalEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((DecimalEncodedValue) ev) : ""));
+            else if (ev instanceof BooleanEncodedValue)
+                map.put(ev.getName(), edge.get((BooleanEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((BooleanEncodedValue) ev) : ""));
+            else if (ev instanceof IntEncodedValue)
+                map.put(ev.getName(), edge.get((IntEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((IntEncodedValue) ev) : ""));
+        });
+        return map;
     }
 }
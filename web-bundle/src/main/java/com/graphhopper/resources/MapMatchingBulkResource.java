@@ -0,0 +1,164 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.Gpx;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.matching.MapMatching;
+import com.graphhopper.matching.MatchResult;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
+import static com.graphhopper.util.Parameters.Routing.*;
+
+/**
+ * Matches all tracks of a GPX document with one request. The tracks are matched in parallel on the worker pool that
+ * is configured via map_matching.threads and the results are returned in the order of the tracks. A track that cannot
+ * be matched does not fail the entire request, instead its result only contains the error message.
+ */
+@javax.ws.rs.Path("match/bulk")
+public class MapMatchingBulkResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MapMatchingBulkResource.class);
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final TranslationMap trMap;
+    private final MapMatchingResource.MapMatchingRouterFactory mapMatchingRouterFactory;
+    private final ExecutorService executorService;
+    private final int maxTracks;
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+    private final String osmDate;
+
+    @Inject
+    public MapMatchingBulkResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap,
+                                   MapMatchingResource.MapMatchingRouterFactory mapMatchingRouterFactory,
+                                   @Named("mapMatchingExecutor") ExecutorService executorService) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.trMap = trMap;
+        this.mapMatchingRouterFactory = mapMatchingRouterFactory;
+        this.executorService = executorService;
+        this.maxTracks = config.getInt("map_matching.bulk_max_tracks", 100);
+        this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
+    }
+
+    @POST
+    @Consumes({MediaType.APPLICATION_XML, "application/gpx+xml"})
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response match(
+            @NotNull Gpx gpx,
+            @Context UriInfo uriInfo,
+            @QueryParam(WAY_POINT_MAX_DISTANCE) @DefaultValue("0.5") double minPathPrecision,
+            @QueryParam(INSTRUCTIONS) @DefaultValue("true") boolean instructions,
+            @QueryParam(CALC_POINTS) @DefaultValue("true") boolean calcPoints,
+            @QueryParam("elevation") @DefaultValue("false") boolean enableElevation,
+            @QueryParam("points_encoded") @DefaultValue("true") boolean pointsEncoded,
+            @QueryParam("points_encoded_multiplier") @DefaultValue("1e5") double pointsEncodedMultiplier,
+            @QueryParam("locale") @DefaultValue("en") String localeStr,
+            @QueryParam("profile") String profile,
+            @QueryParam(PATH_DETAILS) List<String> pathDetails,
+            @QueryParam("traversal_keys") @DefaultValue("false") boolean enableTraversalKeys,
+            @QueryParam("gps_accuracy") @DefaultValue("10") double gpsAccuracy) {
+        if (gpx.trk.isEmpty())
+            throw new IllegalArgumentException("No tracks found in GPX document. Are you using waypoints or routes instead?");
+        if (gpx.trk.size() > maxTracks)
+            throw new IllegalArgumentException("Too many tracks (" + gpx.trk.size() + "), the maximum is " + maxTracks);
+
+        StopWatch sw = new StopWatch().start();
+        PMap hints = MapMatchingResource.createHints(profileResolver, uriInfo, profile);
+        Translation tr = trMap.getWithFallBack(Helper.getLocale(localeStr));
+
+        // Every track is matched by a single thread. We do not use the executor for the transitions of the tracks
+        // like the /match endpoint, because the tasks would then wait for other tasks of the same executor.
+        List<Future<ObjectNode>> futures = new ArrayList<>(gpx.trk.size());
+        for (Gpx.Trk trk : gpx.trk) {
+            futures.add(executorService.submit(() -> {
+                StopWatch trackSW = new StopWatch().start();
+                try {
+                    MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(),
+                            mapMatchingRouterFactory.createMapMatchingRouter(hints));
+                    matching.setMeasurementErrorSigma(gpsAccuracy);
+                    List<Observation> measurements = GpxConversions.getEntries(trk);
+                    MatchResult matchResult = matching.match(measurements);
+                    GHResponse rsp = new GHResponse();
+                    rsp.add(MapMatchingResource.createResponsePath(graphHopper, matchResult, tr, minPathPrecision, instructions, pathDetails));
+                    ObjectNode json = ResponsePathSerializer.jsonObject(rsp, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(trackSW.stop().getMillisDouble()), osmDate),
+                            instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier);
+                    MapMatchingResource.putMatchStatistics(json, matchResult, enableTraversalKeys);
+                    return json;
+                } catch (IllegalArgumentException ex) {
+                    return objectMapper.createObjectNode().put("message", ex.getMessage());
+                }
+            }));
+        }
+
+        ObjectNode result = objectMapper.createObjectNode();
+        ArrayNode results = result.putArray("results");
+        try {
+            for (Future<ObjectNode> future : futures)
+                results.add(future.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+        sw.stop();
+        logger.info(objectMapper.createObjectNode()
+                .put("duration", sw.getNanos())
+                .put("profile", hints.getString("profile", ""))
+                .put("tracks", gpx.trk.size()).toString());
+        return Response.ok(result).
+                header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
+                build();
+    }
+}
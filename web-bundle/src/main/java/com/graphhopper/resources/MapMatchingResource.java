@@ -38,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
@@ -45,6 +46,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
@@ -69,16 +71,19 @@ public class MapMatchingResource {
     private final ProfileResolver profileResolver;
     private final TranslationMap trMap;
     private final MapMatchingRouterFactory mapMatchingRouterFactory;
+    private final ExecutorService executorService;
     private final ObjectMapper objectMapper = Jackson.newObjectMapper();
     private final String osmDate;
 
     @Inject
-    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory) {
+    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap,
+                               MapMatchingRouterFactory mapMatchingRouterFactory, @Named("mapMatchingExecutor") ExecutorService executorService) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.trMap = trMap;
         this.mapMatchingRouterFactory = mapMatchingRouterFactory;
+        this.executorService = executorService;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
     }
 
@@ -114,20 +119,13 @@ public class MapMatchingResource {
 
         StopWatch sw = new StopWatch().start();
 
-        PMap hints = new PMap();
-        RouteResource.initHints(hints, uriInfo.getQueryParameters());
-
-        // resolve profile and remove legacy vehicle/weighting parameters
-        // we need to explicitly disable CH here because map matching does not use it
-        PMap profileResolverHints = new PMap(hints);
-        profileResolverHints.putObject("profile", profile);
-        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
-        profile = profileResolver.resolveProfile(profileResolverHints);
-        hints.putObject("profile", profile);
-        removeLegacyParameters(hints);
+        PMap hints = createHints(profileResolver, uriInfo, profile);
+        profile = hints.getString("profile", "");
 
         MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
         matching.setMeasurementErrorSigma(gpsAccuracy);
+        // the transitions of a single track are calculated in parallel to reduce the latency
+        matching.setExecutor(executorService);
 
         List<Observation> measurements = GpxConversions.getEntries(gpx.trk.get(0));
         MatchResult matchResult = matching.match(measurements);
@@ -145,20 +143,8 @@ public class MapMatchingResource {
                     build();
         } else {
             Translation tr = trMap.getWithFallBack(Helper.getLocale(localeStr));
-            RamerDouglasPeucker simplifyAlgo = new RamerDouglasPeucker().setMaxDistance(minPathPrecision);
-            PathMerger pathMerger = new PathMerger(matchResult.getGraph(), matchResult.getWeighting()).
-                    setEnableInstructions(instructions).
-                    setPathDetailsBuilders(graphHopper.getPathDetailsBuilderFactory(), pathDetails).
-                    setRamerDouglasPeucker(simplifyAlgo).
-                    setSimplifyResponse(minPathPrecision > 0);
-            ResponsePath responsePath = pathMerger.doWork(PointList.EMPTY, Collections.singletonList(matchResult.getMergedPath()),
-                    graphHopper.getEncodingManager(), tr);
-
-            // GraphHopper thinks an empty path is an invalid path, and further that an invalid path is still a path but
-            // marked with a non-empty list of Exception objects. I disagree, so I clear it.
-            responsePath.getErrors().clear();
             GHResponse rsp = new GHResponse();
-            rsp.add(responsePath);
+            rsp.add(createResponsePath(graphHopper, matchResult, tr, minPathPrecision, instructions, pathDetails));
 
             if (writeGPX) {
                 long time = gpx.trk.get(0).getStartTime()
@@ -171,21 +157,7 @@ public class MapMatchingResource {
                 ObjectNode map = ResponsePathSerializer.jsonObject(rsp, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getMillisDouble()), osmDate), instructions,
                         calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier);
 
-                Map<String, Object> matchStatistics = new HashMap<>();
-                matchStatistics.put("distance", matchResult.getMatchLength());
-                matchStatistics.put("time", matchResult.getMatchMillis());
-                matchStatistics.put("original_distance", matchResult.getGpxEntriesLength());
-                map.putPOJO("map_matching", matchStatistics);
-
-                if (enableTraversalKeys) {
-                    List<Integer> traversalKeylist = new ArrayList<>();
-                    for (EdgeMatch em : matchResult.getEdgeMatches()) {
-                        EdgeIteratorState edge = em.getEdgeState();
-                        // encode edges as traversal keys which includes orientation, decode simply by multiplying with 0.5
-                        traversalKeylist.add(edge.getEdgeKey());
-                    }
-                    map.putPOJO("traversal_keys", traversalKeylist);
-                }
+                putMatchStatistics(map, matchResult, enableTraversalKeys);
                 return Response.ok(map).
                         header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                         build();
@@ -193,6 +165,56 @@ public class MapMatchingResource {
         }
     }
 
+    /**
+     * Resolves the profile and removes the legacy vehicle/weighting parameters from the query parameters
+     */
+    static PMap createHints(ProfileResolver profileResolver, UriInfo uriInfo, String profile) {
+        PMap hints = new PMap();
+        RouteResource.initHints(hints, uriInfo.getQueryParameters());
+        // we need to explicitly disable CH here because map matching does not use it
+        PMap profileResolverHints = new PMap(hints);
+        profileResolverHints.putObject("profile", profile);
+        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
+        hints.putObject("profile", profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(hints);
+        return hints;
+    }
+
+    static ResponsePath createResponsePath(GraphHopper graphHopper, MatchResult matchResult, Translation tr, double minPathPrecision,
+                                           boolean instructions, List<String> pathDetails) {
+        RamerDouglasPeucker simplifyAlgo = new RamerDouglasPeucker().setMaxDistance(minPathPrecision);
+        PathMerger pathMerger = new PathMerger(matchResult.getGraph(), matchResult.getWeighting()).
+                setEnableInstructions(instructions).
+                setPathDetailsBuilders(graphHopper.getPathDetailsBuilderFactory(), pathDetails).
+                setRamerDouglasPeucker(simplifyAlgo).
+                setSimplifyResponse(minPathPrecision > 0);
+        ResponsePath responsePath = pathMerger.doWork(PointList.EMPTY, Collections.singletonList(matchResult.getMergedPath()),
+                graphHopper.getEncodingManager(), tr);
+
+        // GraphHopper thinks an empty path is an invalid path, and further that an invalid path is still a path but
+        // marked with a non-empty list of Exception objects. I disagree, so I clear it.
+        responsePath.getErrors().clear();
+        return responsePath;
+    }
+
+    static void putMatchStatistics(ObjectNode map, MatchResult matchResult, boolean enableTraversalKeys) {
+        Map<String, Object> matchStatistics = new HashMap<>();
+        matchStatistics.put("distance", matchResult.getMatchLength());
+        matchStatistics.put("time", matchResult.getMatchMillis());
+        matchStatistics.put("original_distance", matchResult.getGpxEntriesLength());
+        map.putPOJO("map_matching", matchStatistics);
+
+        if (enableTraversalKeys) {
+            List<Integer> traversalKeylist = new ArrayList<>();
+            for (EdgeMatch em : matchResult.getEdgeMatches()) {
+                EdgeIteratorState edge = em.getEdgeState();
+                // encode edges as traversal keys which includes orientation, decode simply by multiplying with 0.5
+                traversalKeylist.add(edge.getEdgeKey());
+            }
+            map.putPOJO("traversal_keys", traversalKeylist);
+        }
+    }
+
     public static JsonNode convertToTree(MatchResult result, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
         ObjectNode root = JsonNodeFactory.instance.objectNode();
         ObjectNode diary = root.putObject("diary");
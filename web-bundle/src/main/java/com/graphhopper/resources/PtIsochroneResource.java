@@ -21,6 +21,7 @@ package com.graphhopper.resources;
 import com.conveyal.gtfs.model.Stop;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gtfs.*;
+import com.graphhopper.http.DurationParam;
 import com.graphhopper.http.GHLocationParam;
 import com.graphhopper.http.OffsetDateTimeParam;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
@@ -53,6 +54,7 @@ import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 
@@ -68,6 +70,7 @@ public class PtIsochroneResource {
     private final EncodingManager encodingManager;
     private final BaseGraph baseGraph;
     private final LocationIndex locationIndex;
+    private final long maxProfileDuration;
 
     @Inject
     public PtIsochroneResource(GraphHopperConfig config, GtfsStorage gtfsStorage, EncodingManager encodingManager, BaseGraph baseGraph, LocationIndex locationIndex) {
@@ -76,6 +79,8 @@ public class PtIsochroneResource {
         this.encodingManager = encodingManager;
         this.baseGraph = baseGraph;
         this.locationIndex = locationIndex;
+        // like the default maximum profile duration of /route-pt
+        this.maxProfileDuration = Duration.ofSeconds(config.getLong("isochrone.pt_max_profile_duration_seconds", Duration.ofDays(1).toSeconds())).toMillis();
     }
 
     public static class Response {
@@ -94,10 +99,20 @@ public class PtIsochroneResource {
             @QueryParam("time_limit") @DefaultValue("600") long seconds,
             @QueryParam("reverse_flow") @DefaultValue("false") boolean reverseFlow,
             @QueryParam("pt.earliest_departure_time") @NotNull OffsetDateTimeParam departureTimeParam,
+            @QueryParam("pt.profile_duration") DurationParam profileDurationParam,
             @QueryParam("pt.blocked_route_types") @DefaultValue("0") int blockedRouteTypes,
             @QueryParam("result") @DefaultValue("multipolygon") String format) {
         Instant initialTime = departureTimeParam.get().toInstant();
         GHLocation location = sourceParam.get();
+        // With a profile duration, a point is inside if it can be reached within the time limit for any departure
+        // between the earliest departure time and the end of the profile (or any arrival in the profile before the
+        // given time, with reverse_flow). One profile search finds the journeys of all these departures, so every
+        // node gets the shortest travel time over the whole time range.
+        long profileDuration = profileDurationParam != null ? profileDurationParam.get().toMillis() : 0;
+        if (profileDuration < 0)
+            throw new IllegalArgumentException("pt.profile_duration must not be negative");
+        if (profileDuration > maxProfileDuration)
+            throw new IllegalArgumentException("pt.profile_duration must not be longer than " + Duration.ofMillis(maxProfileDuration));
 
         double targetZ = seconds * 1000;
 
@@ -108,26 +123,38 @@ public class PtIsochroneResource {
         final Weighting weighting = CustomModelParser.createWeighting(encodingManager, TurnCostProvider.NO_TURN_COST_PROVIDER, customModel);
         DefaultSnapFilter snapFilter = new DefaultSnapFilter(weighting, encodingManager.getBooleanEncodedValue(Subnetwork.key("foot")));
 
-        PtLocationSnapper.Result snapResult = new PtLocationSnapper(baseGraph, locationIndex, gtfsStorage).snapAll(Arrays.asList(location), Arrays.asList(snapFilter));
-        GraphExplorer graphExplorer = new GraphExplorer(snapResult.queryGraph, gtfsStorage.getPtGraph(), weighting, gtfsStorage, RealtimeFeed.empty(), reverseFlow, false, false, 5.0, reverseFlow, blockedRouteTypes);
-        MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, reverseFlow, false, false, 0, Collections.emptyList());
-
+        // the transit data must stay open while it is searched, it can be replaced by a reload of the schedule
+        if (!gtfsStorage.retain())
+            throw new IllegalStateException("The GTFS data has been replaced while the request was waiting. Please try again.");
+        PtLocationSnapper.Result snapResult;
+        NodeAccess nodeAccess;
         Map<Coordinate, Double> z1 = new HashMap<>();
-        NodeAccess nodeAccess = snapResult.queryGraph.getNodeAccess();
+        try {
+            snapResult = new PtLocationSnapper(baseGraph, locationIndex, gtfsStorage).snapAll(Arrays.asList(location), Arrays.asList(snapFilter));
+            GraphExplorer graphExplorer = new GraphExplorer(snapResult.queryGraph, gtfsStorage.getPtGraph(), weighting, gtfsStorage, RealtimeFeed.empty(), reverseFlow, false, false, 5.0, reverseFlow, blockedRouteTypes);
+            MultiCriteriaLabelSetting router = new MultiCriteriaLabelSetting(graphExplorer, reverseFlow, false, profileDuration > 0, profileDuration, Collections.emptyList());
+            nodeAccess = snapResult.queryGraph.getNodeAccess();
 
-        for (Label label : router.calcLabels(snapResult.nodes.get(0), initialTime)) {
-            if (!((label.currentTime - initialTime.toEpochMilli()) * (reverseFlow ? -1 : 1) <= targetZ)) {
-                break;
-            }
-            if (label.node.streetNode != -1) {
-                Coordinate nodeCoordinate = new Coordinate(nodeAccess.getLon(label.node.streetNode), nodeAccess.getLat(label.node.streetNode));
-                z1.merge(nodeCoordinate, (double) (label.currentTime - initialTime.toEpochMilli()) * (reverseFlow ? -1 : 1), Math::min);
-            } else if (label.edge != null && (label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT || label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT)) {
-                GtfsStorage.PlatformDescriptor platformDescriptor = label.edge.getPlatformDescriptor();
-                Stop stop = gtfsStorage.getGtfsFeeds().get(platformDescriptor.feed_id).stops.get(platformDescriptor.stop_id);
-                Coordinate nodeCoordinate = new Coordinate(stop.stop_lon, stop.stop_lat);
-                z1.merge(nodeCoordinate, (double) (label.currentTime - initialTime.toEpochMilli()) * (reverseFlow ? -1 : 1), Math::min);
+            for (Label label : router.calcLabels(snapResult.nodes.get(0), initialTime)) {
+                if (!((label.currentTime - initialTime.toEpochMilli()) * (reverseFlow ? -1 : 1) <= targetZ + profileDuration)) {
+                    break;
+                }
+                double travelTime = travelTime(label, initialTime.toEpochMilli(), profileDuration, reverseFlow);
+                if (travelTime > targetZ) {
+                    continue;
+                }
+                if (label.node.streetNode != -1) {
+                    Coordinate nodeCoordinate = new Coordinate(nodeAccess.getLon(label.node.streetNode), nodeAccess.getLat(label.node.streetNode));
+                    z1.merge(nodeCoordinate, travelTime, Math::min);
+                } else if (label.edge != null && (label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT || label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT)) {
+                    GtfsStorage.PlatformDescriptor platformDescriptor = label.edge.getPlatformDescriptor();
+                    Stop stop = gtfsStorage.getGtfsFeeds().get(platformDescriptor.feed_id).stops.get(platformDescriptor.stop_id);
+                    Coordinate nodeCoordinate = new Coordinate(stop.stop_lon, stop.stop_lat);
+                    z1.merge(nodeCoordinate, travelTime, Math::min);
+                }
             }
+        } finally {
+            gtfsStorage.release();
         }
 
         if (format.equals("multipoint")) {
@@ -208,6 +235,18 @@ public class PtIsochroneResource {
 
     }
 
+    /**
+     * The travel time of a label if one leaves as late as possible, but not after the end of the profile. A label
+     * without a departure has only walked, so it takes the same time for every departure.
+     */
+    private static double travelTime(Label label, long initialTime, long profileDuration, boolean reverseFlow) {
+        int direction = reverseFlow ? -1 : 1;
+        long departureTime = initialTime;
+        if (label.departureTime != null)
+            departureTime = (label.departureTime - initialTime) * direction > profileDuration ? initialTime + direction * profileDuration : label.departureTime;
+        return (double) (label.currentTime - departureTime) * direction;
+    }
+
     private Response wrap(Geometry isoline) {
         JsonFeature feature = new JsonFeature();
         feature.setGeometry(isoline);
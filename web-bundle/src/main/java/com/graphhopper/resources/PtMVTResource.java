@@ -5,12 +5,10 @@ import com.google.protobuf.ByteString;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.gtfs.GtfsStorage;
 import com.graphhopper.gtfs.PtGraph;
+import com.graphhopper.http.MVTEncoder;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.shapes.BBox;
-import no.ecc.vectortile.VectorTileEncoder;
-import org.locationtech.jts.geom.*;
-import org.locationtech.jts.geom.util.AffineTransformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +36,6 @@ public class PtMVTResource {
     private final GraphHopper graphHopper;
     private final GtfsStorage gtfsStorage;
     private final Map<ByteString, MatchResult> openLRCache = new ConcurrentHashMap<>();
-    private final GeometryFactory geometryFactory = new GeometryFactory();
 
     @Inject
     public PtMVTResource(GraphHopper graphHopper, GtfsStorage gtfsStorage) throws IOException {
@@ -57,45 +54,29 @@ public class PtMVTResource {
             @PathParam("y") int yInfo,
             @QueryParam(Parameters.Details.PATH_DETAILS) List<String> pathDetails) {
 
-        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
-        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
-        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
+        BBox bbox = MVTEncoder.getTileBounds(zInfo, xInfo, yInfo);
         if (!bbox.isValid())
             throw new IllegalStateException("Invalid bbox " + bbox);
 
-        VectorTileEncoder vectorTileEncoder = new VectorTileEncoder();
-        // 256x256 pixels per MVT. here we transform from the global coordinate system to the local one of the tile.
-        AffineTransformation affineTransformation = new AffineTransformation();
-        affineTransformation.translate(-nw.x, -se.y);
-        affineTransformation.scale(
-                256.0 / (se.x - nw.x),
-                -256.0 / (nw.y - se.y)
-        );
-        affineTransformation.translate(0, 256);
-        gtfsStorage.getStopIndex().query(bbox, edgeId -> {
-            for (PtGraph.PtEdge ptEdge : gtfsStorage.getPtGraph().backEdgesAround(edgeId)) {
-                if (ptEdge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
-                    GtfsStorage.PlatformDescriptor fromPlatformDescriptor = ptEdge.getAttrs().platformDescriptor;
-                    Stop stop = gtfsStorage.getGtfsFeeds().get(fromPlatformDescriptor.feed_id).stops.get(fromPlatformDescriptor.stop_id);
-                    Map<String, Object> properties = new HashMap<>(2);
-                    properties.put("feed_id", fromPlatformDescriptor.feed_id);
-                    properties.put("stop_id", fromPlatformDescriptor.stop_id);
-                    Point feature = geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat));
-                    feature.setUserData(properties);
-                    Geometry g = affineTransformation.transform(feature);
-                    vectorTileEncoder.addFeature("stops", properties, g);
+        MVTEncoder mvtEncoder = new MVTEncoder(bbox);
+        if (!gtfsStorage.retain())
+            throw new IllegalStateException("The GTFS data has been replaced while the request was waiting. Please try again.");
+        try {
+            gtfsStorage.getStopIndex().query(bbox, edgeId -> {
+                for (PtGraph.PtEdge ptEdge : gtfsStorage.getPtGraph().backEdgesAround(edgeId)) {
+                    if (ptEdge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
+                        GtfsStorage.PlatformDescriptor fromPlatformDescriptor = ptEdge.getAttrs().platformDescriptor;
+                        Stop stop = gtfsStorage.getGtfsFeeds().get(fromPlatformDescriptor.feed_id).stops.get(fromPlatformDescriptor.stop_id);
+                        Map<String, Object> properties = new HashMap<>(2);
+                        properties.put("feed_id", fromPlatformDescriptor.feed_id);
+                        properties.put("stop_id", fromPlatformDescriptor.stop_id);
+                        mvtEncoder.addPoint("stops", stop.stop_lat, stop.stop_lon, -1, properties);
+                    }
                 }
-            }
-        });
-        return Response.ok(vectorTileEncoder.encode(), PBF).build();
-    }
-
-    Coordinate num2deg(int xInfo, int yInfo, int zoom) {
-        double n = Math.pow(2, zoom);
-        double lonDeg = xInfo / n * 360.0 - 180.0;
-        // unfortunately latitude numbers goes from north to south
-        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
-        double latDeg = Math.toDegrees(latRad);
-        return new Coordinate(lonDeg, latDeg);
+            });
+        } finally {
+            gtfsStorage.release();
+        }
+        return Response.ok(mvtEncoder.encode(), PBF).build();
     }
 }
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import no.ecc.vectortile.VectorTileDecoder;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTEncoderTest {
+
+    // the tile covers 1 degree, i.e. 4096 tile units
+    private final BBox tile = new BBox(10, 11, 50, 51);
+
+    @Test
+    public void lineInsideTile() throws IOException {
+        MVTEncoder encoder = new MVTEncoder(tile);
+        PointList pl = new PointList();
+        pl.add(50.75, 10.25);
+        pl.add(50.5, 10.5);
+        pl.add(50.5, 10.75);
+        assertTrue(encoder.addLineString("roads", pl, 7, () -> Map.of("name", "main", "lanes", 2)));
+
+        List<VectorTileDecoder.Feature> features = decode(encoder);
+        assertEquals(1, features.size());
+        VectorTileDecoder.Feature feature = features.get(0);
+        assertEquals("roads", feature.getLayerName());
+        assertEquals(7, feature.getId());
+        assertEquals("main", feature.getAttributes().get("name"));
+        assertEquals(2L, feature.getAttributes().get("lanes"));
+        // the decoder scales the coordinates to 256 pixels
+        Coordinate[] coordinates = feature.getGeometry().getCoordinates();
+        assertEquals(3, coordinates.length);
+        assertEquals(new Coordinate(64, 64), coordinates[0]);
+        assertEquals(new Coordinate(128, 128), coordinates[1]);
+        assertEquals(new Coordinate(192, 128), coordinates[2]);
+    }
+
+    @Test
+    public void clipLine() throws IOException {
+        MVTEncoder encoder = new MVTEncoder(tile);
+        PointList pl = new PointList();
+        // leaves the tile on the west side and enters it again
+        pl.add(50.5, 10.5);
+        pl.add(50.5, 9);
+        pl.add(50.25, 9);
+        pl.add(50.25, 10.5);
+        assertTrue(encoder.addLineString("roads", pl, 1, Map::of));
+
+        Geometry geometry = decode(encoder).get(0).getGeometry();
+        assertEquals(2, geometry.getNumGeometries());
+        // the clip buffer is 8 pixels
+        assertArrayEquals(new Coordinate[]{new Coordinate(128, 128), new Coordinate(-8, 128)}, geometry.getGeometryN(0).getCoordinates());
+        assertArrayEquals(new Coordinate[]{new Coordinate(-8, 192), new Coordinate(128, 192)}, geometry.getGeometryN(1).getCoordinates());
+    }
+
+    @Test
+    public void skipOutsideFeatures() throws IOException {
+        MVTEncoder encoder = new MVTEncoder(tile);
+        PointList pl = new PointList();
+        pl.add(52, 10.5);
+        pl.add(52, 11.5);
+        assertFalse(encoder.addLineString("roads", pl, 1, () -> {
+            throw new AssertionError("attributes must not be created");
+        }));
+        assertFalse(encoder.addPoint("stops", 49, 10.5, 2, Map.of()));
+        assertTrue(encoder.addPoint("stops", 50.5, 10.5, -1, Map.of("stop_id", "a")));
+
+        List<VectorTileDecoder.Feature> features = decode(encoder);
+        assertEquals(1, features.size());
+        assertEquals("stops", features.get(0).getLayerName());
+        assertEquals(new Coordinate(128, 128), features.get(0).getGeometry().getCoordinate());
+    }
+
+    @Test
+    public void tileBounds() {
+        BBox bbox = MVTEncoder.getTileBounds(1, 1, 0);
+        assertEquals(0, bbox.minLon, 1e-9);
+        assertEquals(180, bbox.maxLon, 1e-9);
+        assertEquals(0, bbox.minLat, 1e-9);
+        assertEquals(85.0511, bbox.maxLat, 1e-4);
+    }
+
+    private static List<VectorTileDecoder.Feature> decode(MVTEncoder encoder) throws IOException {
+        return new VectorTileDecoder().decode(encoder.encode()).asList();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.StorableProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTTileCacheTest {
+
+    @TempDir
+    Path location;
+    private GraphHopper hopper;
+
+    @BeforeEach
+    public void setUp() {
+        BaseGraph graph = new BaseGraph.Builder(4).create();
+        graph.getNodeAccess().setNode(0, 43.70, 7.40);
+        graph.getNodeAccess().setNode(1, 43.75, 7.45);
+        StorableProperties properties = new StorableProperties(new RAMDirectory());
+        properties.put("datareader.import.date", "2024-01-01");
+        hopper = new GraphHopper() {
+            @Override
+            public BaseGraph getBaseGraph() {
+                return graph;
+            }
+
+            @Override
+            public StorableProperties getProperties() {
+                return properties;
+            }
+        }.setGraphHopperLocation(location.toString());
+    }
+
+    @Test
+    public void rejectInvalidTiles() {
+        MVTTileCache cache = new MVTTileCache(hopper, 1024 * 1024, false, 10, 2, 9);
+        assertThrows(IllegalArgumentException.class, () -> cache.get(1, 0, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(10, 0, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(2, -1, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(2, 4, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(2, 0, 4, false));
+        assertThrows(IllegalArgumentException.class, () -> cache.getETag(2, 0, -1, false));
+        assertNotNull(cache.get(2, 3, 3, false));
+    }
+
+    @Test
+    public void storeOnlyTilesOfTheGraphAndRemoveTheOldest() throws IOException {
+        MVTTileCache cache = new MVTTileCache(hopper, 1024 * 1024, true, 2, 0, 9);
+        // outside of the graph bounds
+        cache.get(9, 0, 0, false);
+        assertEquals(0, countTiles());
+
+        for (int z = 7; z <= 9; z++) {
+            cache.get(z, MVTTileCache.lonToTileX(7.42, z), MVTTileCache.latToTileY(43.72, z), false);
+        }
+        assertEquals(2, countTiles());
+        assertFalse(getFile(7).exists());
+        assertTrue(getFile(8).exists());
+        assertTrue(getFile(9).exists());
+
+        // the tiles on disk are found again after a restart, and the tiles of other graph versions are removed
+        File otherVersion = new File(location.toFile(), "mvt/other/9/0/0.mvt");
+        otherVersion.getParentFile().mkdirs();
+        Files.write(otherVersion.toPath(), new byte[1]);
+        cache = new MVTTileCache(hopper, 1024 * 1024, true, 2, 0, 9);
+        cache.get(6, MVTTileCache.lonToTileX(7.42, 6), MVTTileCache.latToTileY(43.72, 6), false);
+        assertFalse(new File(location.toFile(), "mvt/other").exists());
+        assertEquals(2, countTiles());
+        assertFalse(getFile(8).exists());
+        assertTrue(getFile(6).exists());
+    }
+
+    private File getFile(int z) {
+        File[] versions = new File(location.toFile(), "mvt").listFiles();
+        assertEquals(1, versions.length);
+        return new File(versions[0], z + "/" + MVTTileCache.lonToTileX(7.42, z) + "/" + MVTTileCache.latToTileY(43.72, z) + ".mvt");
+    }
+
+    private long countTiles() throws IOException {
+        Path dir = location.resolve("mvt");
+        if (!Files.exists(dir))
+            return 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(f -> f.toString().endsWith(".mvt")).count();
+        }
+    }
+}
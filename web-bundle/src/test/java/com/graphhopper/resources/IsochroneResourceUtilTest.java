@@ -18,11 +18,16 @@
 
 package com.graphhopper.resources;
 
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.PMap;
 import org.junit.jupiter.api.Test;
 import org.locationtech.jts.geom.Coordinate;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static com.graphhopper.resources.IsochroneResource.LimitType.DISTANCE;
+import static com.graphhopper.resources.IsochroneResource.LimitType.TIME;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class IsochroneResourceUtilTest {
 
@@ -50,4 +55,19 @@ public class IsochroneResourceUtilTest {
         assertEquals(sanFranciscoToLosAngelesInDegrees, sanFranciscoToLosAngelesInDegreesAccordingToTestee, sanFranciscoToLosAngelesInDegrees * 0.5);
     }
 
+    @Test
+    public void testUsePhast() {
+        PMap hints = new PMap();
+        // opt-in
+        assertFalse(IsochroneResource.usePhast(new GraphHopperConfig(), hints, false, TIME, 3600_000));
+
+        GraphHopperConfig config = new GraphHopperConfig().putObject("isochrone.phast_min_time_limit", 1800);
+        assertTrue(IsochroneResource.usePhast(config, hints, false, TIME, 3600_000));
+        assertFalse(IsochroneResource.usePhast(config, hints, false, TIME, 600_000));
+        assertFalse(IsochroneResource.usePhast(config, hints, true, TIME, 3600_000));
+        assertFalse(IsochroneResource.usePhast(config, hints, false, DISTANCE, 3600_000));
+        // the CH weighting would ignore these hints
+        assertFalse(IsochroneResource.usePhast(config, new PMap().putObject(CustomModel.KEY, new CustomModel()), false, TIME, 3600_000));
+        assertFalse(IsochroneResource.usePhast(config, new PMap().putObject("heading_penalty", 100), false, TIME, 3600_000));
+    }
 }
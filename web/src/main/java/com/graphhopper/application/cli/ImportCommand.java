@@ -20,6 +20,7 @@ package com.graphhopper.application.cli;
 
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.http.GraphHopperManaged;
+import com.graphhopper.http.MVTTileCache;
 import io.dropwizard.core.cli.ConfiguredCommand;
 import io.dropwizard.core.setup.Bootstrap;
 import net.sourceforge.argparse4j.inf.Namespace;
@@ -33,7 +34,14 @@ public class ImportCommand extends ConfiguredCommand<GraphHopperServerConfigurat
     @Override
     protected void run(Bootstrap<GraphHopperServerConfiguration> bootstrap, Namespace namespace, GraphHopperServerConfiguration configuration) {
         final GraphHopperManaged graphHopper = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
-        graphHopper.getGraphHopper().importAndClose();
+        if (configuration.getGraphHopperConfiguration().getBool("mvt.pregenerate", false)) {
+            graphHopper.getGraphHopper().importOrLoad();
+            new MVTTileCache(graphHopper.getGraphHopper(), configuration.getGraphHopperConfiguration())
+                    .pregenerate(MVTTileCache.PREGENERATE_MIN_ZOOM, MVTTileCache.PREGENERATE_MAX_ZOOM);
+            graphHopper.getGraphHopper().close();
+        } else {
+            graphHopper.getGraphHopper().importAndClose();
+        }
     }
 
 }
@@ -28,6 +28,7 @@ import com.graphhopper.matching.EdgeMatch;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.Observation;
+import com.graphhopper.matching.OnlineMapMatching;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
@@ -272,6 +273,45 @@ public class MapMatchingTest {
                 "Lessingstraße"), fetchStreets(mr.getEdgeMatches()));
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(FixtureProvider.class)
+    public void testOnlineMatching(PMap hints) throws IOException {
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/tour2-with-loop.gpx"), Gpx.class);
+        List<String> expected = Arrays.asList("Gustav-Adolf-Straße", "Leibnizstraße", "Hinrichsenstraße", "Tschaikowskistraße");
+        for (int maxLag : new int[]{1, 10}) {
+            OnlineMapMatching onlineMapMatching = OnlineMapMatching.fromGraphHopper(graphHopper, hints);
+            onlineMapMatching.setMeasurementErrorSigma(40);
+            onlineMapMatching.setMaxLag(maxLag);
+            List<EdgeMatch> edgeMatches = new ArrayList<>();
+            for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0))) {
+                edgeMatches.addAll(onlineMapMatching.add(observation));
+                assertNotNull(onlineMapMatching.getCurrentState());
+            }
+            if (maxLag == 1)
+                assertFalse(edgeMatches.isEmpty(), "edge matches must be returned before the end of the feed");
+            edgeMatches.addAll(onlineMapMatching.finish());
+            assertNull(onlineMapMatching.getCurrentState());
+            // fetchStreets also checks that the edges are connected
+            List<String> streets = fetchStreets(edgeMatches);
+            if (maxLag > 1)
+                assertEquals(expected, streets);
+        }
+
+        // without a lag limit the result is the same as for the whole track
+        MapMatching mapMatching = MapMatching.fromGraphHopper(graphHopper, hints);
+        mapMatching.setMeasurementErrorSigma(40);
+        MatchResult mr = mapMatching.match(GpxConversions.getEntries(gpx.trk.get(0)));
+        OnlineMapMatching onlineMapMatching = OnlineMapMatching.fromGraphHopper(graphHopper, hints);
+        onlineMapMatching.setMeasurementErrorSigma(40);
+        onlineMapMatching.setMaxLag(Integer.MAX_VALUE);
+        List<EdgeMatch> edgeMatches = new ArrayList<>();
+        for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0)))
+            edgeMatches.addAll(onlineMapMatching.add(observation));
+        edgeMatches.addAll(onlineMapMatching.finish());
+        assertEquals(mr.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList()),
+                edgeMatches.stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList()));
+    }
+
     /**
      * This test is to check that U-turns are avoided when it's just measurement
      * error, though do occur when a point goes up a road further than the
@@ -25,6 +25,7 @@ import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.BodyAndStatus;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.JsonFeature;
 import com.graphhopper.util.JsonFeatureCollection;
 import com.graphhopper.util.TurnCostsConfig;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
@@ -39,7 +40,9 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Polygon;
 
+import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
 import java.io.File;
 import java.util.Arrays;
 
@@ -356,4 +359,63 @@ public class IsochroneResourceTest {
         assertTrue(beforeLastPolygon.contains(geometryFactory.createPoint(new Coordinate(1.564136, 42.524938))));
         assertFalse(beforeLastPolygon.contains(geometryFactory.createPoint(new Coordinate(1.575551, 42.532528))));
     }
+
+    @Test
+    public void requestWithGridContour() {
+        JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car_no_turn_restrictions")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 5 * 60)
+                .queryParam("contour", "grid")
+                .queryParam("type", "geojson")
+                .request().get(JsonFeatureCollection.class);
+
+        assertEquals(1, featureCollection.getFeatures().size());
+        Geometry polygon = featureCollection.getFeatures().get(0).getGeometry();
+        assertTrue(polygon.contains(geometryFactory.createPoint(new Coordinate(1.573792, 42.531073))));
+        assertFalse(polygon.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
+    }
+
+    @Test
+    public void requestBatchPerSeed() {
+        String body = "{\"profile\": \"fast_car_no_turn_restrictions\", \"mode\": \"per_seed\", \"time_limit\": 300, \"buckets\": 2, " +
+                "\"points\": [[1.573792, 42.531073], [1.589756, 42.558012]]}";
+        JsonFeatureCollection collection = clientTarget(app, "/isochrone/batch").request().post(Entity.json(body), JsonFeatureCollection.class);
+        assertEquals(4, collection.getFeatures().size());
+        Geometry polygon = null;
+        for (JsonFeature feature : collection.getFeatures()) {
+            if (((Number) feature.getProperties().get("seed")).intValue() == 0 && ((Number) feature.getProperties().get("bucket")).intValue() == 1)
+                polygon = feature.getGeometry();
+        }
+        // the same polygon as for the single point
+        assertTrue(polygon.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertFalse(polygon.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
+    }
+
+    @Test
+    public void requestBatchNearestSeed() {
+        String body = "{\"profile\": \"fast_car_no_turn_restrictions\", \"mode\": \"nearest_seed\", \"time_limit\": 150, " +
+                "\"points\": [[1.573792, 42.531073], [1.589756, 42.558012]]}";
+        JsonFeatureCollection nearestSeed = clientTarget(app, "/isochrone/batch").request().post(Entity.json(body), JsonFeatureCollection.class);
+        assertEquals(1, nearestSeed.getFeatures().size());
+        Geometry multiPolygon = nearestSeed.getFeatures().get(0).getGeometry();
+        assertTrue(multiPolygon.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+
+        JsonFeatureCollection singleSeed = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car_no_turn_restrictions")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 150)
+                .queryParam("type", "geojson")
+                .request().get(JsonFeatureCollection.class);
+        // the area reachable from both points is larger than the one of the first point alone
+        assertTrue(multiPolygon.getArea() > singleSeed.getFeatures().get(0).getGeometry().getArea());
+    }
+
+    @Test
+    public void requestBatchTooFewPoints() {
+        String body = "{\"profile\": \"fast_car\", \"points\": []}";
+        Response response = clientTarget(app, "/isochrone/batch").request().post(Entity.json(body));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("At least one point is required"));
+    }
 }
@@ -31,6 +31,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.locationtech.jts.geom.Geometry;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -43,6 +46,7 @@ import java.util.Map;
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static com.graphhopper.util.Parameters.Details.STREET_NAME;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 /**
  * @author Peter Karich
@@ -96,6 +100,21 @@ public class MVTResourceTest {
         assertEquals("primary", feature.getAttributes().get("road_class"));
     }
 
+    @Test
+    public void testETag() {
+        Response response = clientTarget(app, "/mvt/15/16522/12102.mvt").request().get();
+        assertEquals(200, response.getStatus());
+        EntityTag eTag = response.getEntityTag();
+        assertNotNull(eTag);
+
+        response = clientTarget(app, "/mvt/15/16522/12102.mvt").request().header("If-None-Match", eTag.toString()).get();
+        assertEquals(304, response.getStatus());
+
+        // a different tile must not be treated as unchanged
+        response = clientTarget(app, "/mvt/15/16528/12099.mvt").request().header("If-None-Match", eTag.toString()).get();
+        assertEquals(200, response.getStatus());
+    }
+
     private static byte[] readInputStream(InputStream is) throws IOException {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         int nRead;
@@ -122,6 +122,23 @@ public class MapMatchingResourceTest {
         }
     }
 
+    @Test
+    public void testBulk() {
+        JsonNode json = clientTarget(app, "/match/bulk?profile=fast_car")
+                .request()
+                .post(Entity.xml(getClass().getResourceAsStream("bulk-tracks.gpx")), JsonNode.class);
+        JsonNode results = json.get("results");
+        assertEquals(3, results.size());
+
+        // the results are in the order of the tracks and are the same as for single requests
+        JsonNode path = results.get(0).get("paths").get(0);
+        assertEquals(812, path.get("distance").asDouble(), 1);
+        assertEquals(812, results.get(0).get("map_matching").get("distance").asDouble(), 1);
+        assertTrue(results.get(1).get("message").asText().startsWith("Sequence is broken"), results.get(1).toString());
+        assertFalse(results.get(1).has("paths"));
+        assertFalse(results.get(2).get("paths").isEmpty());
+    }
+
     private LineString readWktLineString(String wkt) {
         WKTReader wktReader = new WKTReader();
         LineString expectedGeometry = null;
@@ -42,6 +42,7 @@ import java.time.ZoneId;
 import java.util.List;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -115,6 +116,31 @@ public class PtIsochroneTest {
         assertFalse(isoline.covers(geometryFactory.createPoint(makePrecise(new Coordinate(-116.751677, 36.915682)))));
     }
 
+    @Test
+    public void testIsolineForDepartureTimeRange() {
+        // CITY2 leaves NADAV at 6:44 and arrives at NANAA at 6:49. Walking there takes longer than 6 minutes,
+        // so NANAA is only reached when the departure time range includes the bus.
+        WebTarget webTarget = clientTarget(app, "/isochrone")
+                .queryParam("vehicle", "pt")
+                .queryParam("point", "36.914893,-116.76821") // NADAV
+                .queryParam("pt.earliest_departure_time", LocalDateTime.of(2007, 1, 1, 0, 0, 0).atZone(zoneId).toInstant())
+                .queryParam("time_limit", 6 * 60);
+        Geometry isoline = webTarget.request().get(PtIsochroneResource.Response.class).polygons.get(0).getGeometry();
+        assertTrue(isoline.covers(geometryFactory.createPoint(makePrecise(new Coordinate(-116.76821, 36.914893)))));
+        assertFalse(isoline.covers(geometryFactory.createPoint(makePrecise(new Coordinate(-116.761472, 36.914944)))));
+
+        Geometry rangeIsoline = webTarget.queryParam("pt.profile_duration", "PT7H").request().get(PtIsochroneResource.Response.class).polygons.get(0).getGeometry();
+        // NADAV is in
+        assertTrue(rangeIsoline.covers(geometryFactory.createPoint(makePrecise(new Coordinate(-116.76821, 36.914893)))));
+        // NANAA is in
+        assertTrue(rangeIsoline.covers(geometryFactory.createPoint(makePrecise(new Coordinate(-116.761472, 36.914944)))));
+        // STAGECOACH is out
+        assertFalse(rangeIsoline.covers(geometryFactory.createPoint(makePrecise(new Coordinate(-116.751677, 36.915682)))));
+
+        // longer than the maximum profile duration of one day
+        assertEquals(400, webTarget.queryParam("pt.profile_duration", "PT25H").request().get().getStatus());
+    }
+
     // Snap coordinate to GraphHopper's implicit grid of allowable points.
     // Otherwise, we can't reliably use coordinates from input data in tests.
     private Coordinate makePrecise(Coordinate coordinate) {